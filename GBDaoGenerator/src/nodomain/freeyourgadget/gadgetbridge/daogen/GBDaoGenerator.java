@@ -46,7 +46,7 @@ public class GBDaoGenerator {
 
 
     public static void main(String[] args) throws Exception {
-        Schema schema = new Schema(33, MAIN_PACKAGE + ".entities");
+        Schema schema = new Schema(36, MAIN_PACKAGE + ".entities");
 
         Entity userAttributes = addUserAttributes(schema);
         Entity user = addUserInfo(schema, userAttributes);
@@ -96,6 +96,8 @@ public class GBDaoGenerator {
 
         addActivitySummary(schema, user, device);
 
+        addSessionIndex(schema, device);
+
         new DaoGenerator().generateAll(schema, "app/src/main/java");
     }
 
@@ -220,6 +222,7 @@ public class GBDaoGenerator {
         activitySample.addIntProperty(SAMPLE_STEPS).notNull().codeBeforeGetterAndSetter(OVERRIDE);
         activitySample.addIntProperty(SAMPLE_RAW_KIND).notNull().codeBeforeGetterAndSetter(OVERRIDE);
         addHeartRateProperties(activitySample);
+        activitySample.addIntProperty("normalizedKind").javaDocGetterAndSetter("The raw kind with TYPE_NO_CHANGE and TYPE_IGNORE replaced by the previous kind, null if not normalized yet.");
         return activitySample;
     }
 
@@ -618,6 +621,57 @@ public class GBDaoGenerator {
         summary.addToOne(user, userId);
         summary.addStringProperty("summaryData");
         summary.addByteArrayProperty("rawSummaryData");
+
+        // extracted from the summary data when it is stored, so that they can be summed up in SQL
+        summary.addFloatProperty("distanceMeters");
+        summary.addFloatProperty("caloriesBurnt");
+        summary.addFloatProperty("activeSeconds");
+        summary.addIntProperty("steps");
+        summary.addFloatProperty("averageHR");
+        Property startTime = findProperty(summary, "startTime");
+        Index deviceStartTime = new Index();
+        deviceStartTime.setName("IDX_BASE_ACTIVITY_SUMMARY_DEVICE_ID_START_TIME");
+        deviceStartTime.addProperty(deviceId);
+        deviceStartTime.addProperty(startTime);
+        summary.addIndex(deviceStartTime);
+    }
+
+    private static void addSessionIndex(Schema schema, Entity device) {
+        Entity window = addEntity(schema, "SessionIndexWindow");
+        window.setJavaDoc("A time window of a device whose step or sleep sessions have been computed\n" +
+                "and stored as SessionIndexEntry. Removed when samples in that window change.");
+        window.addIdProperty();
+        Property deviceId = window.addLongProperty("deviceId").notNull().getProperty();
+        window.addToOne(device, deviceId);
+        Property sessionType = window.addIntProperty("sessionType").notNull().getProperty();
+        Property windowStart = window.addIntProperty("windowStart").notNull().getProperty();
+        Property windowEnd = window.addIntProperty("windowEnd").notNull().getProperty();
+        Index indexUnique = new Index();
+        indexUnique.addProperty(deviceId);
+        indexUnique.addProperty(sessionType);
+        indexUnique.addProperty(windowStart);
+        indexUnique.addProperty(windowEnd);
+        indexUnique.makeUnique();
+        window.addIndex(indexUnique);
+        window.addIntProperty("settingsHash").notNull().javaDocGetterAndSetter("Hash of the preferences the sessions were computed with.");
+        window.addIntProperty("totalSteps").notNull();
+
+        Entity entry = addEntity(schema, "SessionIndexEntry");
+        entry.addIdProperty();
+        Property windowId = entry.addLongProperty("windowId").notNull().getProperty();
+        entry.addToOne(window, windowId);
+        Index indexWindow = new Index();
+        indexWindow.addProperty(windowId);
+        entry.addIndex(indexWindow);
+        entry.addIntProperty("startTime").notNull();
+        entry.addIntProperty("endTime").notNull();
+        entry.addIntProperty("steps").notNull();
+        entry.addIntProperty("heartRateAverage").notNull();
+        entry.addFloatProperty("intensity").notNull();
+        entry.addFloatProperty("distance").notNull();
+        entry.addIntProperty("activityKind").notNull();
+        entry.addLongProperty("lightSleepDuration").notNull();
+        entry.addLongProperty("deepSleepDuration").notNull();
     }
 
     private static Property findProperty(Entity entity, String propertyName) {
@@ -60,6 +60,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import nodomain.freeyourgadget.gadgetbridge.database.ActivitySummaryMetricsMigration;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.database.DBOpenHelper;
@@ -68,6 +69,8 @@ import nodomain.freeyourgadget.gadgetbridge.entities.DaoMaster;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.externalevents.BluetoothStateChangeReceiver;
+import nodomain.freeyourgadget.gadgetbridge.externalevents.PackageUpdateReceiver;
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBand2ActivityKindMigration;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceService;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
@@ -75,10 +78,12 @@ import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 import nodomain.freeyourgadget.gadgetbridge.service.NotificationCollectorMonitorService;
 import nodomain.freeyourgadget.gadgetbridge.util.AndroidUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.AppIconCache;
 import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
-import nodomain.freeyourgadget.gadgetbridge.util.LimitedQueue;
+import nodomain.freeyourgadget.gadgetbridge.util.LimitedLookupMap;
+import nodomain.freeyourgadget.gadgetbridge.util.Metrics;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceType.AMAZFITBIP;
@@ -103,6 +108,7 @@ public class GBApplication extends Application {
 
     private static GBApplication context;
     private static final Lock dbLock = new ReentrantLock();
+    private static final Metrics.Timer DB_LOCK_WAIT = Metrics.timer("db.lock.wait");
     private static DeviceService deviceService;
     private static SharedPreferences sharedPrefs;
     private static final String PREFS_VERSION = "shared_preferences_version";
@@ -111,10 +117,11 @@ public class GBApplication extends Application {
 
     private static final int ERROR_IN_GADGETBRIDGE_NOTIFICATION = 42;
 
-    private static LimitedQueue mIDSenderLookup = new LimitedQueue(16);
+    private static LimitedLookupMap<String> mIDSenderLookup = new LimitedLookupMap<>(16);
     private static Prefs prefs;
     private static GBPrefs gbPrefs;
     private static LockHandler lockHandler;
+    private static AppIconCache appIconCache;
     /**
      * Note: is null on Lollipop and Kitkat
      */
@@ -176,6 +183,7 @@ public class GBApplication extends Application {
         sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
         prefs = new Prefs(sharedPrefs);
         gbPrefs = new GBPrefs(prefs);
+        Metrics.setEnabled(prefs.getBoolean(Metrics.PREF_METRICS_ENABLED, false));
 
         if (!GBEnvironment.isEnvironmentSetup()) {
             GBEnvironment.setupEnvironment(GBEnvironment.createDeviceEnvironment());
@@ -194,6 +202,11 @@ public class GBApplication extends Application {
 
         setupExceptionHandler();
 
+        if (!GBEnvironment.env().isTest()) {
+            MiBand2ActivityKindMigration.startIfNeeded();
+            ActivitySummaryMetricsMigration.startIfNeeded();
+        }
+
         deviceManager = new DeviceManager(this);
         String language = prefs.getString("language", "default");
         setLanguage(language);
@@ -203,6 +216,9 @@ public class GBApplication extends Application {
         loadAppsPebbleBlackList();
         loadCalendarsBlackList();
 
+        appIconCache = new AppIconCache(this);
+        registerReceiver(new PackageUpdateReceiver(), PackageUpdateReceiver.createIntentFilter());
+
         if (isRunningMarshmallowOrLater()) {
             notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
             //the following will ensure the notification manager is kept alive
@@ -337,7 +353,9 @@ public class GBApplication extends Application {
      */
     public static DBHandler acquireDB() throws GBException {
         try {
+            long start = Metrics.start();
             if (dbLock.tryLock(30, TimeUnit.SECONDS)) {
+                DB_LOCK_WAIT.stop(start);
                 return lockHandler;
             }
         } catch (InterruptedException ex) {
@@ -970,7 +988,7 @@ public class GBApplication extends Application {
         LocalBroadcastManager.getInstance(context).sendBroadcast(intent);
     }
 
-    public static LimitedQueue getIDSenderLookup() {
+    public static LimitedLookupMap<String> getIDSenderLookup() {
         return mIDSenderLookup;
     }
 
@@ -1019,6 +1037,10 @@ public class GBApplication extends Application {
         return gbPrefs;
     }
 
+    public static AppIconCache getAppIconCache() {
+        return appIconCache;
+    }
+
     public DeviceManager getDeviceManager() {
         return deviceManager;
     }
@@ -103,9 +103,10 @@ public class SleepAlarmWidget extends AppWidgetProvider {
             // overwrite the first alarm and activate it, without
 
             Context appContext = context.getApplicationContext();
+            GBDevice selectedDevice = null;
             if (appContext instanceof GBApplication) {
                 GBApplication gbApp = (GBApplication) appContext;
-                GBDevice selectedDevice = gbApp.getDeviceManager().getSelectedDevice();
+                selectedDevice = gbApp.getDeviceManager().getSelectedDevice();
                 if (selectedDevice == null || !selectedDevice.isInitialized()) {
                     GB.toast(context,
                             context.getString(R.string.appwidget_not_connected),
@@ -124,7 +125,7 @@ public class SleepAlarmWidget extends AppWidgetProvider {
             Alarm alarm = AlarmUtils.createSingleShot(0, true, false, calendar);
             ArrayList<Alarm> alarms = new ArrayList<>(1);
             alarms.add(alarm);
-            GBApplication.deviceService().onSetAlarms(alarms);
+            GBApplication.deviceService().forDevice(selectedDevice).onSetAlarms(alarms);
 
 //            if (GBApplication.isRunningLollipopOrLater()) {
 //                setAlarmViaAlarmManager(context, calendar.getTimeInMillis());
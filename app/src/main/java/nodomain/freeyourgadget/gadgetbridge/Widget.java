@@ -53,8 +53,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.text.DecimalFormat;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -63,7 +61,6 @@ import nodomain.freeyourgadget.gadgetbridge.activities.WidgetAlarmsActivity;
 import nodomain.freeyourgadget.gadgetbridge.activities.charts.ChartsActivity;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
-import nodomain.freeyourgadget.gadgetbridge.model.DailyTotals;
 import nodomain.freeyourgadget.gadgetbridge.model.RecordedDataTypes;
 import nodomain.freeyourgadget.gadgetbridge.util.AndroidUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
@@ -101,14 +98,12 @@ public class Widget extends AppWidgetProvider {
 
     private long[] getSteps() {
         Context context = GBApplication.getContext();
-        Calendar day = GregorianCalendar.getInstance();
 
         if (!(context instanceof GBApplication)) {
             return new long[]{0, 0, 0};
         }
-        DailyTotals ds = new DailyTotals();
-        return ds.getDailyTotalsForDevice(selectedDevice, day);
-        //return ds.getDailyTotalsForAllDevices(day);
+        // never blocks, the widgets are updated again once the totals are loaded
+        return WidgetDataProvider.getInstance().getDailyTotals(selectedDevice);
     }
 
     private String getHM(long value) {
@@ -216,7 +211,7 @@ public class Widget extends AppWidgetProvider {
                 context.getString(R.string.busy_task_fetch_activity_data),
                 Toast.LENGTH_SHORT, GB.INFO);
 
-        GBApplication.deviceService().onFetchRecordedData(RecordedDataTypes.TYPE_ACTIVITY);
+        GBApplication.deviceService().forDevice(device).onFetchRecordedData(RecordedDataTypes.TYPE_ACTIVITY);
     }
 
     public void updateWidget() {
@@ -248,6 +243,13 @@ public class Widget extends AppWidgetProvider {
                 @Override
                 public void onReceive(Context context, Intent intent) {
                     LOG.debug("gbwidget BROADCAST, action" + intent.getAction());
+                    if (GBDevice.ACTION_DEVICE_CHANGED.equals(intent.getAction())) {
+                        // the widget shows the state, battery level and name of the device
+                        int changes = intent.getIntExtra(GBDevice.EXTRA_DEVICE_CHANGES, GBDevice.CHANGED_ALL);
+                        if ((changes & (GBDevice.CHANGED_STATE | GBDevice.CHANGED_BATTERY | GBDevice.CHANGED_OTHER)) == 0) {
+                            return;
+                        }
+                    }
                     updateWidget();
                 }
             };
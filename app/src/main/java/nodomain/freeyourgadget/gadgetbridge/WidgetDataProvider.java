@@ -0,0 +1,161 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.DailyTotals;
+
+/**
+ * Keeps today's step and sleep totals of the devices shown in widgets, so that widgets
+ * never access the database on the broadcast thread.
+ *
+ * Totals are computed on a background thread when a widget first asks for them. When samples
+ * of today are written, they are computed again after a short delay, so that a sync writing
+ * many batches only causes one update, and the widgets are refreshed afterwards.
+ */
+public class WidgetDataProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(WidgetDataProvider.class);
+
+    private static final long UPDATE_DELAY_MILLIS = 2000;
+    private static final String NO_DEVICE = "";
+
+    private static WidgetDataProvider instance;
+
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, GBDevice> devices = new HashMap<>();
+    private final Map<String, long[]> totals = new HashMap<>();
+    private int dayStart;
+
+    private final Runnable updateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            update();
+        }
+    };
+
+    private final Runnable refreshWidgetsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            new Widget().updateWidget();
+        }
+    };
+
+    private WidgetDataProvider() {
+        HandlerThread thread = new HandlerThread("WidgetDataProvider");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized WidgetDataProvider getInstance() {
+        if (instance == null) {
+            instance = new WidgetDataProvider();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns today's steps and minutes of sleep of the device, or zeros while they are
+     * being computed; the widgets are refreshed once they are available.
+     */
+    public synchronized long[] getDailyTotals(@Nullable GBDevice device) {
+        String key = device != null ? device.getAddress() : NO_DEVICE;
+        if (dayStart != getStartOfDay(Calendar.getInstance())) {
+            // a new day, all totals are outdated
+            totals.clear();
+        }
+        long[] result = totals.get(key);
+        if (result == null) {
+            devices.put(key, device);
+            scheduleUpdate(0);
+            return new long[]{0, 0};
+        }
+        return result;
+    }
+
+    /**
+     * Called when samples between the given timestamps were written for any device.
+     */
+    public static void onSamplesWritten(int tsFrom, int tsTo) {
+        WidgetDataProvider provider;
+        synchronized (WidgetDataProvider.class) {
+            provider = instance;
+        }
+        if (provider != null) {
+            provider.invalidate(tsFrom, tsTo);
+        }
+    }
+
+    private synchronized void invalidate(int tsFrom, int tsTo) {
+        // today's sleep is counted from noon of the previous day, see DailyTotals
+        if (devices.isEmpty() || tsTo < dayStart - 12 * 60 * 60 || tsFrom >= dayStart + 24 * 60 * 60) {
+            return;
+        }
+        scheduleUpdate(UPDATE_DELAY_MILLIS);
+    }
+
+    private void scheduleUpdate(long delayMillis) {
+        handler.removeCallbacks(updateRunnable);
+        handler.postDelayed(updateRunnable, delayMillis);
+    }
+
+    private void update() {
+        Map<String, GBDevice> toUpdate;
+        synchronized (this) {
+            toUpdate = new HashMap<>(devices);
+        }
+        Calendar day = GregorianCalendar.getInstance();
+        int newDayStart = getStartOfDay(day);
+        DailyTotals dailyTotals = new DailyTotals();
+        Map<String, long[]> newTotals = new HashMap<>();
+        for (Map.Entry<String, GBDevice> entry : toUpdate.entrySet()) {
+            GBDevice device = entry.getValue();
+            newTotals.put(entry.getKey(), device != null ? dailyTotals.getDailyTotalsForDevice(device, day) : new long[]{0, 0});
+        }
+        synchronized (this) {
+            if (dayStart != newDayStart) {
+                totals.clear();
+                dayStart = newDayStart;
+            }
+            totals.putAll(newTotals);
+        }
+        LOG.debug("Updated daily totals of " + newTotals.size() + " devices");
+        mainHandler.post(refreshWidgetsRunnable);
+    }
+
+    private static int getStartOfDay(Calendar day) {
+        day = (Calendar) day.clone(); // do not modify the caller's argument
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        return (int) (day.getTimeInMillis() / 1000);
+    }
+}
@@ -18,9 +18,9 @@
 package nodomain.freeyourgadget.gadgetbridge.activities;
 
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Paint;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -32,24 +32,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.util.Collections;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
-import nodomain.freeyourgadget.gadgetbridge.model.GPSCoordinate;
-import nodomain.freeyourgadget.gadgetbridge.util.GpxParser;
-
-import static android.graphics.Bitmap.createBitmap;
 
 
 public class ActivitySummariesGpsFragment extends AbstractGBFragment {
     private static final Logger LOG = LoggerFactory.getLogger(ActivitySummariesGpsFragment.class);
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private ImageView gpsView;
     private int CANVAS_SIZE = 360;
-    private File inputFile;
+    private volatile File inputFile;
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
@@ -70,68 +66,42 @@ public class ActivitySummariesGpsFragment extends AbstractGBFragment {
     }
 
     private void processInBackgroundThread() {
-        final Canvas canvas = createCanvas(gpsView);
-        new Thread(new Runnable() {
+        final File file = inputFile;
+        final int size = CANVAS_SIZE;
+        final int backgroundColor = GBApplication.getWindowBackgroundColor(getActivity());
+        final int trackColor = getResources().getColor(R.color.chart_activity_light);
+        Bitmap cached = GpsTrackRenderer.getCached(GpsTrackRenderer.getKey(file, size, backgroundColor, trackColor));
+        if (cached != null) {
+            gpsView.setImageBitmap(cached);
+            return;
+        }
+        gpsView.setImageBitmap(null);
+        executor.execute(new Runnable() {
             @Override
             public void run() {
-                GpxParser gpxParser = null;
-                FileInputStream inputStream = null;
-
+                if (file != inputFile) {
+                    return; // already navigated to another activity
+                }
+                final Bitmap bitmap;
                 try {
-                    inputStream = new FileInputStream(inputFile);
-                } catch (FileNotFoundException e) {
-                    e.printStackTrace();
+                    bitmap = GpsTrackRenderer.render(file, size, backgroundColor, trackColor);
+                } catch (Exception e) {
+                    LOG.warn("Unable to render GPS track of " + file, e);
+                    return;
                 }
-
-                if (inputStream != null) {
-                    gpxParser = new GpxParser(inputStream);
+                if (bitmap == null) {
+                    return;
                 }
-
-                if (gpxParser != null) {
-                    if (gpxParser.getPoints().toArray().length > 0) {
-                        drawTrack(canvas, gpxParser.getPoints());
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (file == inputFile && gpsView != null) {
+                            gpsView.setImageBitmap(bitmap);
+                        }
                     }
-                }
+                });
             }
-        }).start();
-    }
-    private void drawTrack(Canvas canvas, List<GPSCoordinate> trackPoints) {
-        double maxLat = (Collections.max(trackPoints, new GPSCoordinate.compareLatitude())).getLatitude();
-        double minLat = (Collections.min(trackPoints, new GPSCoordinate.compareLatitude())).getLatitude();
-        double maxLon = (Collections.max(trackPoints, new GPSCoordinate.compareLongitude())).getLongitude();
-        double minLon = (Collections.min(trackPoints, new GPSCoordinate.compareLongitude())).getLongitude();
-        double maxAlt = (Collections.max(trackPoints, new GPSCoordinate.compareElevation())).getAltitude();
-        double minAlt = (Collections.min(trackPoints, new GPSCoordinate.compareElevation())).getAltitude();
-
-        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        paint.setStrokeWidth(1);
-        paint.setColor(getResources().getColor(R.color.chart_activity_light));
-
-        for (GPSCoordinate p : trackPoints) {
-            float lat = (float) ((p.getLatitude() - minLat) / (maxLat - minLat));
-            float lon = (float) ((p.getLongitude() - minLon) / (maxLon - minLon));
-            float alt = (float) ((p.getAltitude() - minAlt) / (maxAlt - minAlt));
-            paint.setStrokeWidth(1 + alt); //make thicker with higher altitude, we could do more here
-            canvas.drawPoint(CANVAS_SIZE * lat, CANVAS_SIZE * lon, paint);
-        }
-    }
-
-
-    private Canvas createCanvas(ImageView imageView) {
-        Bitmap bitmap = createBitmap(CANVAS_SIZE, CANVAS_SIZE, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        canvas.drawColor(GBApplication.getWindowBackgroundColor(getActivity()));
-        //frame around, but it doesn't look so nice
-        /*
-        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        paint.setStrokeWidth(0);
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setColor(getResources().getColor(R.color.chart_activity_light));
-        canvas.drawRect(0,0,360,360,paint);
-         */
-        imageView.setImageBitmap(bitmap);
-
-        return canvas;
+        });
     }
 
     @Nullable
@@ -97,7 +97,13 @@ public class ControlCenterv2 extends AppCompatActivity
                     finish();
                     break;
                 case DeviceManager.ACTION_DEVICES_CHANGED:
-                    refreshPairedDevices();
+                    GBDevice device = intent.getParcelableExtra(GBDevice.EXTRA_DEVICE);
+                    int index = device != null ? deviceManager.getDevices().indexOf(device) : -1;
+                    if (index >= 0) {
+                        mGBDeviceAdapter.notifyItemChanged(index, intent.getIntExtra(GBDevice.EXTRA_DEVICE_CHANGES, GBDevice.CHANGED_ALL));
+                    } else {
+                        refreshPairedDevices();
+                    }
                     break;
             }
         }
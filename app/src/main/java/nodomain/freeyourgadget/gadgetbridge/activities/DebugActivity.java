@@ -37,6 +37,8 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
 import android.widget.DatePicker;
 import android.widget.EditText;
 import android.widget.Spinner;
@@ -47,10 +49,16 @@ import androidx.core.app.NotificationCompat;
 import androidx.core.app.RemoteInput;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
+import org.json.JSONException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -69,7 +77,9 @@ import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.model.RecordedDataTypes;
 import nodomain.freeyourgadget.gadgetbridge.service.serial.GBDeviceProtocol;
+import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
+import nodomain.freeyourgadget.gadgetbridge.util.Metrics;
 import nodomain.freeyourgadget.gadgetbridge.util.WidgetPreferenceStorage;
 
 import static android.content.Intent.EXTRA_SUBJECT;
@@ -144,7 +154,7 @@ public class DebugActivity extends AbstractGBActivity {
                 notificationSpec.subject = testString;
                 notificationSpec.type = NotificationType.values()[sendTypeSpinner.getSelectedItemPosition()];
                 notificationSpec.pebbleColor = notificationSpec.type.color;
-                GBApplication.deviceService().onNotification(notificationSpec);
+                getDeviceService().onNotification(notificationSpec);
             }
         });
 
@@ -155,7 +165,7 @@ public class DebugActivity extends AbstractGBActivity {
                 CallSpec callSpec = new CallSpec();
                 callSpec.command = CallSpec.CALL_INCOMING;
                 callSpec.number = editContent.getText().toString();
-                GBApplication.deviceService().onSetCallState(callSpec);
+                getDeviceService().onSetCallState(callSpec);
             }
         });
         Button outgoingCallButton = findViewById(R.id.outgoingCallButton);
@@ -165,7 +175,7 @@ public class DebugActivity extends AbstractGBActivity {
                 CallSpec callSpec = new CallSpec();
                 callSpec.command = CallSpec.CALL_OUTGOING;
                 callSpec.number = editContent.getText().toString();
-                GBApplication.deviceService().onSetCallState(callSpec);
+                getDeviceService().onSetCallState(callSpec);
             }
         });
 
@@ -175,7 +185,7 @@ public class DebugActivity extends AbstractGBActivity {
             public void onClick(View v) {
                 CallSpec callSpec = new CallSpec();
                 callSpec.command = CallSpec.CALL_START;
-                GBApplication.deviceService().onSetCallState(callSpec);
+                getDeviceService().onSetCallState(callSpec);
             }
         });
         Button endCallButton = findViewById(R.id.endCallButton);
@@ -184,7 +194,7 @@ public class DebugActivity extends AbstractGBActivity {
             public void onClick(View v) {
                 CallSpec callSpec = new CallSpec();
                 callSpec.command = CallSpec.CALL_END;
-                GBApplication.deviceService().onSetCallState(callSpec);
+                getDeviceService().onSetCallState(callSpec);
             }
         });
 
@@ -192,7 +202,7 @@ public class DebugActivity extends AbstractGBActivity {
         rebootButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                GBApplication.deviceService().onReset(GBDeviceProtocol.RESET_FLAGS_REBOOT);
+                getDeviceService().onReset(GBDeviceProtocol.RESET_FLAGS_REBOOT);
             }
         });
 
@@ -207,7 +217,7 @@ public class DebugActivity extends AbstractGBActivity {
                         .setPositiveButton(R.string.ok, new DialogInterface.OnClickListener() {
                             @Override
                             public void onClick(DialogInterface dialog, int which) {
-                                GBApplication.deviceService().onReset(GBDeviceProtocol.RESET_FLAGS_FACTORY_RESET);
+                                getDeviceService().onReset(GBDeviceProtocol.RESET_FLAGS_FACTORY_RESET);
                             }
                         })
                         .setNegativeButton(R.string.Cancel, new DialogInterface.OnClickListener() {
@@ -224,7 +234,7 @@ public class DebugActivity extends AbstractGBActivity {
             @Override
             public void onClick(View v) {
                 GB.toast("Measuring heart rate, please wait...", Toast.LENGTH_LONG, GB.INFO);
-                GBApplication.deviceService().onHeartRateTest();
+                getDeviceService().onHeartRateTest();
             }
         });
 
@@ -278,7 +288,7 @@ public class DebugActivity extends AbstractGBActivity {
                 musicSpec.trackCount = 5;
                 musicSpec.trackNr = 2;
 
-                GBApplication.deviceService().onSetMusicInfo(musicSpec);
+                getDeviceService().onSetMusicInfo(musicSpec);
 
                 MusicStateSpec stateSpec = new MusicStateSpec();
                 stateSpec.position = 0;
@@ -287,7 +297,7 @@ public class DebugActivity extends AbstractGBActivity {
                 stateSpec.repeat = 1;
                 stateSpec.shuffle = 1;
 
-                GBApplication.deviceService().onSetMusicState(stateSpec);
+                getDeviceService().onSetMusicState(stateSpec);
             }
         });
 
@@ -295,7 +305,7 @@ public class DebugActivity extends AbstractGBActivity {
         setTimeButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                GBApplication.deviceService().onSetTime();
+                getDeviceService().onSetTime();
             }
         });
 
@@ -319,7 +329,7 @@ public class DebugActivity extends AbstractGBActivity {
         fetchDebugLogsButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                GBApplication.deviceService().onFetchRecordedData(RecordedDataTypes.TYPE_DEBUGLOGS);
+                getDeviceService().onFetchRecordedData(RecordedDataTypes.TYPE_DEBUGLOGS);
             }
         });
 
@@ -371,6 +381,67 @@ public class DebugActivity extends AbstractGBActivity {
             }
         });
 
+        CheckBox metricsEnabledCheckbox = findViewById(R.id.metricsEnabledCheckbox);
+        metricsEnabledCheckbox.setChecked(Metrics.isEnabled());
+        metricsEnabledCheckbox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                Metrics.setEnabled(isChecked);
+                if (isChecked) {
+                    Metrics.reset();
+                }
+                GBApplication.getPrefs().getPreferences().edit()
+                        .putBoolean(Metrics.PREF_METRICS_ENABLED, isChecked)
+                        .apply();
+            }
+        });
+
+        Button showMetricsButton = findViewById(R.id.showMetricsButton);
+        showMetricsButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showMetrics();
+            }
+        });
+
+        Button shareMetricsButton = findViewById(R.id.shareMetricsButton);
+        shareMetricsButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                shareMetrics();
+            }
+        });
+    }
+
+    private void showMetrics() {
+        new AlertDialog.Builder(this)
+                .setCancelable(true)
+                .setTitle("Performance metrics")
+                .setMessage(Metrics.toText())
+                .setPositiveButton(R.string.ok, null)
+                .setNeutralButton("Reset", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        Metrics.reset();
+                    }
+                })
+                .show();
+    }
+
+    private void shareMetrics() {
+        try {
+            File metricsFile = FileUtils.getExternalFile("metrics.json");
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(metricsFile), StandardCharsets.UTF_8)) {
+                writer.write(Metrics.toJSON().toString(2));
+            }
+            Intent emailIntent = new Intent(android.content.Intent.ACTION_SEND);
+            emailIntent.setType("application/json");
+            emailIntent.putExtra(EXTRA_SUBJECT, "Gadgetbridge performance metrics");
+            emailIntent.putExtra(Intent.EXTRA_STREAM, Uri.fromFile(metricsFile));
+            startActivity(Intent.createChooser(emailIntent, "Share File"));
+        } catch (IOException | JSONException e) {
+            GB.toast(this, "Unable to export metrics: " + e.getMessage(), Toast.LENGTH_LONG, GB.ERROR, e);
+        }
     }
 
     private void deleteWidgetsPrefs() {
@@ -430,8 +501,15 @@ public class DebugActivity extends AbstractGBActivity {
                 .show();
     }
 
+    /**
+     * The debug actions are sent to the selected device.
+     */
+    private DeviceService getDeviceService() {
+        return GBApplication.deviceService().forDevice(GBApplication.app().getDeviceManager().getSelectedDevice());
+    }
+
     private void testNewFunctionality() {
-        GBApplication.deviceService().onTestNewFunction();
+        getDeviceService().onTestNewFunction();
     }
 
     private void shareLog() {
@@ -200,7 +200,7 @@ public class FwAppInstallerActivity extends AbstractGBActivity implements Instal
             public void onClick(View v) {
                 setInstallEnabled(false);
                 installHandler.onStartInstall(device);
-                GBApplication.deviceService().onInstallApp(uri);
+                GBApplication.deviceService().forDevice(device).onInstallApp(uri);
             }
         });
 
@@ -218,7 +218,7 @@ public class FwAppInstallerActivity extends AbstractGBActivity implements Instal
             if (device == null || !device.isConnected()) {
                 connect();
             } else {
-                GBApplication.deviceService().requestDeviceInfo();
+                GBApplication.deviceService().forDevice(device).requestDeviceInfo();
             }
         }
     }
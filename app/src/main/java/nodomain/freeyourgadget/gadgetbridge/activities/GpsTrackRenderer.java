@@ -0,0 +1,258 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.activities;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.model.GPSCoordinate;
+import nodomain.freeyourgadget.gadgetbridge.util.GpxParser;
+
+/**
+ * Renders the track of a GPX file into a square bitmap, and keeps the bitmaps of recently
+ * shown tracks, so that navigating between activities does not parse and draw them again.
+ *
+ * The coordinates are projected once into float arrays and simplified with the
+ * Douglas-Peucker algorithm, dropping points that would move the track by less than half a
+ * pixel at the size of the bitmap.
+ */
+public class GpsTrackRenderer {
+    private static final Logger LOG = LoggerFactory.getLogger(GpsTrackRenderer.class);
+
+    private static final int MAX_BITMAP_BYTES = 4 * 1024 * 1024;
+    private static final float TOLERANCE_PIXELS = 0.5f;
+    /**
+     * The track is drawn thicker at higher altitude, in this many steps.
+     */
+    private static final int STROKE_WIDTH_STEPS = 8;
+
+    private static final LruCache<String, Bitmap> bitmaps = new LruCache<String, Bitmap>(MAX_BITMAP_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
+    /**
+     * Returns the key of the rendered track, which changes when the file is written again.
+     */
+    public static String getKey(File gpxFile, int size, int backgroundColor, int trackColor) {
+        return gpxFile.getAbsolutePath() + "/" + gpxFile.lastModified() + "/" + size + "/" + backgroundColor + "/" + trackColor;
+    }
+
+    /**
+     * Returns the bitmap rendered for the key, if it is still cached. The bitmap is shared,
+     * callers must not modify or recycle it.
+     */
+    @Nullable
+    public static Bitmap getCached(String key) {
+        return bitmaps.get(key);
+    }
+
+    /**
+     * Renders the track, which may take long, so do not call this on the main thread.
+     * Returns null if the file contains no track points.
+     */
+    @Nullable
+    public static Bitmap render(File gpxFile, int size, int backgroundColor, int trackColor) throws IOException {
+        String key = getKey(gpxFile, size, backgroundColor, trackColor);
+        Bitmap bitmap = bitmaps.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        List<GPSCoordinate> trackPoints;
+        try (InputStream inputStream = new FileInputStream(gpxFile)) {
+            trackPoints = new GpxParser(inputStream).getPoints();
+        }
+        if (trackPoints.isEmpty()) {
+            return null;
+        }
+
+        int count = trackPoints.size();
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        float[] altitudes = new float[count];
+        project(trackPoints, xs, ys, altitudes);
+        boolean[] keep = simplify(xs, ys, TOLERANCE_PIXELS / size);
+
+        bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(backgroundColor);
+        draw(canvas, size, trackColor, xs, ys, altitudes, keep);
+        bitmaps.put(key, bitmap);
+        LOG.debug("Rendered " + count + " track points of " + gpxFile.getName());
+        return bitmap;
+    }
+
+    /**
+     * Scales latitude, longitude and altitude of the points to 0..1, the latitude becomes x
+     * and the longitude y.
+     */
+    static void project(List<GPSCoordinate> trackPoints, float[] xs, float[] ys, float[] altitudes) {
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        double minAlt = Double.MAX_VALUE, maxAlt = -Double.MAX_VALUE;
+        for (GPSCoordinate point : trackPoints) {
+            minLat = Math.min(minLat, point.getLatitude());
+            maxLat = Math.max(maxLat, point.getLatitude());
+            minLon = Math.min(minLon, point.getLongitude());
+            maxLon = Math.max(maxLon, point.getLongitude());
+            minAlt = Math.min(minAlt, point.getAltitude());
+            maxAlt = Math.max(maxAlt, point.getAltitude());
+        }
+        int i = 0;
+        for (GPSCoordinate point : trackPoints) {
+            xs[i] = scale(point.getLatitude(), minLat, maxLat);
+            ys[i] = scale(point.getLongitude(), minLon, maxLon);
+            altitudes[i] = maxAlt > minAlt ? (float) ((point.getAltitude() - minAlt) / (maxAlt - minAlt)) : 0;
+            i++;
+        }
+    }
+
+    private static float scale(double value, double min, double max) {
+        // a track without extent is centered
+        return max > min ? (float) ((value - min) / (max - min)) : 0.5f;
+    }
+
+    /**
+     * Douglas-Peucker simplification: returns which points to keep so that no dropped point
+     * is further than the tolerance from the simplified track.
+     */
+    static boolean[] simplify(float[] xs, float[] ys, float tolerance) {
+        int count = xs.length;
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        float toleranceSquared = tolerance * tolerance;
+        // ranges still to be simplified, an explicit stack so that long tracks do not overflow the call stack
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            float maxDistance = 0;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                float distance = distanceSquared(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0 && maxDistance > toleranceSquared) {
+                keep[farthest] = true;
+                if (top + 4 > stack.length) {
+                    int[] grown = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, grown, 0, top);
+                    stack = grown;
+                }
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+        return keep;
+    }
+
+    /**
+     * Squared distance of point p from the segment a-b.
+     */
+    private static float distanceSquared(float px, float py, float ax, float ay, float bx, float by) {
+        float dx = bx - ax;
+        float dy = by - ay;
+        float lengthSquared = dx * dx + dy * dy;
+        float t = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        float ex = px - (ax + t * dx);
+        float ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Draws the kept points as connected segments, one drawLines() call per stroke width.
+     */
+    private static void draw(Canvas canvas, int size, int trackColor, float[] xs, float[] ys, float[] altitudes, boolean[] keep) {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(trackColor);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+
+        int[] segmentCounts = new int[STROKE_WIDTH_STEPS];
+        int previous = -1;
+        for (int i = 0; i < keep.length; i++) {
+            if (keep[i]) {
+                if (previous >= 0) {
+                    segmentCounts[getStep(altitudes[previous])]++;
+                }
+                previous = i;
+            }
+        }
+        if (previous == 0) {
+            // a single point
+            paint.setStrokeWidth(1 + altitudes[0]);
+            canvas.drawPoint(size * xs[0], size * ys[0], paint);
+            return;
+        }
+
+        float[][] lines = new float[STROKE_WIDTH_STEPS][];
+        int[] offsets = new int[STROKE_WIDTH_STEPS];
+        for (int step = 0; step < STROKE_WIDTH_STEPS; step++) {
+            lines[step] = new float[segmentCounts[step] * 4];
+        }
+        previous = -1;
+        for (int i = 0; i < keep.length; i++) {
+            if (keep[i]) {
+                if (previous >= 0) {
+                    int step = getStep(altitudes[previous]);
+                    float[] stepLines = lines[step];
+                    int offset = offsets[step];
+                    stepLines[offset] = size * xs[previous];
+                    stepLines[offset + 1] = size * ys[previous];
+                    stepLines[offset + 2] = size * xs[i];
+                    stepLines[offset + 3] = size * ys[i];
+                    offsets[step] = offset + 4;
+                }
+                previous = i;
+            }
+        }
+        for (int step = 0; step < STROKE_WIDTH_STEPS; step++) {
+            if (offsets[step] > 0) {
+                paint.setStrokeWidth(1 + (float) step / (STROKE_WIDTH_STEPS - 1)); //make thicker with higher altitude
+                canvas.drawLines(lines[step], 0, offsets[step], paint);
+            }
+        }
+    }
+
+    private static int getStep(float altitude) {
+        return Math.round(altitude * (STROKE_WIDTH_STEPS - 1));
+    }
+}
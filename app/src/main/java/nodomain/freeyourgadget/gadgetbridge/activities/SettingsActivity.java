@@ -59,6 +59,7 @@ import nodomain.freeyourgadget.gadgetbridge.devices.DeviceManager;
 import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandPreferencesActivity;
 import nodomain.freeyourgadget.gadgetbridge.devices.qhybrid.ConfigActivity;
 import nodomain.freeyourgadget.gadgetbridge.devices.zetime.ZeTimePreferenceActivity;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
 import nodomain.freeyourgadget.gadgetbridge.model.CannedMessagesSpec;
 import nodomain.freeyourgadget.gadgetbridge.util.AndroidUtils;
@@ -402,7 +403,12 @@ public class SettingsActivity extends AbstractSettingsActivity {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(preferenceKey);
+                            // the user settings apply to all devices
+                            for (GBDevice device : GBApplication.app().getDeviceManager().getDevices()) {
+                                if (device.isInitialized()) {
+                                    GBApplication.deviceService().forDevice(device).onSendConfiguration(preferenceKey);
+                                }
+                            }
                         }
                     });
                     preference.setSummary(newVal.toString());
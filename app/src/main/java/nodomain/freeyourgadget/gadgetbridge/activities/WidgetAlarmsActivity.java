@@ -40,6 +40,7 @@ import nodomain.freeyourgadget.gadgetbridge.util.GB;
 public class WidgetAlarmsActivity extends Activity implements View.OnClickListener {
 
     TextView textView;
+    private GBDevice device;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -51,6 +52,7 @@ public class WidgetAlarmsActivity extends Activity implements View.OnClickListen
         Bundle extras = getIntent().getExtras();
         if (extras != null) {
             selectedDevice = extras.getParcelable(GBDevice.EXTRA_DEVICE);
+            device = selectedDevice;
         } else {
             GB.toast(this,
                     "Error no device",
@@ -150,7 +152,7 @@ public class WidgetAlarmsActivity extends Activity implements View.OnClickListen
         Alarm alarm = AlarmUtils.createSingleShot(0, true, false, calendar);
         ArrayList<Alarm> alarms = new ArrayList<>(1);
         alarms.add(alarm);
-        GBApplication.deviceService().onSetAlarms(alarms);
+        GBApplication.deviceService().forDevice(device).onSetAlarms(alarms);
 
 
     }
@@ -77,6 +77,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
 import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
+import nodomain.freeyourgadget.gadgetbridge.util.Metrics;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 
 /**
@@ -101,6 +102,8 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
     protected final int ANIM_TIME = 250;
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractChartFragment.class);
+    private static final Metrics.Timer CHART_REFRESH_BACKGROUND = Metrics.timer("charts.refresh.background");
+    private static final Metrics.Timer CHART_REFRESH_TOTAL = Metrics.timer("charts.refresh.total");
 
     private final Set<String> mIntentFilterActions;
     private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
@@ -682,6 +685,7 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
 
     public class RefreshTask extends DBAccess {
         private ChartsData chartsData;
+        private final long start = Metrics.start();
 
         public RefreshTask(String task, Context context) {
             super(task, context);
@@ -691,7 +695,9 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
         protected void doInBackground(DBHandler db) {
             ChartsHost chartsHost = getChartsHost();
             if (chartsHost != null) {
+                long refreshStart = Metrics.start();
                 chartsData = refreshInBackground(chartsHost, db, chartsHost.getDevice());
+                CHART_REFRESH_BACKGROUND.stop(refreshStart);
             } else {
                 cancel(true);
             }
@@ -704,6 +710,7 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
             if (activity != null && !activity.isFinishing() && !activity.isDestroyed()) {
                 updateChartsnUIThread(chartsData);
                 renderCharts();
+                CHART_REFRESH_TOTAL.stop(start);
             } else {
                 LOG.info("Not rendering charts because activity is not available anymore");
             }
@@ -805,11 +812,11 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
         return sample;
     }
 
-    private int getTSEnd() {
+    protected int getTSEnd() {
         return toTimestamp(getEndDate());
     }
 
-    private int getTSStart() {
+    protected int getTSStart() {
         return toTimestamp(getStartDate());
     }
 
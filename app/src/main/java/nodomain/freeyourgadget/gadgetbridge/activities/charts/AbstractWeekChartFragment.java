@@ -75,8 +75,9 @@ public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
         Calendar day = Calendar.getInstance();
         day.setTime(chartsHost.getEndDate());
         //NB: we could have omitted the day, but this way we can move things to the past easily
-        DayData dayData = refreshDayPie(db, day, device);
-        WeekChartsData weekBeforeData = refreshWeekBeforeData(db, mWeekChart, day, device);
+        ActivityAmounts[] amounts = getActivityAmountsForDays(db, day, device);
+        DayData dayData = refreshDayPie(amounts[TOTAL_DAYS]);
+        WeekChartsData weekBeforeData = refreshWeekBeforeData(amounts, mWeekChart, day);
 
         return new MyChartsData(dayData, weekBeforeData);
     }
@@ -118,7 +119,7 @@ public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
         }
     }
 
-    private WeekChartsData<BarData> refreshWeekBeforeData(DBHandler db, BarChart barChart, Calendar day, GBDevice device) {
+    private WeekChartsData<BarData> refreshWeekBeforeData(ActivityAmounts[] amountsPerDay, BarChart barChart, Calendar day) {
         day = (Calendar) day.clone(); // do not modify the caller's argument
         day.add(Calendar.DATE, -TOTAL_DAYS);
         List<BarEntry> entries = new ArrayList<>();
@@ -129,7 +130,7 @@ public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
         TOTAL_DAYS_FOR_AVERAGE=0;
 
         for (int counter = 0; counter < TOTAL_DAYS; counter++) {
-            ActivityAmounts amounts = getActivityAmountsForDay(db, day, device);
+            ActivityAmounts amounts = amountsPerDay[counter];
             daily_balance=calculateBalance(amounts);
             if (daily_balance > 0) {
                 TOTAL_DAYS_FOR_AVERAGE++;
@@ -177,13 +178,12 @@ public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
             return new WeekChartsData(barData, new PreformattedXIndexLabelFormatter(labels), getBalanceMessage(balance, mTargetValue));
     }
 
-    private DayData refreshDayPie(DBHandler db, Calendar day, GBDevice device) {
+    private DayData refreshDayPie(ActivityAmounts amounts) {
 
         PieData data = new PieData();
         List<PieEntry> entries = new ArrayList<>();
         PieDataSet set = new PieDataSet(entries, "");
 
-        ActivityAmounts amounts = getActivityAmountsForDay(db, day, device);
         float totalValues[] = getTotalsForActivityAmounts(amounts);
         String[] pieLabels = getPieLabels();
         float totalValue = 0;
@@ -287,20 +287,14 @@ public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
         yAxisRight.setTextColor(CHART_TEXT_COLOR);
     }
 
-    private List<? extends ActivitySample> getSamplesOfDay(DBHandler db, Calendar day, int offsetHours, GBDevice device) {
-        int startTs;
-        int endTs;
-
+    private static int getStartOfDay(Calendar day, int offsetHours) {
         day = (Calendar) day.clone(); // do not modify the caller's argument
         day.set(Calendar.HOUR_OF_DAY, 0);
         day.set(Calendar.MINUTE, 0);
         day.set(Calendar.SECOND, 0);
         day.add(Calendar.HOUR, offsetHours);
 
-        startTs = (int) (day.getTimeInMillis() / 1000);
-        endTs = startTs + 24 * 60 * 60 - 1;
-
-        return getSamples(db, device, startTs, endTs);
+        return (int) (day.getTimeInMillis() / 1000);
     }
 
     @Override
@@ -336,23 +330,56 @@ public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
         }
     }
 
-    private ActivityAmounts getActivityAmountsForDay(DBHandler db, Calendar day, GBDevice device) {
+    /**
+     * Returns the activity amounts of the TOTAL_DAYS days before the given day and of the
+     * day itself. The days missing in the cache are loaded with a single query.
+     */
+    private ActivityAmounts[] getActivityAmountsForDays(DBHandler db, Calendar day, GBDevice device) {
+        day = (Calendar) day.clone(); // do not modify the caller's argument
+        day.add(Calendar.DATE, -TOTAL_DAYS);
+        ActivityAmounts[] amounts = new ActivityAmounts[TOTAL_DAYS + 1];
+        int[] keys = new int[amounts.length];
+        int[] startTs = new int[amounts.length];
 
         LimitedQueue activityAmountCache = null;
-        ActivityAmounts amounts = null;
-
         Activity activity = getActivity();
-        int key = (int) (day.getTimeInMillis() / 1000) + (mOffsetHours * 3600);
         if (activity != null) {
             activityAmountCache = ((ChartsActivity) activity).mActivityAmountCache;
-            amounts = (ActivityAmounts) (activityAmountCache.lookup(key));
         }
 
-        if (amounts == null) {
-            ActivityAnalysis analysis = new ActivityAnalysis();
-            amounts = analysis.calculateActivityAmounts(getSamplesOfDay(db, day, mOffsetHours, device));
+        int missing = 0;
+        for (int i = 0; i < amounts.length; i++) {
+            keys[i] = (int) (day.getTimeInMillis() / 1000) + (mOffsetHours * 3600);
+            startTs[i] = getStartOfDay(day, mOffsetHours);
             if (activityAmountCache != null) {
-                activityAmountCache.add(key, amounts);
+                amounts[i] = (ActivityAmounts) (activityAmountCache.lookup(keys[i]));
+            }
+            if (amounts[i] == null) {
+                missing++;
+            }
+            day.add(Calendar.DATE, 1);
+        }
+
+        if (missing > 0) {
+            int[] missingStarts = new int[missing];
+            int[] missingEnds = new int[missing];
+            int m = 0;
+            for (int i = 0; i < amounts.length; i++) {
+                if (amounts[i] == null) {
+                    missingStarts[m] = startTs[i];
+                    missingEnds[m] = startTs[i] + 24 * 60 * 60 - 1;
+                    m++;
+                }
+            }
+            ActivityAmounts[] loaded = getProvider(db, device).getActivityAmounts(missingStarts, missingEnds);
+            m = 0;
+            for (int i = 0; i < amounts.length; i++) {
+                if (amounts[i] == null) {
+                    amounts[i] = loaded[m++];
+                    if (activityAmountCache != null) {
+                        activityAmountCache.add(keys[i], amounts[i]);
+                    }
+                }
             }
         }
 
@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
 import java.util.HashMap;
 import java.util.List;
 
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmount;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
@@ -37,16 +38,68 @@ public class ActivityAnalysis {
     private int maxSpeed = 0;
 
     public ActivityAmounts calculateActivityAmounts(List<? extends ActivitySample> samples) {
-        ActivityAmount deepSleep = new ActivityAmount(ActivityKind.TYPE_DEEP_SLEEP);
-        ActivityAmount lightSleep = new ActivityAmount(ActivityKind.TYPE_LIGHT_SLEEP);
-        ActivityAmount notWorn = new ActivityAmount(ActivityKind.TYPE_NOT_WORN);
-        ActivityAmount activity = new ActivityAmount(ActivityKind.TYPE_ACTIVITY);
-
-        ActivityAmount previousAmount = null;
-        ActivitySample previousSample = null;
+        AmountsAccumulator accumulator = new AmountsAccumulator();
         for (ActivitySample sample : samples) {
+            accumulator.add(sample);
+        }
+        return accumulator.getResult();
+    }
+
+    /**
+     * Calculates the activity amounts of several time spans in one pass over the samples
+     * of all of them, which are streamed from the provider. The spans may overlap and must
+     * be ordered by their start.
+     *
+     * @param spanStarts the start timestamps of the spans
+     * @param spanEnds   the end timestamps of the spans, inclusive
+     */
+    public ActivityAmounts[] calculateActivityAmounts(SampleProvider<?> provider, final int[] spanStarts, final int[] spanEnds) {
+        final AmountsAccumulator[] accumulators = new AmountsAccumulator[spanStarts.length];
+        int from = Integer.MAX_VALUE;
+        int to = Integer.MIN_VALUE;
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = new AmountsAccumulator();
+            from = Math.min(from, spanStarts[i]);
+            to = Math.max(to, spanEnds[i]);
+        }
+        if (accumulators.length > 0) {
+            provider.forEachSample(from, to, ActivityKind.TYPE_ALL, new SampleProvider.SampleVisitor<ActivitySample>() {
+                @Override
+                public void visit(ActivitySample sample) {
+                    int timestamp = sample.getTimestamp();
+                    for (int i = 0; i < accumulators.length && spanStarts[i] <= timestamp; i++) {
+                        if (timestamp <= spanEnds[i]) {
+                            accumulators[i].add(sample);
+                        }
+                    }
+                }
+            });
+        }
+        ActivityAmounts[] result = new ActivityAmounts[accumulators.length];
+        for (int i = 0; i < accumulators.length; i++) {
+            result[i] = accumulators[i].getResult();
+        }
+        return result;
+    }
+
+    /**
+     * Sums up the amounts of the samples it is given one after another. Only keeps the
+     * timestamp and kind of the previous sample, so samples may be reused by the caller.
+     */
+    public class AmountsAccumulator {
+        private final ActivityAmount deepSleep = new ActivityAmount(ActivityKind.TYPE_DEEP_SLEEP);
+        private final ActivityAmount lightSleep = new ActivityAmount(ActivityKind.TYPE_LIGHT_SLEEP);
+        private final ActivityAmount notWorn = new ActivityAmount(ActivityKind.TYPE_NOT_WORN);
+        private final ActivityAmount activity = new ActivityAmount(ActivityKind.TYPE_ACTIVITY);
+
+        private ActivityAmount previousAmount = null;
+        private int previousTimestamp;
+        private int previousRawKind;
+
+        public void add(ActivitySample sample) {
             ActivityAmount amount;
-            switch (sample.getKind()) {
+            int kind = sample.getKind();
+            switch (kind) {
                 case ActivityKind.TYPE_DEEP_SLEEP:
                     amount = deepSleep;
                     break;
@@ -67,9 +120,11 @@ public class ActivityAnalysis {
                 amount.addSteps(steps);
             }
 
-            if (previousSample != null) {
-                long timeDifference = sample.getTimestamp() - previousSample.getTimestamp();
-                if (previousSample.getRawKind() == sample.getRawKind()) {
+            int timestamp = sample.getTimestamp();
+            int rawKind = sample.getRawKind();
+            if (previousAmount != null) {
+                long timeDifference = timestamp - previousTimestamp;
+                if (previousRawKind == rawKind) {
                     amount.addSeconds(timeDifference);
                 } else {
                     long sharedTimeDifference = (long) (timeDifference / 2.0f);
@@ -78,7 +133,7 @@ public class ActivityAnalysis {
                 }
 
                 // add time
-                if (steps > 0 && sample.getKind() == ActivityKind.TYPE_ACTIVITY) {
+                if (steps > 0 && kind == ActivityKind.TYPE_ACTIVITY) {
                     if (steps > maxSpeed) {
                         maxSpeed = steps;
                     }
@@ -94,26 +149,29 @@ public class ActivityAnalysis {
                 }
             }
 
-            amount.setStartDate(sample.getTimestamp());
-            amount.setEndDate(sample.getTimestamp());
+            amount.setStartDate(timestamp);
+            amount.setEndDate(timestamp);
 
             previousAmount = amount;
-            previousSample = sample;
+            previousTimestamp = timestamp;
+            previousRawKind = rawKind;
         }
 
-        ActivityAmounts result = new ActivityAmounts();
-        if (deepSleep.getTotalSeconds() > 0) {
-            result.addAmount(deepSleep);
-        }
-        if (lightSleep.getTotalSeconds() > 0) {
-            result.addAmount(lightSleep);
-        }
-        if (activity.getTotalSeconds() > 0) {
-            result.addAmount(activity);
-        }
-        result.calculatePercentages();
+        public ActivityAmounts getResult() {
+            ActivityAmounts result = new ActivityAmounts();
+            if (deepSleep.getTotalSeconds() > 0) {
+                result.addAmount(deepSleep);
+            }
+            if (lightSleep.getTotalSeconds() > 0) {
+                result.addAmount(lightSleep);
+            }
+            if (activity.getTotalSeconds() > 0) {
+                result.addAmount(activity);
+            }
+            result.calculatePercentages();
 
-        return result;
+            return result;
+        }
     }
 
     int calculateTotalSteps(List<? extends ActivitySample> samples) {
@@ -86,19 +86,24 @@ public class ActivityListingChartFragment extends AbstractChartFragment {
     }
 
     @Override
-    protected ChartsData refreshInBackground(ChartsHost chartsHost, DBHandler db, GBDevice device) {
-        List<? extends ActivitySample> activitySamples;
-        activitySamples = getSamples(db, device);
+    protected ChartsData refreshInBackground(ChartsHost chartsHost, final DBHandler db, final GBDevice device) {
+        int dayStart = getDayStart(getTSEnd());
+        tsDateFrom = dayStart;
+        // the samples are only loaded if the sessions of the day are not stored yet
+        SessionIndex.StepSessions indexed = new SessionIndex(db.getDaoSession()).getStepSessions(device,
+                dayStart, dayStart + 24 * 60 * 60 - 1, new SessionIndex.SampleSource() {
+                    @Override
+                    public List<? extends ActivitySample> getSamples() {
+                        return ActivityListingChartFragment.this.getSamples(db, device);
+                    }
+                });
         List<ActivitySession> stepSessions = null;
         StepAnalysis stepAnalysis = new StepAnalysis();
-        boolean isEmptySummary = false;
 
-        if (activitySamples != null) {
-            stepSessions = stepAnalysis.calculateStepSessions(activitySamples);
-            if (stepSessions.toArray().length == 0) {
-                isEmptySummary = true;
-            }
-            stepSessions = stepAnalysis.calculateSummary(stepSessions, isEmptySummary);
+        if (indexed != null) {
+            stepSessions = new ArrayList<>(indexed.getSessions());
+            stepAnalysis.setTotalDailySteps(indexed.getTotalSteps());
+            stepSessions = stepAnalysis.calculateSummary(stepSessions, stepSessions.isEmpty());
         }
         return new MyChartsData(stepSessions);
     }
@@ -126,15 +131,19 @@ public class ActivityListingChartFragment extends AbstractChartFragment {
 
     @Override
     protected List<? extends ActivitySample> getSamples(DBHandler db, GBDevice device, int tsFrom, int tsTo) {
+        tsFrom = getDayStart(tsTo);
+        tsTo = tsFrom + 24 * 60 * 60 - 1;
+        tsDateFrom = tsFrom;
+        return getAllSamples(db, device, tsFrom, tsTo);
+    }
+
+    private static int getDayStart(int tsTo) {
         Calendar day = Calendar.getInstance();
         day.setTimeInMillis(tsTo * 1000L); //we need today initially, which is the end of the time range
         day.set(Calendar.HOUR_OF_DAY, 0); //and we set time for the start and end of the same day
         day.set(Calendar.MINUTE, 0);
         day.set(Calendar.SECOND, 0);
-        tsFrom = (int) (day.getTimeInMillis() / 1000);
-        tsTo = tsFrom + 24 * 60 * 60 - 1;
-        tsDateFrom = tsFrom;
-        return getAllSamples(db, device, tsFrom, tsTo);
+        return (int) (day.getTimeInMillis() / 1000);
     }
 
     private static class MyChartsData extends ChartsData {
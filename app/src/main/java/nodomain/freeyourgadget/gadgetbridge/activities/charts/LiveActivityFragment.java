@@ -347,7 +347,17 @@ public class LiveActivityFragment extends AbstractChartFragment {
         renderCharts();
 
         // have to enable it again and again to keep it measuring
-        GBApplication.deviceService().onEnableRealtimeHeartRateMeasurement(true);
+        getDeviceService().onEnableRealtimeHeartRateMeasurement(true);
+    }
+
+    /**
+     * Returns the service for the device shown by the charts, so that live tracking is not
+     * switched on another connected device.
+     */
+    private DeviceService getDeviceService() {
+        ChartsHost chartsHost = getChartsHost();
+        GBDevice device = chartsHost != null ? chartsHost.getDevice() : null;
+        return device != null ? GBApplication.deviceService().forDevice(device) : GBApplication.deviceService();
     }
 
     private int getPulseIntervalMillis() {
@@ -366,8 +376,8 @@ public class LiveActivityFragment extends AbstractChartFragment {
             return;
         }
 
-        GBApplication.deviceService().onEnableRealtimeSteps(enable);
-        GBApplication.deviceService().onEnableRealtimeHeartRateMeasurement(enable);
+        getDeviceService().onEnableRealtimeSteps(enable);
+        getDeviceService().onEnableRealtimeHeartRateMeasurement(enable);
         if (enable) {
             if (getActivity() != null) {
                 getActivity().getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
@@ -0,0 +1,208 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.activities.charts;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.entities.SessionIndexEntry;
+import nodomain.freeyourgadget.gadgetbridge.entities.SessionIndexEntryDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.SessionIndexWindow;
+import nodomain.freeyourgadget.gadgetbridge.entities.SessionIndexWindowDao;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySession;
+
+/**
+ * Stored step and sleep sessions, so that views do not have to analyse the raw samples
+ * every time they are shown. The sessions of a time window are computed on the first
+ * request and stored; writing samples in that window removes them again, see
+ * {@link DBHelper#invalidateSessionIndex(DaoSession, long, int, int)}.
+ */
+public class SessionIndex {
+    public static final int TYPE_STEPS = 1;
+    public static final int TYPE_SLEEP = 2;
+
+    /**
+     * Loads the samples of a window, only called when its sessions are not stored yet.
+     */
+    public interface SampleSource {
+        List<? extends ActivitySample> getSamples();
+    }
+
+    public static class StepSessions {
+        private final List<ActivitySession> sessions;
+        private final int totalSteps;
+
+        StepSessions(List<ActivitySession> sessions, int totalSteps) {
+            this.sessions = sessions;
+            this.totalSteps = totalSteps;
+        }
+
+        public List<ActivitySession> getSessions() {
+            return sessions;
+        }
+
+        public int getTotalSteps() {
+            return totalSteps;
+        }
+    }
+
+    private final DaoSession session;
+
+    public SessionIndex(DaoSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Returns the step sessions of the device in the window, or null if there are no samples.
+     */
+    @Nullable
+    public StepSessions getStepSessions(GBDevice gbDevice, int windowStart, int windowEnd, SampleSource source) {
+        Device device = DBHelper.findDevice(gbDevice, session);
+        int settingsHash = StepAnalysis.getSettingsHash();
+        if (device != null) {
+            SessionIndexWindow window = findWindow(device, TYPE_STEPS, windowStart, windowEnd, settingsHash);
+            if (window != null) {
+                List<ActivitySession> sessions = new ArrayList<>();
+                for (SessionIndexEntry entry : getEntries(window)) {
+                    sessions.add(new ActivitySession(toDate(entry.getStartTime()), toDate(entry.getEndTime()),
+                            entry.getSteps(), entry.getHeartRateAverage(), entry.getIntensity(), entry.getDistance(), entry.getActivityKind()));
+                }
+                return new StepSessions(sessions, window.getTotalSteps());
+            }
+        }
+
+        List<? extends ActivitySample> samples = source.getSamples();
+        if (samples == null) {
+            return null;
+        }
+        StepAnalysis stepAnalysis = new StepAnalysis();
+        List<ActivitySession> sessions = stepAnalysis.calculateStepSessions(samples);
+        if (device != null) {
+            List<SessionIndexEntry> entries = new ArrayList<>(sessions.size());
+            for (ActivitySession activitySession : sessions) {
+                SessionIndexEntry entry = new SessionIndexEntry();
+                entry.setStartTime(toTimestamp(activitySession.getStartTime()));
+                entry.setEndTime(toTimestamp(activitySession.getEndTime()));
+                entry.setSteps(activitySession.getActiveSteps());
+                entry.setHeartRateAverage(activitySession.getHeartRateAverage());
+                entry.setIntensity(activitySession.getIntensity());
+                entry.setDistance(activitySession.getDistance());
+                entry.setActivityKind(activitySession.getActivityKind());
+                entries.add(entry);
+            }
+            storeWindow(device, TYPE_STEPS, windowStart, windowEnd, settingsHash, stepAnalysis.getTotalDailySteps(), entries);
+        }
+        return new StepSessions(sessions, stepAnalysis.getTotalDailySteps());
+    }
+
+    /**
+     * Returns the sleep sessions of the device in the window.
+     *
+     * @param settingsHash identifies how the samples of the window were selected
+     * @param samples      the samples of the window, which are only analysed if the sessions
+     *                     are not stored yet
+     */
+    @NonNull
+    public List<SleepAnalysis.SleepSession> getSleepSessions(GBDevice gbDevice, int windowStart, int windowEnd, int settingsHash, List<? extends ActivitySample> samples) {
+        Device device = DBHelper.findDevice(gbDevice, session);
+        if (device != null) {
+            SessionIndexWindow window = findWindow(device, TYPE_SLEEP, windowStart, windowEnd, settingsHash);
+            if (window != null) {
+                List<SleepAnalysis.SleepSession> sessions = new ArrayList<>();
+                for (SessionIndexEntry entry : getEntries(window)) {
+                    sessions.add(new SleepAnalysis.SleepSession(toDate(entry.getStartTime()), toDate(entry.getEndTime()),
+                            entry.getLightSleepDuration(), entry.getDeepSleepDuration()));
+                }
+                return sessions;
+            }
+        }
+
+        List<SleepAnalysis.SleepSession> sessions = new SleepAnalysis().calculateSleepSessions(samples);
+        if (device != null && samples != null && !samples.isEmpty()) {
+            List<SessionIndexEntry> entries = new ArrayList<>(sessions.size());
+            for (SleepAnalysis.SleepSession sleepSession : sessions) {
+                SessionIndexEntry entry = new SessionIndexEntry();
+                entry.setStartTime(toTimestamp(sleepSession.getSleepStart()));
+                entry.setEndTime(toTimestamp(sleepSession.getSleepEnd()));
+                entry.setLightSleepDuration(sleepSession.getLightSleepDuration());
+                entry.setDeepSleepDuration(sleepSession.getDeepSleepDuration());
+                entries.add(entry);
+            }
+            storeWindow(device, TYPE_SLEEP, windowStart, windowEnd, settingsHash, 0, entries);
+        }
+        return sessions;
+    }
+
+    @Nullable
+    private SessionIndexWindow findWindow(Device device, int sessionType, int windowStart, int windowEnd, int settingsHash) {
+        SessionIndexWindow window = session.getSessionIndexWindowDao().queryBuilder()
+                .where(SessionIndexWindowDao.Properties.DeviceId.eq(device.getId()),
+                        SessionIndexWindowDao.Properties.SessionType.eq(sessionType),
+                        SessionIndexWindowDao.Properties.WindowStart.eq(windowStart),
+                        SessionIndexWindowDao.Properties.WindowEnd.eq(windowEnd))
+                .build().unique();
+        if (window != null && window.getSettingsHash() != settingsHash) {
+            // computed with other preferences
+            DBHelper.invalidateSessionIndex(session, device.getId(), windowStart, windowEnd);
+            return null;
+        }
+        return window;
+    }
+
+    private List<SessionIndexEntry> getEntries(SessionIndexWindow window) {
+        SessionIndexEntryDao entryDao = session.getSessionIndexEntryDao();
+        List<SessionIndexEntry> entries = entryDao.queryBuilder()
+                .where(SessionIndexEntryDao.Properties.WindowId.eq(window.getId()))
+                .orderAsc(SessionIndexEntryDao.Properties.StartTime)
+                .build().list();
+        entryDao.detachAll();
+        return entries;
+    }
+
+    private void storeWindow(Device device, int sessionType, int windowStart, int windowEnd, int settingsHash, int totalSteps, List<SessionIndexEntry> entries) {
+        SessionIndexWindow window = new SessionIndexWindow();
+        window.setDeviceId(device.getId());
+        window.setSessionType(sessionType);
+        window.setWindowStart(windowStart);
+        window.setWindowEnd(windowEnd);
+        window.setSettingsHash(settingsHash);
+        window.setTotalSteps(totalSteps);
+        session.getSessionIndexWindowDao().insertOrReplace(window);
+        for (SessionIndexEntry entry : entries) {
+            entry.setWindowId(window.getId());
+        }
+        session.getSessionIndexEntryDao().insertInTx(entries);
+        session.getSessionIndexEntryDao().detachAll();
+    }
+
+    private static Date toDate(int timestamp) {
+        return new Date(timestamp * 1000L);
+    }
+
+    private static int toTimestamp(Date date) {
+        return (int) (date.getTime() / 1000);
+    }
+}
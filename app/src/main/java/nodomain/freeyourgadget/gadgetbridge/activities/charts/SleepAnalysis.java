@@ -27,22 +27,23 @@ public class SleepAnalysis {
 
     public static final long MIN_SESSION_LENGTH = 5 * 60;
     public static final long MAX_WAKE_PHASE_LENGTH = 2 * 60 * 60;
+    private static final int NO_SLEEP = Integer.MIN_VALUE;
 
     public List<SleepSession> calculateSleepSessions(List<? extends ActivitySample> samples) {
         List<SleepSession> result = new ArrayList<>();
 
         ActivitySample previousSample = null;
-        Date sleepStart = null;
-        Date sleepEnd = null;
+        int sleepStart = NO_SLEEP;
+        int sleepEnd = NO_SLEEP;
         long lightSleepDuration = 0;
         long deepSleepDuration = 0;
         long durationSinceLastSleep = 0;
 
         for (ActivitySample sample : samples) {
             if (isSleep(sample)) {
-                if (sleepStart == null)
-                    sleepStart = getDateFromSample(sample);
-                sleepEnd = getDateFromSample(sample);
+                if (sleepStart == NO_SLEEP)
+                    sleepStart = sample.getTimestamp();
+                sleepEnd = sample.getTimestamp();
 
                 durationSinceLastSleep = 0;
             }
@@ -55,11 +56,11 @@ public class SleepAnalysis {
                     deepSleepDuration += durationSinceLastSample;
                 } else {
                     durationSinceLastSleep += durationSinceLastSample;
-                    if (sleepStart != null && durationSinceLastSleep > MAX_WAKE_PHASE_LENGTH) {
+                    if (sleepStart != NO_SLEEP && durationSinceLastSleep > MAX_WAKE_PHASE_LENGTH) {
                         if (lightSleepDuration + deepSleepDuration > MIN_SESSION_LENGTH)
-                            result.add(new SleepSession(sleepStart, sleepEnd, lightSleepDuration, deepSleepDuration));
-                        sleepStart = null;
-                        sleepEnd = null;
+                            result.add(new SleepSession(toDate(sleepStart), toDate(sleepEnd), lightSleepDuration, deepSleepDuration));
+                        sleepStart = NO_SLEEP;
+                        sleepEnd = NO_SLEEP;
                         lightSleepDuration = 0;
                         deepSleepDuration = 0;
                     }
@@ -69,7 +70,7 @@ public class SleepAnalysis {
             previousSample = sample;
         }
         if (lightSleepDuration + deepSleepDuration > MIN_SESSION_LENGTH) {
-            result.add(new SleepSession(sleepStart, sleepEnd, lightSleepDuration, deepSleepDuration));
+            result.add(new SleepSession(toDate(sleepStart), toDate(sleepEnd), lightSleepDuration, deepSleepDuration));
         }
         return result;
     }
@@ -78,8 +79,8 @@ public class SleepAnalysis {
         return sample.getKind() == ActivityKind.TYPE_DEEP_SLEEP || sample.getKind() == ActivityKind.TYPE_LIGHT_SLEEP;
     }
 
-    private Date getDateFromSample(ActivitySample sample) {
-        return new Date(sample.getTimestamp() * 1000L);
+    private static Date toDate(int timestamp) {
+        return timestamp != NO_SLEEP ? new Date(timestamp * 1000L) : null;
     }
 
 
@@ -89,7 +90,7 @@ public class SleepAnalysis {
         private final long lightSleepDuration;
         private final long deepSleepDuration;
 
-        private SleepSession(Date sleepStart,
+        SleepSession(Date sleepStart,
                              Date sleepEnd,
                              long lightSleepDuration,
                              long deepSleepDuration) {
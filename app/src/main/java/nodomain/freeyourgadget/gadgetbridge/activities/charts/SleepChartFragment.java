@@ -101,7 +101,9 @@ public class SleepChartFragment extends AbstractChartFragment {
             samples = getSamplesofSleep(db, device);
         }
 
-        MySleepChartsData mySleepChartsData = refreshSleepAmounts(device, samples);
+        List<SleepSession> sleepSessions = new SessionIndex(db.getDaoSession()).getSleepSessions(device,
+                getTSStart(), getTSEnd(), CHARTS_SLEEP_RANGE_24H ? 1 : 0, samples);
+        MySleepChartsData mySleepChartsData = refreshSleepAmounts(device, sleepSessions);
 
         if (!CHARTS_SLEEP_RANGE_24H) {
             if (mySleepChartsData.sleepSessions.size() > 0) {
@@ -124,9 +126,7 @@ public class SleepChartFragment extends AbstractChartFragment {
 
 
 
-    private MySleepChartsData refreshSleepAmounts(GBDevice mGBDevice, List<? extends ActivitySample> samples) {
-        SleepAnalysis sleepAnalysis = new SleepAnalysis();
-        List<SleepSession> sleepSessions = sleepAnalysis.calculateSleepSessions(samples);
+    private MySleepChartsData refreshSleepAmounts(GBDevice mGBDevice, List<SleepSession> sleepSessions) {
 
         PieData data = new PieData();
 
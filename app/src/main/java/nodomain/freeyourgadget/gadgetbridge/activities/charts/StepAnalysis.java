@@ -20,6 +20,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -29,11 +30,38 @@ import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySession;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
+import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 
 public class StepAnalysis {
     protected static final Logger LOG = LoggerFactory.getLogger(StepAnalysis.class);
+    private static final int NO_SESSION = Integer.MIN_VALUE;
     private int totalDailySteps = 0;
 
+    /**
+     * Hash of the preferences the step sessions depend on, to notice when stored sessions
+     * have to be computed again.
+     */
+    public static int getSettingsHash() {
+        ActivityUser activityUser = new ActivityUser();
+        Prefs prefs = GBApplication.getPrefs();
+        return Arrays.hashCode(new int[]{
+                prefs.getInt("chart_list_min_session_length", 5),
+                prefs.getInt("chart_list_max_idle_phase_length", 5),
+                prefs.getInt("chart_list_min_steps_per_minute", 40),
+                prefs.getInt("chart_list_min_steps_per_minute_for_run", 120),
+                activityUser.getStepLengthCm(),
+                activityUser.getHeightCm()
+        });
+    }
+
+    public int getTotalDailySteps() {
+        return totalDailySteps;
+    }
+
+    public void setTotalDailySteps(int totalDailySteps) {
+        this.totalDailySteps = totalDailySteps;
+    }
+
     public List<ActivitySession> calculateStepSessions(List<? extends ActivitySample> samples) {
         List<ActivitySession> result = new ArrayList<>();
         ActivityUser activityUser = new ActivityUser();
@@ -53,15 +81,16 @@ public class StepAnalysis {
         final double MIN_SESSION_INTENSITY = Math.max(0, Math.min(1, MIN_STEPS_PER_MINUTE * 0.01));
 
         ActivitySample previousSample = null;
-        Date sessionStart = null;
-        Date sessionEnd;
+        int sessionStart = NO_SESSION;
         int activeSteps = 0; //steps that we count
         int stepsBetweenActivePeriods = 0; //steps during time when we maybe take a rest but then restart
         int durationSinceLastActiveStep = 0;
         int activityKind;
 
-        List<Integer> heartRateSum = new ArrayList<>();
-        List<Integer> heartRateBetweenActivePeriodsSum = new ArrayList<>();
+        int heartRateSum = 0;
+        int heartRateCount = 0;
+        int heartRateBetweenActivePeriodsSum = 0;
+        int heartRateBetweenActivePeriodsCount = 0;
 
         float activeIntensity = 0;
         float intensityBetweenActivePeriods = 0;
@@ -76,17 +105,20 @@ public class StepAnalysis {
             if (sample.getKind() != ActivityKind.TYPE_SLEEP //anything but sleep counts
                     && !(sample instanceof TrailingActivitySample)) { //trailing samples have wrong date and make trailing activity have 0 duration
 
-                if (sessionStart == null) {
-                    sessionStart = getDateFromSample(sample);
+                if (sessionStart == NO_SESSION) {
+                    sessionStart = sample.getTimestamp();
                     activeSteps = sample.getSteps();
                     activeIntensity = sample.getIntensity();
-                    heartRateSum = new ArrayList<>();
+                    heartRateSum = 0;
+                    heartRateCount = 0;
                     if (heartRateUtilsInstance.isValidHeartRateValue(sample.getHeartRate())) {
-                        heartRateSum.add(sample.getHeartRate());
+                        heartRateSum += sample.getHeartRate();
+                        heartRateCount++;
                     }
                     durationSinceLastActiveStep = 0;
                     stepsBetweenActivePeriods = 0;
-                    heartRateBetweenActivePeriodsSum = new ArrayList<>();
+                    heartRateBetweenActivePeriodsSum = 0;
+                    heartRateBetweenActivePeriodsCount = 0;
                     previousSample = null;
                 }
                 if (previousSample != null) {
@@ -97,10 +129,13 @@ public class StepAnalysis {
                         activeSteps += sample.getSteps() + stepsBetweenActivePeriods;
                         activeIntensity += sample.getIntensity() + intensityBetweenActivePeriods;
                         if (heartRateUtilsInstance.isValidHeartRateValue(sample.getHeartRate())) {
-                            heartRateSum.add(sample.getHeartRate());
+                            heartRateSum += sample.getHeartRate();
+                            heartRateCount++;
                         }
-                        heartRateSum.addAll(heartRateBetweenActivePeriodsSum);
-                        heartRateBetweenActivePeriodsSum = new ArrayList<>();
+                        heartRateSum += heartRateBetweenActivePeriodsSum;
+                        heartRateCount += heartRateBetweenActivePeriodsCount;
+                        heartRateBetweenActivePeriodsSum = 0;
+                        heartRateBetweenActivePeriodsCount = 0;
                         stepsBetweenActivePeriods = 0;
                         intensityBetweenActivePeriods = 0;
                         durationSinceLastActiveStep = 0;
@@ -108,7 +143,8 @@ public class StepAnalysis {
                     } else { //short break data to remember, we will add it to the rest later, if break not too long
                         stepsBetweenActivePeriods += sample.getSteps();
                         if (heartRateUtilsInstance.isValidHeartRateValue(sample.getHeartRate())) {
-                            heartRateBetweenActivePeriodsSum.add(sample.getHeartRate());
+                            heartRateBetweenActivePeriodsSum += sample.getHeartRate();
+                            heartRateBetweenActivePeriodsCount++;
                         }
                         durationSinceLastActiveStep += durationSinceLastSample;
                         intensityBetweenActivePeriods += sample.getIntensity();
@@ -116,17 +152,16 @@ public class StepAnalysis {
                     if (durationSinceLastActiveStep >= MAX_IDLE_PHASE_LENGTH) { //break too long, we split here
 
                         int current = sample.getTimestamp();
-                        int starting = (int) (sessionStart.getTime() / 1000);
-                        int session_length = current - starting - durationSinceLastActiveStep;
+                        int session_length = current - sessionStart - durationSinceLastActiveStep;
 
                         if (session_length >= MIN_SESSION_LENGTH) { //valid activity session
-                            int heartRateAverage = heartRateSum.toArray().length > 0 ? calculateSumOfInts(heartRateSum) / heartRateSum.toArray().length : 0;
+                            int heartRateAverage = heartRateCount > 0 ? heartRateSum / heartRateCount : 0;
                             float distance = (float) (activeSteps * STEP_LENGTH_M);
-                            sessionEnd = new Date((sample.getTimestamp() - durationSinceLastActiveStep) * 1000L);
+                            int sessionEnd = sample.getTimestamp() - durationSinceLastActiveStep;
                             activityKind = detect_activity_kind(session_length, activeSteps, heartRateAverage, activeIntensity);
-                            result.add(new ActivitySession(sessionStart, sessionEnd, activeSteps, heartRateAverage, activeIntensity, distance, activityKind));
+                            result.add(new ActivitySession(toDate(sessionStart), toDate(sessionEnd), activeSteps, heartRateAverage, activeIntensity, distance, activityKind));
                         }
-                        sessionStart = null;
+                        sessionStart = NO_SESSION;
                     }
                 }
                 previousSample = sample;
@@ -134,17 +169,15 @@ public class StepAnalysis {
         }
         //trailing activity: make sure we show the last portion of the data as well in case no further activity is recorded yet
 
-        if (sessionStart != null && previousSample != null) {
+        if (sessionStart != NO_SESSION && previousSample != null) {
             int current = previousSample.getTimestamp();
-            int starting = (int) (sessionStart.getTime() / 1000);
-            int session_length = current - starting - durationSinceLastActiveStep;
+            int session_length = current - sessionStart - durationSinceLastActiveStep;
 
             if (session_length >= MIN_SESSION_LENGTH) {
-                int heartRateAverage = heartRateSum.toArray().length > 0 ? calculateSumOfInts(heartRateSum) / heartRateSum.toArray().length : 0;
+                int heartRateAverage = heartRateCount > 0 ? heartRateSum / heartRateCount : 0;
                 float distance = (float) (activeSteps * STEP_LENGTH_M);
-                sessionEnd = getDateFromSample(previousSample);
                 activityKind = detect_activity_kind(session_length, activeSteps, heartRateAverage, activeIntensity);
-                result.add(new ActivitySession(sessionStart, sessionEnd, activeSteps, heartRateAverage, activeIntensity, distance, activityKind));
+                result.add(new ActivitySession(toDate(sessionStart), toDate(current), activeSteps, heartRateAverage, activeIntensity, distance, activityKind));
             }
         }
         return result;
@@ -156,7 +189,7 @@ public class StepAnalysis {
         Date endTime = null;
         int stepsSum = 0;
         int heartRateAverage = 0;
-        List<Integer> heartRateSum = new ArrayList<>();
+        int heartRateSum = 0;
         int distanceSum = 0;
         float intensitySum = 0;
         int sessionCount;
@@ -168,13 +201,13 @@ public class StepAnalysis {
             durationSum += endTime.getTime() - startTime.getTime();
             stepsSum += session.getActiveSteps();
             distanceSum += session.getDistance();
-            heartRateSum.add(session.getHeartRateAverage());
+            heartRateSum += session.getHeartRateAverage();
             intensitySum += session.getIntensity();
         }
 
-        sessionCount = sessions.toArray().length;
-        if (heartRateSum.toArray().length > 0) {
-            heartRateAverage = calculateSumOfInts(heartRateSum) / heartRateSum.toArray().length;
+        sessionCount = sessions.size();
+        if (sessionCount > 0) {
+            heartRateAverage = heartRateSum / sessionCount;
         }
         startTime = new Date(0);
         endTime = new Date(durationSum);
@@ -195,14 +228,6 @@ public class StepAnalysis {
         return newList;
     }
 
-    private int calculateSumOfInts(List<Integer> samples) {
-        int result = 0;
-        for (Integer sample : samples) {
-            result += sample;
-        }
-        return result;
-    }
-
     private int detect_activity_kind(int session_length, int activeSteps, int heartRateAverage, float intensity) {
         final int MIN_STEPS_PER_MINUTE_FOR_RUN = GBApplication.getPrefs().getInt("chart_list_min_steps_per_minute_for_run", 120);
         int spm = (int) (activeSteps / (session_length / 60));
@@ -218,7 +243,7 @@ public class StepAnalysis {
         return ActivityKind.TYPE_ACTIVITY;
     }
 
-    private Date getDateFromSample(ActivitySample sample) {
-        return new Date(sample.getTimestamp() * 1000L);
+    private static Date toDate(int timestamp) {
+        return new Date(timestamp * 1000L);
     }
 }
@@ -53,7 +53,7 @@ public class DeviceSettingsActivity extends AbstractGBActivity implements
                 if (coordinator.supportsActivityTracking()) {
                     supportedSettings = ArrayUtils.addAll(supportedSettings, R.xml.devicesettings_chartstabs);
                 }
-                fragment = DeviceSpecificSettingsFragment.newInstance(device.getAddress(), supportedSettings);
+                fragment = DeviceSpecificSettingsFragment.newInstance(device, supportedSettings);
             }
             getSupportFragmentManager()
                     .beginTransaction()
@@ -71,7 +71,7 @@ public class DeviceSettingsActivity extends AbstractGBActivity implements
             supportedSettings = ArrayUtils.addAll(supportedSettings, R.xml.devicesettings_chartstabs);
         }
 
-        PreferenceFragmentCompat fragment = DeviceSpecificSettingsFragment.newInstance(device.getAddress(), supportedSettings);
+        PreferenceFragmentCompat fragment = DeviceSpecificSettingsFragment.newInstance(device, supportedSettings);
         Bundle args = fragment.getArguments();
         args.putString(PreferenceFragmentCompat.ARG_PREFERENCE_ROOT, preferenceScreen.getKey());
         fragment.setArguments(args);
@@ -54,7 +54,9 @@ import nodomain.freeyourgadget.gadgetbridge.devices.dafit.settings.DaFitEnumLang
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiConst;
 import nodomain.freeyourgadget.gadgetbridge.devices.makibeshr3.MakibesHR3Constants;
 import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandConst;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.CannedMessagesSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 import nodomain.freeyourgadget.gadgetbridge.util.XTimePreference;
@@ -138,13 +140,22 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
 
     static final String FRAGMENT_TAG = "DEVICE_SPECIFIC_SETTINGS_FRAGMENT";
 
-    private void setSettingsFileSuffix(String settingsFileSuffix, @NonNull int[] supportedSettings) {
+    private void setDevice(GBDevice device, @NonNull int[] supportedSettings) {
         Bundle args = new Bundle();
-        args.putString("settingsFileSuffix", settingsFileSuffix);
+        args.putParcelable(GBDevice.EXTRA_DEVICE, device);
+        args.putString("settingsFileSuffix", device.getAddress());
         args.putIntArray("supportedSettings", supportedSettings);
         setArguments(args);
     }
 
+    /**
+     * Returns the service that sends the changed settings to the device of this fragment.
+     */
+    private DeviceService getDeviceService() {
+        GBDevice device = getArguments().getParcelable(GBDevice.EXTRA_DEVICE);
+        return GBApplication.deviceService().forDevice(device);
+    }
+
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -227,7 +238,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
         {
             Preference pref = preferenceScreen.getPreference(i);
             if (pref.getKey() != null && !pref.getKey().isEmpty())
-                GBApplication.deviceService().onReadConfiguration(pref.getKey());
+                getDeviceService().onReadConfiguration(pref.getKey());
         }
     }
 
@@ -351,7 +362,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     CannedMessagesSpec cannedMessagesSpec = new CannedMessagesSpec();
                     cannedMessagesSpec.type = CannedMessagesSpec.TYPE_REJECTEDCALLS;
                     cannedMessagesSpec.cannedMessages = messages.toArray(new String[0]);
-                    GBApplication.deviceService().onSetCannedMessages(cannedMessagesSpec);
+                    getDeviceService().onSetCannedMessages(cannedMessagesSpec);
                     return true;
                 }
             });
@@ -385,9 +396,9 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
         dafitLanguage.setEntryValues(values);
     }
 
-    static DeviceSpecificSettingsFragment newInstance(String settingsFileSuffix, @NonNull int[] supportedSettings) {
+    static DeviceSpecificSettingsFragment newInstance(GBDevice device, @NonNull int[] supportedSettings) {
         DeviceSpecificSettingsFragment fragment = new DeviceSpecificSettingsFragment();
-        fragment.setSettingsFileSuffix(settingsFileSuffix, supportedSettings);
+        fragment.setDevice(device, supportedSettings);
 
         return fragment;
     }
@@ -426,7 +437,7 @@ public class DeviceSpecificSettingsFragment extends PreferenceFragmentCompat {
                     invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            GBApplication.deviceService().onSendConfiguration(preferenceKey);
+                            getDeviceService().onSendConfiguration(preferenceKey);
                         }
                     });
                     return true;
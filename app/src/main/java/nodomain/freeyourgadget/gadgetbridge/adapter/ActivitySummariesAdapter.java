@@ -17,6 +17,8 @@
 package nodomain.freeyourgadget.gadgetbridge.adapter;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -25,8 +27,6 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +37,7 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import de.greenrobot.dao.query.QueryBuilder;
+import de.greenrobot.dao.query.WhereCondition;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
@@ -46,7 +47,6 @@ import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummaryDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
-import nodomain.freeyourgadget.gadgetbridge.model.ActivitySummaryJsonSummary;
 import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
@@ -62,6 +62,7 @@ public class ActivitySummariesAdapter extends AbstractActivityListingAdapter<Bas
     List<Long> itemsFilter;
     private int activityKindFilter;
     private int backgroundColor = 0;
+    private DashboardTotals dashboardTotals;
 
     public ActivitySummariesAdapter(Context context, GBDevice device, int activityKindFilter, long dateFromFilter, long dateToFilter, String nameContainsFilter, long deviceFilter, List itemsFilter) {
         super(context);
@@ -79,54 +80,108 @@ public class ActivitySummariesAdapter extends AbstractActivityListingAdapter<Bas
     public void loadItems() {
         try (DBHandler handler = GBApplication.acquireDB()) {
             BaseActivitySummaryDao summaryDao = handler.getDaoSession().getBaseActivitySummaryDao();
-            Device dbDevice = DBHelper.findDevice(device, handler.getDaoSession());
+            List<WhereCondition> conditions = getFilterConditions(handler);
 
             QueryBuilder<BaseActivitySummary> qb = summaryDao.queryBuilder();
-
-            if (deviceFilter == ALL_DEVICES) {
-                qb.orderDesc(BaseActivitySummaryDao.Properties.StartTime);
-            } else if (deviceFilter != 0) {
-                qb.where(
-                        BaseActivitySummaryDao.Properties.DeviceId.eq(
-                                deviceFilter)).orderDesc(BaseActivitySummaryDao.Properties.StartTime);
-            } else {
-                qb.where(
-                        BaseActivitySummaryDao.Properties.DeviceId.eq(
-                                dbDevice.getId())).orderDesc(BaseActivitySummaryDao.Properties.StartTime);
-            }
-
-            if (activityKindFilter != 0) {
-                qb.where(
-                        BaseActivitySummaryDao.Properties.ActivityKind.eq(activityKindFilter));
-            }
-
-            if (dateFromFilter != 0) {
-                qb.where(
-                        BaseActivitySummaryDao.Properties.StartTime.gt(new Date(dateFromFilter)));
-            }
-            if (dateToFilter != 0) {
-                qb.where(
-                        BaseActivitySummaryDao.Properties.EndTime.lt(new Date(dateToFilter)));
-            }
-            if (nameContainsFilter != null && nameContainsFilter.length() > 0) {
-                qb.where(
-                        BaseActivitySummaryDao.Properties.Name.like("%" + nameContainsFilter + "%"));
-            }
-            if (itemsFilter != null) {
-                qb.where(
-                        BaseActivitySummaryDao.Properties.Id.in(itemsFilter));
+            for (WhereCondition condition : conditions) {
+                qb.where(condition);
             }
-
+            qb.orderDesc(BaseActivitySummaryDao.Properties.StartTime);
 
             List<BaseActivitySummary> allSummaries = new ArrayList<>();
             allSummaries.add(new BaseActivitySummary());
             allSummaries.addAll(qb.build().list());
+            dashboardTotals = loadDashboardTotals(handler.getDatabase(), conditions);
             setItems(allSummaries, true);
         } catch (Exception e) {
             GB.toast("Error loading activity summaries.", Toast.LENGTH_SHORT, GB.ERROR, e);
         }
     }
 
+    private List<WhereCondition> getFilterConditions(DBHandler handler) {
+        List<WhereCondition> conditions = new ArrayList<>();
+        if (deviceFilter != ALL_DEVICES) {
+            long deviceId = deviceFilter;
+            if (deviceId == 0) {
+                Device dbDevice = DBHelper.findDevice(device, handler.getDaoSession());
+                deviceId = dbDevice.getId();
+            }
+            conditions.add(BaseActivitySummaryDao.Properties.DeviceId.eq(deviceId));
+        }
+
+        if (activityKindFilter != 0) {
+            conditions.add(BaseActivitySummaryDao.Properties.ActivityKind.eq(activityKindFilter));
+        }
+
+        if (dateFromFilter != 0) {
+            conditions.add(BaseActivitySummaryDao.Properties.StartTime.gt(new Date(dateFromFilter)));
+        }
+        if (dateToFilter != 0) {
+            conditions.add(BaseActivitySummaryDao.Properties.EndTime.lt(new Date(dateToFilter)));
+        }
+        if (nameContainsFilter != null && nameContainsFilter.length() > 0) {
+            conditions.add(BaseActivitySummaryDao.Properties.Name.like("%" + nameContainsFilter + "%"));
+        }
+        if (itemsFilter != null) {
+            conditions.add(BaseActivitySummaryDao.Properties.Id.in(itemsFilter));
+        }
+        return conditions;
+    }
+
+    /**
+     * Sums up the filtered summaries in one query, using the metrics that were extracted
+     * from the summary data when it was stored.
+     */
+    static DashboardTotals loadDashboardTotals(SQLiteDatabase db, List<WhereCondition> conditions) {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*), SUM(T.").append(BaseActivitySummaryDao.Properties.EndTime.columnName)
+                .append(" - T.").append(BaseActivitySummaryDao.Properties.StartTime.columnName)
+                .append("), SUM(T.").append(BaseActivitySummaryDao.Properties.CaloriesBurnt.columnName)
+                .append("), SUM(T.").append(BaseActivitySummaryDao.Properties.DistanceMeters.columnName)
+                .append("), SUM(T.").append(BaseActivitySummaryDao.Properties.ActiveSeconds.columnName)
+                .append("), MAX(T.").append(BaseActivitySummaryDao.Properties.StartTime.columnName)
+                .append("), MIN(T.").append(BaseActivitySummaryDao.Properties.EndTime.columnName)
+                .append("), COUNT(DISTINCT T.").append(BaseActivitySummaryDao.Properties.ActivityKind.columnName)
+                .append("), MIN(T.").append(BaseActivitySummaryDao.Properties.ActivityKind.columnName)
+                .append(") FROM ").append(BaseActivitySummaryDao.TABLENAME).append(" T");
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < conditions.size(); i++) {
+            sql.append(i == 0 ? " WHERE " : " AND ");
+            conditions.get(i).appendTo(sql, "T");
+            conditions.get(i).appendValuesTo(values);
+        }
+        String[] args = new String[values.size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = String.valueOf(values.get(i));
+        }
+
+        DashboardTotals totals = new DashboardTotals();
+        try (Cursor cursor = db.rawQuery(sql.toString(), args)) {
+            if (cursor.moveToFirst()) {
+                totals.count = cursor.getInt(0);
+                totals.durationMillis = cursor.getLong(1);
+                totals.caloriesBurnt = cursor.getDouble(2);
+                totals.distanceMeters = cursor.getDouble(3);
+                totals.activeSeconds = cursor.getDouble(4);
+                totals.newestStartTime = cursor.getLong(5);
+                totals.oldestEndTime = cursor.getLong(6);
+                totals.activityKind = cursor.getInt(7) == 1 ? cursor.getInt(8) : 0;
+            }
+        }
+        return totals;
+    }
+
+    static class DashboardTotals {
+        int count;
+        long durationMillis;
+        double caloriesBurnt;
+        double distanceMeters;
+        double activeSeconds;
+        long newestStartTime;
+        long oldestEndTime;
+        /** the kind of all summaries, or 0 if they are not all the same */
+        int activityKind;
+    }
+
     public void setActivityKindFilter(int filter) {
         this.activityKindFilter = filter;
     }
@@ -161,15 +216,7 @@ public class ActivitySummariesAdapter extends AbstractActivityListingAdapter<Bas
                 .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
         view = inflater.inflate(R.layout.activity_summary_dashboard_item, parent, false);
 
-        double durationSum = 0;
-        double caloriesBurntSum = 0;
-        double distanceSum = 0;
-        double activeSecondsSum = 0;
-        double firstItemDate = 0;
-        double lastItemDate = 0;
-        int activitiesCount = getCount() - 1;
-        int activityIcon = 0;
-        boolean activitySame = true;
+        DashboardTotals totals = dashboardTotals != null ? dashboardTotals : new DashboardTotals();
 
         TextView durationSumView = view.findViewById(R.id.summary_dashboard_layout_duration_label);
         TextView caloriesBurntSumView = view.findViewById(R.id.summary_dashboard_layout_calories_label);
@@ -182,64 +229,29 @@ public class ActivitySummariesAdapter extends AbstractActivityListingAdapter<Bas
         ImageView activityIconView = view.findViewById(R.id.summary_dashboard_layout_activity_icon);
         ImageView activityIconBigView = view.findViewById(R.id.summary_dashboard_layout_big_activity_icon);
 
-        for (BaseActivitySummary sportitem : getItems()) {
-            if (sportitem.getStartTime() == null) continue; //first item is empty, for dashboard
-
-            if (firstItemDate == 0) firstItemDate = sportitem.getStartTime().getTime();
-            lastItemDate = sportitem.getEndTime().getTime();
-            durationSum += sportitem.getEndTime().getTime() - sportitem.getStartTime().getTime();
-
-            if (activityIcon == 0) {
-                activityIcon = sportitem.getActivityKind();
-            } else {
-                if (activityIcon != sportitem.getActivityKind()) {
-                    activitySame = false;
-                }
-            }
-
-
-            ActivitySummaryJsonSummary activitySummaryJsonSummary = new ActivitySummaryJsonSummary(sportitem);
-            JSONObject summarySubdata = activitySummaryJsonSummary.getSummaryData();
-
-            if (summarySubdata != null) {
-                try {
-                    if (summarySubdata.has("caloriesBurnt")) {
-                        caloriesBurntSum += summarySubdata.getJSONObject("caloriesBurnt").getDouble("value");
-                    }
-                    if (summarySubdata.has("distanceMeters")) {
-                        distanceSum += summarySubdata.getJSONObject("distanceMeters").getDouble("value");
-                    }
-                    if (summarySubdata.has("activeSeconds")) {
-                        activeSecondsSum += summarySubdata.getJSONObject("activeSeconds").getDouble("value");
-                    }
-                } catch (JSONException e) {
-                    LOG.error("SportsActivity", e);
-                }
-            }
-        }
         DecimalFormat df = new DecimalFormat("#.##");
-        durationSumView.setText(String.format("%s", DateTimeUtils.formatDurationHoursMinutes((long) durationSum, TimeUnit.MILLISECONDS)));
-        caloriesBurntSumView.setText(String.format("%s %s", (long) caloriesBurntSum, context.getString(R.string.calories_unit)));
-        distanceSumView.setText(String.format("%s %s", df.format(distanceSum / 1000), context.getString(R.string.km)));
-        activeSecondsSumView.setText(String.format("%s", DateTimeUtils.formatDurationHoursMinutes((long) activeSecondsSum, TimeUnit.SECONDS)));
-        activitiesCountView.setText(String.valueOf(activitiesCount));
+        durationSumView.setText(String.format("%s", DateTimeUtils.formatDurationHoursMinutes(totals.durationMillis, TimeUnit.MILLISECONDS)));
+        caloriesBurntSumView.setText(String.format("%s %s", (long) totals.caloriesBurnt, context.getString(R.string.calories_unit)));
+        distanceSumView.setText(String.format("%s %s", df.format(totals.distanceMeters / 1000), context.getString(R.string.km)));
+        activeSecondsSumView.setText(String.format("%s", DateTimeUtils.formatDurationHoursMinutes((long) totals.activeSeconds, TimeUnit.SECONDS)));
+        activitiesCountView.setText(String.valueOf(totals.count));
         String activityName = context.getString(R.string.activity_summaries_all_activities);
         if (gettActivityKindFilter() != 0) {
             activityName = ActivityKind.asString(gettActivityKindFilter(), context);
             activityIconView.setImageResource(ActivityKind.getIconId(gettActivityKindFilter()));
             activityIconBigView.setImageResource(ActivityKind.getIconId(gettActivityKindFilter()));
         } else {
-            if (activitySame) {
-                activityIconView.setImageResource(ActivityKind.getIconId(activityIcon));
-                activityIconBigView.setImageResource(ActivityKind.getIconId(activityIcon));
+            if (totals.activityKind != 0) {
+                activityIconView.setImageResource(ActivityKind.getIconId(totals.activityKind));
+                activityIconBigView.setImageResource(ActivityKind.getIconId(totals.activityKind));
             }
         }
 
         activityKindView.setText(activityName);
 
         //start and end are inverted when filer not applied, because items are sorted the other way
-        timeStartView.setText((dateFromFilter != 0) ? DateTimeUtils.formatDate(new Date(dateFromFilter)) : DateTimeUtils.formatDate(new Date((long) lastItemDate)));
-        timeEndView.setText((dateToFilter != 0) ? DateTimeUtils.formatDate(new Date(dateToFilter)) : DateTimeUtils.formatDate(new Date((long) firstItemDate)));
+        timeStartView.setText((dateFromFilter != 0) ? DateTimeUtils.formatDate(new Date(dateFromFilter)) : DateTimeUtils.formatDate(new Date(totals.oldestEndTime)));
+        timeEndView.setText((dateToFilter != 0) ? DateTimeUtils.formatDate(new Date(dateToFilter)) : DateTimeUtils.formatDate(new Date(totals.newestStartTime)));
         return view;
     }
 
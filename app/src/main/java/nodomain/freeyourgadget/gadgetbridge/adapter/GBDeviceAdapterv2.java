@@ -121,7 +121,7 @@ public class GBDeviceAdapterv2 extends RecyclerView.Adapter<GBDeviceAdapterv2.Vi
             public boolean onLongClick(View v) {
                 if (device.getState() != GBDevice.State.NOT_CONNECTED) {
                     showTransientSnackbar(R.string.controlcenter_snackbar_disconnecting);
-                    GBApplication.deviceService().disconnect();
+                    GBApplication.deviceService().forDevice(device).disconnect();
                 }
                 return true;
             }
@@ -130,35 +130,11 @@ public class GBDeviceAdapterv2 extends RecyclerView.Adapter<GBDeviceAdapterv2.Vi
 
         holder.deviceNameLabel.setText(getUniqueDeviceName(device));
 
-        if (device.isBusy()) {
-            holder.deviceStatusLabel.setText(device.getBusyTask());
-            holder.busyIndicator.setVisibility(View.VISIBLE);
-        } else {
-            holder.deviceStatusLabel.setText(device.getStateString());
-            holder.busyIndicator.setVisibility(View.INVISIBLE);
-        }
+        bindStatus(holder, device);
 
         //begin of action row
         //battery
-        holder.batteryStatusBox.setVisibility(View.GONE);
-        short batteryLevel = device.getBatteryLevel();
-        float batteryVoltage = device.getBatteryVoltage();
-        BatteryState batteryState = device.getBatteryState();
-
-        if (batteryLevel != GBDevice.BATTERY_UNKNOWN) {
-            holder.batteryStatusBox.setVisibility(View.VISIBLE);
-            holder.batteryStatusLabel.setText(device.getBatteryLevel() + "%");
-            if (BatteryState.BATTERY_CHARGING.equals(batteryState) ||
-                    BatteryState.BATTERY_CHARGING_FULL.equals(batteryState)) {
-                holder.batteryIcon.setImageLevel(device.getBatteryLevel() + 100);
-            } else {
-                holder.batteryIcon.setImageLevel(device.getBatteryLevel());
-            }
-        } else if (BatteryState.NO_BATTERY.equals(batteryState) && batteryVoltage != GBDevice.BATTERY_UNKNOWN) {
-            holder.batteryStatusBox.setVisibility(View.VISIBLE);
-            holder.batteryStatusLabel.setText(String.format(Locale.getDefault(), "%.2f", batteryVoltage));
-            holder.batteryIcon.setImageLevel(200);
-        }
+        bindBattery(holder, device);
 
         //device specific settings
         holder.deviceSpecificSettingsView.setVisibility(coordinator.getSupportedDeviceSpecificSettings(device) != null ? View.VISIBLE : View.GONE);
@@ -183,7 +159,7 @@ public class GBDeviceAdapterv2 extends RecyclerView.Adapter<GBDeviceAdapterv2.Vi
                                                         @Override
                                                         public void onClick(View v) {
                                                             showTransientSnackbar(R.string.busy_task_fetch_activity_data);
-                                                            GBApplication.deviceService().onFetchRecordedData(RecordedDataTypes.TYPE_ACTIVITY);
+                                                            GBApplication.deviceService().forDevice(device).onFetchRecordedData(RecordedDataTypes.TYPE_ACTIVITY);
                                                         }
                                                     }
         );
@@ -197,7 +173,7 @@ public class GBDeviceAdapterv2 extends RecyclerView.Adapter<GBDeviceAdapterv2.Vi
                                                          @Override
                                                          public void onClick(View v) {
                                                              showTransientSnackbar(R.string.controlcenter_snackbar_requested_screenshot);
-                                                             GBApplication.deviceService().onScreenshotReq();
+                                                             GBApplication.deviceService().forDevice(device).onScreenshotReq();
                                                          }
                                                      }
         );
@@ -304,16 +280,16 @@ public class GBDeviceAdapterv2 extends RecyclerView.Adapter<GBDeviceAdapterv2.Vi
                                                                          context.startActivity(startIntent);
                                                                          return;
                                                                      }
-                                                                     GBApplication.deviceService().onFindDevice(true);
+                                                                     GBApplication.deviceService().forDevice(device).onFindDevice(true);
                                                                      Snackbar.make(parent, R.string.control_center_find_lost_device, Snackbar.LENGTH_INDEFINITE).setAction(R.string.find_lost_device_you_found_it, new View.OnClickListener() {
                                                                          @Override
                                                                          public void onClick(View v) {
-                                                                             GBApplication.deviceService().onFindDevice(false);
+                                                                             GBApplication.deviceService().forDevice(device).onFindDevice(false);
                                                                          }
                                                                      }).setCallback(new Snackbar.Callback() {
                                                                          @Override
                                                                          public void onDismissed(Snackbar snackbar, int event) {
-                                                                             GBApplication.deviceService().onFindDevice(false);
+                                                                             GBApplication.deviceService().forDevice(device).onFindDevice(false);
                                                                              super.onDismissed(snackbar, event);
                                                                          }
                                                                      }).show();
@@ -390,7 +366,7 @@ public class GBDeviceAdapterv2 extends RecyclerView.Adapter<GBDeviceAdapterv2.Vi
                                 } else {
                                     device.setExtraInfo("fm_frequency", frequency);
                                     fmFrequencyLabel.setText(String.format(Locale.getDefault(), "%.1f", (float) device.getExtraInfo("fm_frequency")));
-                                    GBApplication.deviceService().onSetFmFrequency(frequency);
+                                    GBApplication.deviceService().forDevice(device).onSetFmFrequency(frequency);
                                 }
                             }
                         });
@@ -441,7 +417,7 @@ public class GBDeviceAdapterv2 extends RecyclerView.Adapter<GBDeviceAdapterv2.Vi
                         public void onColorSelected(int dialogId, int color) {
                             ledColor.setColor(color);
                             device.setExtraInfo("led_color", color);
-                            GBApplication.deviceService().onSetLedColor(color);
+                            GBApplication.deviceService().forDevice(device).onSetLedColor(color);
                         }
 
                         @Override
@@ -540,6 +516,61 @@ public class GBDeviceAdapterv2 extends RecyclerView.Adapter<GBDeviceAdapterv2.Vi
         });
     }
 
+    /**
+     * Only rebinds the views of the changed properties, if the payloads are the
+     * GBDevice#EXTRA_DEVICE_CHANGES of battery or busy changes.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        int changes = 0;
+        for (Object payload : payloads) {
+            changes |= payload instanceof Integer ? (Integer) payload : GBDevice.CHANGED_ALL;
+        }
+        if (payloads.isEmpty() || (changes & ~(GBDevice.CHANGED_BATTERY | GBDevice.CHANGED_BUSY)) != 0) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        GBDevice device = deviceList.get(position);
+        if ((changes & GBDevice.CHANGED_BUSY) != 0) {
+            bindStatus(holder, device);
+        }
+        if ((changes & GBDevice.CHANGED_BATTERY) != 0) {
+            bindBattery(holder, device);
+        }
+    }
+
+    private void bindStatus(ViewHolder holder, GBDevice device) {
+        if (device.isBusy()) {
+            holder.deviceStatusLabel.setText(device.getBusyTask());
+            holder.busyIndicator.setVisibility(View.VISIBLE);
+        } else {
+            holder.deviceStatusLabel.setText(device.getStateString());
+            holder.busyIndicator.setVisibility(View.INVISIBLE);
+        }
+    }
+
+    private void bindBattery(ViewHolder holder, GBDevice device) {
+        holder.batteryStatusBox.setVisibility(View.GONE);
+        short batteryLevel = device.getBatteryLevel();
+        float batteryVoltage = device.getBatteryVoltage();
+        BatteryState batteryState = device.getBatteryState();
+
+        if (batteryLevel != GBDevice.BATTERY_UNKNOWN) {
+            holder.batteryStatusBox.setVisibility(View.VISIBLE);
+            holder.batteryStatusLabel.setText(device.getBatteryLevel() + "%");
+            if (BatteryState.BATTERY_CHARGING.equals(batteryState) ||
+                    BatteryState.BATTERY_CHARGING_FULL.equals(batteryState)) {
+                holder.batteryIcon.setImageLevel(device.getBatteryLevel() + 100);
+            } else {
+                holder.batteryIcon.setImageLevel(device.getBatteryLevel());
+            }
+        } else if (BatteryState.NO_BATTERY.equals(batteryState) && batteryVoltage != GBDevice.BATTERY_UNKNOWN) {
+            holder.batteryStatusBox.setVisibility(View.VISIBLE);
+            holder.batteryStatusLabel.setText(String.format(Locale.getDefault(), "%.2f", batteryVoltage));
+            holder.batteryIcon.setImageLevel(200);
+        }
+    }
+
     @Override
     public int getItemCount() {
         return deviceList.size();
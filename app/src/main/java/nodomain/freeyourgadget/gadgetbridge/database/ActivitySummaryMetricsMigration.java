@@ -0,0 +1,169 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummary;
+import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummaryDao;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySummaryJsonSummary;
+
+/**
+ * One-time migration that extracts the metrics summed up by the summaries dashboard from
+ * the summary data of the summaries stored before they were extracted at ingest time.
+ * Parsing every summary takes too long for a schema upgrade, so it runs in the background,
+ * one chunk per database lock. Until it is done, the dashboard totals do not include the
+ * summaries that were not migrated yet.
+ *
+ * Imported databases may contain summaries that were never migrated, so the migration is
+ * started again by {@link #onDatabaseImported()}.
+ */
+public class ActivitySummaryMetricsMigration implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(ActivitySummaryMetricsMigration.class);
+
+    private static final String PREF_MIGRATED = "activity_summary_metrics_migrated";
+    private static final int CHUNK_SIZE = 100;
+
+    private static final String ID = BaseActivitySummaryDao.Properties.Id.columnName;
+    private static final String NOT_EXTRACTED = BaseActivitySummaryDao.Properties.DistanceMeters.columnName + " IS NULL AND "
+            + BaseActivitySummaryDao.Properties.CaloriesBurnt.columnName + " IS NULL AND "
+            + BaseActivitySummaryDao.Properties.ActiveSeconds.columnName + " IS NULL AND "
+            + BaseActivitySummaryDao.Properties.Steps.columnName + " IS NULL AND "
+            + BaseActivitySummaryDao.Properties.AverageHR.columnName + " IS NULL";
+
+    private static final AtomicBoolean running = new AtomicBoolean();
+    private static final AtomicBoolean rerun = new AtomicBoolean();
+
+    private final int chunkSize;
+
+    public ActivitySummaryMetricsMigration() {
+        this(CHUNK_SIZE);
+    }
+
+    ActivitySummaryMetricsMigration(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public static void startIfNeeded() {
+        if (GBApplication.getPrefs().getBoolean(PREF_MIGRATED, false)) {
+            return;
+        }
+        start();
+    }
+
+    /**
+     * The imported database may contain summaries that were never migrated.
+     */
+    public static void onDatabaseImported() {
+        GBApplication.getPrefs().getPreferences().edit().putBoolean(PREF_MIGRATED, false).apply();
+        start();
+    }
+
+    private static void start() {
+        if (!running.compareAndSet(false, true)) {
+            // the running migration may have looked at the replaced database already
+            rerun.set(true);
+            return;
+        }
+        Thread thread = new Thread(new ActivitySummaryMetricsMigration(), "ActivitySummaryMetricsMigration");
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        try {
+            do {
+                rerun.set(false);
+                migrate();
+            } while (rerun.get());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    void migrate() {
+        try {
+            long lastId = Long.MIN_VALUE;
+            int migrated = 0;
+            boolean done = false;
+            while (!done) {
+                try (DBHandler handler = GBApplication.acquireDB()) {
+                    SQLiteDatabase db = handler.getDatabase();
+                    db.beginTransaction();
+                    try (Cursor cursor = db.query(BaseActivitySummaryDao.TABLENAME, new String[]{
+                            ID,
+                            BaseActivitySummaryDao.Properties.StartTime.columnName,
+                            BaseActivitySummaryDao.Properties.SummaryData.columnName,
+                            BaseActivitySummaryDao.Properties.RawSummaryData.columnName},
+                            ID + " > ? AND " + NOT_EXTRACTED, new String[]{String.valueOf(lastId)},
+                            null, null, ID, String.valueOf(chunkSize))) {
+                        done = cursor.getCount() < chunkSize;
+                        while (cursor.moveToNext()) {
+                            lastId = cursor.getLong(0);
+                            if (migrateSummary(db, cursor)) {
+                                migrated++;
+                            }
+                        }
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                }
+            }
+            GBApplication.getPrefs().getPreferences().edit().putBoolean(PREF_MIGRATED, true).apply();
+            LOG.info("Extracted the metrics of " + migrated + " activity summaries");
+        } catch (Exception e) {
+            // the flag may have been restored together with the preferences of an imported database
+            GBApplication.getPrefs().getPreferences().edit().putBoolean(PREF_MIGRATED, false).apply();
+            LOG.error("Error extracting the metrics of activity summaries, will try again next time", e);
+        }
+    }
+
+    private boolean migrateSummary(SQLiteDatabase db, Cursor cursor) {
+        long id = cursor.getLong(0);
+        BaseActivitySummary summary = new BaseActivitySummary();
+        summary.setStartTime(new Date(cursor.getLong(1)));
+        summary.setSummaryData(cursor.getString(2));
+        summary.setRawSummaryData(cursor.getBlob(3));
+        try {
+            ActivitySummaryJsonSummary.extractMetrics(summary);
+        } catch (Exception e) {
+            LOG.warn("Unable to extract the metrics of summary " + id, e);
+            return false;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(BaseActivitySummaryDao.Properties.DistanceMeters.columnName, summary.getDistanceMeters());
+        values.put(BaseActivitySummaryDao.Properties.CaloriesBurnt.columnName, summary.getCaloriesBurnt());
+        values.put(BaseActivitySummaryDao.Properties.ActiveSeconds.columnName, summary.getActiveSeconds());
+        values.put(BaseActivitySummaryDao.Properties.Steps.columnName, summary.getSteps());
+        values.put(BaseActivitySummaryDao.Properties.AverageHR.columnName, summary.getAverageHR());
+        db.update(BaseActivitySummaryDao.TABLENAME, values, ID + " = ?", new String[]{String.valueOf(id)});
+        return true;
+    }
+}
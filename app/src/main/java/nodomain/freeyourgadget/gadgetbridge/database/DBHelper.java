@@ -32,6 +32,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
@@ -44,17 +45,24 @@ import de.greenrobot.dao.query.Query;
 import de.greenrobot.dao.query.QueryBuilder;
 import de.greenrobot.dao.query.WhereCondition;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.WidgetDataProvider;
 import nodomain.freeyourgadget.gadgetbridge.activities.devicesettings.DeviceSettingsPreferenceConst;
 import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBand2ActivityKindMigration;
+import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.ActivityDescription;
 import nodomain.freeyourgadget.gadgetbridge.entities.ActivityDescriptionDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.Alarm;
 import nodomain.freeyourgadget.gadgetbridge.entities.AlarmDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoMaster;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.DeviceAttributes;
 import nodomain.freeyourgadget.gadgetbridge.entities.DeviceAttributesDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.DeviceDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.SessionIndexEntryDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.SessionIndexWindow;
+import nodomain.freeyourgadget.gadgetbridge.entities.SessionIndexWindowDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.Tag;
 import nodomain.freeyourgadget.gadgetbridge.entities.TagDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.User;
@@ -139,14 +147,37 @@ public class DBHelper {
         return new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
     }
 
+    /**
+     * Writes a compressed copy of the database as the start of an {@link ExportLog}.
+     */
+    public void exportDBLogBase(DBHandler dbHandler, OutputStream dest, File tempDir) throws IOException {
+        String dbPath = getClosedDBPath(dbHandler);
+        try {
+            ExportLog.writeBase(new File(dbPath), DaoMaster.SCHEMA_VERSION, dest, tempDir);
+        } finally {
+            dbHandler.openDb();
+        }
+    }
+
+    /**
+     * Replaces the database with the given copy, or with the copy and the changes in it if
+     * it is an {@link ExportLog}.
+     */
     public void importDB(DBHandler dbHandler, File fromFile) throws IllegalStateException, IOException {
         String dbPath = getClosedDBPath(dbHandler);
         try {
             File toFile = new File(dbPath);
-            FileUtils.copyFile(fromFile, toFile);
+            if (ExportLog.isExportLog(fromFile)) {
+                ExportLog.replay(fromFile, toFile);
+            } else {
+                FileUtils.copyFile(fromFile, toFile);
+            }
         } finally {
             dbHandler.openDb();
         }
+        IncrementalExporter.reset();
+        MiBand2ActivityKindMigration.onDatabaseImported();
+        ActivitySummaryMetricsMigration.onDatabaseImported();
     }
 
     public void validateDB(SQLiteOpenHelper dbHandler) throws IOException {
@@ -545,6 +576,81 @@ public class DBHelper {
         return qb.and(tsFromProperty.lt(tsTo), tsToProperty.gt(tsFrom));
     }
 
+    /**
+     * Removes the stored step and sleep sessions of the device whose window overlaps the
+     * range tsFrom..tsTo, so that they are computed again the next time they are shown.
+     * Call this whenever samples or activity overlays in that range are written, and
+     * {@link #notifySamplesWritten(int, int)} once the write is committed.
+     */
+    public static void invalidateSessionIndex(@NonNull DaoSession session, long deviceId, int tsFrom, int tsTo) {
+        SessionIndexWindowDao windowDao = session.getSessionIndexWindowDao();
+        QueryBuilder<SessionIndexWindow> qb = windowDao.queryBuilder();
+        qb.where(SessionIndexWindowDao.Properties.DeviceId.eq(deviceId),
+                SessionIndexWindowDao.Properties.WindowStart.le(tsTo),
+                SessionIndexWindowDao.Properties.WindowEnd.ge(tsFrom));
+        List<SessionIndexWindow> windows = qb.build().list();
+        if (windows.isEmpty()) {
+            return;
+        }
+        List<Long> windowIds = new ArrayList<>(windows.size());
+        for (SessionIndexWindow window : windows) {
+            windowIds.add(window.getId());
+        }
+        session.getSessionIndexEntryDao().queryBuilder()
+                .where(SessionIndexEntryDao.Properties.WindowId.in(windowIds))
+                .buildDelete().executeDeleteWithoutDetachingEntities();
+        windowDao.deleteInTx(windows);
+        session.getSessionIndexEntryDao().detachAll();
+    }
+
+    /**
+     * Same as {@link #invalidateSessionIndex(DaoSession, long, int, int)} for the range
+     * covered by the given samples.
+     */
+    public static void invalidateSessionIndex(@NonNull DaoSession session, @NonNull Iterable<? extends AbstractActivitySample> samples) {
+        long deviceId = 0;
+        int tsFrom = Integer.MAX_VALUE;
+        int tsTo = Integer.MIN_VALUE;
+        for (AbstractActivitySample sample : samples) {
+            if (tsFrom <= tsTo && sample.getDeviceId() != deviceId) {
+                invalidateSessionIndex(session, deviceId, tsFrom, tsTo);
+                tsFrom = Integer.MAX_VALUE;
+                tsTo = Integer.MIN_VALUE;
+            }
+            deviceId = sample.getDeviceId();
+            tsFrom = Math.min(tsFrom, sample.getTimestamp());
+            tsTo = Math.max(tsTo, sample.getTimestamp());
+        }
+        if (tsFrom <= tsTo) {
+            invalidateSessionIndex(session, deviceId, tsFrom, tsTo);
+        }
+    }
+
+    /**
+     * Tells the widget and the incremental export that samples or activity overlays between
+     * the given timestamps were written or deleted for any device. Call this after the write
+     * is committed, preferably after the database was released.
+     */
+    public static void notifySamplesWritten(int tsFrom, int tsTo) {
+        WidgetDataProvider.onSamplesWritten(tsFrom, tsTo);
+        IncrementalExporter.onSamplesWritten(tsFrom, tsTo);
+    }
+
+    /**
+     * Same as {@link #notifySamplesWritten(int, int)} for the range covered by the given samples.
+     */
+    public static void notifySamplesWritten(@NonNull Iterable<? extends AbstractActivitySample> samples) {
+        int tsFrom = Integer.MAX_VALUE;
+        int tsTo = Integer.MIN_VALUE;
+        for (AbstractActivitySample sample : samples) {
+            tsFrom = Math.min(tsFrom, sample.getTimestamp());
+            tsTo = Math.max(tsTo, sample.getTimestamp());
+        }
+        if (tsFrom <= tsTo) {
+            notifySamplesWritten(tsFrom, tsTo);
+        }
+    }
+
     @NonNull
     public static ActivityDescription createActivityDescription(@NonNull User user, int tsFrom, int tsTo, @NonNull DaoSession session) {
         ActivityDescription desc = new ActivityDescription();
@@ -0,0 +1,686 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import nodomain.freeyourgadget.gadgetbridge.entities.SessionIndexEntryDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.SessionIndexWindowDao;
+import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
+
+/**
+ * Reads and writes the log of an incremental database export: a full, compressed copy of
+ * the database (the base), followed by any number of deltas with the rows changed since.
+ *
+ * Every segment starts with a header (magic, format version, segment type, schema version,
+ * creation time and payload length) followed by the deflate compressed payload. The payload
+ * of a delta starts with a manifest listing, for every table, how its rows were selected and
+ * how many there are, followed by the rows of each table in blocks, column by column, so
+ * that similar values are next to each other and compress well.
+ *
+ * Tables with a TIMESTAMP column (the samples) contain the rows above the last exported
+ * timestamp and the rows in the range of timestamps written since the last export; when
+ * replaying, the rows in that range are deleted first, so that deleted samples disappear.
+ * Large tables with a rowid contain the rows above the last exported rowid, all others are
+ * written completely.
+ */
+public class ExportLog {
+    private static final Logger LOG = LoggerFactory.getLogger(ExportLog.class);
+
+    private static final int MAGIC = 0x47424c47; // "GBLG"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte SEGMENT_BASE = 1;
+    private static final byte SEGMENT_DELTA = 2;
+
+    private static final byte MODE_SNAPSHOT = 0;
+    private static final byte MODE_TIMESTAMP = 1;
+    private static final byte MODE_ROWID = 2;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_INTEGER = 1;
+    private static final byte TYPE_FLOAT = 2;
+    private static final byte TYPE_TEXT = 3;
+    private static final byte TYPE_BLOB = 4;
+
+    private static final String TIMESTAMP_COLUMN = "TIMESTAMP";
+    private static final String ROWID_COLUMN = "rowid";
+    private static final int BLOCK_ROWS = 1024;
+    /**
+     * Tables without timestamps up to this size are written completely, so that changed
+     * rows are exported as well.
+     */
+    private static final int SNAPSHOT_MAX_ROWS = 5000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static class Table {
+        final String name;
+        final String[] columns;
+        final boolean hasTimestamp;
+        final boolean hasRowId;
+
+        Table(String name, String[] columns, boolean hasTimestamp, boolean hasRowId) {
+            this.name = name;
+            this.columns = columns;
+            this.hasTimestamp = hasTimestamp;
+            this.hasRowId = hasRowId;
+        }
+
+        @Nullable
+        String getWatermarkColumn() {
+            if (hasTimestamp) {
+                return TIMESTAMP_COLUMN;
+            }
+            return hasRowId ? ROWID_COLUMN : null;
+        }
+    }
+
+    private static class Header {
+        final byte type;
+        final int schemaVersion;
+        final long createdAt;
+        final long payloadLength;
+
+        Header(byte type, int schemaVersion, long createdAt, long payloadLength) {
+            this.type = type;
+            this.schemaVersion = schemaVersion;
+            this.createdAt = createdAt;
+            this.payloadLength = payloadLength;
+        }
+    }
+
+    /**
+     * Returns whether the file is an export log rather than a plain copy of the database.
+     */
+    public static boolean isExportLog(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the highest timestamp or rowid of every table, to be passed to
+     * {@link #writeDelta} with the next export.
+     */
+    public static Map<String, Long> getWatermarks(SQLiteDatabase db) {
+        Map<String, Long> watermarks = new HashMap<>();
+        for (Table table : getTables(db)) {
+            Long watermark = queryWatermark(db, table);
+            if (watermark != null) {
+                watermarks.put(table.name, watermark);
+            }
+        }
+        return watermarks;
+    }
+
+    /**
+     * Writes a base segment with a compressed copy of the closed database file.
+     */
+    public static void writeBase(File dbFile, int schemaVersion, OutputStream out, File tempDir) throws IOException {
+        File payload = File.createTempFile("exportbase", null, tempDir);
+        try {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try (OutputStream deflated = new DeflaterOutputStream(new BufferedOutputStream(new FileOutputStream(payload)), deflater)) {
+                FileUtils.copyFileToStream(dbFile, deflated);
+            } finally {
+                deflater.end();
+            }
+            writeSegment(SEGMENT_BASE, schemaVersion, payload, out);
+        } finally {
+            payload.delete();
+        }
+    }
+
+    /**
+     * Writes a delta segment with the rows changed since the export the watermarks were
+     * taken at.
+     *
+     * @param watermarks the watermarks returned by the previous export
+     * @param dirtyFrom  the lowest timestamp of samples written since the previous export
+     * @param dirtyTo    the highest timestamp of samples written since the previous export,
+     *                   lower than dirtyFrom if none were written
+     * @return the watermarks to use for the next export
+     */
+    public static Map<String, Long> writeDelta(SQLiteDatabase db, int schemaVersion, Map<String, Long> watermarks,
+                                               int dirtyFrom, int dirtyTo, OutputStream out, File tempDir) throws IOException {
+        List<Table> tables = getTables(db);
+        byte[] modes = new byte[tables.size()];
+        String[] selections = new String[tables.size()];
+        int[] rowCounts = new int[tables.size()];
+        Map<String, Long> newWatermarks = new HashMap<>();
+        for (int i = 0; i < tables.size(); i++) {
+            Table table = tables.get(i);
+            Long watermark = watermarks.get(table.name);
+            modes[i] = MODE_SNAPSHOT;
+            selections[i] = "";
+            if (watermark != null && table.hasTimestamp) {
+                modes[i] = MODE_TIMESTAMP;
+                selections[i] = " WHERE " + TIMESTAMP_COLUMN + " > " + watermark;
+                if (dirtyFrom <= dirtyTo) {
+                    selections[i] += " OR " + TIMESTAMP_COLUMN + " BETWEEN " + dirtyFrom + " AND " + dirtyTo;
+                }
+            } else if (watermark != null && table.hasRowId && count(db, table, "") > SNAPSHOT_MAX_ROWS) {
+                modes[i] = MODE_ROWID;
+                selections[i] = " WHERE " + ROWID_COLUMN + " > " + watermark;
+            }
+            rowCounts[i] = count(db, table, selections[i]);
+            Long newWatermark = queryWatermark(db, table);
+            if (newWatermark != null) {
+                newWatermarks.put(table.name, newWatermark);
+            }
+        }
+
+        File payload = File.createTempFile("exportdelta", null, tempDir);
+        try {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try (DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(payload)), deflater))) {
+                // manifest
+                data.writeInt(dirtyFrom);
+                data.writeInt(dirtyTo);
+                data.writeInt(tables.size());
+                for (int i = 0; i < tables.size(); i++) {
+                    Table table = tables.get(i);
+                    data.writeUTF(table.name);
+                    data.writeByte(modes[i]);
+                    data.writeInt(rowCounts[i]);
+                    data.writeInt(table.columns.length);
+                    for (String column : table.columns) {
+                        data.writeUTF(column);
+                    }
+                }
+                // rows
+                for (int i = 0; i < tables.size(); i++) {
+                    writeRows(db, tables.get(i), selections[i], rowCounts[i], data);
+                }
+            } finally {
+                deflater.end();
+            }
+            writeSegment(SEGMENT_DELTA, schemaVersion, payload, out);
+        } finally {
+            payload.delete();
+        }
+        return newWatermarks;
+    }
+
+    /**
+     * Restores the database from a log: copies the base to dbFile and applies the deltas
+     * following it. A delta that was not written completely ends the replay.
+     */
+    public static void replay(File log, File dbFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(log)))) {
+            Header base = readHeader(in);
+            if (base == null || base.type != SEGMENT_BASE) {
+                throw new IOException("Export log does not start with a copy of the database");
+            }
+            restoreBase(in, base, dbFile);
+            int deltas;
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+            try {
+                deltas = applyDeltas(db, in, base.schemaVersion);
+                // the stored sessions may not match the replayed samples
+                db.delete(SessionIndexEntryDao.TABLENAME, null, null);
+                db.delete(SessionIndexWindowDao.TABLENAME, null, null);
+            } finally {
+                db.close();
+            }
+            LOG.info("Restored database copy of " + base.createdAt + " and " + deltas + " deltas");
+        }
+    }
+
+    /**
+     * Applies the deltas read from the log, each in its own transaction, and returns how many
+     * were applied.
+     */
+    static int applyDeltas(SQLiteDatabase db, DataInputStream in, int schemaVersion) throws IOException {
+        int deltas = 0;
+        Header header;
+        while ((header = readHeader(in)) != null) {
+            if (header.type != SEGMENT_DELTA) {
+                throw new IOException("Export log contains more than one copy of the database");
+            }
+            if (header.schemaVersion != schemaVersion) {
+                throw new IOException("Export log contains a delta of schema version " + header.schemaVersion
+                        + ", but the database copy is of version " + schemaVersion);
+            }
+            InputStream payload = new LimitedInputStream(in, header.payloadLength);
+            db.beginTransaction();
+            try {
+                applyDelta(db, payload);
+                payload.close();
+                db.setTransactionSuccessful();
+                deltas++;
+            } catch (EOFException e) {
+                LOG.warn("Export log ends with an incomplete delta, ignoring it");
+                break;
+            } finally {
+                db.endTransaction();
+            }
+        }
+        return deltas;
+    }
+
+    private static void restoreBase(InputStream in, Header header, File dbFile) throws IOException {
+        Inflater inflater = new Inflater();
+        try (InputStream inflated = new InflaterInputStream(new LimitedInputStream(in, header.payloadLength), inflater);
+             OutputStream out = new FileOutputStream(dbFile)) {
+            // not FileUtils.copyStreamToFile(), available() does not tell the end of inflated data
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inflated.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void applyDelta(SQLiteDatabase db, InputStream payload) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(new InflaterInputStream(payload, inflater)));
+            int dirtyFrom = data.readInt();
+            int dirtyTo = data.readInt();
+            int tableCount = data.readInt();
+            String[] names = new String[tableCount];
+            byte[] modes = new byte[tableCount];
+            int[] rowCounts = new int[tableCount];
+            String[][] columns = new String[tableCount][];
+            for (int i = 0; i < tableCount; i++) {
+                names[i] = data.readUTF();
+                modes[i] = data.readByte();
+                rowCounts[i] = data.readInt();
+                columns[i] = new String[data.readInt()];
+                for (int c = 0; c < columns[i].length; c++) {
+                    columns[i][c] = data.readUTF();
+                }
+            }
+            for (int i = 0; i < tableCount; i++) {
+                if (modes[i] == MODE_SNAPSHOT) {
+                    db.delete(quote(names[i]), null, null);
+                } else if (modes[i] == MODE_TIMESTAMP && dirtyFrom <= dirtyTo) {
+                    db.delete(quote(names[i]), TIMESTAMP_COLUMN + " BETWEEN " + dirtyFrom + " AND " + dirtyTo, null);
+                }
+                readRows(db, names[i], columns[i], rowCounts[i], data);
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static List<Table> getTables(SQLiteDatabase db) {
+        List<Table> tables = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT name, sql FROM sqlite_master WHERE type = 'table' ORDER BY name", null)) {
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(0);
+                String sql = cursor.getString(1);
+                if (name.startsWith("sqlite_") || name.equals("android_metadata")
+                        || name.equals(SessionIndexWindowDao.TABLENAME) || name.equals(SessionIndexEntryDao.TABLENAME)) {
+                    // internal or derived from other tables
+                    continue;
+                }
+                boolean hasRowId = sql == null || !sql.toUpperCase(Locale.ROOT).contains("WITHOUT ROWID");
+                List<String> columns = new ArrayList<>();
+                try (Cursor info = db.rawQuery("PRAGMA table_info(" + quote(name) + ")", null)) {
+                    int nameIndex = info.getColumnIndex("name");
+                    while (info.moveToNext()) {
+                        columns.add(info.getString(nameIndex));
+                    }
+                }
+                tables.add(new Table(name, columns.toArray(new String[0]), columns.contains(TIMESTAMP_COLUMN), hasRowId));
+            }
+        }
+        return tables;
+    }
+
+    @Nullable
+    private static Long queryWatermark(SQLiteDatabase db, Table table) {
+        String column = table.getWatermarkColumn();
+        if (column == null) {
+            return null;
+        }
+        try (Cursor cursor = db.rawQuery("SELECT MAX(" + column + ") FROM " + quote(table.name), null)) {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        }
+        return null;
+    }
+
+    private static int count(SQLiteDatabase db, Table table, String selection) {
+        try (Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + quote(table.name) + selection, null)) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    private static void writeRows(SQLiteDatabase db, Table table, String selection, int rowCount, DataOutputStream data) throws IOException {
+        if (rowCount == 0) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int c = 0; c < table.columns.length; c++) {
+            sql.append(c > 0 ? ", " : "").append(quote(table.columns[c]));
+        }
+        sql.append(" FROM ").append(quote(table.name)).append(selection);
+
+        int columnCount = table.columns.length;
+        byte[][] types = new byte[columnCount][BLOCK_ROWS];
+        long[][] integers = new long[columnCount][BLOCK_ROWS];
+        double[][] floats = new double[columnCount][BLOCK_ROWS];
+        Object[][] objects = new Object[columnCount][BLOCK_ROWS];
+        int written = 0;
+        try (Cursor cursor = db.rawQuery(sql.toString(), null)) {
+            int row = 0;
+            // the manifest promised rowCount rows, the database is locked while exporting
+            while (written + row < rowCount && cursor.moveToNext()) {
+                for (int c = 0; c < columnCount; c++) {
+                    switch (cursor.getType(c)) {
+                        case Cursor.FIELD_TYPE_NULL:
+                            types[c][row] = TYPE_NULL;
+                            break;
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            types[c][row] = TYPE_INTEGER;
+                            integers[c][row] = cursor.getLong(c);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            types[c][row] = TYPE_FLOAT;
+                            floats[c][row] = cursor.getDouble(c);
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            types[c][row] = TYPE_TEXT;
+                            objects[c][row] = cursor.getString(c).getBytes(UTF_8);
+                            break;
+                        default:
+                            types[c][row] = TYPE_BLOB;
+                            objects[c][row] = cursor.getBlob(c);
+                            break;
+                    }
+                }
+                row++;
+                if (row == BLOCK_ROWS) {
+                    writeBlock(types, integers, floats, objects, row, data);
+                    written += row;
+                    row = 0;
+                }
+            }
+            if (row > 0) {
+                writeBlock(types, integers, floats, objects, row, data);
+                written += row;
+            }
+        }
+        if (written != rowCount) {
+            throw new IOException("Table " + table.name + " changed while exporting");
+        }
+    }
+
+    private static void writeBlock(byte[][] types, long[][] integers, double[][] floats, Object[][] objects,
+                                   int rows, DataOutputStream data) throws IOException {
+        for (int c = 0; c < types.length; c++) {
+            data.write(types[c], 0, rows);
+            long previous = 0;
+            for (int row = 0; row < rows; row++) {
+                switch (types[c][row]) {
+                    case TYPE_INTEGER:
+                        // consecutive timestamps and ids differ by small amounts
+                        writeVarLong(integers[c][row] - previous, data);
+                        previous = integers[c][row];
+                        break;
+                    case TYPE_FLOAT:
+                        data.writeDouble(floats[c][row]);
+                        break;
+                    case TYPE_TEXT:
+                    case TYPE_BLOB:
+                        byte[] bytes = (byte[]) objects[c][row];
+                        writeVarLong(bytes.length, data);
+                        data.write(bytes);
+                        objects[c][row] = null;
+                        break;
+                }
+            }
+        }
+    }
+
+    private static void readRows(SQLiteDatabase db, String tableName, String[] columns, int rowCount, DataInputStream data) throws IOException {
+        if (rowCount == 0) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder("INSERT OR REPLACE INTO ").append(quote(tableName)).append(" (");
+        for (int c = 0; c < columns.length; c++) {
+            sql.append(c > 0 ? ", " : "").append(quote(columns[c]));
+        }
+        sql.append(") VALUES (");
+        for (int c = 0; c < columns.length; c++) {
+            sql.append(c > 0 ? ", ?" : "?");
+        }
+        sql.append(")");
+
+        byte[][] types = new byte[columns.length][BLOCK_ROWS];
+        Object[][] values = new Object[columns.length][BLOCK_ROWS];
+        SQLiteStatement insert = db.compileStatement(sql.toString());
+        try {
+            for (int read = 0; read < rowCount; ) {
+                int rows = Math.min(BLOCK_ROWS, rowCount - read);
+                for (int c = 0; c < columns.length; c++) {
+                    data.readFully(types[c], 0, rows);
+                    long previous = 0;
+                    for (int row = 0; row < rows; row++) {
+                        switch (types[c][row]) {
+                            case TYPE_NULL:
+                                values[c][row] = null;
+                                break;
+                            case TYPE_INTEGER:
+                                previous += readVarLong(data);
+                                values[c][row] = previous;
+                                break;
+                            case TYPE_FLOAT:
+                                values[c][row] = data.readDouble();
+                                break;
+                            case TYPE_TEXT:
+                            case TYPE_BLOB:
+                                byte[] bytes = new byte[(int) readVarLong(data)];
+                                data.readFully(bytes);
+                                values[c][row] = types[c][row] == TYPE_TEXT ? new String(bytes, UTF_8) : bytes;
+                                break;
+                            default:
+                                throw new IOException("Unknown value type " + types[c][row] + " in table " + tableName);
+                        }
+                    }
+                }
+                for (int row = 0; row < rows; row++) {
+                    for (int c = 0; c < columns.length; c++) {
+                        Object value = values[c][row];
+                        if (value == null) {
+                            insert.bindNull(c + 1);
+                        } else if (value instanceof Long) {
+                            insert.bindLong(c + 1, (Long) value);
+                        } else if (value instanceof Double) {
+                            insert.bindDouble(c + 1, (Double) value);
+                        } else if (value instanceof String) {
+                            insert.bindString(c + 1, (String) value);
+                        } else {
+                            insert.bindBlob(c + 1, (byte[]) value);
+                        }
+                    }
+                    insert.executeInsert();
+                }
+                read += rows;
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    private static void writeSegment(byte type, int schemaVersion, File payload, OutputStream out) throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeByte(FORMAT_VERSION);
+        header.writeByte(type);
+        header.writeInt(schemaVersion);
+        header.writeLong(System.currentTimeMillis());
+        header.writeLong(payload.length());
+        header.flush();
+        FileUtils.copyFileToStream(payload, out);
+        out.flush();
+    }
+
+    /**
+     * Returns the header of the next segment, or null at the end of the log.
+     */
+    @Nullable
+    private static Header readHeader(DataInputStream in) throws IOException {
+        int magic;
+        try {
+            magic = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (magic != MAGIC) {
+            throw new IOException("Not an export log segment");
+        }
+        int version = in.readUnsignedByte();
+        if (version > FORMAT_VERSION) {
+            throw new IOException("Unsupported export log version " + version);
+        }
+        try {
+            return new Header(in.readByte(), in.readInt(), in.readLong(), in.readLong());
+        } catch (EOFException e) {
+            LOG.warn("Export log ends with an incomplete segment header");
+            return null;
+        }
+    }
+
+    private static void writeVarLong(long value, DataOutputStream out) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7fL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7f) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigzag |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed variable length number");
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Reads at most the given number of bytes from the log and skips the rest of them when
+     * closed, leaving the log at the next segment. Does not close the log.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            while (remaining > 0) {
+                if (skip(remaining) <= 0 && read() < 0) {
+                    throw new EOFException("Export log ends within a segment");
+                }
+            }
+        }
+    }
+}
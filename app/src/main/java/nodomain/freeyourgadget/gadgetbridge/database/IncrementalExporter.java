@@ -0,0 +1,245 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoMaster;
+import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
+import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
+
+/**
+ * Periodic export to an {@link ExportLog}: the first export writes a compressed copy of the
+ * database, the following ones append the rows changed since.
+ *
+ * Samples written in the meantime are tracked by their range of timestamps, see
+ * {@link #onSamplesWritten(int, int)}. Changes that are not tracked, like updated or deleted
+ * rows of large tables, are picked up by the next copy, which is written every week, after
+ * {@link #MAX_DELTAS} deltas, when the database schema or the export location changed, and
+ * when a delta cannot be appended.
+ */
+public class IncrementalExporter {
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalExporter.class);
+
+    private static final String PREF_STATE = "auto_export_incremental_state";
+    private static final String PREF_DIRTY_FROM = "auto_export_incremental_dirty_from";
+    private static final String PREF_DIRTY_TO = "auto_export_incremental_dirty_to";
+
+    private static final String STATE_LOCATION = "location";
+    private static final String STATE_SCHEMA_VERSION = "schemaVersion";
+    private static final String STATE_BASE_CREATED = "baseCreated";
+    private static final String STATE_DELTAS = "deltas";
+    private static final String STATE_WATERMARKS = "watermarks";
+
+    private static final long BASE_INTERVAL_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+    private static final int MAX_DELTAS = 100;
+
+    private static boolean dirtyRangeLoaded;
+    private static int dirtyFrom;
+    private static int dirtyTo;
+
+    private final Context context;
+
+    public IncrementalExporter(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Called when samples between the given timestamps were written for any device.
+     */
+    public static synchronized void onSamplesWritten(int tsFrom, int tsTo) {
+        if (!GBApplication.getPrefs().getBoolean(GBPrefs.AUTO_EXPORT_INCREMENTAL, false)) {
+            return;
+        }
+        addDirtyRange(tsFrom, tsTo);
+    }
+
+    /**
+     * Forgets about previous exports, so that the next one writes a new copy of the database.
+     * Call this when the database or the export location was replaced.
+     */
+    public static synchronized void reset() {
+        getPreferences().edit().remove(PREF_STATE).apply();
+        resetDirtyRange();
+    }
+
+    /**
+     * Exports to the given location. The database must be acquired by the caller, so that
+     * no samples are written while exporting.
+     */
+    public void export(DBHandler dbHandler, Uri dstUri) throws IOException {
+        String location = dstUri.toString();
+        JSONObject state = loadState();
+        long now = System.currentTimeMillis();
+        try {
+            if (state != null && location.equals(state.getString(STATE_LOCATION))
+                    && state.getInt(STATE_SCHEMA_VERSION) == DaoMaster.SCHEMA_VERSION
+                    && now - state.getLong(STATE_BASE_CREATED) < BASE_INTERVAL_MILLIS
+                    && state.getInt(STATE_DELTAS) < MAX_DELTAS) {
+                try {
+                    exportDelta(dbHandler, dstUri, state);
+                    return;
+                } catch (IOException e) {
+                    LOG.warn("Unable to append changes to the export, writing a new copy", e);
+                }
+            }
+        } catch (JSONException e) {
+            LOG.warn("Invalid state of previous exports, writing a new copy", e);
+        }
+        exportBase(dbHandler, dstUri, now);
+    }
+
+    private void exportDelta(DBHandler dbHandler, Uri dstUri, JSONObject state) throws IOException, JSONException {
+        Map<String, Long> watermarks = new HashMap<>();
+        JSONObject jsonWatermarks = state.getJSONObject(STATE_WATERMARKS);
+        Iterator<String> tables = jsonWatermarks.keys();
+        while (tables.hasNext()) {
+            String table = tables.next();
+            watermarks.put(table, jsonWatermarks.getLong(table));
+        }
+        // samples notified while exporting are exported with the next delta
+        int[] range = takeDirtyRange();
+        int from = range[0];
+        int to = range[1];
+        boolean exported = false;
+        try {
+            try (OutputStream out = context.getContentResolver().openOutputStream(dstUri, "wa")) {
+                if (out == null) {
+                    throw new IOException("Unable to open " + dstUri + " for appending");
+                }
+                watermarks = ExportLog.writeDelta(dbHandler.getDatabase(), DaoMaster.SCHEMA_VERSION, watermarks,
+                        from, to, out, context.getCacheDir());
+            }
+            state.put(STATE_DELTAS, state.getInt(STATE_DELTAS) + 1);
+            state.put(STATE_WATERMARKS, new JSONObject(watermarks));
+            saveState(state);
+            exported = true;
+        } finally {
+            if (!exported) {
+                addDirtyRange(from, to);
+            }
+        }
+        LOG.info("Exported changes of samples between " + from + " and " + to);
+    }
+
+    private void exportBase(DBHandler dbHandler, Uri dstUri, long now) throws IOException {
+        // the copy contains all samples written so far
+        int[] range = takeDirtyRange();
+        Map<String, Long> watermarks = ExportLog.getWatermarks(dbHandler.getDatabase());
+        boolean exported = false;
+        try (OutputStream out = context.getContentResolver().openOutputStream(dstUri, "wt")) {
+            if (out == null) {
+                throw new IOException("Unable to open " + dstUri);
+            }
+            new DBHelper(context).exportDBLogBase(dbHandler, out, context.getCacheDir());
+            exported = true;
+        } finally {
+            if (!exported) {
+                addDirtyRange(range[0], range[1]);
+            }
+        }
+        try {
+            JSONObject state = new JSONObject();
+            state.put(STATE_LOCATION, dstUri.toString());
+            state.put(STATE_SCHEMA_VERSION, DaoMaster.SCHEMA_VERSION);
+            state.put(STATE_BASE_CREATED, now);
+            state.put(STATE_DELTAS, 0);
+            state.put(STATE_WATERMARKS, new JSONObject(watermarks));
+            saveState(state);
+        } catch (JSONException e) {
+            // cannot happen with these values, the next export writes a new copy anyway
+            LOG.error("Unable to store state of export", e);
+        }
+        LOG.info("Exported copy of the database");
+    }
+
+    private static JSONObject loadState() {
+        String json = GBApplication.getPrefs().getString(PREF_STATE, null);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return new JSONObject(json);
+        } catch (JSONException e) {
+            LOG.warn("Invalid state of previous exports", e);
+            return null;
+        }
+    }
+
+    private static void saveState(JSONObject state) {
+        getPreferences().edit().putString(PREF_STATE, state.toString()).apply();
+    }
+
+    private static synchronized void addDirtyRange(int tsFrom, int tsTo) {
+        loadDirtyRange();
+        if (tsFrom >= dirtyFrom && tsTo <= dirtyTo) {
+            // the common case while syncing, no need to write the preferences
+            return;
+        }
+        dirtyFrom = Math.min(dirtyFrom, tsFrom);
+        dirtyTo = Math.max(dirtyTo, tsTo);
+        getPreferences().edit()
+                .putInt(PREF_DIRTY_FROM, dirtyFrom)
+                .putInt(PREF_DIRTY_TO, dirtyTo)
+                .apply();
+    }
+
+    /**
+     * Returns the current dirty range and clears it, in one step so that no samples written
+     * in between are lost. Callers must add the range again if they fail to export it.
+     */
+    private static synchronized int[] takeDirtyRange() {
+        loadDirtyRange();
+        int[] range = {dirtyFrom, dirtyTo};
+        resetDirtyRange();
+        return range;
+    }
+
+    private static void loadDirtyRange() {
+        if (!dirtyRangeLoaded) {
+            Prefs prefs = GBApplication.getPrefs();
+            dirtyFrom = prefs.getInt(PREF_DIRTY_FROM, Integer.MAX_VALUE);
+            dirtyTo = prefs.getInt(PREF_DIRTY_TO, Integer.MIN_VALUE);
+            dirtyRangeLoaded = true;
+        }
+    }
+
+    private static void resetDirtyRange() {
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = Integer.MIN_VALUE;
+        dirtyRangeLoaded = true;
+        getPreferences().edit().remove(PREF_DIRTY_FROM).remove(PREF_DIRTY_TO).apply();
+    }
+
+    private static SharedPreferences getPreferences() {
+        return GBApplication.getPrefs().getPreferences();
+    }
+}
@@ -81,6 +81,12 @@ public class PeriodicExporter extends BroadcastReceiver {
                 return;
             }
             Uri dstUri = Uri.parse(dst);
+            if (GBApplication.getPrefs().getBoolean(GBPrefs.AUTO_EXPORT_INCREMENTAL, false)) {
+                new IncrementalExporter(context).export(dbHandler, dstUri);
+                return;
+            }
+            // overwrites a previous incremental export
+            IncrementalExporter.reset();
             try (OutputStream out = context.getContentResolver().openOutputStream(dstUri)) {
                 helper.exportDB(dbHandler, out);
             }
@@ -0,0 +1,53 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database.schema;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import de.greenrobot.dao.Property;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.database.DBUpdateScript;
+import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummaryDao;
+
+/**
+ * Adds the metrics summed up by the summaries dashboard as columns of their own. They are
+ * extracted from the summary data of the existing summaries in the background by
+ * ActivitySummaryMetricsMigration.
+ */
+public class GadgetbridgeUpdate_35 implements DBUpdateScript {
+    @Override
+    public void upgradeSchema(SQLiteDatabase db) {
+        addColumn(db, BaseActivitySummaryDao.Properties.DistanceMeters, "REAL");
+        addColumn(db, BaseActivitySummaryDao.Properties.CaloriesBurnt, "REAL");
+        addColumn(db, BaseActivitySummaryDao.Properties.ActiveSeconds, "REAL");
+        addColumn(db, BaseActivitySummaryDao.Properties.Steps, "INTEGER");
+        addColumn(db, BaseActivitySummaryDao.Properties.AverageHR, "REAL");
+        db.execSQL("CREATE INDEX IF NOT EXISTS IDX_BASE_ACTIVITY_SUMMARY_DEVICE_ID_START_TIME ON "
+                + BaseActivitySummaryDao.TABLENAME + " (" + BaseActivitySummaryDao.Properties.DeviceId.columnName
+                + " ASC, " + BaseActivitySummaryDao.Properties.StartTime.columnName + " ASC)");
+    }
+
+    private void addColumn(SQLiteDatabase db, Property property, String type) {
+        if (!DBHelper.existsColumn(BaseActivitySummaryDao.TABLENAME, property.columnName, db)) {
+            db.execSQL("ALTER TABLE " + BaseActivitySummaryDao.TABLENAME + " ADD COLUMN " + property.columnName + " " + type);
+        }
+    }
+
+    @Override
+    public void downgradeSchema(SQLiteDatabase db) {
+    }
+}
@@ -75,7 +75,7 @@ public abstract class AbstractDeviceCoordinator implements DeviceCoordinator {
     public void deleteDevice(final GBDevice gbDevice) throws GBException {
         LOG.info("will try to delete device: " + gbDevice.getName());
         if (gbDevice.isConnected() || gbDevice.isConnecting()) {
-            GBApplication.deviceService().disconnect();
+            GBApplication.deviceService().forDevice(gbDevice).disconnect();
         }
         Prefs prefs = getPrefs();
 
@@ -96,6 +96,7 @@ public abstract class AbstractDeviceCoordinator implements DeviceCoordinator {
             Device device = DBHelper.findDevice(gbDevice, session);
             if (device != null) {
                 deleteDevice(gbDevice, device, session);
+                DBHelper.invalidateSessionIndex(session, device.getId(), Integer.MIN_VALUE, Integer.MAX_VALUE);
                 QueryBuilder<?> qb = session.getDeviceAttributesDao().queryBuilder();
                 qb.where(DeviceAttributesDao.Properties.DeviceId.eq(device.getId())).buildDelete().executeDeleteWithoutDetachingEntities();
                 session.getDeviceDao().delete(device);
@@ -105,6 +106,7 @@ public abstract class AbstractDeviceCoordinator implements DeviceCoordinator {
         } catch (Exception e) {
             throw new GBException("Error deleting device: " + e.getMessage(), e);
         }
+        DBHelper.notifySamplesWritten(Integer.MIN_VALUE, Integer.MAX_VALUE);
     }
 
     /**
@@ -18,6 +18,7 @@
 package nodomain.freeyourgadget.gadgetbridge.devices;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -25,14 +26,18 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import de.greenrobot.dao.AbstractDao;
 import de.greenrobot.dao.Property;
+import de.greenrobot.dao.query.LazyList;
 import de.greenrobot.dao.query.QueryBuilder;
 import de.greenrobot.dao.query.WhereCondition;
+import nodomain.freeyourgadget.gadgetbridge.activities.charts.ActivityAnalysis;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.util.Metrics;
 
 /**
  * Base class for all sample providers. A Sample provider is device specific and provides
@@ -41,14 +46,27 @@ import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
  */
 public abstract class AbstractSampleProvider<T extends AbstractActivitySample> implements SampleProvider<T> {
     private static final WhereCondition[] NO_CONDITIONS = new WhereCondition[0];
+    private static final Metrics.Timer QUERY_TIME = Metrics.timer("samples.query");
+    private static final Metrics.Histogram QUERY_SIZE = Metrics.histogram("samples.query.size", "samples");
     private final DaoSession mSession;
     private final GBDevice mDevice;
+    private final NormalizationTables mNormalizationTables = new NormalizationTables(this);
 
     protected AbstractSampleProvider(GBDevice device, DaoSession session) {
         mDevice = device;
         mSession = session;
     }
 
+    @Override
+    public int lookupType(int rawType) {
+        return mNormalizationTables.normalizeType(rawType);
+    }
+
+    @Override
+    public float lookupIntensity(int rawIntensity) {
+        return mNormalizationTables.normalizeIntensity(rawIntensity);
+    }
+
     public GBDevice getDevice() {
         return mDevice;
     }
@@ -80,14 +98,67 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
         }
     }
 
+    @Override
+    public void forEachSample(int timestamp_from, int timestamp_to, int activityKinds, SampleVisitor<? super T> visitor) {
+        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
+        if (dbDevice == null) {
+            // no device, no samples
+            return;
+        }
+        // without a raw kind property, the kinds can only be filtered after normalizing them
+        boolean filterKinds = activityKinds != ActivityKind.TYPE_ALL && getRawKindSampleProperty() == null;
+        QueryBuilder<T> qb = getSampleDao().queryBuilder();
+        Property timestampProperty = getTimestampSampleProperty();
+        qb.where(getDeviceIdentifierSampleProperty().eq(dbDevice.getId()), timestampProperty.ge(timestamp_from))
+            .where(timestampProperty.le(timestamp_to), getClauseForActivityType(qb, filterKinds ? ActivityKind.TYPE_ALL : activityKinds))
+            .orderAsc(timestampProperty);
+
+        long start = Metrics.start();
+        // reads one sample at a time from the cursor, without keeping them
+        try (LazyList<T> samples = qb.build().listLazyUncached()) {
+            int count = samples.size();
+            for (int i = 0; i < count; i++) {
+                T sample = samples.get(i);
+                sample.setProvider(this);
+                if (!filterKinds || (sample.getKind() & activityKinds) != 0) {
+                    visitor.visit(sample);
+                }
+            }
+            QUERY_SIZE.record(count);
+        }
+        QUERY_TIME.stop(start);
+    }
+
+    /**
+     * Passes the samples of the given kinds to the visitor. For providers that have to
+     * post-process their samples as a whole, and therefore cannot stream them.
+     */
+    protected void visitSamples(List<T> samples, int activityKinds, SampleVisitor<? super T> visitor) {
+        for (T sample : samples) {
+            if (activityKinds == ActivityKind.TYPE_ALL || (sample.getKind() & activityKinds) != 0) {
+                visitor.visit(sample);
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public ActivityAmounts[] getActivityAmounts(int[] spanStarts, int[] spanEnds) {
+        return new ActivityAnalysis().calculateActivityAmounts(this, spanStarts, spanEnds);
+    }
+
     @Override
     public void addGBActivitySample(T activitySample) {
         getSampleDao().insertOrReplace(activitySample);
+        DBHelper.invalidateSessionIndex(getSession(), activitySample.getDeviceId(), activitySample.getTimestamp(), activitySample.getTimestamp());
+        DBHelper.notifySamplesWritten(activitySample.getTimestamp(), activitySample.getTimestamp());
     }
 
     @Override
     public void addGBActivitySamples(T[] activitySamples) {
         getSampleDao().insertOrReplaceInTx(activitySamples);
+        DBHelper.invalidateSessionIndex(getSession(), Arrays.asList(activitySamples));
+        DBHelper.notifySamplesWritten(Arrays.asList(activitySamples));
     }
 
     @Nullable
@@ -122,6 +193,7 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
             // no device, no samples
             return Collections.emptyList();
         }
+        long start = Metrics.start();
         Property deviceProperty = getDeviceIdentifierSampleProperty();
         qb.where(deviceProperty.eq(dbDevice.getId()), timestampProperty.ge(timestamp_from))
             .where(timestampProperty.le(timestamp_to), getClauseForActivityType(qb, activityType));
@@ -130,6 +202,8 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
             sample.setProvider(this);
         }
         detachFromSession();
+        QUERY_TIME.stop(start);
+        QUERY_SIZE.record(samples.size());
         return samples;
     }
 
@@ -52,10 +52,16 @@ public class DeviceManager {
 
     public static final String BLUETOOTH_DEVICE_ACTION_ALIAS_CHANGED = "android.bluetooth.device.action.ALIAS_CHANGED";
     /**
-     * Intent action to notify that the list of devices has changed.
+     * Intent action to notify that the list of devices has changed. If only some properties
+     * of a single device changed, the intent contains the device in GBDevice#EXTRA_DEVICE
+     * and the changed properties in GBDevice#EXTRA_DEVICE_CHANGES.
      */
     public static final String ACTION_DEVICES_CHANGED
             = "nodomain.freeyourgadget.gadgetbridge.devices.devicemanager.action.devices_changed";
+    /**
+     * Changes after which the device list needs to be reloaded and sorted again.
+     */
+    private static final int CHANGES_REFRESHING_LIST = GBDevice.CHANGED_STATE | GBDevice.CHANGED_OTHER;
     /**
      * Intent action to notify this class that the list of devices shall be refreshed.
      */
@@ -86,14 +92,18 @@ public class DeviceManager {
                     break;
                 case GBDevice.ACTION_DEVICE_CHANGED:
                     GBDevice dev = intent.getParcelableExtra(GBDevice.EXTRA_DEVICE);
+                    int changes = intent.getIntExtra(GBDevice.EXTRA_DEVICE_CHANGES, GBDevice.CHANGED_ALL);
+                    boolean added = false;
                     if (dev.getAddress() != null) {
                         int index = deviceList.indexOf(dev); // search by address
                         if (index >= 0) {
                             deviceList.set(index, dev);
                         } else {
                             deviceList.add(dev);
+                            added = true;
                         }
-                        if (dev.isInitialized()) {
+                        // battery and busy changes do not touch the stored device attributes
+                        if (dev.isInitialized() && (changes & ~(GBDevice.CHANGED_BATTERY | GBDevice.CHANGED_BUSY)) != 0) {
                             try (DBHandler dbHandler = GBApplication.acquireDB()) {
                                 DBHelper.getDevice(dev, dbHandler.getDaoSession()); // implicitly creates the device in database if not present, and updates device attributes
                             } catch (Exception ignore) {
@@ -101,7 +111,11 @@ public class DeviceManager {
                         }
                     }
                     updateSelectedDevice(dev);
-                    refreshPairedDevices();
+                    if (added || (changes & CHANGES_REFRESHING_LIST) != 0) {
+                        refreshPairedDevices();
+                    } else {
+                        notifyDeviceChanged(dev, changes);
+                    }
                     break;
             }
         }
@@ -192,4 +206,11 @@ public class DeviceManager {
     private void notifyDevicesChanged() {
         LocalBroadcastManager.getInstance(context).sendBroadcast(new Intent(ACTION_DEVICES_CHANGED));
     }
+
+    private void notifyDeviceChanged(GBDevice device, int changes) {
+        Intent intent = new Intent(ACTION_DEVICES_CHANGED);
+        intent.putExtra(GBDevice.EXTRA_DEVICE, device);
+        intent.putExtra(GBDevice.EXTRA_DEVICE_CHANGES, changes);
+        LocalBroadcastManager.getInstance(context).sendBroadcast(intent);
+    }
 }
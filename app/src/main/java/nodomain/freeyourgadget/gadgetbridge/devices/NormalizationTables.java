@@ -0,0 +1,69 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.devices;
+
+/**
+ * Dense lookup tables for the normalized activity kinds and intensities of a sample provider.
+ * A table is filled completely the first time it is needed and only then published, so other
+ * threads never see a partially filled table; raw values outside of the tables are passed on
+ * to the provider.
+ *
+ * The tables are not filled in the constructor, because it runs while the provider itself is
+ * still being constructed.
+ */
+public final class NormalizationTables {
+    static final int KIND_TABLE_SIZE = 256;
+    static final int INTENSITY_TABLE_SIZE = 1024;
+
+    private final SampleProvider<?> provider;
+    private volatile int[] kinds;
+    private volatile float[] intensities;
+
+    public NormalizationTables(SampleProvider<?> provider) {
+        this.provider = provider;
+    }
+
+    public int normalizeType(int rawType) {
+        if (rawType < 0 || rawType >= KIND_TABLE_SIZE) {
+            return provider.normalizeType(rawType);
+        }
+        int[] table = kinds;
+        if (table == null) {
+            table = new int[KIND_TABLE_SIZE];
+            for (int i = 0; i < KIND_TABLE_SIZE; i++) {
+                table[i] = provider.normalizeType(i);
+            }
+            kinds = table;
+        }
+        return table[rawType];
+    }
+
+    public float normalizeIntensity(int rawIntensity) {
+        if (rawIntensity < 0 || rawIntensity >= INTENSITY_TABLE_SIZE) {
+            return provider.normalizeIntensity(rawIntensity);
+        }
+        float[] table = intensities;
+        if (table == null) {
+            table = new float[INTENSITY_TABLE_SIZE];
+            for (int i = 0; i < INTENSITY_TABLE_SIZE; i++) {
+                table[i] = provider.normalizeIntensity(i);
+            }
+            intensities = table;
+        }
+        return table[rawIntensity];
+    }
+}
@@ -22,6 +22,7 @@ import java.util.List;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
 
 /**
  * Interface to retrieve samples from the database, and also create and add samples to the database.
@@ -38,12 +39,31 @@ public interface SampleProvider<T extends AbstractActivitySample> {
     int PROVIDER_PEBBLE_MISFIT = 3;
     int PROVIDER_PEBBLE_HEALTH = 4;
 
+    /**
+     * Receives the samples of {@link #forEachSample(int, int, int, SampleVisitor)} one at a time.
+     */
+    interface SampleVisitor<T> {
+        void visit(T sample);
+    }
+
     int normalizeType(int rawType);
 
     int toRawActivityKind(int activityKind);
 
     float normalizeIntensity(int rawIntensity);
 
+    /**
+     * Same as {@link #normalizeType(int)}, but looked up in a table that is computed once
+     * per provider. Use this when normalizing many samples.
+     */
+    int lookupType(int rawType);
+
+    /**
+     * Same as {@link #normalizeIntensity(int)}, but looked up in a table that is computed once
+     * per provider. Use this when normalizing many samples.
+     */
+    float lookupIntensity(int rawIntensity);
+
     /**
      * Returns the list of all samples, of any type, within the given time span.
      * @param timestamp_from the start timestamp
@@ -73,6 +93,30 @@ public interface SampleProvider<T extends AbstractActivitySample> {
     @NonNull
     List<T> getSleepSamples(int timestamp_from, int timestamp_to);
 
+    /**
+     * Passes all samples of the given kinds within the given time span to the visitor, in the
+     * order of their timestamps, without loading all of them into memory at once. Prefer this
+     * over the methods returning lists when only aggregating the samples, e.g. over long
+     * time spans.
+     *
+     * The visitor must not keep references to the samples, providers may reuse them.
+     * @param timestamp_from the start timestamp
+     * @param timestamp_to the end timestamp
+     * @param activityKinds the kinds of samples to visit, e.g. ActivityKind.TYPE_ALL
+     * @param visitor receives the samples
+     */
+    void forEachSample(int timestamp_from, int timestamp_to, int activityKinds, SampleVisitor<? super T> visitor);
+
+    /**
+     * Returns the activity amounts of several time spans, e.g. the days of a month,
+     * loading the samples of all of them with a single query.
+     * @param spanStarts the start timestamps of the spans, in ascending order
+     * @param spanEnds the end timestamps of the spans, inclusive
+     * @return the activity amounts of each span
+     */
+    @NonNull
+    ActivityAmounts[] getActivityAmounts(int[] spanStarts, int[] spanEnds);
+
     /**
      * Adds the given sample to the database. An existing sample with the same
      * timestamp will be overwritten.
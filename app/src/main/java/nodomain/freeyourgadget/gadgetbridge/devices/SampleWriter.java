@@ -0,0 +1,391 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.devices;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.SparseArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.greenrobot.dao.query.QueryBuilder;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+
+/**
+ * Buffers the samples received during a history sync and writes them in a single
+ * transaction.
+ *
+ * Many devices transfer steps, sleep and heart rate separately, each as a partial record
+ * for the same timestamp. Samples added for a timestamp that is already pending are merged
+ * in memory, and on {@link #flush()} the pending samples are merged column by column into
+ * the rows already stored for the device, so that e.g. a heart rate only record does not
+ * overwrite the steps stored for the same minute.
+ *
+ * A column counts as "not set" in a sample if it is {@link ActivitySample#NOT_MEASURED} or
+ * null, 0 is a real value. Devices sending partial records should therefore create their
+ * samples with {@link #clearColumns(AbstractActivitySample)} before setting the columns they
+ * received. Subclasses with additional, device specific columns should override
+ * {@link #mergeColumns(AbstractActivitySample, AbstractActivitySample)}, subclasses for
+ * devices that only send complete records may override
+ * {@link #mergeSample(AbstractActivitySample, AbstractActivitySample)}.
+ *
+ * Samples that are not verified yet, e.g. those of a file whose checksum is only known at
+ * the end of the transfer, may be written between {@link #begin()} and {@link #commit()}.
+ * They are flushed as usual, so that the pending samples stay bounded, and the rows they
+ * replace are saved to an undo table, from which {@link #rollback()} restores them.
+ *
+ * @param <T> the sample type
+ */
+public class SampleWriter<T extends AbstractActivitySample> {
+    private static final Logger LOG = LoggerFactory.getLogger(SampleWriter.class);
+
+    public static final int DEFAULT_MAX_PENDING = 256;
+    /** stays well below SQLite's limit of 999 arguments per statement */
+    private static final int MAX_QUERY_ARGUMENTS = 500;
+
+    public interface ProviderFactory<T extends AbstractActivitySample> {
+        AbstractSampleProvider<T> createProvider(GBDevice device, DaoSession session);
+    }
+
+    private final GBDevice device;
+    private final ProviderFactory<T> providerFactory;
+    private final int maxPending;
+    private final SparseArray<T> pending = new SparseArray<>();
+    private boolean staged;
+
+    public SampleWriter(GBDevice device, ProviderFactory<T> providerFactory) {
+        this(device, providerFactory, DEFAULT_MAX_PENDING);
+    }
+
+    public SampleWriter(GBDevice device, ProviderFactory<T> providerFactory, int maxPending) {
+        this.device = device;
+        this.providerFactory = providerFactory;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Adds the given sample to the pending samples. If there already is a pending sample
+     * with the same timestamp, the columns set in the given sample are merged into it.
+     */
+    public synchronized void add(T sample) {
+        int timestamp = sample.getTimestamp();
+        T existing = pending.get(timestamp);
+        pending.put(timestamp, existing != null ? mergeSample(existing, sample) : sample);
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns true when the number of pending samples reached the configured maximum and
+     * the caller should {@link #flush()} before continuing.
+     */
+    public synchronized boolean isFull() {
+        return pending.size() >= maxPending;
+    }
+
+    /**
+     * Discards all pending samples without writing them.
+     */
+    public synchronized void clear() {
+        pending.clear();
+    }
+
+    /**
+     * Writes all pending samples to the database in one transaction and clears them.
+     * On failure, the pending samples are kept so that the caller may retry.
+     *
+     * @return the number of rows written
+     */
+    public synchronized int flush() throws Exception {
+        int count = pending.size();
+        if (count == 0) {
+            return 0;
+        }
+        // SparseArray keeps its keys sorted, so the first and last keys span the range
+        int from = pending.keyAt(0);
+        int to = pending.keyAt(count - 1);
+
+        try (DBHandler dbHandler = GBApplication.acquireDB()) {
+            DaoSession session = dbHandler.getDaoSession();
+            long userId = DBHelper.getUser(session).getId();
+            long deviceId = DBHelper.getDevice(device, session).getId();
+            AbstractSampleProvider<T> provider = providerFactory.createProvider(device, session);
+
+            SparseArray<T> stored = loadStored(provider, deviceId);
+
+            List<T> rows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                T sample = pending.valueAt(i);
+                T row = stored.get(pending.keyAt(i));
+                row = row != null ? mergeSample(row, sample) : sample;
+                row.setUserId(userId);
+                row.setDeviceId(deviceId);
+                row.setProvider(provider);
+                rows.add(row);
+            }
+            SQLiteDatabase db = session.getDatabase();
+            db.beginTransaction();
+            try {
+                if (staged) {
+                    saveUndo(db, provider, deviceId);
+                }
+                provider.getSampleDao().insertOrReplaceInTx(rows);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            DBHelper.invalidateSessionIndex(session, deviceId, from, to);
+        }
+        DBHelper.notifySamplesWritten(from, to);
+        LOG.debug("Wrote " + count + " samples between " + from + " and " + to);
+        pending.clear();
+        return count;
+    }
+
+    /**
+     * Starts writing samples that are not verified yet. Samples left over from a previous
+     * {@link #begin()} that was neither committed nor rolled back, e.g. because the
+     * connection was lost during the transfer, are rolled back first.
+     */
+    public synchronized void begin() throws Exception {
+        pending.clear();
+        int[] reverted;
+        try (DBHandler dbHandler = GBApplication.acquireDB()) {
+            DaoSession session = dbHandler.getDaoSession();
+            long deviceId = DBHelper.getDevice(device, session).getId();
+            AbstractSampleProvider<T> provider = providerFactory.createProvider(device, session);
+            SQLiteDatabase db = session.getDatabase();
+            reverted = revert(session, provider, deviceId);
+
+            String undoTable = getUndoTable(provider, deviceId);
+            db.execSQL("CREATE TABLE " + undoTable + " AS SELECT * FROM " + provider.getSampleDao().getTablename() + " WHERE 0");
+            db.execSQL("CREATE TABLE " + undoTable + "_WRITTEN (" + provider.getTimestampSampleProperty().columnName + " INTEGER PRIMARY KEY)");
+        }
+        staged = true;
+        if (reverted != null) {
+            DBHelper.notifySamplesWritten(reverted[0], reverted[1]);
+        }
+    }
+
+    /**
+     * Writes the pending samples and keeps all samples written since {@link #begin()}.
+     *
+     * @return the number of rows written by this call
+     */
+    public synchronized int commit() throws Exception {
+        int count = flush();
+        try (DBHandler dbHandler = GBApplication.acquireDB()) {
+            DaoSession session = dbHandler.getDaoSession();
+            long deviceId = DBHelper.getDevice(device, session).getId();
+            String undoTable = getUndoTable(providerFactory.createProvider(device, session), deviceId);
+            DBHelper.dropTable(undoTable, session.getDatabase());
+            DBHelper.dropTable(undoTable + "_WRITTEN", session.getDatabase());
+        }
+        staged = false;
+        return count;
+    }
+
+    /**
+     * Discards the pending samples and restores the rows replaced since {@link #begin()}.
+     */
+    public synchronized void rollback() throws Exception {
+        pending.clear();
+        staged = false;
+        int[] reverted;
+        try (DBHandler dbHandler = GBApplication.acquireDB()) {
+            DaoSession session = dbHandler.getDaoSession();
+            long deviceId = DBHelper.getDevice(device, session).getId();
+            reverted = revert(session, providerFactory.createProvider(device, session), deviceId);
+        }
+        if (reverted != null) {
+            DBHelper.notifySamplesWritten(reverted[0], reverted[1]);
+        }
+    }
+
+    private String getUndoTable(AbstractSampleProvider<T> provider, long deviceId) {
+        return "UNDO_" + provider.getSampleDao().getTablename() + "_" + deviceId;
+    }
+
+    /**
+     * Saves the stored rows for the pending timestamps that were not written since
+     * {@link #begin()}, and remembers the pending timestamps as written.
+     */
+    private void saveUndo(SQLiteDatabase db, AbstractSampleProvider<T> provider, long deviceId) {
+        String undoTable = getUndoTable(provider, deviceId);
+        String timestampColumn = provider.getTimestampSampleProperty().columnName;
+        StringBuilder timestamps = new StringBuilder();
+        for (int i = 0; i < pending.size(); i++) {
+            if (i > 0) {
+                timestamps.append(',');
+            }
+            timestamps.append(pending.keyAt(i));
+        }
+        db.execSQL("INSERT INTO " + undoTable + " SELECT * FROM " + provider.getSampleDao().getTablename()
+                + " WHERE " + provider.getDeviceIdentifierSampleProperty().columnName + " = " + deviceId
+                + " AND " + timestampColumn + " IN (" + timestamps + ")"
+                + " AND " + timestampColumn + " NOT IN (SELECT " + timestampColumn + " FROM " + undoTable + "_WRITTEN)");
+        SQLiteStatement statement = db.compileStatement("INSERT OR IGNORE INTO " + undoTable + "_WRITTEN VALUES (?)");
+        try {
+            for (int i = 0; i < pending.size(); i++) {
+                statement.bindLong(1, pending.keyAt(i));
+                statement.executeInsert();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Deletes the rows written since {@link #begin()}, restores the rows they replaced and
+     * drops the undo tables, if there are any.
+     *
+     * @return the first and last reverted timestamp, or null if nothing was reverted
+     */
+    private int[] revert(DaoSession session, AbstractSampleProvider<T> provider, long deviceId) {
+        SQLiteDatabase db = session.getDatabase();
+        String table = provider.getSampleDao().getTablename();
+        String undoTable = getUndoTable(provider, deviceId);
+        String writtenTable = undoTable + "_WRITTEN";
+        String timestampColumn = provider.getTimestampSampleProperty().columnName;
+        try (Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?", new String[]{writtenTable})) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+        }
+
+        int from = 0;
+        int to = -1;
+        try (Cursor cursor = db.rawQuery("SELECT MIN(" + timestampColumn + "), MAX(" + timestampColumn + "), COUNT(*) FROM " + writtenTable, null)) {
+            if (cursor.moveToFirst() && cursor.getInt(2) > 0) {
+                from = cursor.getInt(0);
+                to = cursor.getInt(1);
+            }
+        }
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + table
+                    + " WHERE " + provider.getDeviceIdentifierSampleProperty().columnName + " = " + deviceId
+                    + " AND " + timestampColumn + " IN (SELECT " + timestampColumn + " FROM " + writtenTable + ")");
+            db.execSQL("INSERT INTO " + table + " SELECT * FROM " + undoTable);
+            DBHelper.dropTable(undoTable, db);
+            DBHelper.dropTable(writtenTable, db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        provider.getSampleDao().detachAll();
+        if (from > to) {
+            return null;
+        }
+        LOG.info("Rolled back the samples between " + from + " and " + to);
+        DBHelper.invalidateSessionIndex(session, deviceId, from, to);
+        return new int[]{from, to};
+    }
+
+    /**
+     * Loads the stored rows for the pending timestamps only, the rows in between may be
+     * many more than the pending ones, e.g. when a sync fills in a few gaps.
+     */
+    private SparseArray<T> loadStored(AbstractSampleProvider<T> provider, long deviceId) {
+        SparseArray<T> stored = new SparseArray<>();
+        int count = pending.size();
+        for (int start = 0; start < count; start += MAX_QUERY_ARGUMENTS) {
+            int end = Math.min(start + MAX_QUERY_ARGUMENTS, count);
+            List<Integer> timestamps = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                timestamps.add(pending.keyAt(i));
+            }
+            QueryBuilder<T> qb = provider.getSampleDao().queryBuilder();
+            qb.where(provider.getDeviceIdentifierSampleProperty().eq(deviceId),
+                    provider.getTimestampSampleProperty().in(timestamps));
+            for (T sample : qb.build().list()) {
+                stored.put(sample.getTimestamp(), sample);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Returns the sample to keep when {@code update} is written for the same timestamp as
+     * {@code current}, which is either pending or already stored. By default, the columns
+     * set in {@code update} are merged into {@code current}. Devices that always transfer
+     * complete records may return {@code update} instead.
+     */
+    protected T mergeSample(T current, T update) {
+        mergeColumns(current, update);
+        return current;
+    }
+
+    /**
+     * Merges the columns that are set in {@code update} into {@code target}.
+     */
+    protected void mergeColumns(T target, T update) {
+        target.setRawKind(merge(target.getRawKind(), update.getRawKind()));
+        target.setRawIntensity(merge(target.getRawIntensity(), update.getRawIntensity()));
+        target.setSteps(merge(target.getSteps(), update.getSteps()));
+        target.setHeartRate(merge(target.getHeartRate(), update.getHeartRate()));
+        target.setBatteryLevel(merge(target.getBatteryLevel(), update.getBatteryLevel()));
+        target.setBloodPressureSystolic(merge(target.getBloodPressureSystolic(), update.getBloodPressureSystolic()));
+        target.setBloodPressureDiastolic(merge(target.getBloodPressureDiastolic(), update.getBloodPressureDiastolic()));
+        target.setBloodOxidation(merge(target.getBloodOxidation(), update.getBloodOxidation()));
+    }
+
+    protected static int merge(int current, int update) {
+        return isSet(update) ? update : current;
+    }
+
+    protected static Integer merge(Integer current, Integer update) {
+        return update != null && isSet(update) ? update : current;
+    }
+
+    private static boolean isSet(int value) {
+        return value != ActivitySample.NOT_MEASURED;
+    }
+
+    /**
+     * Marks all common columns of the given, newly created sample as not set, so that only
+     * the columns set afterwards are merged. The additional columns of a sample type are
+     * not set as long as they are null.
+     *
+     * @return the given sample
+     */
+    public static <S extends AbstractActivitySample> S clearColumns(S sample) {
+        sample.setRawKind(ActivitySample.NOT_MEASURED);
+        sample.setRawIntensity(ActivitySample.NOT_MEASURED);
+        sample.setSteps(ActivitySample.NOT_MEASURED);
+        sample.setHeartRate(ActivitySample.NOT_MEASURED);
+        sample.setBatteryLevel(ActivitySample.NOT_MEASURED);
+        sample.setBloodPressureSystolic(ActivitySample.NOT_MEASURED);
+        sample.setBloodPressureDiastolic(ActivitySample.NOT_MEASURED);
+        sample.setBloodOxidation(ActivitySample.NOT_MEASURED);
+        return sample;
+    }
+}
@@ -32,6 +32,7 @@ import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceCandidate;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 
@@ -54,6 +55,16 @@ public class UnknownDeviceCoordinator extends AbstractDeviceCoordinator {
             return 0;
         }
 
+        @Override
+        public int lookupType(int rawType) {
+            return ActivityKind.TYPE_UNKNOWN;
+        }
+
+        @Override
+        public float lookupIntensity(int rawIntensity) {
+            return 0;
+        }
+
         @Override
         public List getAllActivitySamples(int timestamp_from, int timestamp_to) {
             return null;
@@ -69,6 +80,20 @@ public class UnknownDeviceCoordinator extends AbstractDeviceCoordinator {
             return null;
         }
 
+        @Override
+        public void forEachSample(int timestamp_from, int timestamp_to, int activityKinds, SampleVisitor visitor) {
+        }
+
+        @NonNull
+        @Override
+        public ActivityAmounts[] getActivityAmounts(int[] spanStarts, int[] spanEnds) {
+            ActivityAmounts[] result = new ActivityAmounts[spanStarts.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = new ActivityAmounts();
+            }
+            return result;
+        }
+
         @Override
         public void addGBActivitySample(AbstractActivitySample activitySample) {
         }
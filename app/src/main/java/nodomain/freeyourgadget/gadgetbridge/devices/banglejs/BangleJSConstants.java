@@ -18,11 +18,15 @@ package nodomain.freeyourgadget.gadgetbridge.devices.banglejs;
 
 import java.util.UUID;
 
+import nodomain.freeyourgadget.gadgetbridge.service.btle.uart.NordicUartTransport;
+
 public final class BangleJSConstants {
 
 
-    public static final UUID UUID_SERVICE_NORDIC_UART = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
-    public static final UUID UUID_CHARACTERISTIC_NORDIC_UART_TX = UUID.fromString("6e400002-b5a3-f393-e0a9-e50e24dcca9e");
-    public static final UUID UUID_CHARACTERISTIC_NORDIC_UART_RX = UUID.fromString("6e400003-b5a3-f393-e0a9-e50e24dcca9e");
+    public static final UUID UUID_SERVICE_NORDIC_UART = NordicUartTransport.UUID_SERVICE_NORDIC_UART;
+    public static final UUID UUID_CHARACTERISTIC_NORDIC_UART_TX = NordicUartTransport.UUID_CHARACTERISTIC_NORDIC_UART_TX;
+    public static final UUID UUID_CHARACTERISTIC_NORDIC_UART_RX = NordicUartTransport.UUID_CHARACTERISTIC_NORDIC_UART_RX;
+    /** The largest MTU supported by Espruino on the Bangle.js */
+    public static final int MTU = 131;
 
 }
@@ -32,6 +32,7 @@ import nodomain.freeyourgadget.gadgetbridge.entities.CasioGBX100ActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.CasioGBX100ActivitySampleDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 
 public class CasioGBX100SampleProvider extends AbstractSampleProvider<CasioGBX100ActivitySample> {
     private static final Logger LOG = LoggerFactory.getLogger(CasioGBX100SampleProvider.class);
@@ -95,4 +96,12 @@ public class CasioGBX100SampleProvider extends AbstractSampleProvider<CasioGBX10
     public List<CasioGBX100ActivitySample> getAllActivitySamples(int timestamp_from, int timestamp_to) {
         return super.getActivitySamples(timestamp_from, timestamp_to);
     }
+
+    @Override
+    public void forEachSample(int timestamp_from, int timestamp_to, int activityKinds, SampleVisitor<? super CasioGBX100ActivitySample> visitor) {
+        // like getAllActivitySamples(), only the activity samples
+        if ((activityKinds & ActivityKind.TYPE_ACTIVITY) != 0) {
+            super.forEachSample(timestamp_from, timestamp_to, ActivityKind.TYPE_ACTIVITY, visitor);
+        }
+    }
 }
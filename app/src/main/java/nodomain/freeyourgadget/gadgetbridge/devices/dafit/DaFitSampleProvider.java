@@ -196,5 +196,7 @@ public class DaFitSampleProvider extends AbstractSampleProvider<DaFitActivitySam
             condition.appendValuesTo(values);
         }
         getSampleDao().getDatabase().execSQL(builder.toString(), values.toArray());
+        DBHelper.invalidateSessionIndex(getSession(), dbDevice.getId(), timestamp_from, timestamp_to);
+        DBHelper.notifySamplesWritten(timestamp_from, timestamp_to);
     }
 }
\ No newline at end of file
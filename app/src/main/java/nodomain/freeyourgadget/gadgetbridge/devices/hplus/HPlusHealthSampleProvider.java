@@ -122,6 +122,12 @@ public class HPlusHealthSampleProvider extends AbstractSampleProvider<HPlusHealt
         return getAllActivitySamples(timestamp_from, timestamp_to);
     }
 
+    @Override
+    public void forEachSample(int timestamp_from, int timestamp_to, int activityKinds, SampleVisitor<? super HPlusHealthActivitySample> visitor) {
+        // the overlays are applied to all samples at once
+        visitSamples(getAllActivitySamples(timestamp_from, timestamp_to), activityKinds, visitor);
+    }
+
     @NonNull
     @Override
     public List<HPlusHealthActivitySample> getAllActivitySamples(int timestamp_from, int timestamp_to) {
@@ -132,6 +132,12 @@ public class WatchXPlusSampleProvider extends AbstractSampleProvider<WatchXPlusA
 
 
 
+    @Override
+    public void forEachSample(int timestamp_from, int timestamp_to, int activityKinds, SampleVisitor<? super WatchXPlusActivitySample> visitor) {
+        // the samples are interpolated as a whole
+        visitSamples(getAllActivitySamples(timestamp_from, timestamp_to), activityKinds, visitor);
+    }
+
     @Override
     public List<WatchXPlusActivitySample> getAllActivitySamples(int timestamp_from, int timestamp_to) {
         boolean showRawData = GBApplication.getDeviceSpecificSharedPrefs(mDevice.getAddress()).getBoolean(WatchXPlusConstants.PREF_SHOW_RAW_GRAPH, false);
@@ -0,0 +1,195 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.devices.miband;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySampleDao;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
+
+import static nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiConst.TYPE_UNSET;
+
+/**
+ * One-time migration that fills in the normalized activity kind of samples stored
+ * before it was computed at ingest time. Until a device is migrated,
+ * MiBand2SampleProvider keeps normalizing its samples when reading them.
+ *
+ * The samples of other devices sharing the table, e.g. Mi Band 1, are left alone. Samples
+ * without a normalized kind may also arrive later by importing an older database, so the
+ * migration is started again by {@link #onDatabaseImported()}.
+ */
+public class MiBand2ActivityKindMigration implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(MiBand2ActivityKindMigration.class);
+
+    private static final String PREF_MIGRATED = "miband2_normalized_kinds_migrated";
+    private static final int CHUNK_SIZE = 10000;
+
+    private static final AtomicBoolean running = new AtomicBoolean();
+    private static final AtomicBoolean rerun = new AtomicBoolean();
+
+    private static final String TIMESTAMP = MiBandActivitySampleDao.Properties.Timestamp.columnName;
+    private static final String DEVICE_ID = MiBandActivitySampleDao.Properties.DeviceId.columnName;
+    private static final String RAW_KIND = MiBandActivitySampleDao.Properties.RawKind.columnName;
+    private static final String NORMALIZED_KIND = MiBandActivitySampleDao.Properties.NormalizedKind.columnName;
+
+    private final int chunkSize;
+
+    public MiBand2ActivityKindMigration() {
+        this(CHUNK_SIZE);
+    }
+
+    MiBand2ActivityKindMigration(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public static void startIfNeeded() {
+        if (GBApplication.getPrefs().getBoolean(PREF_MIGRATED, false)) {
+            return;
+        }
+        start();
+    }
+
+    /**
+     * The imported database may contain samples that were never migrated.
+     */
+    public static void onDatabaseImported() {
+        GBApplication.getPrefs().getPreferences().edit().putBoolean(PREF_MIGRATED, false).apply();
+        start();
+    }
+
+    private static void start() {
+        if (!running.compareAndSet(false, true)) {
+            // the running migration may have looked at the replaced database already
+            rerun.set(true);
+            return;
+        }
+        Thread thread = new Thread(new MiBand2ActivityKindMigration(), "MiBand2ActivityKindMigration");
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        try {
+            do {
+                rerun.set(false);
+                migrate();
+            } while (rerun.get());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    void migrate() {
+        try {
+            for (long deviceId : getDeviceIds()) {
+                migrateDevice(deviceId);
+            }
+            GBApplication.getPrefs().getPreferences().edit().putBoolean(PREF_MIGRATED, true).apply();
+            LOG.info("Migrated activity kinds");
+        } catch (Exception e) {
+            // the flag may have been restored together with the preferences of an imported database
+            GBApplication.getPrefs().getPreferences().edit().putBoolean(PREF_MIGRATED, false).apply();
+            LOG.error("Error migrating activity kinds, will try again next time", e);
+        }
+    }
+
+    /**
+     * Returns the devices with samples that were not migrated yet, and whose samples are read
+     * through MiBand2SampleProvider.
+     */
+    private List<Long> getDeviceIds() throws Exception {
+        List<Long> deviceIds = new ArrayList<>();
+        try (DBHandler handler = GBApplication.acquireDB()) {
+            DaoSession session = handler.getDaoSession();
+            try (Cursor cursor = handler.getDatabase().rawQuery("SELECT DISTINCT " + DEVICE_ID
+                    + " FROM " + MiBandActivitySampleDao.TABLENAME
+                    + " WHERE " + NORMALIZED_KIND + " IS NULL", null)) {
+                while (cursor.moveToNext()) {
+                    long deviceId = cursor.getLong(0);
+                    Device device = session.getDeviceDao().load(deviceId);
+                    if (device == null) {
+                        continue;
+                    }
+                    GBDevice gbDevice = DeviceHelper.getInstance().toGBDevice(device);
+                    if (DeviceHelper.getInstance().getCoordinator(gbDevice).getSampleProvider(gbDevice, session) instanceof MiBand2SampleProvider) {
+                        deviceIds.add(deviceId);
+                    }
+                }
+            }
+        }
+        return deviceIds;
+    }
+
+    /**
+     * Walks all samples of the device in timestamp order, one chunk per database lock,
+     * so that syncs and charts are not blocked for the whole migration.
+     */
+    private void migrateDevice(long deviceId) throws Exception {
+        MiBand2SampleProvider.KindNormalizer normalizer = new MiBand2SampleProvider.KindNormalizer(TYPE_UNSET);
+        int lastTimestamp = Integer.MIN_VALUE;
+        int migrated = 0;
+        boolean done = false;
+        while (!done) {
+            try (DBHandler handler = GBApplication.acquireDB()) {
+                SQLiteDatabase db = handler.getDatabase();
+                SQLiteStatement update = db.compileStatement("UPDATE " + MiBandActivitySampleDao.TABLENAME
+                        + " SET " + NORMALIZED_KIND + " = ? WHERE " + DEVICE_ID + " = ? AND " + TIMESTAMP + " = ?");
+                db.beginTransaction();
+                try (Cursor cursor = db.rawQuery("SELECT " + TIMESTAMP + ", " + RAW_KIND + ", " + NORMALIZED_KIND
+                        + " FROM " + MiBandActivitySampleDao.TABLENAME
+                        + " WHERE " + DEVICE_ID + " = ? AND " + TIMESTAMP + " > ?"
+                        + " ORDER BY " + TIMESTAMP + " LIMIT " + chunkSize,
+                        new String[]{String.valueOf(deviceId), String.valueOf(lastTimestamp)})) {
+                    done = cursor.getCount() < chunkSize;
+                    while (cursor.moveToNext()) {
+                        lastTimestamp = cursor.getInt(0);
+                        // keep normalizing already normalized samples, they determine the kind of the following ones
+                        int kind = normalizer.normalize(cursor.getInt(1));
+                        if (cursor.isNull(2)) {
+                            update.bindLong(1, kind);
+                            update.bindLong(2, deviceId);
+                            update.bindLong(3, lastTimestamp);
+                            update.executeUpdateDelete();
+                            migrated++;
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                    update.close();
+                }
+            }
+        }
+        LOG.info("Migrated activity kinds of " + migrated + " samples of device " + deviceId);
+    }
+}
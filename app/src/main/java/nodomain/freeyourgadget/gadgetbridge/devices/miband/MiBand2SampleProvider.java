@@ -39,12 +39,65 @@ public class MiBand2SampleProvider extends AbstractMiBandSampleProvider {
     @Override
     protected List<MiBandActivitySample> getGBActivitySamples(int timestamp_from, int timestamp_to, int activityType) {
         List<MiBandActivitySample> samples = super.getGBActivitySamples(timestamp_from, timestamp_to, activityType);
-        postprocess(samples);
+        for (MiBandActivitySample sample : samples) {
+            if (sample.getNormalizedKind() == null) {
+                // not migrated yet, see MiBand2ActivityKindMigration
+                postprocess(samples);
+                return samples;
+            }
+        }
+        for (MiBandActivitySample sample : samples) {
+            sample.setRawKind(sample.getNormalizedKind());
+        }
         return samples;
     }
 
+    @Override
+    public void forEachSample(int timestamp_from, int timestamp_to, int activityKinds, final SampleVisitor<? super MiBandActivitySample> visitor) {
+        super.forEachSample(timestamp_from, timestamp_to, activityKinds, new SampleVisitor<MiBandActivitySample>() {
+            private KindNormalizer normalizer;
+
+            @Override
+            public void visit(MiBandActivitySample sample) {
+                Integer normalizedKind = sample.getNormalizedKind();
+                if (normalizer == null) {
+                    normalizer = new KindNormalizer(normalizedKind != null ? TYPE_UNSET : determinePreviousValidActivityType(sample));
+                }
+                if (normalizedKind != null) {
+                    // keeps track of the last valid kind for samples that are not migrated yet
+                    normalizer.normalize(normalizedKind);
+                    sample.setRawKind(normalizedKind);
+                } else {
+                    sample.setRawKind(normalizer.normalize(sample.getRawKind()));
+                }
+                visitor.visit(sample);
+            }
+        });
+    }
+
     /**
-     * "Temporary" runtime post processing of activity kinds.
+     * Sets the normalized kind of the given samples, which must be sorted by timestamp
+     * and must not have been stored yet. Call this once when the samples are received
+     * from the device, so that reading them is a plain range scan.
+     */
+    public void normalizeKinds(List<MiBandActivitySample> samples) {
+        if (samples.isEmpty()) {
+            return;
+        }
+
+        // only samples continuing the previous activity need to look it up
+        MiBandActivitySample first = samples.get(0);
+        int firstKind = first.getRawKind() & 0xf;
+        boolean continuesPrevious = first.getRawKind() != TYPE_UNSET && (firstKind == TYPE_IGNORE || firstKind == TYPE_NO_CHANGE);
+        KindNormalizer normalizer = new KindNormalizer(continuesPrevious ? determinePreviousValidActivityType(first) : TYPE_UNSET);
+        for (MiBandActivitySample sample : samples) {
+            sample.setNormalizedKind(normalizer.normalize(sample.getRawKind()));
+        }
+    }
+
+    /**
+     * "Temporary" runtime post processing of activity kinds, only used for samples
+     * that have not been normalized when they were stored.
      * @param samples
      */
     private void postprocess(List<MiBandActivitySample> samples) {
@@ -52,24 +105,42 @@ public class MiBand2SampleProvider extends AbstractMiBandSampleProvider {
             return;
         }
 
-        int lastValidKind = determinePreviousValidActivityType(samples.get(0));
+        KindNormalizer normalizer = new KindNormalizer(determinePreviousValidActivityType(samples.get(0)));
         for (MiBandActivitySample sample : samples) {
-            int rawKind = sample.getRawKind();
+            sample.setRawKind(normalizer.normalize(sample.getRawKind()));
+        }
+    }
+
+    /**
+     * Strips the flags of raw kinds and replaces TYPE_IGNORE and TYPE_NO_CHANGE by
+     * the last valid kind before them.
+     */
+    static class KindNormalizer {
+        private int lastValidKind;
+
+        KindNormalizer(int lastValidKind) {
+            this.lastValidKind = lastValidKind;
+        }
+
+        int getLastValidKind() {
+            return lastValidKind;
+        }
+
+        int normalize(int rawKind) {
             if (rawKind != TYPE_UNSET) {
                 rawKind &= 0xf;
-                sample.setRawKind(rawKind);
             }
 
             switch (rawKind) {
                 case TYPE_IGNORE:
                 case TYPE_NO_CHANGE:
                     if (lastValidKind != TYPE_UNSET) {
-                        sample.setRawKind(lastValidKind);
+                        return lastValidKind;
                     }
-                    break;
+                    return rawKind;
                 default:
                     lastValidKind = rawKind;
-                    break;
+                    return rawKind;
             }
         }
     }
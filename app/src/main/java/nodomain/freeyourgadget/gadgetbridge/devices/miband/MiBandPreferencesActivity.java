@@ -32,6 +32,7 @@ import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.AbstractSettingsActivity;
 import nodomain.freeyourgadget.gadgetbridge.devices.DeviceManager;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
@@ -68,7 +69,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
         enableHeartrateSleepSupport.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
             @Override
             public boolean onPreferenceChange(Preference preference, Object newVal) {
-                GBApplication.deviceService().onEnableHeartRateSleepSupport(Boolean.TRUE.equals(newVal));
+                getDeviceService().onEnableHeartRateSleepSupport(Boolean.TRUE.equals(newVal));
                 return true;
             }
         });
@@ -77,7 +78,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
         heartrateMeasurementInterval.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
             @Override
             public boolean onPreferenceChange(Preference preference, Object newVal) {
-                GBApplication.deviceService().onSetHeartRateMeasurementInterval(Integer.parseInt((String) newVal));
+                getDeviceService().onSetHeartRateMeasurementInterval(Integer.parseInt((String) newVal));
                 return true;
             }
         });
@@ -89,7 +90,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_GOAL_NOTIFICATION);
+                        getDeviceService().onSendConfiguration(PREF_MI2_GOAL_NOTIFICATION);
                     }
                 });
                 return true;
@@ -104,7 +105,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS);
+                        getDeviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS);
                     }
                 });
                 return true;
@@ -118,7 +119,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_THRESHOLD);
+                        getDeviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_THRESHOLD);
                     }
                 });
                 return true;
@@ -132,7 +133,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_START);
+                        getDeviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_START);
                     }
                 });
                 return true;
@@ -146,7 +147,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_END);
+                        getDeviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_END);
                     }
                 });
                 return true;
@@ -160,7 +161,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_DND);
+                        getDeviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_DND);
                     }
                 });
                 return true;
@@ -174,7 +175,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_DND_START);
+                        getDeviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_DND_START);
                     }
                 });
                 return true;
@@ -188,7 +189,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_DND_END);
+                        getDeviceService().onSendConfiguration(PREF_MI2_INACTIVITY_WARNINGS_DND_END);
                     }
                 });
                 return true;
@@ -203,7 +204,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
                 invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        GBApplication.deviceService().onSendConfiguration(ActivityUser.PREF_USER_STEPS_GOAL);
+                        getDeviceService().onSendConfiguration(ActivityUser.PREF_USER_STEPS_GOAL);
                     }
                 });
                 return true;
@@ -211,6 +212,13 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
         });
     }
 
+    /**
+     * These preferences are not tied to a device, so they are sent to the selected device.
+     */
+    private DeviceService getDeviceService() {
+        return GBApplication.deviceService().forDevice(GBApplication.app().getDeviceManager().getSelectedDevice());
+    }
+
     /**
      * delayed execution so that the preferences are applied first
       */
@@ -255,7 +263,7 @@ public class MiBandPreferencesActivity extends AbstractSettingsActivity {
     private void tryVibration(NotificationType type) {
         NotificationSpec spec = new NotificationSpec();
         spec.type = type;
-        GBApplication.deviceService().onNotification(spec);
+        getDeviceService().onNotification(spec);
     }
 
     @Override
@@ -50,6 +50,12 @@ public class PebbleHealthSampleProvider extends AbstractSampleProvider<PebbleHea
         super(device, session);
     }
 
+    @Override
+    public void forEachSample(int timestamp_from, int timestamp_to, int activityKinds, SampleVisitor<? super PebbleHealthActivitySample> visitor) {
+        // the overlays are applied to all samples at once
+        visitSamples(getAllActivitySamples(timestamp_from, timestamp_to), activityKinds, visitor);
+    }
+
     @Override
     public List<PebbleHealthActivitySample> getAllActivitySamples(int timestamp_from, int timestamp_to) {
         List<PebbleHealthActivitySample> samples = super.getGBActivitySamples(timestamp_from, timestamp_to, ActivityKind.TYPE_ALL);
@@ -23,6 +23,7 @@ import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.AbstractSettingsActivity;
 import nodomain.freeyourgadget.gadgetbridge.activities.devicesettings.DeviceSettingsPreferenceConst;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
 
 public class ZeTimePreferenceActivity extends AbstractSettingsActivity {
     @Override
@@ -31,13 +32,13 @@ public class ZeTimePreferenceActivity extends AbstractSettingsActivity {
 
         addPreferencesFromResource(R.xml.zetime_preferences);
 
-        GBApplication.deviceService().onReadConfiguration("do_it");
+        getDeviceService().onReadConfiguration("do_it");
 
         final Preference heartrateMeasurementInterval = findPreference(ZeTimeConstants.PREF_ZETIME_HEARTRATE_INTERVAL);
         heartrateMeasurementInterval.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
             @Override
             public boolean onPreferenceChange(Preference preference, Object newVal) {
-                GBApplication.deviceService().onSetHeartRateMeasurementInterval(Integer.parseInt((String) newVal));
+                getDeviceService().onSetHeartRateMeasurementInterval(Integer.parseInt((String) newVal));
                 return true;
             }
         });
@@ -97,12 +98,19 @@ public class ZeTimePreferenceActivity extends AbstractSettingsActivity {
         Preference pref = findPreference(preferenceKey);
         pref.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
             @Override public boolean onPreferenceChange(Preference preference, Object newVal) {
-                    GBApplication.deviceService().onSendConfiguration(preferenceKey);
+                    getDeviceService().onSendConfiguration(preferenceKey);
                 return true;
             }
         });
     }
 
+    /**
+     * These preferences are not tied to a device, so they are sent to the selected device.
+     */
+    private DeviceService getDeviceService() {
+        return GBApplication.deviceService().forDevice(GBApplication.app().getDeviceManager().getSelectedDevice());
+    }
+
     /**
      * delayed execution so that the preferences are applied first
      */
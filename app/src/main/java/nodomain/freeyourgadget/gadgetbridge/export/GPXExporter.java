@@ -24,11 +24,11 @@ import androidx.annotation.Nullable;
 
 import org.xmlpull.v1.XmlSerializer;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.List;
@@ -52,6 +52,8 @@ public class GPXExporter implements ActivityTrackExporter {
     private static final String OPENTRACKS_NAMESPACE_URI = "http://opentracksapp.com/xmlschemas/v1";
     private static final String OPENTRACKS_NAMESPACE_XSD = "http://opentracksapp.com/xmlschemas/OpenTracks_v1.xsd";
 
+    private static final long MAX_HEART_RATE_DISTANCE_MILLIS = 60 * 2 * 1000; // minimum distance is 2min
+
     private String creator;
     private boolean includeHeartRate = true;
     private boolean includeHeartRateOfNearestSample = true;
@@ -66,7 +68,7 @@ public class GPXExporter implements ActivityTrackExporter {
     public void performExport(ActivityTrack track, File targetFile) throws IOException, GPXTrackEmptyException {
         String encoding = StandardCharsets.UTF_8.name();
         XmlSerializer ser = Xml.newSerializer();
-        try (FileOutputStream outputStream = new FileOutputStream(targetFile)) {
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(targetFile))) {
             ser.setOutput(outputStream, encoding);
             ser.startDocument(encoding, Boolean.TRUE);
             ser.setPrefix("xsi", NS_XSI_URI);
@@ -118,9 +120,11 @@ public class GPXExporter implements ActivityTrackExporter {
 
         List<ActivityPoint> trackPoints = track.getTrackPoints();
         String source = getSource(track);
+        PrecedingHeartRate precedingHeartRate = new PrecedingHeartRate(trackPoints);
+        char[] buffer = new char[GPXFormatter.BUFFER_LENGTH];
         boolean atLeastOnePointExported = false;
         for (ActivityPoint point : trackPoints) {
-            atLeastOnePointExported |= exportTrackPoint(ser, point, source, trackPoints);
+            atLeastOnePointExported |= exportTrackPoint(ser, point, source, precedingHeartRate, buffer);
         }
 
         if(!atLeastOnePointExported) {
@@ -135,33 +139,33 @@ public class GPXExporter implements ActivityTrackExporter {
         return track.getDevice().getName();
     }
 
-    private boolean exportTrackPoint(XmlSerializer ser, ActivityPoint point, String source, List<ActivityPoint> trackPoints) throws IOException {
+    private boolean exportTrackPoint(XmlSerializer ser, ActivityPoint point, String source, PrecedingHeartRate precedingHeartRate, char[] buffer) throws IOException {
         GPSCoordinate location = point.getLocation();
         if (location == null) {
             return false; // skip invalid points, that just contain hr data, for example
         }
         ser.startTag(NS_GPX_URI, "trkpt");
         // lon and lat attributes do not have an explicit namespace
-        ser.attribute(null, "lon", formatLocation(location.getLongitude()));
-        ser.attribute(null, "lat", formatLocation(location.getLatitude()));
+        ser.attribute(null, "lon", new String(buffer, 0, GPXFormatter.formatDecimal(location.getLongitude(), buffer, 0)));
+        ser.attribute(null, "lat", new String(buffer, 0, GPXFormatter.formatDecimal(location.getLatitude(), buffer, 0)));
         if (location.getAltitude() != -20000) {
-            ser.startTag(NS_GPX_URI, "ele").text(formatLocation(location.getAltitude())).endTag(NS_GPX_URI, "ele");
+            ser.startTag(NS_GPX_URI, "ele").text(buffer, 0, GPXFormatter.formatDecimal(location.getAltitude(), buffer, 0)).endTag(NS_GPX_URI, "ele");
         }
-        ser.startTag(NS_GPX_URI, "time").text(DateTimeUtils.formatIso8601UTC(point.getTime())).endTag(NS_GPX_URI, "time");
+        ser.startTag(NS_GPX_URI, "time").text(buffer, 0, GPXFormatter.formatTimeUTC(point.getTime().getTime(), buffer, 0)).endTag(NS_GPX_URI, "time");
         String description = point.getDescription();
         if (description != null) {
             ser.startTag(NS_GPX_URI, "desc").text(description).endTag(NS_GPX_URI, "desc");
         }
         //ser.startTag(NS_GPX_URI, "src").text(source).endTag(NS_GPX_URI, "src");
 
-        exportTrackpointExtensions(ser, point, trackPoints);
+        exportTrackpointExtensions(ser, point, precedingHeartRate, buffer);
 
         ser.endTag(NS_GPX_URI, "trkpt");
 
         return true;
     }
 
-    private void exportTrackpointExtensions(XmlSerializer ser, ActivityPoint point, List<ActivityPoint> trackPoints) throws IOException {
+    private void exportTrackpointExtensions(XmlSerializer ser, ActivityPoint point, PrecedingHeartRate precedingHeartRate, char[] buffer) throws IOException {
         if (!includeHeartRate) {
             return;
         }
@@ -172,49 +176,55 @@ public class GPXExporter implements ActivityTrackExporter {
                 return;
             }
 
-            ActivityPoint closestPointItem = findClosestSensibleActivityPoint(point.getTime(), trackPoints);
+            ActivityPoint closestPointItem = precedingHeartRate.find(point.getTime());
             if(closestPointItem == null) {
                 return;
             }
 
             hr = closestPointItem.getHeartRate();
-            if (!HeartRateUtils.getInstance().isValidHeartRateValue(hr)) {
-                return;
-            }
         }
 
         ser.startTag(NS_GPX_URI, "extensions");
         ser.setPrefix(NS_TRACKPOINT_EXTENSION, NS_TRACKPOINT_EXTENSION_URI);
         ser.startTag(NS_TRACKPOINT_EXTENSION_URI, "TrackPointExtension");
-        ser.startTag(NS_TRACKPOINT_EXTENSION_URI, "hr").text(String.valueOf(hr)).endTag(NS_TRACKPOINT_EXTENSION_URI, "hr");
+        ser.startTag(NS_TRACKPOINT_EXTENSION_URI, "hr").text(buffer, 0, GPXFormatter.formatLong(hr, buffer, 0)).endTag(NS_TRACKPOINT_EXTENSION_URI, "hr");
         ser.endTag(NS_TRACKPOINT_EXTENSION_URI, "TrackPointExtension");
         ser.endTag(NS_GPX_URI, "extensions");
     }
 
-    private @Nullable ActivityPoint findClosestSensibleActivityPoint(Date time, List<ActivityPoint> trackPoints) {
-        ActivityPoint closestPointItem = null;
-        HeartRateUtils heartRateUtilsInstance = HeartRateUtils.getInstance();
-
-        long lowestDifference = 60 * 2 * 1000; // minimum distance is 2min
-        for (ActivityPoint pointItem : trackPoints) {
-            int hrItem = pointItem.getHeartRate();
-            if (heartRateUtilsInstance.isValidHeartRateValue(hrItem)) {
-                Date timeItem = pointItem.getTime();
-                if (timeItem.after(time) || timeItem.equals(time)) {
-                    break; // we assume that the given trackPoints are sorted in time ascending order (oldest first)
+    /**
+     * Finds the last point with a valid heart rate before a given time, for times in
+     * ascending order. The track points are walked once alongside the exported ones, which
+     * relies on them being sorted in time ascending order (oldest first).
+     */
+    private static class PrecedingHeartRate {
+        private final List<ActivityPoint> trackPoints;
+        private final HeartRateUtils heartRateUtils = HeartRateUtils.getInstance();
+        private int index;
+        private ActivityPoint lastValid;
+
+        PrecedingHeartRate(List<ActivityPoint> trackPoints) {
+            this.trackPoints = trackPoints;
+        }
+
+        @Nullable
+        ActivityPoint find(Date time) {
+            long millis = time.getTime();
+            while (index < trackPoints.size()) {
+                ActivityPoint pointItem = trackPoints.get(index);
+                if (pointItem.getTime().getTime() >= millis) {
+                    break;
                 }
-                long difference = time.getTime() - timeItem.getTime();
-                if (difference < lowestDifference) {
-                    lowestDifference = difference;
-                    closestPointItem = pointItem;
+                if (heartRateUtils.isValidHeartRateValue(pointItem.getHeartRate())) {
+                    lastValid = pointItem;
                 }
+                index++;
+            }
+            if (lastValid == null || millis - lastValid.getTime().getTime() >= MAX_HEART_RATE_DISTANCE_MILLIS) {
+                return null;
             }
+            return lastValid;
         }
-        return closestPointItem;
-    }
-
-    private String formatLocation(double value) {
-        return new BigDecimal(value).setScale(GPSCoordinate.GPS_DECIMAL_DEGREES_SCALE, RoundingMode.HALF_UP).toPlainString();
     }
 
     public String getCreator() {
@@ -0,0 +1,159 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.export;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import nodomain.freeyourgadget.gadgetbridge.model.GPSCoordinate;
+
+/**
+ * Formats the values of track points into a caller provided buffer, without creating
+ * BigDecimals, date formats or strings for every point.
+ */
+final class GPXFormatter {
+    /**
+     * Large enough for any value written by this class.
+     */
+    static final int BUFFER_LENGTH = 32;
+
+    private static final int SCALE = GPSCoordinate.GPS_DECIMAL_DEGREES_SCALE;
+    private static final long SCALE_FACTOR = pow10(SCALE);
+    /**
+     * Values whose scaled magnitude is beyond this are formatted with BigDecimal.
+     */
+    private static final double MAX_FAST_SCALED = 1e15;
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    private GPXFormatter() {
+    }
+
+    /**
+     * Writes the value with {@link GPSCoordinate#GPS_DECIMAL_DEGREES_SCALE} decimals, rounded
+     * half up like {@link BigDecimal#setScale(int, RoundingMode)} does, and returns the new
+     * offset.
+     */
+    static int formatDecimal(double value, char[] buffer, int offset) {
+        double scaled = Math.abs(value) * SCALE_FACTOR;
+        double integral = Math.floor(scaled);
+        double fraction = scaled - integral;
+        if (Double.isNaN(scaled) || scaled > MAX_FAST_SCALED || Math.abs(fraction - 0.5) <= 2 * Math.ulp(scaled)) {
+            // too close to a tie to decide with doubles, or not a usual coordinate at all
+            String exact = new BigDecimal(value).setScale(SCALE, RoundingMode.HALF_UP).toPlainString();
+            exact.getChars(0, exact.length(), buffer, offset);
+            return offset + exact.length();
+        }
+        long digits = (long) integral + (fraction > 0.5 ? 1 : 0);
+        if (value < 0 && digits != 0) {
+            buffer[offset++] = '-';
+        }
+        offset = formatLong(digits / SCALE_FACTOR, buffer, offset);
+        if (SCALE > 0) {
+            buffer[offset++] = '.';
+            offset = formatPadded(digits % SCALE_FACTOR, SCALE, buffer, offset);
+        }
+        return offset;
+    }
+
+    /**
+     * Writes the time as xsd:dateTime in UTC, like 2021-03-01T09:05:00Z, and returns the
+     * new offset.
+     */
+    static int formatTimeUTC(long millis, char[] buffer, int offset) {
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        int secondsOfDay = (int) ((millis - days * MILLIS_PER_DAY) / 1000);
+
+        // civil date of the days since 1970-01-01, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        offset = formatPadded(year, 4, buffer, offset);
+        buffer[offset++] = '-';
+        offset = formatPadded(month, 2, buffer, offset);
+        buffer[offset++] = '-';
+        offset = formatPadded(day, 2, buffer, offset);
+        buffer[offset++] = 'T';
+        offset = formatPadded(secondsOfDay / 3600, 2, buffer, offset);
+        buffer[offset++] = ':';
+        offset = formatPadded(secondsOfDay / 60 % 60, 2, buffer, offset);
+        buffer[offset++] = ':';
+        offset = formatPadded(secondsOfDay % 60, 2, buffer, offset);
+        buffer[offset++] = 'Z';
+        return offset;
+    }
+
+    /**
+     * Writes the value in decimal and returns the new offset.
+     */
+    static int formatLong(long value, char[] buffer, int offset) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                String text = String.valueOf(value);
+                text.getChars(0, text.length(), buffer, offset);
+                return offset + text.length();
+            }
+            buffer[offset++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        return formatPadded(value, digits, buffer, offset);
+    }
+
+    /**
+     * Writes the non-negative value with at least the given number of digits, padded with
+     * zeros, and returns the new offset.
+     */
+    private static int formatPadded(long value, int minDigits, char[] buffer, int offset) {
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + digits;
+    }
+
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        if ((dividend % divisor != 0) && ((dividend < 0) != (divisor < 0))) {
+            quotient--;
+        }
+        return quotient;
+    }
+
+    private static long pow10(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+}
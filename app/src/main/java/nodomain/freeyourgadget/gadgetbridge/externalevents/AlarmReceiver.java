@@ -29,19 +29,28 @@ import net.e175.klaus.solarpositioning.SPA;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.TimeZone;
 
 import nodomain.freeyourgadget.gadgetbridge.BuildConfig;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.CalendarEventSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
+import nodomain.freeyourgadget.gadgetbridge.service.DeviceCommunicationService;
+import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
 import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
 
 public class AlarmReceiver extends BroadcastReceiver {
     private static final Logger LOG = LoggerFactory.getLogger(AlarmReceiver.class);
 
-    public AlarmReceiver() {
+    private final DeviceCommunicationService service;
+
+    public AlarmReceiver(DeviceCommunicationService service) {
+        this.service = service;
         Context context = GBApplication.getContext();
         Intent intent = new Intent("DAILY_ALARM");
         intent.setPackage(BuildConfig.APPLICATION_ID);
@@ -77,8 +86,11 @@ public class AlarmReceiver extends BroadcastReceiver {
          */
         byte id_tomorrow = (byte) ((dateTimeTomorrow.getTimeInMillis() / (1000L * 60L * 60L * 24L)) % 3);
 
-        GBApplication.deviceService().onDeleteCalendarEvent(CalendarEventSpec.TYPE_SUNRISE, id_tomorrow);
-        GBApplication.deviceService().onDeleteCalendarEvent(CalendarEventSpec.TYPE_SUNSET, id_tomorrow);
+        List<DeviceService> deviceServices = getCalendarDeviceServices();
+        for (DeviceService deviceService : deviceServices) {
+            deviceService.onDeleteCalendarEvent(CalendarEventSpec.TYPE_SUNRISE, id_tomorrow);
+            deviceService.onDeleteCalendarEvent(CalendarEventSpec.TYPE_SUNSET, id_tomorrow);
+        }
 
         GBPrefs gbPrefs = GBApplication.getGBPrefs();
         float[] longlat = gbPrefs.getLongLat(context);
@@ -96,7 +108,9 @@ public class AlarmReceiver extends BroadcastReceiver {
         if (sunriseTransitSetTomorrow[0] != null) {
             calendarEventSpec.id = id_tomorrow;
             calendarEventSpec.timestamp = (int) (sunriseTransitSetTomorrow[0].getTimeInMillis() / 1000);
-            GBApplication.deviceService().onAddCalendarEvent(calendarEventSpec);
+            for (DeviceService deviceService : deviceServices) {
+                deviceService.onAddCalendarEvent(calendarEventSpec);
+            }
         }
 
         calendarEventSpec.type = CalendarEventSpec.TYPE_SUNSET;
@@ -104,7 +118,22 @@ public class AlarmReceiver extends BroadcastReceiver {
         if (sunriseTransitSetTomorrow[2] != null) {
             calendarEventSpec.id = id_tomorrow;
             calendarEventSpec.timestamp = (int) (sunriseTransitSetTomorrow[2].getTimeInMillis() / 1000);
-            GBApplication.deviceService().onAddCalendarEvent(calendarEventSpec);
+            for (DeviceService deviceService : deviceServices) {
+                deviceService.onAddCalendarEvent(calendarEventSpec);
+            }
+        }
+    }
+
+    /**
+     * Returns the services of the initialized devices that support calendar events.
+     */
+    private List<DeviceService> getCalendarDeviceServices() {
+        List<DeviceService> deviceServices = new ArrayList<>();
+        for (GBDevice device : service.getGBDevices()) {
+            if (device.isInitialized() && DeviceHelper.getInstance().getCoordinator(device).supportsCalendarEvents()) {
+                deviceServices.add(GBApplication.deviceService().forDevice(device));
+            }
         }
+        return deviceServices;
     }
 }
@@ -21,18 +21,22 @@ package nodomain.freeyourgadget.gadgetbridge.externalevents;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.widget.Toast;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Enumeration;
 import java.util.GregorianCalendar;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import de.greenrobot.dao.query.QueryBuilder;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
@@ -44,54 +48,56 @@ import nodomain.freeyourgadget.gadgetbridge.model.CalendarEventSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.CalendarEvents;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
+/**
+ * Keeps the calendar events of the lookahead window in sync with a single device.
+ *
+ * Calendar providers tend to send bursts of change broadcasts (e.g. during an account
+ * sync), so syncs triggered by broadcasts are debounced. The events known to the device
+ * are keyed by their calendar id. Their hashes are loaded from the database once and kept
+ * in memory; each sync only diffs against that snapshot and persists the changes in a
+ * single transaction. Events sent by this receiver are compared in full instead of by
+ * their hash, which may collide.
+ */
 public class CalendarReceiver extends BroadcastReceiver {
     private static final Logger LOG = LoggerFactory.getLogger(CalendarReceiver.class);
-    private Hashtable<Long, EventSyncState> eventState = new Hashtable<>();
-
-    private GBDevice mGBDevice;
-
-    private class EventSyncState {
-        private int state;
-        private CalendarEvents.CalendarEvent event;
-
-        EventSyncState(CalendarEvents.CalendarEvent event, int state) {
-            this.state = state;
-            this.event = event;
-        }
-
-        public int getState() {
-            return state;
-        }
-
-        public void setState(int state) {
-            this.state = state;
-        }
-
-        public CalendarEvents.CalendarEvent getEvent() {
-            return event;
-        }
-
-        public void setEvent(CalendarEvents.CalendarEvent event) {
-            this.event = event;
+    private static final long SYNC_DELAY_MILLIS = 2000;
+
+    private final GBDevice mGBDevice;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mSyncRunnable = new Runnable() {
+        @Override
+        public void run() {
+            syncCalendar();
         }
-    }
+    };
 
-    private static class EventState {
-        private static final int NOT_SYNCED = 0;
-        private static final int SYNCED = 1;
-        private static final int NEEDS_UPDATE = 2;
-        private static final int NEEDS_DELETE = 3;
-    }
+    /** calendar entry id -> event hash of everything that has been sent to the device */
+    private Map<Long, Integer> syncedHashes;
+    /** calendar entry id -> event of everything that has been sent to the device by this receiver */
+    private final Map<Long, CalendarEvents.CalendarEvent> syncedEvents = new HashMap<>();
+    private Long deviceId;
 
     public CalendarReceiver(GBDevice gbDevice) {
         LOG.info("Created calendar receiver.");
         mGBDevice = gbDevice;
-        onReceive(GBApplication.getContext(), new Intent());
+        syncCalendar();
     }
 
     @Override
     public void onReceive(Context context, Intent intent) {
         LOG.info("got calendar changed broadcast");
+        mHandler.removeCallbacks(mSyncRunnable);
+        mHandler.postDelayed(mSyncRunnable, SYNC_DELAY_MILLIS);
+    }
+
+    /**
+     * Cancels a pending debounced sync, to be called when the receiver is unregistered.
+     */
+    public void dispose() {
+        mHandler.removeCallbacks(mSyncRunnable);
+    }
+
+    private void syncCalendar() {
         List<CalendarEvents.CalendarEvent> eventList = (new CalendarEvents()).getCalendarEventList(GBApplication.getContext());
         syncCalendar(eventList);
     }
@@ -105,111 +111,118 @@ public class CalendarReceiver extends BroadcastReceiver {
         }
     }
 
-    public void syncCalendar(List<CalendarEvents.CalendarEvent> eventList, DaoSession session) {
+    public void syncCalendar(List<CalendarEvents.CalendarEvent> eventList, final DaoSession session) {
         LOG.info("Syncing with calendar.");
-        Hashtable<Long, CalendarEvents.CalendarEvent> eventTable = new Hashtable<>();
-        Long deviceId = DBHelper.getDevice(mGBDevice, session).getId();
-        QueryBuilder<CalendarSyncState> qb = session.getCalendarSyncStateDao().queryBuilder();
+        loadSnapshot(session);
 
+        final List<CalendarEvents.CalendarEvent> toAdd = new ArrayList<>();
+        final List<Long> toDelete = new ArrayList<>();
+        final List<Long> removedIds = new ArrayList<>();
+        Set<Long> currentIds = new HashSet<>(eventList.size());
 
         for (CalendarEvents.CalendarEvent e : eventList) {
             long id = e.getId();
-            eventTable.put(id, e);
-            if (!eventState.containsKey(e.getId())) {
-                qb = session.getCalendarSyncStateDao().queryBuilder();
-
-                CalendarSyncState calendarSyncState = qb.where(qb.and(CalendarSyncStateDao.Properties.DeviceId.eq(deviceId), CalendarSyncStateDao.Properties.CalendarEntryId.eq(id)))
-                        .build().unique();
-                if (calendarSyncState == null) {
-                    eventState.put(id, new EventSyncState(e, EventState.NOT_SYNCED));
-                    LOG.info("event id=" + id + " is yet unknown to device id=" + deviceId);
-                } else if (calendarSyncState.getHash() == e.hashCode()) {
-                    eventState.put(id, new EventSyncState(e, EventState.SYNCED));
-                    LOG.info("event id=" + id + " is up to date on device id=" + deviceId);
-                }
-                else {
-                    eventState.put(id, new EventSyncState(e, EventState.NEEDS_UPDATE));
-                    LOG.info("event id=" + id + " is not up to date on device id=" + deviceId);
-                }
+            if (!currentIds.add(id)) {
+                continue;
+            }
+            Integer syncedHash = syncedHashes.get(id);
+            if (syncedHash == null) {
+                toAdd.add(e);
+            } else if (isChanged(e, syncedHash)) {
+                toDelete.add(id);
+                toAdd.add(e);
             }
         }
-
-        // add all missing calendar ids on the device to sync status (so that they are deleted later)
-        List<CalendarSyncState> CalendarSyncStateList = qb.where(CalendarSyncStateDao.Properties.DeviceId.eq(deviceId)).build().list();
-        for (CalendarSyncState CalendarSyncState : CalendarSyncStateList) {
-            if (!eventState.containsKey(CalendarSyncState.getCalendarEntryId())) {
-                eventState.put(CalendarSyncState.getCalendarEntryId(), new EventSyncState(null, EventState.NEEDS_DELETE));
-                LOG.info("insert null event for orphaned calendar id=" + CalendarSyncState.getCalendarEntryId() + " for device=" + mGBDevice.getName());
+        for (Long id : syncedHashes.keySet()) {
+            if (!currentIds.contains(id)) {
+                toDelete.add(id);
+                removedIds.add(id);
             }
         }
 
-        Enumeration<Long> ids = eventState.keys();
-        while (ids.hasMoreElements()) {
-            qb = session.getCalendarSyncStateDao().queryBuilder();
-            Long i = ids.nextElement();
-            EventSyncState es = eventState.get(i);
-            if (eventTable.containsKey(i)) {
-                if (es.getState() == EventState.SYNCED) {
-                    if (!es.getEvent().equals(eventTable.get(i))) {
-                        eventState.put(i, new EventSyncState(eventTable.get(i), EventState.NEEDS_UPDATE));
-                    }
-                }
-            } else {
-                if (es.getState() == EventState.NOT_SYNCED) {
-                    // delete for current device only
-                    qb.where(qb.and(CalendarSyncStateDao.Properties.DeviceId.eq(deviceId), CalendarSyncStateDao.Properties.CalendarEntryId.eq(i)))
+        if (toAdd.isEmpty() && toDelete.isEmpty()) {
+            LOG.info("calendar of device id=" + deviceId + " is up to date");
+            return;
+        }
+        LOG.info("calendar sync for device id=" + deviceId + ": " + toAdd.size() + " to add, " + toDelete.size() + " to delete");
+
+        for (Long id : toDelete) {
+            GBApplication.deviceService().forDevice(mGBDevice).onDeleteCalendarEvent(CalendarEventSpec.TYPE_UNKNOWN, id);
+        }
+        for (CalendarEvents.CalendarEvent e : toAdd) {
+            GBApplication.deviceService().forDevice(mGBDevice).onAddCalendarEvent(createCalendarEventSpec(e));
+        }
+
+        session.runInTx(new Runnable() {
+            @Override
+            public void run() {
+                CalendarSyncStateDao dao = session.getCalendarSyncStateDao();
+                if (!removedIds.isEmpty()) {
+                    dao.queryBuilder()
+                            .where(CalendarSyncStateDao.Properties.DeviceId.eq(deviceId),
+                                    CalendarSyncStateDao.Properties.CalendarEntryId.in(removedIds))
                             .buildDelete().executeDeleteWithoutDetachingEntities();
-                    eventState.remove(i);
-                } else {
-                    es.setState(EventState.NEEDS_DELETE);
-                    eventState.put(i, es);
                 }
+                List<CalendarSyncState> states = new ArrayList<>(toAdd.size());
+                for (CalendarEvents.CalendarEvent e : toAdd) {
+                    states.add(new CalendarSyncState(null, deviceId, e.getId(), e.hashCode()));
+                }
+                dao.insertOrReplaceInTx(states);
             }
-            updateEvents(deviceId, session);
+        });
+
+        for (Long id : removedIds) {
+            syncedHashes.remove(id);
+            syncedEvents.remove(id);
+        }
+        for (CalendarEvents.CalendarEvent e : toAdd) {
+            syncedHashes.put(e.getId(), e.hashCode());
+            syncedEvents.put(e.getId(), e);
         }
     }
 
-    private void updateEvents(Long deviceId, DaoSession session) {
-        Enumeration<Long> ids = eventState.keys();
-        while (ids.hasMoreElements()) {
-            Long i = ids.nextElement();
-            EventSyncState es = eventState.get(i);
-            int syncState = es.getState();
-            if (syncState == EventState.NOT_SYNCED || syncState == EventState.NEEDS_UPDATE) {
-                CalendarEvents.CalendarEvent calendarEvent = es.getEvent();
-                CalendarEventSpec calendarEventSpec = new CalendarEventSpec();
-                calendarEventSpec.id = i;
-                calendarEventSpec.title = calendarEvent.getTitle();
-                calendarEventSpec.allDay = calendarEvent.isAllDay();
-                calendarEventSpec.timestamp = calendarEvent.getBeginSeconds();
-                calendarEventSpec.durationInSeconds = calendarEvent.getDurationSeconds(); //FIXME: leads to problems right now
-                if (calendarEvent.isAllDay()) {
-                    //force the all day events to begin at midnight and last a whole day
-                    Calendar c = GregorianCalendar.getInstance();
-                    c.setTimeInMillis(calendarEvent.getBegin());
-                    c.set(Calendar.HOUR, 0);
-                    calendarEventSpec.timestamp = (int) (c.getTimeInMillis() / 1000);
-                    calendarEventSpec.durationInSeconds = 24 * 60 * 60;
-                }
-                calendarEventSpec.description = calendarEvent.getDescription();
-                calendarEventSpec.location = calendarEvent.getLocation();
-                calendarEventSpec.type = CalendarEventSpec.TYPE_UNKNOWN;
-                if (syncState == EventState.NEEDS_UPDATE) {
-                    GBApplication.deviceService().onDeleteCalendarEvent(CalendarEventSpec.TYPE_UNKNOWN, i);
-                }
-                GBApplication.deviceService().onAddCalendarEvent(calendarEventSpec);
-                es.setState(EventState.SYNCED);
-                eventState.put(i, es);
-                // update db
-                session.insertOrReplace(new CalendarSyncState(null, deviceId, i, es.event.hashCode()));
-            } else if (syncState == EventState.NEEDS_DELETE) {
-                GBApplication.deviceService().onDeleteCalendarEvent(CalendarEventSpec.TYPE_UNKNOWN, i);
-                eventState.remove(i);
-                // delete from db for current device only
-                QueryBuilder<CalendarSyncState> qb = session.getCalendarSyncStateDao().queryBuilder();
-                qb.where(qb.and(CalendarSyncStateDao.Properties.DeviceId.eq(deviceId), CalendarSyncStateDao.Properties.CalendarEntryId.eq(i)))
-                        .buildDelete().executeDeleteWithoutDetachingEntities();
-            }
+    private boolean isChanged(CalendarEvents.CalendarEvent event, int syncedHash) {
+        CalendarEvents.CalendarEvent syncedEvent = syncedEvents.get(event.getId());
+        if (syncedEvent != null) {
+            return !syncedEvent.equals(event);
+        }
+        // sent before this receiver was created, only the hash is known
+        return syncedHash != event.hashCode();
+    }
+
+    private void loadSnapshot(DaoSession session) {
+        if (syncedHashes != null) {
+            return;
+        }
+        deviceId = DBHelper.getDevice(mGBDevice, session).getId();
+        List<CalendarSyncState> states = session.getCalendarSyncStateDao().queryBuilder()
+                .where(CalendarSyncStateDao.Properties.DeviceId.eq(deviceId))
+                .build().list();
+        syncedHashes = new HashMap<>(states.size());
+        for (CalendarSyncState state : states) {
+            syncedHashes.put(state.getCalendarEntryId(), state.getHash());
+        }
+        LOG.info("loaded sync state of " + syncedHashes.size() + " calendar events for device id=" + deviceId);
+    }
+
+    private static CalendarEventSpec createCalendarEventSpec(CalendarEvents.CalendarEvent calendarEvent) {
+        CalendarEventSpec calendarEventSpec = new CalendarEventSpec();
+        calendarEventSpec.id = calendarEvent.getId();
+        calendarEventSpec.title = calendarEvent.getTitle();
+        calendarEventSpec.allDay = calendarEvent.isAllDay();
+        calendarEventSpec.timestamp = calendarEvent.getBeginSeconds();
+        calendarEventSpec.durationInSeconds = calendarEvent.getDurationSeconds(); //FIXME: leads to problems right now
+        if (calendarEvent.isAllDay()) {
+            //force the all day events to begin at midnight and last a whole day
+            Calendar c = GregorianCalendar.getInstance();
+            c.setTimeInMillis(calendarEvent.getBegin());
+            c.set(Calendar.HOUR, 0);
+            calendarEventSpec.timestamp = (int) (c.getTimeInMillis() / 1000);
+            calendarEventSpec.durationInSeconds = 24 * 60 * 60;
         }
+        calendarEventSpec.description = calendarEvent.getDescription();
+        calendarEventSpec.location = calendarEvent.getLocation();
+        calendarEventSpec.type = CalendarEventSpec.TYPE_UNKNOWN;
+        return calendarEventSpec;
     }
 }
@@ -28,9 +28,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.Color;
-import android.graphics.drawable.Drawable;
 import android.media.MediaMetadata;
 import android.os.Bundle;
 import android.os.Handler;
@@ -47,7 +44,6 @@ import androidx.annotation.NonNull;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.RemoteInput;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
-import androidx.palette.graphics.Palette;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -57,7 +53,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -78,8 +73,8 @@ import nodomain.freeyourgadget.gadgetbridge.model.MusicStateSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.service.DeviceCommunicationService;
-import nodomain.freeyourgadget.gadgetbridge.util.BitmapUtil;
-import nodomain.freeyourgadget.gadgetbridge.util.LimitedQueue;
+import nodomain.freeyourgadget.gadgetbridge.util.LimitedLookupMap;
+import nodomain.freeyourgadget.gadgetbridge.util.Metrics;
 import nodomain.freeyourgadget.gadgetbridge.util.PebbleUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 
@@ -91,6 +86,8 @@ import static nodomain.freeyourgadget.gadgetbridge.activities.NotificationFilter
 public class NotificationListener extends NotificationListenerService {
 
     private static final Logger LOG = LoggerFactory.getLogger(NotificationListener.class);
+    private static final Metrics.Timer NOTIFICATION_PROCESSING = Metrics.timer("notification.listener.processing");
+    private static final Metrics.Timer NOTIFICATION_POST_LATENCY = Metrics.timer("notification.listener.latency");
 
     public static final String ACTION_DISMISS
             = "nodomain.freeyourgadget.gadgetbridge.notificationlistener.action.dismiss";
@@ -103,9 +100,9 @@ public class NotificationListener extends NotificationListenerService {
     public static final String ACTION_REPLY
             = "nodomain.freeyourgadget.gadgetbridge.notificationlistener.action.reply";
 
-    private final LimitedQueue mActionLookup = new LimitedQueue(32);
-    private final LimitedQueue mPackageLookup = new LimitedQueue(64);
-    private final LimitedQueue mNotificationHandleLookup = new LimitedQueue(128);
+    private final LimitedLookupMap<NotificationCompat.Action> mActionLookup = new LimitedLookupMap<>(32);
+    private final LimitedLookupMap<String> mPackageLookup = new LimitedLookupMap<>(64);
+    private final LimitedLookupMap<Long> mNotificationHandleLookup = new LimitedLookupMap<>(128);
 
     private final HashMap<String, Long> notificationBurstPrevention = new HashMap<>();
     private final HashMap<String, Long> notificationOldRepeatPrevention = new HashMap<>();
@@ -141,7 +138,7 @@ public class NotificationListener extends NotificationListenerService {
 
                 case ACTION_OPEN: {
                     StatusBarNotification[] sbns = NotificationListener.this.getActiveNotifications();
-                    Long ts = (Long) mNotificationHandleLookup.lookup(handle);
+                    Long ts = mNotificationHandleLookup.lookup(handle);
                     if (ts == null) {
                         LOG.info("could not lookup handle for open action");
                         break;
@@ -162,7 +159,7 @@ public class NotificationListener extends NotificationListenerService {
                     break;
                 }
                 case ACTION_MUTE:
-                    String packageName = (String) mPackageLookup.lookup(handle);
+                    String packageName = mPackageLookup.lookup(handle);
                     if (packageName == null) {
                         LOG.info("could not lookup handle for mute action");
                         break;
@@ -173,7 +170,7 @@ public class NotificationListener extends NotificationListenerService {
                     break;
                 case ACTION_DISMISS: {
                     StatusBarNotification[] sbns = NotificationListener.this.getActiveNotifications();
-                    Long ts = (Long) mNotificationHandleLookup.lookup(handle);
+                    Long ts = mNotificationHandleLookup.lookup(handle);
                     if (ts == null) {
                         LOG.info("could not lookup handle for dismiss action");
                         break;
@@ -197,7 +194,7 @@ public class NotificationListener extends NotificationListenerService {
                     NotificationListener.this.cancelAllNotifications();
                     break;
                 case ACTION_REPLY:
-                    NotificationCompat.Action wearableAction = (NotificationCompat.Action) mActionLookup.lookup(handle);
+                    NotificationCompat.Action wearableAction = mActionLookup.lookup(handle);
                     String reply = intent.getStringExtra("reply");
                     if (wearableAction != null) {
                         PendingIntent actionIntent = wearableAction.getActionIntent();
@@ -260,6 +257,7 @@ public class NotificationListener extends NotificationListenerService {
 
     @Override
     public void onNotificationPosted(StatusBarNotification sbn, RankingMap rankingMap) {
+        long start = Metrics.start();
         logNotification(sbn, true);
 
         notificationStack.remove(sbn.getPackageName());
@@ -423,6 +421,10 @@ public class NotificationListener extends NotificationListenerService {
         }else {
             LOG.info("This app might show old/duplicate notifications. notification.when is 0 for " + source);
         }
+        NOTIFICATION_PROCESSING.stop(start);
+        if (Metrics.isEnabled()) {
+            NOTIFICATION_POST_LATENCY.recordMillis(System.currentTimeMillis() - sbn.getPostTime());
+        }
         GBApplication.deviceService().onNotification(notificationSpec);
     }
 
@@ -727,9 +729,8 @@ public class NotificationListener extends NotificationListenerService {
         Prefs prefs = GBApplication.getPrefs();
         if (prefs.getBoolean("autoremove_notifications", true)) {
             LOG.info("notification removed, will ask device to delete it");
-            Object o = mNotificationHandleLookup.lookupByValue(sbn.getPostTime());
-            if(o != null) {
-                int id = (int) o;
+            Integer id = mNotificationHandleLookup.lookupByValue(sbn.getPostTime());
+            if(id != null) {
                 GBApplication.deviceService().onDeleteNotification(id);
             }
         }
@@ -861,22 +862,13 @@ public class NotificationListener extends NotificationListenerService {
             return existingType.color;
         }
 
-        // Otherwise, we go and attempt to find the color from the app icon.
-        Drawable icon;
-        try {
-            icon = getApplicationContext().getPackageManager().getApplicationIcon(appId);
-            Objects.requireNonNull(icon);
-        } catch (Exception ex) {
-            // If we can't get the icon, we go with the default defined above.
-            LOG.warn("Could not get icon for AppID " + appId, ex);
+        // Otherwise, we use the color extracted from the app icon. The extraction happens
+        // in the background, so the very first notification of an app gets the default color.
+        Integer iconPrimaryColor = GBApplication.getAppIconCache().getIconColor(appId);
+        if (iconPrimaryColor == null) {
             return PebbleColor.IslamicGreen;
         }
 
-        Bitmap bitmapIcon = BitmapUtil.convertDrawableToBitmap(icon);
-        int iconPrimaryColor = new Palette.Builder(bitmapIcon)
-                .generate()
-                .getVibrantColor(Color.parseColor("#aa0000"));
-
         return PebbleUtils.getPebbleColor(iconPrimaryColor);
     }
 }
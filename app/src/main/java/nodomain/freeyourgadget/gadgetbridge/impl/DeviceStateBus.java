@@ -0,0 +1,117 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.impl;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nodomain.freeyourgadget.gadgetbridge.util.Metrics;
+
+/**
+ * Sends the {@link GBDevice#ACTION_DEVICE_CHANGED} broadcasts, together with the
+ * {@link GBDevice#EXTRA_DEVICE_CHANGES} that happened since the previous broadcast of the
+ * device, so that listeners only need to update what changed.
+ *
+ * Device supports send updates for every battery or busy change, sometimes several per
+ * packet. Such updates are merged within one frame into a single broadcast per device.
+ * State changes, and updates requested without any change, are sent right away, so that
+ * no state transition gets lost and requests are answered immediately.
+ */
+public class DeviceStateBus {
+    static final long FRAME_MILLIS = 16;
+
+    private static final Metrics.Counter COALESCED = Metrics.counter("device.update.coalesced");
+
+    private static final Map<String, GBDevice> pending = new LinkedHashMap<>();
+    private static Context context;
+    private static Handler handler;
+
+    private static final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private DeviceStateBus() {
+    }
+
+    static void post(Context context, GBDevice device) {
+        int changes = device.peekChanges();
+        boolean immediately = changes == 0 || (changes & GBDevice.CHANGED_STATE) != 0;
+        synchronized (DeviceStateBus.class) {
+            if (immediately) {
+                pending.remove(device.getAddress());
+            } else {
+                DeviceStateBus.context = context.getApplicationContext();
+                if (pending.isEmpty()) {
+                    getHandler().postDelayed(flushRunnable, FRAME_MILLIS);
+                }
+                if (pending.put(device.getAddress(), device) != null) {
+                    COALESCED.inc();
+                }
+                return;
+            }
+        }
+        send(context, device);
+    }
+
+    /**
+     * For testing! Drops the pending updates.
+     */
+    static synchronized void reset() {
+        pending.clear();
+        handler = null;
+    }
+
+    private static Handler getHandler() {
+        if (handler == null) {
+            handler = new Handler(Looper.getMainLooper());
+        }
+        return handler;
+    }
+
+    private static void flush() {
+        List<GBDevice> devices;
+        Context context;
+        synchronized (DeviceStateBus.class) {
+            devices = new ArrayList<>(pending.values());
+            pending.clear();
+            context = DeviceStateBus.context;
+        }
+        for (GBDevice device : devices) {
+            send(context, device);
+        }
+    }
+
+    private static void send(Context context, GBDevice device) {
+        int changes = device.takeChanges();
+        Intent deviceUpdateIntent = new Intent(GBDevice.ACTION_DEVICE_CHANGED);
+        deviceUpdateIntent.putExtra(GBDevice.EXTRA_DEVICE, device);
+        deviceUpdateIntent.putExtra(GBDevice.EXTRA_DEVICE_CHANGES, changes != 0 ? changes : GBDevice.CHANGED_ALL);
+        LocalBroadcastManager.getInstance(context).sendBroadcast(deviceUpdateIntent);
+    }
+}
@@ -18,13 +18,11 @@
 package nodomain.freeyourgadget.gadgetbridge.impl;
 
 import android.content.Context;
-import android.content.Intent;
 import android.os.Parcel;
 import android.os.Parcelable;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,6 +58,18 @@ public class GBDevice implements Parcelable {
     public static final short BATTERY_UNKNOWN = -1;
     private static final short BATTERY_THRESHOLD_PERCENT = 10;
     public static final String EXTRA_DEVICE = "device";
+    /**
+     * Bit mask of the CHANGED_* flags, telling which properties of the device changed since
+     * its previous {@link #ACTION_DEVICE_CHANGED} broadcast. {@link #CHANGED_ALL} if the
+     * broadcast was requested without changing the device.
+     */
+    public static final String EXTRA_DEVICE_CHANGES = "device_changes";
+    public static final int CHANGED_STATE = 1;
+    public static final int CHANGED_BATTERY = 1 << 1;
+    public static final int CHANGED_BUSY = 1 << 2;
+    public static final int CHANGED_FIRMWARE = 1 << 3;
+    public static final int CHANGED_OTHER = 1 << 4;
+    public static final int CHANGED_ALL = CHANGED_STATE | CHANGED_BATTERY | CHANGED_BUSY | CHANGED_FIRMWARE | CHANGED_OTHER;
     private static final String DEVINFO_HW_VER = "HW: ";
     private static final String DEVINFO_FW_VER = "FW: ";
     private static final String DEVINFO_HR_VER = "HR: ";
@@ -87,6 +97,8 @@ public class GBDevice implements Parcelable {
     private int mNotificationIconConnected = R.drawable.ic_notification;
     private int mNotificationIconDisconnected = R.drawable.ic_notification_disconnected;
     private int mNotificationIconLowBattery = R.drawable.ic_notification_low_battery;
+    // not parcelled, only the instance that is changed tracks its changes
+    private int mChanges;
 
     public GBDevice(String address, String name, String alias, DeviceType deviceType) {
         this(address, null, name, alias, deviceType);
@@ -176,10 +188,12 @@ public class GBDevice implements Parcelable {
             return;
         }
         mName = name;
+        markChanged(CHANGED_OTHER);
     }
 
     public void setAlias(String alias) {
         mAlias = alias;
+        markChanged(CHANGED_OTHER);
     }
 
     public String getAddress() {
@@ -199,6 +213,7 @@ public class GBDevice implements Parcelable {
 
     public void setFirmwareVersion(String firmwareVersion) {
         mFirmwareVersion = firmwareVersion;
+        markChanged(CHANGED_FIRMWARE);
     }
 
     /**
@@ -207,10 +222,12 @@ public class GBDevice implements Parcelable {
      */
     public void setFirmwareVersion2(String firmwareVersion2) {
         mFirmwareVersion2 = firmwareVersion2;
+        markChanged(CHANGED_FIRMWARE);
     }
 
     public void setVolatileAddress(String volatileAddress) {
         mVolatileAddress = volatileAddress;
+        markChanged(CHANGED_OTHER);
     }
 
     /**
@@ -226,6 +243,7 @@ public class GBDevice implements Parcelable {
 
     public void setModel(String model) {
         mModel = model;
+        markChanged(CHANGED_FIRMWARE);
     }
 
     public boolean isConnected() {
@@ -294,6 +312,7 @@ public class GBDevice implements Parcelable {
         }
         LOG.info("Mark device as busy: " + task);
         mBusyTask = task;
+        markChanged(CHANGED_BUSY);
     }
 
     /**
@@ -306,6 +325,7 @@ public class GBDevice implements Parcelable {
         }
         LOG.info("Mark device as NOT busy anymore: " + mBusyTask);
         mBusyTask = null;
+        markChanged(CHANGED_BUSY);
     }
 
     public State getState() {
@@ -318,6 +338,7 @@ public class GBDevice implements Parcelable {
 
     public void setState(State state) {
         mState = state;
+        markChanged(CHANGED_STATE);
         if (state.ordinal() <= State.CONNECTED.ordinal()) {
             unsetDynamicState();
         }
@@ -392,6 +413,7 @@ public class GBDevice implements Parcelable {
         } else {
             mRssi = rssi;
         }
+        markChanged(CHANGED_OTHER);
     }
 
     /**
@@ -401,11 +423,32 @@ public class GBDevice implements Parcelable {
         return mRssi;
     }
 
-    // TODO: this doesn't really belong here
+    /**
+     * Broadcasts the changes of this device with {@link #ACTION_DEVICE_CHANGED}. Changes
+     * other than of the state may be merged with further changes within the same frame.
+     *
+     * @see DeviceStateBus
+     */
     public void sendDeviceUpdateIntent(Context context) {
-        Intent deviceUpdateIntent = new Intent(ACTION_DEVICE_CHANGED);
-        deviceUpdateIntent.putExtra(EXTRA_DEVICE, this);
-        LocalBroadcastManager.getInstance(context).sendBroadcast(deviceUpdateIntent);
+        // TODO: this doesn't really belong here
+        DeviceStateBus.post(context, this);
+    }
+
+    private synchronized void markChanged(int changes) {
+        mChanges |= changes;
+    }
+
+    synchronized int peekChanges() {
+        return mChanges;
+    }
+
+    /**
+     * Returns the CHANGED_* flags set since the previous call, and clears them.
+     */
+    synchronized int takeChanges() {
+        int changes = mChanges;
+        mChanges = 0;
+        return changes;
     }
 
     @Override
@@ -457,6 +500,7 @@ public class GBDevice implements Parcelable {
         }
 
         mExtraInfos.put(key, info);
+        markChanged(CHANGED_OTHER);
     }
 
     /**
@@ -464,6 +508,7 @@ public class GBDevice implements Parcelable {
      */
     public void resetExtraInfos() {
         mExtraInfos = null;
+        markChanged(CHANGED_OTHER);
     }
 
     /**
@@ -478,6 +523,7 @@ public class GBDevice implements Parcelable {
     public void setBatteryLevel(short batteryLevel) {
         if ((batteryLevel >= 0 && batteryLevel <= 100) || batteryLevel == BATTERY_UNKNOWN) {
             mBatteryLevel = batteryLevel;
+            markChanged(CHANGED_BATTERY);
         } else {
             LOG.error("Battery level musts be within range 0-100: " + batteryLevel);
         }
@@ -486,6 +532,7 @@ public class GBDevice implements Parcelable {
     public void setBatteryVoltage(float batteryVoltage) {
         if (batteryVoltage >= 0 || batteryVoltage == BATTERY_UNKNOWN) {
             mBatteryVoltage = batteryVoltage;
+            markChanged(CHANGED_BATTERY);
         } else {
             LOG.error("Battery voltage must be > 0: " + batteryVoltage);
         }
@@ -506,6 +553,7 @@ public class GBDevice implements Parcelable {
 
     public void setBatteryState(BatteryState mBatteryState) {
         this.mBatteryState = mBatteryState;
+        markChanged(CHANGED_BATTERY);
     }
 
     public short getBatteryThresholdPercent() {
@@ -514,6 +562,7 @@ public class GBDevice implements Parcelable {
 
     public void setBatteryThresholdPercent(short batteryThresholdPercent) {
         this.mBatteryThresholdPercent = batteryThresholdPercent;
+        markChanged(CHANGED_BATTERY);
     }
 
     @Override
@@ -581,6 +630,7 @@ public class GBDevice implements Parcelable {
 
     public void setDeviceInfos(List<ItemWithDetails> deviceInfos) {
         this.mDeviceInfos = deviceInfos;
+        markChanged(CHANGED_OTHER);
     }
 
     public void addDeviceInfo(ItemWithDetails info) {
@@ -590,10 +640,12 @@ public class GBDevice implements Parcelable {
             int index = mDeviceInfos.indexOf(info);
             if (index >= 0) {
                 mDeviceInfos.set(index, info); // replace item with new one
+                markChanged(CHANGED_OTHER);
                 return;
             }
         }
         mDeviceInfos.add(info);
+        markChanged(CHANGED_OTHER);
     }
 
     public boolean removeDeviceInfo(ItemWithDetails info) {
@@ -25,6 +25,7 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.SystemClock;
 import android.provider.ContactsContract;
 
 import java.util.ArrayList;
@@ -44,6 +45,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.WeatherSpec;
 import nodomain.freeyourgadget.gadgetbridge.service.DeviceCommunicationService;
 import nodomain.freeyourgadget.gadgetbridge.util.LanguageUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.Metrics;
 import nodomain.freeyourgadget.gadgetbridge.util.RtlUtils;
 
 import static nodomain.freeyourgadget.gadgetbridge.util.JavaExtensions.coalesce;
@@ -52,6 +54,8 @@ import static nodomain.freeyourgadget.gadgetbridge.util.JavaExtensions.coalesce;
 public class GBDeviceService implements DeviceService {
     protected final Context mContext;
     private final Class<? extends Service> mServiceClass;
+    @Nullable
+    private final GBDevice mDevice;
     private final String[] transliterationExtras = new String[]{
             EXTRA_NOTIFICATION_PHONENUMBER,
             EXTRA_NOTIFICATION_SENDER,
@@ -69,12 +73,26 @@ public class GBDeviceService implements DeviceService {
     };
 
     public GBDeviceService(Context context) {
+        this(context, null);
+    }
+
+    protected GBDeviceService(Context context, @Nullable GBDevice device) {
         mContext = context;
         mServiceClass = DeviceCommunicationService.class;
+        mDevice = device;
     }
 
     protected Intent createIntent() {
-        return new Intent(mContext, mServiceClass);
+        Intent intent = new Intent(mContext, mServiceClass);
+        if (mDevice != null) {
+            intent.putExtra(GBDevice.EXTRA_DEVICE, mDevice);
+        }
+        return intent;
+    }
+
+    @Override
+    public DeviceService forDevice(GBDevice device) {
+        return new GBDeviceService(mContext, device);
     }
 
     protected void invokeService(Intent intent) {
@@ -120,7 +138,7 @@ public class GBDeviceService implements DeviceService {
     @Override
     public void connect(@Nullable GBDevice device, boolean firstTime) {
         Intent intent = createIntent().setAction(ACTION_CONNECT)
-                .putExtra(GBDevice.EXTRA_DEVICE, device)
+                .putExtra(GBDevice.EXTRA_DEVICE, coalesce(device, mDevice))
                 .putExtra(EXTRA_CONNECT_FIRST_TIME, firstTime);
         invokeService(intent);
     }
@@ -158,6 +176,9 @@ public class GBDeviceService implements DeviceService {
                 .putExtra(EXTRA_NOTIFICATION_SOURCENAME, notificationSpec.sourceName)
                 .putExtra(EXTRA_NOTIFICATION_PEBBLE_COLOR, notificationSpec.pebbleColor)
                 .putExtra(EXTRA_NOTIFICATION_SOURCEAPPID, notificationSpec.sourceAppId);
+        if (Metrics.isEnabled()) {
+            intent.putExtra(EXTRA_NOTIFICATION_QUEUED_AT, SystemClock.elapsedRealtime());
+        }
         invokeService(intent);
     }
 
@@ -27,8 +27,10 @@ public class ActivityAmount {
     private short percent;
     private long totalSeconds;
     private long totalSteps;
-    private Date startDate = null;
-    private Date endDate = null;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    private int startTimestamp = NO_DATE;
+    private int endTimestamp = NO_DATE;
 
     public ActivityAmount(int activityKind) {
         this.activityKind = activityKind;
@@ -73,19 +75,23 @@ public class ActivityAmount {
     }
 
     public Date getStartDate() {
-        return startDate;
+        return toDate(startTimestamp);
     }
 
     public void setStartDate(int seconds) {
-        if(startDate == null)
-            this.startDate = new Date((long)seconds * 1000);
+        if (startTimestamp == NO_DATE)
+            this.startTimestamp = seconds;
     }
 
     public Date getEndDate() {
-        return endDate;
+        return toDate(endTimestamp);
     }
 
     public void setEndDate(int seconds) {
-        this.endDate = new Date((long)seconds * 1000);
+        this.endTimestamp = seconds;
+    }
+
+    private static Date toDate(int seconds) {
+        return seconds == NO_DATE ? null : new Date((long) seconds * 1000);
     }
 }
@@ -65,6 +65,32 @@ public class ActivitySummaryJsonSummary {
         return summaryData;
     }
 
+    /**
+     * Copies the values summed up by the summaries dashboard from the summary data into
+     * their own columns. Call this before storing a new summary.
+     */
+    public static void extractMetrics(BaseActivitySummary summary) {
+        JSONObject summaryData = new ActivitySummaryJsonSummary(summary).getSummaryData();
+        summary.setDistanceMeters(getValue(summaryData, "distanceMeters"));
+        summary.setCaloriesBurnt(getValue(summaryData, "caloriesBurnt"));
+        summary.setActiveSeconds(getValue(summaryData, "activeSeconds"));
+        Float steps = getValue(summaryData, "steps");
+        summary.setSteps(steps != null ? Math.round(steps) : null);
+        summary.setAverageHR(getValue(summaryData, "averageHR"));
+    }
+
+    private static Float getValue(JSONObject summaryData, String key) {
+        if (summaryData == null || !summaryData.has(key)) {
+            return null;
+        }
+        try {
+            return (float) summaryData.getJSONObject(key).getDouble("value");
+        } catch (JSONException e) {
+            LOG.warn("Unable to read " + key + " from summary data", e);
+            return null;
+        }
+    }
+
     private String getCorrectSummary(BaseActivitySummary item){
         if (item.getRawSummaryData() != null) {
             ActivitySummaryParser parser = new HuamiActivitySummaryParser(); // FIXME: if something else than huami supports that make sure to have the right parser
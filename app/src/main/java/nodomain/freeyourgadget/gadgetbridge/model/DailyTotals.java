@@ -26,7 +26,6 @@ import java.util.Calendar;
 import java.util.List;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
-import nodomain.freeyourgadget.gadgetbridge.activities.charts.ActivityAnalysis;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinator;
 import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
@@ -68,12 +67,14 @@ public class DailyTotals {
     public long[] getDailyTotalsForDevice(GBDevice device, Calendar day) {
 
         try (DBHandler handler = GBApplication.acquireDB()) {
-            ActivityAnalysis analysis = new ActivityAnalysis();
-            ActivityAmounts amountsSteps;
-            ActivityAmounts amountsSleep;
-
-            amountsSteps = analysis.calculateActivityAmounts(getSamplesOfDay(handler, day, 0, device));
-            amountsSleep = analysis.calculateActivityAmounts(getSamplesOfDay(handler, day, -12, device));
+            // sleep is counted from noon of the previous day, both are loaded with one query
+            int sleepStart = getStartOfDay(day, -12);
+            int stepsStart = getStartOfDay(day, 0);
+            ActivityAmounts[] amounts = getProvider(handler, device).getActivityAmounts(
+                    new int[]{sleepStart, stepsStart},
+                    new int[]{sleepStart + 24 * 60 * 60 - 1, stepsStart + 24 * 60 * 60 - 1});
+            ActivityAmounts amountsSleep = amounts[0];
+            ActivityAmounts amountsSteps = amounts[1];
 
             long[] sleep = getTotalsSleepForActivityAmounts(amountsSleep);
             long steps = getTotalsStepsForActivityAmounts(amountsSteps);
@@ -112,20 +113,14 @@ public class DailyTotals {
     }
 
 
-    private List<? extends ActivitySample> getSamplesOfDay(DBHandler db, Calendar day, int offsetHours, GBDevice device) {
-        int startTs;
-        int endTs;
-
+    private static int getStartOfDay(Calendar day, int offsetHours) {
         day = (Calendar) day.clone(); // do not modify the caller's argument
         day.set(Calendar.HOUR_OF_DAY, 0);
         day.set(Calendar.MINUTE, 0);
         day.set(Calendar.SECOND, 0);
         day.add(Calendar.HOUR, offsetHours);
 
-        startTs = (int) (day.getTimeInMillis() / 1000);
-        endTs = startTs + 24 * 60 * 60 - 1;
-
-        return getSamples(db, device, startTs, endTs);
+        return (int) (day.getTimeInMillis() / 1000);
     }
 
 
@@ -80,6 +80,7 @@ public interface DeviceService extends EventHandler {
     String EXTRA_NOTIFICATION_TYPE = "notification_type";
     String EXTRA_NOTIFICATION_ACTIONS = "notification_actions";
     String EXTRA_NOTIFICATION_PEBBLE_COLOR = "notification_pebble_color";
+    String EXTRA_NOTIFICATION_QUEUED_AT = "notification_queued_at";
     String EXTRA_FIND_START = "find_start";
     String EXTRA_VIBRATION_INTENSITY = "vibration_intensity";
     String EXTRA_CALL_COMMAND = "call_command";
@@ -136,12 +137,23 @@ public interface DeviceService extends EventHandler {
 
     void start();
 
+    /**
+     * Returns a DeviceService that sends all commands to the given device only. Commands sent
+     * through the default instance go to all connected devices if they only transfer
+     * phone state (notifications, calls, music, weather, time), and to the device connected
+     * last otherwise.
+     */
+    DeviceService forDevice(GBDevice device);
+
     void connect();
 
     void connect(@Nullable GBDevice device);
 
     void connect(@Nullable GBDevice device, boolean firstTime);
 
+    /**
+     * Disconnects all devices, or only the device of a {@link #forDevice(GBDevice)} instance.
+     */
     void disconnect();
 
     void quit();
@@ -0,0 +1,167 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import android.content.Intent;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
+import nodomain.freeyourgadget.gadgetbridge.util.Metrics;
+
+/**
+ * Serial queue for the commands sent to one device, so that the main thread only has to
+ * enqueue them.
+ *
+ * Commands that only transfer the latest state (music info and state, weather, call state)
+ * are coalesced: while such a command is still queued, a newer one of the same kind replaces
+ * it at its position in the queue.
+ */
+class DeviceCommandQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(DeviceCommandQueue.class);
+
+    private static final Metrics.Timer QUEUE_WAIT = Metrics.timer("device.command.queuewait");
+    private static final Metrics.Timer COMMAND_DURATION = Metrics.timer("device.command.duration");
+    private static final Metrics.Histogram QUEUE_DEPTH = Metrics.histogram("device.command.queuedepth", "commands");
+    private static final Metrics.Counter COALESCED = Metrics.counter("device.command.coalesced");
+
+    interface CommandHandler {
+        void handleCommand(Intent intent);
+    }
+
+    private class Command implements Runnable {
+        private final String coalescingKey;
+        private final long queuedAt;
+        private Intent intent;
+
+        Command(String coalescingKey, Intent intent) {
+            this.coalescingKey = coalescingKey;
+            this.intent = intent;
+            this.queuedAt = Metrics.start();
+        }
+
+        @Override
+        public void run() {
+            Intent intent;
+            synchronized (DeviceCommandQueue.this) {
+                if (coalescingKey != null) {
+                    pendingStates.remove(coalescingKey);
+                }
+                pendingCount--;
+                intent = this.intent;
+            }
+            QUEUE_WAIT.stop(queuedAt);
+            long start = Metrics.start();
+            try {
+                commandHandler.handleCommand(intent);
+            } catch (Exception e) {
+                LOG.error("Error handling " + intent.getAction(), e);
+            }
+            COMMAND_DURATION.stop(start);
+        }
+    }
+
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final CommandHandler commandHandler;
+    private final Map<String, Command> pendingStates = new HashMap<>();
+    private int pendingCount;
+
+    /**
+     * @param looper the looper to run the commands on, or null to start a new thread
+     */
+    DeviceCommandQueue(String name, @Nullable Looper looper, CommandHandler commandHandler) {
+        if (looper == null) {
+            thread = new HandlerThread(name);
+            thread.start();
+            looper = thread.getLooper();
+        } else {
+            thread = null;
+        }
+        this.handler = new Handler(looper);
+        this.commandHandler = commandHandler;
+    }
+
+    void enqueue(Intent intent) {
+        Command command;
+        synchronized (this) {
+            String coalescingKey = getCoalescingKey(intent.getAction());
+            if (coalescingKey != null) {
+                Command pending = pendingStates.get(coalescingKey);
+                if (pending != null) {
+                    pending.intent = intent;
+                    COALESCED.inc();
+                    return;
+                }
+            }
+            command = new Command(coalescingKey, intent);
+            if (coalescingKey != null) {
+                pendingStates.put(coalescingKey, command);
+            }
+            pendingCount++;
+            QUEUE_DEPTH.record(pendingCount);
+        }
+        handler.post(command);
+    }
+
+    /**
+     * Drops all queued commands, runs the given task after the running command finished
+     * and then stops the thread. Returns without waiting for the running command.
+     */
+    void quit(final Runnable lastTask) {
+        handler.removeCallbacksAndMessages(null);
+        synchronized (this) {
+            pendingStates.clear();
+            pendingCount = 0;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    lastTask.run();
+                } catch (Exception e) {
+                    LOG.error("Error quitting command queue", e);
+                }
+                if (thread != null) {
+                    thread.quit();
+                }
+            }
+        });
+    }
+
+    @Nullable
+    static String getCoalescingKey(String action) {
+        switch (action) {
+            case DeviceService.ACTION_SETMUSICINFO:
+            case DeviceService.ACTION_SETMUSICSTATE:
+            case DeviceService.ACTION_SEND_WEATHER:
+            case DeviceService.ACTION_CALLSTATE:
+                return action;
+            default:
+                return null;
+        }
+    }
+}
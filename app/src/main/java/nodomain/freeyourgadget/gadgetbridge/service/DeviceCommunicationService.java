@@ -34,6 +34,8 @@ import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
@@ -44,7 +46,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
@@ -80,6 +90,7 @@ import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
 import nodomain.freeyourgadget.gadgetbridge.util.EmojiConverter;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
+import nodomain.freeyourgadget.gadgetbridge.util.Metrics;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.ACTION_ADD_CALENDAREVENT;
@@ -161,6 +172,7 @@ import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOT
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_PHONENUMBER;
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_SENDER;
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_SOURCEAPPID;
+import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_QUEUED_AT;
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_SOURCENAME;
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_SUBJECT;
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_NOTIFICATION_TITLE;
@@ -173,15 +185,39 @@ import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_WEA
 
 public class DeviceCommunicationService extends Service implements SharedPreferences.OnSharedPreferenceChangeListener {
     private static final Logger LOG = LoggerFactory.getLogger(DeviceCommunicationService.class);
+    private static final Metrics.Timer NOTIFICATION_QUEUE_WAIT = Metrics.timer("notification.service.queuewait");
+    private static final Metrics.Timer NOTIFICATION_DEVICE = Metrics.timer("notification.device");
     @SuppressLint("StaticFieldLeak") // only used for test cases
     private static DeviceSupportFactory DEVICE_SUPPORT_FACTORY = null;
+    private static Looper COMMAND_LOOPER = null;
+
+    /**
+     * Commands that only transfer phone state and are sent to every connected device,
+     * unless the intent names a device.
+     */
+    private static final Set<String> BROADCAST_ACTIONS = new HashSet<>(Arrays.asList(
+            ACTION_REQUEST_DEVICEINFO,
+            ACTION_NOTIFICATION,
+            ACTION_DELETE_NOTIFICATION,
+            ACTION_CALLSTATE,
+            ACTION_SETCANNEDMESSAGES,
+            ACTION_SETTIME,
+            ACTION_SETMUSICINFO,
+            ACTION_SETMUSICSTATE,
+            ACTION_SEND_WEATHER
+    ));
 
     private boolean mStarted = false;
 
     private DeviceSupportFactory mFactory;
-    private GBDevice mGBDevice = null;
-    private DeviceSupport mDeviceSupport;
-    private DeviceCoordinator mCoordinator = null;
+    /**
+     * The devices to connect to or connected to, by address. Only modified on the main thread.
+     */
+    private final Map<String, ConnectedDevice> mDevices = new ConcurrentHashMap<>();
+    /**
+     * The device connected last, which receives the commands that do not name a device.
+     */
+    private String mLastDeviceAddress = null;
 
     private PhoneCallReceiver mPhoneCallReceiver = null;
     private SMSReceiver mSMSReceiver = null;
@@ -195,7 +231,6 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
     private AutoConnectIntervalReceiver mAutoConnectInvervalReceiver= null;
 
     private AlarmReceiver mAlarmReceiver = null;
-    private CalendarReceiver mCalendarReceiver = null;
     private CMWeatherReceiver mCMWeatherReceiver = null;
     private LineageOsWeatherReceiver mLineageOsWeatherReceiver = null;
     private TinyWeatherForecastGermanyReceiver mTinyWeatherForecastGermanyReceiver = null;
@@ -223,21 +258,91 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
         DEVICE_SUPPORT_FACTORY = factory;
     }
 
+    /**
+     * For testing!
+     *
+     * @param looper the looper to send the commands to the device on, or null for a
+     *               background thread per device
+     */
+    public static void setCommandLooper(Looper looper) {
+        COMMAND_LOOPER = looper;
+    }
+
     public DeviceCommunicationService() {
 
     }
 
+    /**
+     * A device support together with the queue of the commands sent to it. Every device
+     * has its own command thread, and the device support its own connection thread.
+     */
+    private class ConnectedDevice implements DeviceCommandQueue.CommandHandler {
+        final DeviceSupport support;
+        final DeviceCommandQueue queue;
+        volatile GBDevice device;
+        volatile DeviceCoordinator coordinator;
+        CalendarReceiver calendarReceiver;
+        private volatile boolean disposed;
+
+        ConnectedDevice(DeviceSupport support) {
+            this.support = support;
+            this.device = support.getDevice();
+            this.coordinator = DeviceHelper.getInstance().getCoordinator(device);
+            this.queue = new DeviceCommandQueue("DeviceCommands-" + device.getAddress(), COMMAND_LOOPER, this);
+        }
+
+        /**
+         * Returns true if commands can be sent to the device, either because it is initialized
+         * or because the device support connects automatically.
+         */
+        boolean isReady() {
+            return device.isInitialized() || (support.useAutoConnect() && !device.isConnected());
+        }
+
+        boolean isReceiversEnabled() {
+            return support.useAutoConnect() || device.isInitialized();
+        }
+
+        @Override
+        public void handleCommand(Intent intent) {
+            if (disposed) {
+                LOG.info(device.getAddress() + " was disconnected, dropping " + intent.getAction());
+                return;
+            }
+            handleAction(this, intent, intent.getAction(), getPrefs());
+        }
+
+        /**
+         * Drops the queued commands and disposes the device support on the command thread,
+         * once the running command finished. Does not wait for that, so it may be called
+         * on the main thread.
+         */
+        void dispose() {
+            disposed = true;
+            queue.quit(new Runnable() {
+                @Override
+                public void run() {
+                    support.dispose();
+                }
+            });
+        }
+    }
+
     private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
             String action = intent.getAction();
             if (GBDevice.ACTION_DEVICE_CHANGED.equals(action)) {
                 GBDevice device = intent.getParcelableExtra(GBDevice.EXTRA_DEVICE);
-                if (mGBDevice != null && mGBDevice.equals(device)) {
-                    mGBDevice = device;
-                    mCoordinator = DeviceHelper.getInstance().getCoordinator(device);
-                    boolean enableReceivers = mDeviceSupport != null && (mDeviceSupport.useAutoConnect() || mGBDevice.isInitialized());
-                    setReceiversEnableState(enableReceivers, mGBDevice.isInitialized(), mCoordinator);
+                ConnectedDevice connected = device != null ? mDevices.get(device.getAddress()) : null;
+                if (connected != null) {
+                    connected.device = device;
+                    int changes = intent.getIntExtra(GBDevice.EXTRA_DEVICE_CHANGES, GBDevice.CHANGED_ALL);
+                    // the receivers only depend on the state and type of the device
+                    if ((changes & (GBDevice.CHANGED_STATE | GBDevice.CHANGED_OTHER)) != 0) {
+                        connected.coordinator = DeviceHelper.getInstance().getCoordinator(device);
+                        updateReceiversEnableState();
+                    }
                 } else {
                     LOG.error("Got ACTION_DEVICE_CHANGED from unexpected device: " + device);
                 }
@@ -282,25 +387,12 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
 
         LOG.debug("Service startcommand: " + action);
 
-        if (!action.equals(ACTION_START) && !action.equals(ACTION_CONNECT)) {
-            if (!mStarted) {
-                // using the service before issuing ACTION_START
-                LOG.info("Must start service with " + ACTION_START + " or " + ACTION_CONNECT + " before using it: " + action);
-                return START_NOT_STICKY;
-            }
-
-            if (mDeviceSupport == null || (!isInitialized() && !action.equals(ACTION_DISCONNECT) && (!mDeviceSupport.useAutoConnect() || isConnected()))) {
-                // trying to send notification without valid Bluetooth connection
-                if (mGBDevice != null) {
-                    // at least send back the current device state
-                    mGBDevice.sendDeviceUpdateIntent(this);
-                }
-                return START_STICKY;
-            }
+        if (!action.equals(ACTION_START) && !action.equals(ACTION_CONNECT) && !mStarted) {
+            // using the service before issuing ACTION_START
+            LOG.info("Must start service with " + ACTION_START + " or " + ACTION_CONNECT + " before using it: " + action);
+            return START_NOT_STICKY;
         }
 
-        // when we get past this, we should have valid mDeviceSupport and mGBDevice instances
-
         Prefs prefs = getPrefs();
         switch (action) {
             case ACTION_START:
@@ -327,71 +419,136 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                     autoReconnect = getGBPrefs().getAutoReconnect();
                 }
 
-                if (gbDevice != null && !isConnecting() && !isConnected()) {
-                    setDeviceSupport(null);
-                    try {
-                        DeviceSupport deviceSupport = mFactory.createDeviceSupport(gbDevice);
-                        if (deviceSupport != null) {
-                            setDeviceSupport(deviceSupport);
-                            if (firstTime) {
-                                deviceSupport.connectFirstTime();
-                            } else {
-                                deviceSupport.setAutoReconnect(autoReconnect);
-                                deviceSupport.connect();
-                            }
+                if (gbDevice == null) {
+                    break;
+                }
+                mLastDeviceAddress = gbDevice.getAddress();
+                ConnectedDevice existing = mDevices.get(gbDevice.getAddress());
+                if (existing != null && (existing.device.isConnecting() || existing.device.isConnected())) {
+                    // send an update at least
+                    existing.device.sendDeviceUpdateIntent(this);
+                    break;
+                }
+                removeDevice(gbDevice.getAddress());
+                try {
+                    DeviceSupport deviceSupport = mFactory.createDeviceSupport(gbDevice);
+                    if (deviceSupport != null) {
+                        addDevice(deviceSupport);
+                        if (firstTime) {
+                            deviceSupport.connectFirstTime();
                         } else {
-                            GB.toast(this, getString(R.string.cannot_connect, "Can't create device support"), Toast.LENGTH_SHORT, GB.ERROR);
+                            deviceSupport.setAutoReconnect(autoReconnect);
+                            deviceSupport.connect();
                         }
-                    } catch (Exception e) {
-                        GB.toast(this, getString(R.string.cannot_connect, e.getMessage()), Toast.LENGTH_SHORT, GB.ERROR, e);
-                        setDeviceSupport(null);
+                    } else {
+                        GB.toast(this, getString(R.string.cannot_connect, "Can't create device support"), Toast.LENGTH_SHORT, GB.ERROR);
                     }
-                } else if (mGBDevice != null) {
-                    // send an update at least
-                    mGBDevice.sendDeviceUpdateIntent(this);
+                } catch (Exception e) {
+                    GB.toast(this, getString(R.string.cannot_connect, e.getMessage()), Toast.LENGTH_SHORT, GB.ERROR, e);
+                    removeDevice(gbDevice.getAddress());
                 }
                 break;
-            default:
-                if (mDeviceSupport == null || mGBDevice == null) {
-                    LOG.warn("device support:" + mDeviceSupport + ", device: " + mGBDevice + ", aborting");
+            case ACTION_DISCONNECT: {
+                GBDevice requested = intent.getParcelableExtra(GBDevice.EXTRA_DEVICE);
+                List<String> addresses = new ArrayList<>();
+                if (requested != null) {
+                    addresses.add(requested.getAddress());
                 } else {
-                    handleAction(intent, action, prefs);
+                    addresses.addAll(mDevices.keySet());
+                }
+                for (String address : addresses) {
+                    GBDevice device = removeDevice(address);
+                    if (device != null) {
+                        device.setState(GBDevice.State.NOT_CONNECTED);
+                        device.sendDeviceUpdateIntent(this);
+                    }
+                }
+                updateReceiversEnableState();
+                break;
+            }
+            default:
+                List<ConnectedDevice> targets = getTargetDevices(intent, action);
+                if (targets.isEmpty()) {
+                    LOG.info("no device to send " + action + " to");
+                }
+                for (ConnectedDevice target : targets) {
+                    if (!target.isReady()) {
+                        // trying to send notification without valid Bluetooth connection,
+                        // at least send back the current device state
+                        target.device.sendDeviceUpdateIntent(this);
+                    } else {
+                        // every command thread reads its own copy of the extras
+                        target.queue.enqueue(targets.size() > 1 ? new Intent(intent) : intent);
+                    }
                 }
                 break;
         }
         return START_STICKY;
     }
 
+    /**
+     * Returns the devices to send the given command to: the device named in the intent, all
+     * devices for the {@link #BROADCAST_ACTIONS}, and the device connected last otherwise.
+     */
+    private List<ConnectedDevice> getTargetDevices(Intent intent, String action) {
+        GBDevice requested = intent.getParcelableExtra(GBDevice.EXTRA_DEVICE);
+        if (requested != null) {
+            return toList(mDevices.get(requested.getAddress()));
+        }
+        if (BROADCAST_ACTIONS.contains(action)) {
+            return new ArrayList<>(mDevices.values());
+        }
+        return toList(getLastDevice());
+    }
+
+    @Nullable
+    private ConnectedDevice getLastDevice() {
+        ConnectedDevice last = mLastDeviceAddress != null ? mDevices.get(mLastDeviceAddress) : null;
+        if (last == null && mDevices.size() == 1) {
+            last = mDevices.values().iterator().next();
+        }
+        return last;
+    }
+
+    private static List<ConnectedDevice> toList(@Nullable ConnectedDevice connected) {
+        if (connected == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(connected);
+    }
+
     /**
      * @param text original text
      * @return 'text' or a new String without non supported chars like emoticons, etc.
      */
-    private String sanitizeNotifText(String text) {
+    private String sanitizeNotifText(ConnectedDevice target, String text) {
         if (text == null || text.length() == 0)
             return text;
 
-        text = mDeviceSupport.customStringFilter(text);
+        text = target.support.customStringFilter(text);
 
-        if (!mCoordinator.supportsUnicodeEmojis()) {
+        if (!target.coordinator.supportsUnicodeEmojis()) {
             return EmojiConverter.convertUnicodeEmojiToAscii(text, getApplicationContext());
         }
 
         return text;
     }
 
-    private void handleAction(Intent intent, String action, Prefs prefs) {
+    private void handleAction(ConnectedDevice target, Intent intent, String action, Prefs prefs) {
+        DeviceSupport deviceSupport = target.support;
+        GBDevice device = target.device;
         switch (action) {
             case ACTION_REQUEST_DEVICEINFO:
-                mGBDevice.sendDeviceUpdateIntent(this);
+                device.sendDeviceUpdateIntent(this);
                 break;
             case ACTION_NOTIFICATION: {
                 int desiredId = intent.getIntExtra(EXTRA_NOTIFICATION_ID, -1);
                 NotificationSpec notificationSpec = new NotificationSpec(desiredId);
                 notificationSpec.phoneNumber = intent.getStringExtra(EXTRA_NOTIFICATION_PHONENUMBER);
-                notificationSpec.sender = sanitizeNotifText(intent.getStringExtra(EXTRA_NOTIFICATION_SENDER));
-                notificationSpec.subject = sanitizeNotifText(intent.getStringExtra(EXTRA_NOTIFICATION_SUBJECT));
-                notificationSpec.title = sanitizeNotifText(intent.getStringExtra(EXTRA_NOTIFICATION_TITLE));
-                notificationSpec.body = sanitizeNotifText(intent.getStringExtra(EXTRA_NOTIFICATION_BODY));
+                notificationSpec.sender = sanitizeNotifText(target, intent.getStringExtra(EXTRA_NOTIFICATION_SENDER));
+                notificationSpec.subject = sanitizeNotifText(target, intent.getStringExtra(EXTRA_NOTIFICATION_SUBJECT));
+                notificationSpec.title = sanitizeNotifText(target, intent.getStringExtra(EXTRA_NOTIFICATION_TITLE));
+                notificationSpec.body = sanitizeNotifText(target, intent.getStringExtra(EXTRA_NOTIFICATION_BODY));
                 notificationSpec.sourceName = intent.getStringExtra(EXTRA_NOTIFICATION_SOURCENAME);
                 notificationSpec.type = (NotificationType) intent.getSerializableExtra(EXTRA_NOTIFICATION_TYPE);
                 notificationSpec.attachedActions = (ArrayList<NotificationSpec.Action>) intent.getSerializableExtra(EXTRA_NOTIFICATION_ACTIONS);
@@ -410,7 +567,7 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                     // I would rather like to save that as an array in SharedPreferences
                     // this would work but I dont know how to do the same in the Settings Activity's xml
                     ArrayList<String> replies = new ArrayList<>();
-                    SharedPreferences devicePrefs = GBApplication.getDeviceSpecificSharedPrefs(mGBDevice.getAddress());
+                    SharedPreferences devicePrefs = GBApplication.getDeviceSpecificSharedPrefs(device.getAddress());
                     for (int i = 1; i <= 16; i++) {
                         String reply = devicePrefs.getString("canned_reply_" + i, null);
                         if (reply != null && !reply.equals("")) {
@@ -420,11 +577,17 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                     notificationSpec.cannedReplies = replies.toArray(new String[0]);
                 }
 
-                mDeviceSupport.onNotification(notificationSpec);
+                long queuedAt = intent.getLongExtra(EXTRA_NOTIFICATION_QUEUED_AT, 0);
+                if (queuedAt != 0) {
+                    NOTIFICATION_QUEUE_WAIT.recordMillis(SystemClock.elapsedRealtime() - queuedAt);
+                }
+                long start = Metrics.start();
+                deviceSupport.onNotification(notificationSpec);
+                NOTIFICATION_DEVICE.stop(start);
                 break;
             }
             case ACTION_DELETE_NOTIFICATION: {
-                mDeviceSupport.onDeleteNotification(intent.getIntExtra(EXTRA_NOTIFICATION_ID, -1));
+                deviceSupport.onDeleteNotification(intent.getIntExtra(EXTRA_NOTIFICATION_ID, -1));
                 break;
             }
             case ACTION_ADD_CALENDAREVENT: {
@@ -433,60 +596,48 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 calendarEventSpec.type = intent.getByteExtra(EXTRA_CALENDAREVENT_TYPE, (byte) -1);
                 calendarEventSpec.timestamp = intent.getIntExtra(EXTRA_CALENDAREVENT_TIMESTAMP, -1);
                 calendarEventSpec.durationInSeconds = intent.getIntExtra(EXTRA_CALENDAREVENT_DURATION, -1);
-                calendarEventSpec.title = sanitizeNotifText(intent.getStringExtra(EXTRA_CALENDAREVENT_TITLE));
-                calendarEventSpec.description = sanitizeNotifText(intent.getStringExtra(EXTRA_CALENDAREVENT_DESCRIPTION));
-                calendarEventSpec.location = sanitizeNotifText(intent.getStringExtra(EXTRA_CALENDAREVENT_LOCATION));
-                mDeviceSupport.onAddCalendarEvent(calendarEventSpec);
+                calendarEventSpec.title = sanitizeNotifText(target, intent.getStringExtra(EXTRA_CALENDAREVENT_TITLE));
+                calendarEventSpec.description = sanitizeNotifText(target, intent.getStringExtra(EXTRA_CALENDAREVENT_DESCRIPTION));
+                calendarEventSpec.location = sanitizeNotifText(target, intent.getStringExtra(EXTRA_CALENDAREVENT_LOCATION));
+                deviceSupport.onAddCalendarEvent(calendarEventSpec);
                 break;
             }
             case ACTION_DELETE_CALENDAREVENT: {
                 long id = intent.getLongExtra(EXTRA_CALENDAREVENT_ID, -1);
                 byte type = intent.getByteExtra(EXTRA_CALENDAREVENT_TYPE, (byte) -1);
-                mDeviceSupport.onDeleteCalendarEvent(type, id);
+                deviceSupport.onDeleteCalendarEvent(type, id);
                 break;
             }
             case ACTION_RESET: {
                 int flags = intent.getIntExtra(EXTRA_RESET_FLAGS, 0);
-                mDeviceSupport.onReset(flags);
+                deviceSupport.onReset(flags);
                 break;
             }
             case ACTION_HEARTRATE_TEST: {
-                mDeviceSupport.onHeartRateTest();
+                deviceSupport.onHeartRateTest();
                 break;
             }
             case ACTION_FETCH_RECORDED_DATA: {
                 int dataTypes = intent.getIntExtra(EXTRA_RECORDED_DATA_TYPES, 0);
-                mDeviceSupport.onFetchRecordedData(dataTypes);
-                break;
-            }
-            case ACTION_DISCONNECT: {
-                mDeviceSupport.dispose();
-                if (mGBDevice != null) {
-                    mGBDevice.setState(GBDevice.State.NOT_CONNECTED);
-                    mGBDevice.sendDeviceUpdateIntent(this);
-                }
-                setReceiversEnableState(false, false, null);
-                mGBDevice = null;
-                mDeviceSupport = null;
-                mCoordinator = null;
+                deviceSupport.onFetchRecordedData(dataTypes);
                 break;
             }
             case ACTION_FIND_DEVICE: {
                 boolean start = intent.getBooleanExtra(EXTRA_FIND_START, false);
-                mDeviceSupport.onFindDevice(start);
+                deviceSupport.onFindDevice(start);
                 break;
             }
             case ACTION_SET_CONSTANT_VIBRATION: {
                 int intensity = intent.getIntExtra(EXTRA_VIBRATION_INTENSITY, 0);
-                mDeviceSupport.onSetConstantVibration(intensity);
+                deviceSupport.onSetConstantVibration(intensity);
                 break;
             }
             case ACTION_CALLSTATE:
                 CallSpec callSpec = new CallSpec();
                 callSpec.command = intent.getIntExtra(EXTRA_CALL_COMMAND, CallSpec.CALL_UNDEFINED);
                 callSpec.number = intent.getStringExtra(EXTRA_CALL_PHONENUMBER);
-                callSpec.name = sanitizeNotifText(intent.getStringExtra(EXTRA_CALL_DISPLAYNAME));
-                mDeviceSupport.onSetCallState(callSpec);
+                callSpec.name = sanitizeNotifText(target, intent.getStringExtra(EXTRA_CALL_DISPLAYNAME));
+                deviceSupport.onSetCallState(callSpec);
                 break;
             case ACTION_SETCANNEDMESSAGES:
                 int type = intent.getIntExtra(EXTRA_CANNEDMESSAGES_TYPE, -1);
@@ -495,20 +646,20 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 CannedMessagesSpec cannedMessagesSpec = new CannedMessagesSpec();
                 cannedMessagesSpec.type = type;
                 cannedMessagesSpec.cannedMessages = cannedMessages;
-                mDeviceSupport.onSetCannedMessages(cannedMessagesSpec);
+                deviceSupport.onSetCannedMessages(cannedMessagesSpec);
                 break;
             case ACTION_SETTIME:
-                mDeviceSupport.onSetTime();
+                deviceSupport.onSetTime();
                 break;
             case ACTION_SETMUSICINFO:
                 MusicSpec musicSpec = new MusicSpec();
-                musicSpec.artist = sanitizeNotifText(intent.getStringExtra(EXTRA_MUSIC_ARTIST));
-                musicSpec.album = sanitizeNotifText(intent.getStringExtra(EXTRA_MUSIC_ALBUM));
-                musicSpec.track = sanitizeNotifText(intent.getStringExtra(EXTRA_MUSIC_TRACK));
+                musicSpec.artist = sanitizeNotifText(target, intent.getStringExtra(EXTRA_MUSIC_ARTIST));
+                musicSpec.album = sanitizeNotifText(target, intent.getStringExtra(EXTRA_MUSIC_ALBUM));
+                musicSpec.track = sanitizeNotifText(target, intent.getStringExtra(EXTRA_MUSIC_TRACK));
                 musicSpec.duration = intent.getIntExtra(EXTRA_MUSIC_DURATION, 0);
                 musicSpec.trackCount = intent.getIntExtra(EXTRA_MUSIC_TRACKCOUNT, 0);
                 musicSpec.trackNr = intent.getIntExtra(EXTRA_MUSIC_TRACKNR, 0);
-                mDeviceSupport.onSetMusicInfo(musicSpec);
+                deviceSupport.onSetMusicInfo(musicSpec);
                 break;
             case ACTION_SETMUSICSTATE:
                 MusicStateSpec stateSpec = new MusicStateSpec();
@@ -517,23 +668,23 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 stateSpec.position = intent.getIntExtra(EXTRA_MUSIC_POSITION, 0);
                 stateSpec.playRate = intent.getIntExtra(EXTRA_MUSIC_RATE, 0);
                 stateSpec.state = intent.getByteExtra(EXTRA_MUSIC_STATE, (byte) 0);
-                mDeviceSupport.onSetMusicState(stateSpec);
+                deviceSupport.onSetMusicState(stateSpec);
                 break;
             case ACTION_REQUEST_APPINFO:
-                mDeviceSupport.onAppInfoReq();
+                deviceSupport.onAppInfoReq();
                 break;
             case ACTION_REQUEST_SCREENSHOT:
-                mDeviceSupport.onScreenshotReq();
+                deviceSupport.onScreenshotReq();
                 break;
             case ACTION_STARTAPP: {
                 UUID uuid = (UUID) intent.getSerializableExtra(EXTRA_APP_UUID);
                 boolean start = intent.getBooleanExtra(EXTRA_APP_START, true);
-                mDeviceSupport.onAppStart(uuid, start);
+                deviceSupport.onAppStart(uuid, start);
                 break;
             }
             case ACTION_DELETEAPP: {
                 UUID uuid = (UUID) intent.getSerializableExtra(EXTRA_APP_UUID);
-                mDeviceSupport.onAppDelete(uuid);
+                deviceSupport.onAppDelete(uuid);
                 break;
             }
             case ACTION_APP_CONFIGURE: {
@@ -543,97 +694,101 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 if (intent.hasExtra(EXTRA_APP_CONFIG_ID)) {
                     id = intent.getIntExtra(EXTRA_APP_CONFIG_ID, 0);
                 }
-                mDeviceSupport.onAppConfiguration(uuid, config, id);
+                deviceSupport.onAppConfiguration(uuid, config, id);
                 break;
             }
             case ACTION_APP_REORDER: {
                 UUID[] uuids = (UUID[]) intent.getSerializableExtra(EXTRA_APP_UUID);
-                mDeviceSupport.onAppReorder(uuids);
+                deviceSupport.onAppReorder(uuids);
                 break;
             }
             case ACTION_INSTALL:
                 Uri uri = intent.getParcelableExtra(EXTRA_URI);
                 if (uri != null) {
                     LOG.info("will try to install app/fw");
-                    mDeviceSupport.onInstallApp(uri);
+                    deviceSupport.onInstallApp(uri);
                 }
                 break;
             case ACTION_SET_ALARMS:
                 ArrayList<? extends Alarm> alarms = (ArrayList<? extends Alarm>) intent.getSerializableExtra(EXTRA_ALARMS);
-                mDeviceSupport.onSetAlarms(alarms);
+                deviceSupport.onSetAlarms(alarms);
                 break;
             case ACTION_ENABLE_REALTIME_STEPS: {
                 boolean enable = intent.getBooleanExtra(EXTRA_BOOLEAN_ENABLE, false);
-                mDeviceSupport.onEnableRealtimeSteps(enable);
+                deviceSupport.onEnableRealtimeSteps(enable);
                 break;
             }
             case ACTION_ENABLE_HEARTRATE_SLEEP_SUPPORT: {
                 boolean enable = intent.getBooleanExtra(EXTRA_BOOLEAN_ENABLE, false);
-                mDeviceSupport.onEnableHeartRateSleepSupport(enable);
+                deviceSupport.onEnableHeartRateSleepSupport(enable);
                 break;
             }
             case ACTION_SET_HEARTRATE_MEASUREMENT_INTERVAL: {
                 int seconds = intent.getIntExtra(EXTRA_INTERVAL_SECONDS, 0);
-                mDeviceSupport.onSetHeartRateMeasurementInterval(seconds);
+                deviceSupport.onSetHeartRateMeasurementInterval(seconds);
                 break;
             }
             case ACTION_ENABLE_REALTIME_HEARTRATE_MEASUREMENT: {
                 boolean enable = intent.getBooleanExtra(EXTRA_BOOLEAN_ENABLE, false);
-                mDeviceSupport.onEnableRealtimeHeartRateMeasurement(enable);
+                deviceSupport.onEnableRealtimeHeartRateMeasurement(enable);
                 break;
             }
             case ACTION_SEND_CONFIGURATION: {
                 String config = intent.getStringExtra(EXTRA_CONFIG);
-                mDeviceSupport.onSendConfiguration(config);
+                deviceSupport.onSendConfiguration(config);
                 break;
             }
             case ACTION_READ_CONFIGURATION: {
                 String config = intent.getStringExtra(EXTRA_CONFIG);
-                mDeviceSupport.onReadConfiguration(config);
+                deviceSupport.onReadConfiguration(config);
                 break;
             }
             case ACTION_TEST_NEW_FUNCTION: {
-                mDeviceSupport.onTestNewFunction();
+                deviceSupport.onTestNewFunction();
                 break;
             }
             case ACTION_SEND_WEATHER: {
                 WeatherSpec weatherSpec = intent.getParcelableExtra(EXTRA_WEATHER);
                 if (weatherSpec != null) {
-                    mDeviceSupport.onSendWeather(weatherSpec);
+                    deviceSupport.onSendWeather(weatherSpec);
                 }
                 break;
             }
             case ACTION_SET_LED_COLOR:
                 int color = intent.getIntExtra(EXTRA_LED_COLOR, 0);
                 if (color != 0) {
-                    mDeviceSupport.onSetLedColor(color);
+                    deviceSupport.onSetLedColor(color);
                 }
                 break;
             case ACTION_SET_FM_FREQUENCY:
                 float frequency = intent.getFloatExtra(EXTRA_FM_FREQUENCY, -1);
                 if (frequency != -1) {
-                    mDeviceSupport.onSetFmFrequency(frequency);
+                    deviceSupport.onSetFmFrequency(frequency);
                 }
                 break;
         }
     }
 
+    private void addDevice(DeviceSupport deviceSupport) {
+        ConnectedDevice connected = new ConnectedDevice(deviceSupport);
+        mDevices.put(connected.device.getAddress(), connected);
+    }
+
     /**
-     * Disposes the current DeviceSupport instance (if any) and sets a new device support instance
-     * (if not null).
+     * Disposes the DeviceSupport instance of the given device (if any). Commands still queued
+     * for the device are dropped.
      *
-     * @param deviceSupport
+     * @return the removed device, or null
      */
-    private void setDeviceSupport(@Nullable DeviceSupport deviceSupport) {
-        if (deviceSupport != mDeviceSupport && mDeviceSupport != null) {
-            mDeviceSupport.dispose();
-            mDeviceSupport = null;
-            mGBDevice = null;
-            mCoordinator = null;
+    @Nullable
+    private GBDevice removeDevice(String address) {
+        ConnectedDevice connected = mDevices.remove(address);
+        if (connected == null) {
+            return null;
         }
-        mDeviceSupport = deviceSupport;
-        mGBDevice = mDeviceSupport != null ? mDeviceSupport.getDevice() : null;
-        mCoordinator = mGBDevice != null ? DeviceHelper.getInstance().getCoordinator(mGBDevice) : null;
+        setCalendarReceiverEnableState(connected, false);
+        connected.dispose();
+        return connected.device;
     }
 
     private void start() {
@@ -647,42 +802,68 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
         return mStarted;
     }
 
-    private boolean isConnected() {
-        return mGBDevice != null && mGBDevice.isConnected();
-    }
-
-    private boolean isConnecting() {
-        return mGBDevice != null && mGBDevice.isConnecting();
-    }
-
-    private boolean isInitialized() {
-        return mGBDevice != null && mGBDevice.isInitialized();
+    /**
+     * Enables the broadcast receivers needed by the connected devices and disables the others.
+     */
+    private void updateReceiversEnableState() {
+        List<ConnectedDevice> enabled = new ArrayList<>();
+        for (ConnectedDevice connected : mDevices.values()) {
+            boolean enable = connected.isReceiversEnabled();
+            if (enable) {
+                enabled.add(connected);
+            }
+            setCalendarReceiverEnableState(connected, enable && connected.device.isInitialized());
+        }
+        setReceiversEnableState(!enabled.isEmpty(), enabled);
     }
 
-
-    private void setReceiversEnableState(boolean enable, boolean initialized, DeviceCoordinator coordinator) {
-        LOG.info("Setting broadcast receivers to: " + enable);
-
-        if (enable && initialized && coordinator != null && coordinator.supportsCalendarEvents()) {
-            if (mCalendarReceiver == null && getPrefs().getBoolean("enable_calendar_sync", true)) {
+    /**
+     * Every device has its own calendar receiver, because the calendar events are synced
+     * per device.
+     */
+    private void setCalendarReceiverEnableState(ConnectedDevice connected, boolean enable) {
+        if (enable && connected.coordinator.supportsCalendarEvents()) {
+            if (connected.calendarReceiver == null && getPrefs().getBoolean("enable_calendar_sync", true)) {
                 if (!(GBApplication.isRunningMarshmallowOrLater() && ContextCompat.checkSelfPermission(this, Manifest.permission.READ_CALENDAR) == PackageManager.PERMISSION_DENIED)) {
                     IntentFilter calendarIntentFilter = new IntentFilter();
                     calendarIntentFilter.addAction("android.intent.action.PROVIDER_CHANGED");
                     calendarIntentFilter.addDataScheme("content");
                     calendarIntentFilter.addDataAuthority("com.android.calendar", null);
-                    mCalendarReceiver = new CalendarReceiver(mGBDevice);
-                    registerReceiver(mCalendarReceiver, calendarIntentFilter);
+                    connected.calendarReceiver = new CalendarReceiver(connected.device);
+                    registerReceiver(connected.calendarReceiver, calendarIntentFilter);
                 }
             }
+        } else if (connected.calendarReceiver != null) {
+            unregisterReceiver(connected.calendarReceiver);
+            connected.calendarReceiver.dispose();
+            connected.calendarReceiver = null;
+        }
+    }
+
+    /**
+     * @param devices the devices to enable the receivers for
+     */
+    private void setReceiversEnableState(boolean enable, Collection<ConnectedDevice> devices) {
+        LOG.info("Setting broadcast receivers to: " + enable);
+
+        boolean supportsCalendarEvents = false;
+        boolean supportsMusicInfo = false;
+        boolean supportsWeather = false;
+        boolean supportsActivityDataFetching = false;
+        for (ConnectedDevice connected : devices) {
+            DeviceCoordinator coordinator = connected.coordinator;
+            supportsCalendarEvents |= connected.device.isInitialized() && coordinator.supportsCalendarEvents();
+            supportsMusicInfo |= coordinator.supportsMusicInfo();
+            supportsWeather |= coordinator.supportsWeather();
+            supportsActivityDataFetching |= coordinator.supportsActivityDataFetching();
+        }
+
+        if (enable && supportsCalendarEvents) {
             if (mAlarmReceiver == null) {
-                mAlarmReceiver = new AlarmReceiver();
+                mAlarmReceiver = new AlarmReceiver(this);
                 registerReceiver(mAlarmReceiver, new IntentFilter("DAILY_ALARM"));
             }
         } else {
-            if (mCalendarReceiver != null) {
-                unregisterReceiver(mCalendarReceiver);
-                mCalendarReceiver = null;
-            }
             if (mAlarmReceiver != null) {
                 unregisterReceiver(mAlarmReceiver);
                 mAlarmReceiver = null;
@@ -706,7 +887,7 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 mPebbleReceiver = new PebbleReceiver();
                 registerReceiver(mPebbleReceiver, new IntentFilter("com.getpebble.action.SEND_NOTIFICATION"));
             }
-            if (mMusicPlaybackReceiver == null && coordinator != null && coordinator.supportsMusicInfo()) {
+            if (mMusicPlaybackReceiver == null && supportsMusicInfo) {
                 mMusicPlaybackReceiver = new MusicPlaybackReceiver();
                 IntentFilter filter = new IntentFilter();
                 for (String action : mMusicActions) {
@@ -740,7 +921,7 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
             }
 
             // Weather receivers
-            if ( coordinator != null && coordinator.supportsWeather()) {
+            if (supportsWeather) {
                 if (GBApplication.isRunningOreoOrLater()) {
                     if (mLineageOsWeatherReceiver == null) {
                         mLineageOsWeatherReceiver = new LineageOsWeatherReceiver();
@@ -768,8 +949,8 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
             }
 
             if (GBApplication.getPrefs().getBoolean("auto_fetch_enabled", false) &&
-                    coordinator != null && coordinator.supportsActivityDataFetching() && mGBAutoFetchReceiver == null) {
-                mGBAutoFetchReceiver = new GBAutoFetchReceiver();
+                    supportsActivityDataFetching && mGBAutoFetchReceiver == null) {
+                mGBAutoFetchReceiver = new GBAutoFetchReceiver(this);
                 registerReceiver(mGBAutoFetchReceiver, new IntentFilter("android.intent.action.USER_PRESENT"));
             }
             if (mAutoConnectInvervalReceiver == null) {
@@ -848,9 +1029,11 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
         super.onDestroy();
 
         LocalBroadcastManager.getInstance(this).unregisterReceiver(mReceiver);
-        setReceiversEnableState(false, false, null); // disable BroadcastReceivers
+        setReceiversEnableState(false, Collections.<ConnectedDevice>emptyList()); // disable BroadcastReceivers
 
-        setDeviceSupport(null);
+        for (String address : new ArrayList<>(mDevices.keySet())) {
+            removeDevice(address);
+        }
         NotificationManager nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         if (nm != null) {
             nm.cancel(GB.NOTIFICATION_ID); // need to do this because the updated notification won't be cancelled when service stops
@@ -866,8 +1049,8 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if (GBPrefs.AUTO_RECONNECT.equals(key)) {
             boolean autoReconnect = getGBPrefs().getAutoReconnect();
-            if (mDeviceSupport != null) {
-                mDeviceSupport.setAutoReconnect(autoReconnect);
+            for (ConnectedDevice connected : mDevices.values()) {
+                connected.support.setAutoReconnect(autoReconnect);
             }
         }
         if (GBPrefs.CHART_MAX_HEART_RATE.equals(key) || GBPrefs.CHART_MIN_HEART_RATE.equals(key)) {
@@ -887,7 +1070,17 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
         return GBApplication.getGBPrefs();
     }
 
-    public GBDevice getGBDevice() {
-        return mGBDevice;
+    @Nullable
+    public GBDevice getGBDevice(String address) {
+        ConnectedDevice connected = mDevices.get(address);
+        return connected != null ? connected.device : null;
+    }
+
+    public List<GBDevice> getGBDevices() {
+        List<GBDevice> devices = new ArrayList<>(mDevices.size());
+        for (ConnectedDevice connected : mDevices.values()) {
+            devices.add(connected.device);
+        }
+        return devices;
     }
 }
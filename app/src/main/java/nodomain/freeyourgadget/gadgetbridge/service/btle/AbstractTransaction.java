@@ -33,6 +33,10 @@ public abstract class AbstractTransaction {
         return mName;
     }
 
+    long getCreationTimestamp() {
+        return creationTimestamp;
+    }
+
     protected String getCreationTime() {
         return DateFormat.getTimeInstance(DateFormat.MEDIUM).format(new Date(creationTimestamp));
     }
@@ -49,6 +49,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.Logging;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.util.Metrics;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice.State;
 import nodomain.freeyourgadget.gadgetbridge.service.DeviceSupport;
 
@@ -65,6 +66,12 @@ public final class BtLEQueue {
     private BluetoothGattServer mBluetoothGattServer;
     private final Set<BluetoothGattService> mSupportedServerServices;
 
+    private static final Metrics.Histogram QUEUE_DEPTH = Metrics.histogram("btle.queue.depth", "transactions");
+    private static final Metrics.Timer TRANSACTION_WAIT = Metrics.timer("btle.transaction.wait");
+    private static final Metrics.Timer CONNECTION_WAIT = Metrics.timer("btle.connection.wait");
+    private static final Metrics.Timer ACTION_LATENCY = Metrics.timer("btle.action.latency");
+    private static final Metrics.Timer ACTION_RESULT_WAIT = Metrics.timer("btle.action.resultwait");
+
     private final BlockingQueue<AbstractTransaction> mTransactions = new LinkedBlockingQueue<>();
     private volatile boolean mDisposed;
     private volatile boolean mCrashed;
@@ -89,6 +96,9 @@ public final class BtLEQueue {
             while (!mDisposed && !mCrashed) {
                 try {
                     AbstractTransaction qTransaction = mTransactions.take();
+                    if (Metrics.isEnabled()) {
+                        TRANSACTION_WAIT.recordMillis(System.currentTimeMillis() - qTransaction.getCreationTimestamp());
+                    }
 
                     if (!isConnected()) {
                         LOG.debug("not connected, waiting for connection...");
@@ -101,7 +111,9 @@ public final class BtLEQueue {
                         // devices have different kinds of initializations and this class has no
                         // idea about them.
                         mConnectionLatch = new CountDownLatch(1);
+                        long connectionWaitStart = Metrics.start();
                         mConnectionLatch.await();
+                        CONNECTION_WAIT.stop(connectionWaitStart);
                         mConnectionLatch = null;
                     }
 
@@ -155,11 +167,15 @@ public final class BtLEQueue {
                                 // always be the last action in the transaction
                                 internalGattCallback.setTransactionGattCallback(((GattListenerAction) action).getGattCallback());
                             }
+                            long actionStart = Metrics.start();
                             if (action.run(mBluetoothGatt)) {
                                 // check again, maybe due to some condition, action did not need to write, so we can't wait
                                 boolean waitForResult = action.expectsResult();
                                 if (waitForResult) {
+                                    long waitStart = Metrics.start();
                                     mWaitForActionResultLatch.await();
+                                    ACTION_RESULT_WAIT.stop(waitStart);
+                                    ACTION_LATENCY.stop(actionStart);
                                     mWaitForActionResultLatch = null;
                                     if (mAbortTransaction) {
                                         break;
@@ -356,6 +372,7 @@ public final class BtLEQueue {
         LOG.debug("about to add: " + transaction);
         if (!transaction.isEmpty()) {
             mTransactions.add(transaction);
+            QUEUE_DEPTH.record(mTransactions.size());
         }
     }
 
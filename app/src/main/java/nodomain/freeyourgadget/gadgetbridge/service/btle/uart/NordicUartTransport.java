@@ -0,0 +1,121 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.btle.uart;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
+
+/**
+ * Framing for the Nordic UART service (NUS). Outgoing data is split into
+ * chunks that fit the currently negotiated ATT MTU, incoming notifications
+ * are reassembled into lines by a {@link UartLineDecoder}.
+ */
+public class NordicUartTransport {
+    private static final Logger LOG = LoggerFactory.getLogger(NordicUartTransport.class);
+
+    public static final UUID UUID_SERVICE_NORDIC_UART = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+    public static final UUID UUID_CHARACTERISTIC_NORDIC_UART_TX = UUID.fromString("6e400002-b5a3-f393-e0a9-e50e24dcca9e");
+    public static final UUID UUID_CHARACTERISTIC_NORDIC_UART_RX = UUID.fromString("6e400003-b5a3-f393-e0a9-e50e24dcca9e");
+
+    /** The default ATT MTU before any exchange has happened */
+    public static final int DEFAULT_MTU = 23;
+    /** ATT opcode (1 byte) and attribute handle (2 bytes) */
+    private static final int ATT_WRITE_OVERHEAD = 3;
+
+    private final UartLineDecoder decoder;
+    private BluetoothGattCharacteristic txCharacteristic;
+    private volatile int mtu = DEFAULT_MTU;
+
+    public NordicUartTransport(UartLineDecoder.LineListener listener) {
+        this.decoder = new UartLineDecoder(listener);
+    }
+
+    public NordicUartTransport(UartLineDecoder.LineListener listener, Charset charset) {
+        this.decoder = new UartLineDecoder(listener, charset);
+    }
+
+    /**
+     * Binds the transport to the discovered characteristics and enables RX
+     * notifications. If the TX characteristic supports write without response,
+     * chunks are written that way so that consecutive packets do not wait for
+     * an ATT round trip each.
+     */
+    public void initialize(TransactionBuilder builder, BluetoothGattCharacteristic tx, BluetoothGattCharacteristic rx) {
+        txCharacteristic = tx;
+        decoder.reset();
+        if (txCharacteristic != null && (txCharacteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) > 0) {
+            txCharacteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+        }
+        builder.notify(rx, true);
+    }
+
+    public void setMtu(int mtu) {
+        if (mtu < DEFAULT_MTU) {
+            LOG.warn("ignoring unreasonable MTU of " + mtu);
+            return;
+        }
+        LOG.info("UART MTU is now " + mtu);
+        this.mtu = mtu;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public int getMaxChunkLength() {
+        return mtu - ATT_WRITE_OVERHEAD;
+    }
+
+    public void write(TransactionBuilder builder, String str) {
+        write(builder, str.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Queues the given data as a sequence of MTU sized writes to the TX
+     * characteristic within the given transaction.
+     */
+    public void write(TransactionBuilder builder, byte[] bytes) {
+        int chunkLength = getMaxChunkLength();
+        for (int i = 0; i < bytes.length; i += chunkLength) {
+            int l = Math.min(chunkLength, bytes.length - i);
+            byte[] packet = new byte[l];
+            System.arraycopy(bytes, i, packet, 0, l);
+            builder.write(txCharacteristic, packet);
+        }
+    }
+
+    /**
+     * @return true if the characteristic was the UART RX characteristic and
+     * its value has been consumed
+     */
+    public boolean onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+        if (!UUID_CHARACTERISTIC_NORDIC_UART_RX.equals(characteristic.getUuid())) {
+            return false;
+        }
+        decoder.append(characteristic.getValue());
+        return true;
+    }
+}
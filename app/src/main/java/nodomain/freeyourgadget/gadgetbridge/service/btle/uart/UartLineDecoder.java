@@ -0,0 +1,105 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.btle.uart;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reassembles newline terminated lines from a stream of UART packets.
+ * Received bytes are appended to a growable buffer and only the newly
+ * appended bytes are scanned for line endings, so long lines spread over
+ * many packets are decoded in linear time.
+ */
+public class UartLineDecoder {
+    public interface LineListener {
+        void onLine(String line);
+    }
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final LineListener listener;
+    private final Charset charset;
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int length = 0;
+
+    public UartLineDecoder(LineListener listener) {
+        this(listener, StandardCharsets.UTF_8);
+    }
+
+    public UartLineDecoder(LineListener listener, Charset charset) {
+        this.listener = listener;
+        this.charset = charset;
+    }
+
+    /**
+     * Appends the given packet and emits every line it completes. A trailing
+     * carriage return is stripped from each line.
+     */
+    public void append(byte[] data) {
+        if (data == null || data.length == 0) {
+            return;
+        }
+        ensureCapacity(length + data.length);
+        int scanFrom = length;
+        System.arraycopy(data, 0, buffer, length, data.length);
+        length += data.length;
+
+        int lineStart = 0;
+        for (int i = scanFrom; i < length; i++) {
+            if (buffer[i] == '\n') {
+                int lineEnd = i;
+                if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r') {
+                    lineEnd--;
+                }
+                listener.onLine(new String(buffer, lineStart, lineEnd - lineStart, charset));
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart > 0) {
+            length -= lineStart;
+            System.arraycopy(buffer, lineStart, buffer, 0, length);
+        }
+    }
+
+    /**
+     * Discards any partially received line, e.g. after a reconnect.
+     */
+    public void reset() {
+        length = 0;
+        if (buffer.length > INITIAL_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+    }
+
+    public int getPendingLength() {
+        return length;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= buffer.length) {
+            return;
+        }
+        int newCapacity = buffer.length * 2;
+        while (newCapacity < required) {
+            newCapacity *= 2;
+        }
+        byte[] newBuffer = new byte[newCapacity];
+        System.arraycopy(buffer, 0, newBuffer, 0, length);
+        buffer = newBuffer;
+    }
+}
@@ -32,7 +32,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
@@ -65,6 +64,8 @@ import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.WeatherSpec;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.AbstractBTLEDeviceSupport;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.uart.NordicUartTransport;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.uart.UartLineDecoder;
 import nodomain.freeyourgadget.gadgetbridge.util.AlarmUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
@@ -73,10 +74,8 @@ import static nodomain.freeyourgadget.gadgetbridge.database.DBHelper.*;
 
 public class BangleJSDeviceSupport extends AbstractBTLEDeviceSupport {
     private static final Logger LOG = LoggerFactory.getLogger(BangleJSDeviceSupport.class);
-    private BluetoothGattCharacteristic rxCharacteristic = null;
-    private BluetoothGattCharacteristic txCharacteristic = null;
 
-    private String receivedLine = "";
+    private final NordicUartTransport uart;
     private boolean realtimeHRM = false;
     private boolean realtimeStep = false;
     private int realtimeHRMInterval = 30*60;
@@ -84,6 +83,12 @@ public class BangleJSDeviceSupport extends AbstractBTLEDeviceSupport {
     public BangleJSDeviceSupport() {
         super(LOG);
         addSupportedService(BangleJSConstants.UUID_SERVICE_NORDIC_UART);
+        uart = new NordicUartTransport(new UartLineDecoder.LineListener() {
+            @Override
+            public void onLine(String line) {
+                handleUartRxLine(line);
+            }
+        });
     }
 
     @Override
@@ -93,10 +98,14 @@ public class BangleJSDeviceSupport extends AbstractBTLEDeviceSupport {
         gbDevice.setState(GBDevice.State.INITIALIZING);
         gbDevice.sendDeviceUpdateIntent(getContext());
 
-        rxCharacteristic = getCharacteristic(BangleJSConstants.UUID_CHARACTERISTIC_NORDIC_UART_RX);
-        txCharacteristic = getCharacteristic(BangleJSConstants.UUID_CHARACTERISTIC_NORDIC_UART_TX);
         builder.setGattCallback(this);
-        builder.notify(rxCharacteristic, true);
+        if (GBApplication.isRunningLollipopOrLater()) {
+            // the transport uses the larger MTU once onMtuChanged() reports it
+            builder.requestMtu(BangleJSConstants.MTU);
+        }
+        uart.initialize(builder,
+                getCharacteristic(BangleJSConstants.UUID_CHARACTERISTIC_NORDIC_UART_TX),
+                getCharacteristic(BangleJSConstants.UUID_CHARACTERISTIC_NORDIC_UART_RX));
 
         uartTx(builder, " \u0003"); // clear active line
 
@@ -118,18 +127,12 @@ public class BangleJSDeviceSupport extends AbstractBTLEDeviceSupport {
         return builder;
     }
 
-    /// Write a string of data, and chunk it up
+    /// Write a string of data, chunked up to the negotiated MTU
     private void uartTx(TransactionBuilder builder, String str) {
-        LOG.info("UART TX: " + str);
-        byte[] bytes;
-        bytes = str.getBytes(StandardCharsets.ISO_8859_1);
-        for (int i=0;i<bytes.length;i+=20) {
-            int l = bytes.length-i;
-            if (l>20) l=20;
-            byte[] packet = new byte[l];
-            System.arraycopy(bytes, i, packet, 0, l);
-            builder.write(txCharacteristic, packet);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("UART TX: " + str);
         }
+        uart.write(builder, str);
     }
 
     /// Write a string of data, and chunk it up
@@ -144,11 +147,13 @@ public class BangleJSDeviceSupport extends AbstractBTLEDeviceSupport {
     }
 
     private void handleUartRxLine(String line) {
-        LOG.info("UART RX LINE: " + line);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("UART RX LINE: " + line);
+        }
 
         if (">Uncaught ReferenceError: \"gb\" is not defined".equals(line))
           GB.toast(getContext(), "Gadgetbridge plugin not installed on Bangle.js", Toast.LENGTH_LONG, GB.ERROR);
-        else if (line.charAt(0)=='{') {
+        else if (!line.isEmpty() && line.charAt(0)=='{') {
             // JSON - we hope!
             try {
                 JSONObject json = new JSONObject(line);
@@ -264,6 +269,9 @@ public class BangleJSDeviceSupport extends AbstractBTLEDeviceSupport {
                     LocalBroadcastManager.getInstance(getContext()).sendBroadcast(intent);
                 }
             } break;
+            default:
+                LOG.debug("ignoring JSON message of type " + json.getString("t"));
+                break;
         }
     }
 
@@ -273,19 +281,15 @@ public class BangleJSDeviceSupport extends AbstractBTLEDeviceSupport {
         if (super.onCharacteristicChanged(gatt, characteristic)) {
             return true;
         }
-        if (BangleJSConstants.UUID_CHARACTERISTIC_NORDIC_UART_RX.equals(characteristic.getUuid())) {
-            byte[] chars = characteristic.getValue();
-            String packetStr = new String(chars);
-            LOG.info("RX: " + packetStr);
-            receivedLine += packetStr;
-            while (receivedLine.contains("\n")) {
-                int p = receivedLine.indexOf("\n");
-                String line =  receivedLine.substring(0,p-1);
-                receivedLine = receivedLine.substring(p+1);
-                handleUartRxLine(line);
-            }
+        return uart.onCharacteristicChanged(gatt, characteristic);
+    }
+
+    @Override
+    public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+        super.onMtuChanged(gatt, mtu, status);
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            uart.setMtu(mtu);
         }
-        return false;
     }
 
 
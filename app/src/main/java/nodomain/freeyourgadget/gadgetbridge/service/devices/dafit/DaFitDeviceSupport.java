@@ -64,6 +64,7 @@ import nodomain.freeyourgadget.gadgetbridge.devices.dafit.DaFitConstants;
 import nodomain.freeyourgadget.gadgetbridge.devices.dafit.DaFitWeatherForecast;
 import nodomain.freeyourgadget.gadgetbridge.devices.dafit.DaFitWeatherToday;
 import nodomain.freeyourgadget.gadgetbridge.devices.dafit.DaFitDeviceCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.devices.dafit.DaFitSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.devices.dafit.settings.DaFitEnumDeviceVersion;
 import nodomain.freeyourgadget.gadgetbridge.devices.dafit.settings.DaFitEnumLanguage;
@@ -793,22 +794,24 @@ public class DaFitDeviceSupport extends AbstractBTLEDeviceSupport {
             int startOfDayTimestamp = (int) (startOfDay.getTimeInMillis() / 1000);
             int thisSampleTimestamp = (int) (thisSample.getTimeInMillis() / 1000);
 
-            int previousSteps = 0;
-            int previousDistance = 0;
-            int previousCalories = 0;
-            for (DaFitActivitySample sample : provider.getAllActivitySamples(startOfDayTimestamp, thisSampleTimestamp))
-            {
-                if (sample.getSteps() != ActivitySample.NOT_MEASURED)
-                    previousSteps += sample.getSteps();
-                if (sample.getDistanceMeters() != ActivitySample.NOT_MEASURED)
-                    previousDistance += sample.getDistanceMeters();
-                if (sample.getCaloriesBurnt() != ActivitySample.NOT_MEASURED)
-                    previousCalories += sample.getCaloriesBurnt();
-            }
+            // steps, distance and calories stored so far
+            final int[] previous = new int[3];
+            provider.forEachSample(startOfDayTimestamp, thisSampleTimestamp, ActivityKind.TYPE_ALL, new SampleProvider.SampleVisitor<DaFitActivitySample>() {
+                @Override
+                public void visit(DaFitActivitySample sample)
+                {
+                    if (sample.getSteps() != ActivitySample.NOT_MEASURED)
+                        previous[0] += sample.getSteps();
+                    if (sample.getDistanceMeters() != ActivitySample.NOT_MEASURED)
+                        previous[1] += sample.getDistanceMeters();
+                    if (sample.getCaloriesBurnt() != ActivitySample.NOT_MEASURED)
+                        previous[2] += sample.getCaloriesBurnt();
+                }
+            });
 
-            int newSteps = steps - previousSteps;
-            int newDistance = distance - previousDistance;
-            int newCalories = calories - previousCalories;
+            int newSteps = steps - previous[0];
+            int newDistance = distance - previous[1];
+            int newCalories = calories - previous[2];
 
             if (newSteps < 0 || newDistance < 0 || newCalories < 0)
             {
@@ -301,6 +301,8 @@ class HPlusHandlerThread extends GBDeviceIoThread {
                 }
 
                 provider.getSampleDao().insertOrReplaceInTx(samples);
+                DBHelper.invalidateSessionIndex(dbHandler.getDaoSession(), samples);
+                DBHelper.notifySamplesWritten(samples);
                 mDaySlotRecords.clear();
 
                 //Create an overlay with unused slots
@@ -333,6 +335,8 @@ class HPlusHandlerThread extends GBDeviceIoThread {
                         overlayList.add(new HPlusHealthActivityOverlay(firstSlotTimestamp, lastSlotTimestamp, ActivityKind.TYPE_NOT_WORN, deviceId, userId, null));
 
                     overlayDao.insertOrReplaceInTx(overlayList);
+                    DBHelper.invalidateSessionIndex(session, deviceId, notWornSlots.get(0), lastSlotTimestamp);
+                    DBHelper.notifySamplesWritten(notWornSlots.get(0), lastSlotTimestamp);
                 }
 
             } catch (GBException ex) {
@@ -380,9 +384,13 @@ class HPlusHandlerThread extends GBDeviceIoThread {
 
             for (HPlusDataRecord.RecordInterval interval : intervals) {
                 overlayList.add(new HPlusHealthActivityOverlay(interval.timestampFrom, interval.timestampTo, interval.activityKind, deviceId, userId, null));
+                DBHelper.invalidateSessionIndex(session, deviceId, interval.timestampFrom, interval.timestampTo);
             }
 
             overlayDao.insertOrReplaceInTx(overlayList);
+            for (HPlusDataRecord.RecordInterval interval : intervals) {
+                DBHelper.notifySamplesWritten(interval.timestampFrom, interval.timestampTo);
+            }
 
             //Store the data
             HPlusHealthActivitySample sample = createSample(dbHandler, record.timestamp);
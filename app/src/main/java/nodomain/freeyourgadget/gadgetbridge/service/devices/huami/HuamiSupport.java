@@ -1708,6 +1708,7 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
 //                        sample.setSteps(getSteps());
                         sample.setRawIntensity(ActivitySample.NOT_MEASURED);
                         sample.setRawKind(HuamiConst.TYPE_ACTIVITY); // to make it visible in the charts TODO: add a MANUAL kind for that?
+                        sample.setNormalizedKind(HuamiConst.TYPE_ACTIVITY);
 
                         provider.addGBActivitySample(sample);
 
@@ -32,9 +32,8 @@ import java.util.List;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
-import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiService;
-import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBand2SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
@@ -113,7 +112,7 @@ public class FetchActivityOperation extends AbstractFetchOperation {
             // save all the samples that we got
             try (DBHandler handler = GBApplication.acquireDB()) {
                 DaoSession session = handler.getDaoSession();
-                SampleProvider<MiBandActivitySample> sampleProvider = new MiBandSampleProvider(getDevice(), session);
+                MiBand2SampleProvider sampleProvider = new MiBand2SampleProvider(getDevice(), session);
                 Device device = DBHelper.getDevice(getDevice(), session);
                 User user = DBHelper.getUser(session);
 
@@ -130,6 +129,7 @@ public class FetchActivityOperation extends AbstractFetchOperation {
 
                     timestamp.add(Calendar.MINUTE, 1);
                 }
+                sampleProvider.normalizeKinds(samples);
                 sampleProvider.addGBActivitySamples(samples.toArray(new MiBandActivitySample[0]));
 
                 saveLastSyncTimestamp(timestamp);
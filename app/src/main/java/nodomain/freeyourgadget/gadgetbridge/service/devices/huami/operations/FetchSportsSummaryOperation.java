@@ -38,6 +38,7 @@ import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummary;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.User;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySummaryJsonSummary;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiSupport;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
@@ -84,6 +85,7 @@ public class FetchSportsSummaryOperation extends AbstractFetchOperation {
             HuamiActivitySummaryParser parser = new HuamiActivitySummaryParser();
             summary = parser.parseBinaryData(summary);
             if (summary != null) {
+                ActivitySummaryJsonSummary.extractMetrics(summary);
                 summary.setSummaryData(null); // remove json before saving to database,
                 try (DBHandler dbHandler = GBApplication.acquireDB()) {
                     DaoSession session = dbHandler.getDaoSession();
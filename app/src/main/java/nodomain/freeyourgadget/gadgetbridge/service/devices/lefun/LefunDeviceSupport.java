@@ -989,6 +989,9 @@ public class LefunDeviceSupport extends AbstractBTLEDeviceSupport {
             sample.setRawIntensity(LefunConstants.INTENSITY_AWAKE);
 
             session.getLefunActivitySampleDao().insertOrReplace(sample);
+
+            DBHelper.invalidateSessionIndex(session, sample.getDeviceId(), sample.getTimestamp(), sample.getTimestamp());
+            DBHelper.notifySamplesWritten(sample.getTimestamp(), sample.getTimestamp());
         } catch (Exception e) {
             LOG.error("Error handling activity data", e);
         }
@@ -1020,6 +1023,9 @@ public class LefunDeviceSupport extends AbstractBTLEDeviceSupport {
                 sample.setHeartRate(ppgData0);
 
                 session.getLefunActivitySampleDao().insertOrReplace(sample);
+
+                DBHelper.invalidateSessionIndex(session, sample.getDeviceId(), sample.getTimestamp(), sample.getTimestamp());
+                DBHelper.notifySamplesWritten(sample.getTimestamp(), sample.getTimestamp());
             }
 
             LefunBiometricSample bioSample = new LefunBiometricSample(timestamp,
@@ -1103,6 +1109,9 @@ public class LefunDeviceSupport extends AbstractBTLEDeviceSupport {
 
             session.getLefunActivitySampleDao().insertOrReplace(sample);
 
+            DBHelper.invalidateSessionIndex(session, sample.getDeviceId(), sample.getTimestamp(), sample.getTimestamp());
+            DBHelper.notifySamplesWritten(sample.getTimestamp(), sample.getTimestamp());
+
             LefunSleepSample sleepSample = new LefunSleepSample(timestamp,
                     DBHelper.getDevice(getDevice(), session).getId());
             sleepSample.setUserId(DBHelper.getUser(session).getId());
@@ -1720,8 +1720,12 @@ public class WatchXPlusDeviceSupport extends AbstractBTLEDeviceSupport {
                     sample.setRawKind(val == 0 ? ActivityKind.TYPE_DEEP_SLEEP : ActivityKind.TYPE_LIGHT_SLEEP);
                     samples.add(sample);
                     overlayList.add(new WatchXPlusHealthActivityOverlay(sample.getTimestamp(), sample.getTimestamp()+300, sample.getRawKind(), sample.getDeviceId(), sample.getUserId(), sample.getRawWatchXPlusHealthData()));
+                    DBHelper.invalidateSessionIndex(dbHandler.getDaoSession(), sample.getDeviceId(), sample.getTimestamp(), sample.getTimestamp() + 300);
                 }
                 overlayDao.insertOrReplaceInTx(overlayList);
+                for (WatchXPlusHealthActivityOverlay overlay : overlayList) {
+                    DBHelper.notifySamplesWritten(overlay.getTimestampFrom(), overlay.getTimestampTo());
+                }
                 provider.addGBActivitySamples(samples.toArray(new WatchXPlusActivitySample[0]));
 
                 handleEndOfDataChunks(chunkNo, type);
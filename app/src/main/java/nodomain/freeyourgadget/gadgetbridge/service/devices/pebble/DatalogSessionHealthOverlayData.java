@@ -87,8 +87,12 @@ class DatalogSessionHealthOverlayData extends DatalogSessionPebbleHealth {
             List<PebbleHealthActivityOverlay> overlayList = new ArrayList<>();
             for (OverlayRecord overlayRecord : overlayRecords) {
                 overlayList.add(new PebbleHealthActivityOverlay(overlayRecord.timestampStart, overlayRecord.timestampStart + overlayRecord.durationSeconds, overlayRecord.type, deviceId, userId, overlayRecord.getRawData()));
+                DBHelper.invalidateSessionIndex(session, deviceId, overlayRecord.timestampStart, overlayRecord.timestampStart + overlayRecord.durationSeconds);
             }
             overlayDao.insertOrReplaceInTx(overlayList);
+            for (PebbleHealthActivityOverlay overlay : overlayList) {
+                DBHelper.notifySamplesWritten(overlay.getTimestampFrom(), overlay.getTimestampTo());
+            }
         } catch (Exception ex) {
             LOG.debug(ex.getMessage());
         }
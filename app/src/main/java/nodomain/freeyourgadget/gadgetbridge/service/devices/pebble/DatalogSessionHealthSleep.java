@@ -88,8 +88,12 @@ class DatalogSessionHealthSleep extends DatalogSessionPebbleHealth {
             for (SleepRecord sleepRecord : sleepRecords) {
                 //TODO: check the firmware version and don't use the sleep record if overlay is available?
                 overlayList.add(new PebbleHealthActivityOverlay(sleepRecord.bedTimeStart, sleepRecord.bedTimeEnd, sleepRecord.type, deviceId, userId, sleepRecord.getRawData()));
+                DBHelper.invalidateSessionIndex(session, deviceId, sleepRecord.bedTimeStart, sleepRecord.bedTimeEnd);
             }
             overlayDao.insertOrReplaceInTx(overlayList);
+            for (PebbleHealthActivityOverlay overlay : overlayList) {
+                DBHelper.notifySamplesWritten(overlay.getTimestampFrom(), overlay.getTimestampTo());
+            }
         } catch (Exception ex) {
             LOG.debug(ex.getMessage());
         }
@@ -24,6 +24,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.ParcelUuid;
+import android.util.Pair;
 import android.webkit.ValueCallback;
 import android.webkit.WebView;
 
@@ -44,6 +45,7 @@ import java.net.InetAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.UUID;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
@@ -72,6 +74,10 @@ import nodomain.freeyourgadget.gadgetbridge.util.WebViewSingleton;
 class PebbleIoThread extends GBDeviceIoThread {
     private static final Logger LOG = LoggerFactory.getLogger(PebbleIoThread.class);
 
+    // 0xfeed, 1, length before and 0xbeef after every message to the emulator
+    private static final int TCP_HEADER_LENGTH = 6;
+    private static final int TCP_FRAME_LENGTH = TCP_HEADER_LENGTH + 2;
+
     private final Prefs prefs = GBApplication.getPrefs();
 
     private final PebbleProtocol mPebbleProtocol;
@@ -86,6 +92,7 @@ class PebbleIoThread extends GBDeviceIoThread {
     private Socket mTCPSocket = null; // for emulator
     private InputStream mInStream = null;
     private OutputStream mOutStream = null;
+    private ByteBuffer mWriteBuffer = ByteBuffer.allocate(2048);
     private PebbleLESupport mPebbleLESupport;
 
     private boolean mQuit = false;
@@ -107,7 +114,7 @@ class PebbleIoThread extends GBDeviceIoThread {
     private void sendAppMessageJS(GBDeviceEventAppMessage appMessage) {
         sendAppMessage(appMessage);
         if (appMessage.type == GBDeviceEventAppMessage.TYPE_APPMESSAGE) {
-            write(mPebbleProtocol.encodeApplicationMessageAck(appMessage.appUUID, (byte) appMessage.id));
+            writeApplicationMessageAck(appMessage.appUUID, (byte) appMessage.id);
         }
     }
 
@@ -293,7 +300,7 @@ class PebbleIoThread extends GBDeviceIoThread {
                             if (bytes > 0) {
                                 GB.updateInstallNotification(getContext().getString(
                                         R.string.installing_binary_d_d, (mCurrentInstallableIndex + 1), mPebbleInstallables.length), true, (int) (((float) mBytesWritten / mBinarySize) * 100), getContext());
-                                writeInstallApp(mPebbleProtocol.encodeUploadChunk(mAppInstallToken, buffer, bytes));
+                                writeUploadChunk(mAppInstallToken, buffer, bytes);
                                 mBytesWritten += bytes;
                                 mAppInstallToken = -1;
                                 mInstallState = PebbleAppInstallState.WAIT_TOKEN;
@@ -431,22 +438,53 @@ class PebbleIoThread extends GBDeviceIoThread {
     }
 
 
+    /**
+     * Returns the reusable buffer for the next message of the given length, positioned
+     * where the message has to be encoded. Only use it while holding the lock of this thread.
+     */
+    private ByteBuffer obtainWriteBuffer(int length) {
+        int capacity = length + (mIsTCP ? TCP_FRAME_LENGTH : 0);
+        if (mWriteBuffer.capacity() < capacity) {
+            mWriteBuffer = ByteBuffer.allocate(Math.max(capacity, mWriteBuffer.capacity() * 2));
+        }
+        mWriteBuffer.clear();
+        mWriteBuffer.order(ByteOrder.BIG_ENDIAN);
+        if (mIsTCP) {
+            mWriteBuffer.position(TCP_HEADER_LENGTH);
+        }
+        return mWriteBuffer;
+    }
+
+    /**
+     * Writes the message encoded into the buffer returned by {@link #obtainWriteBuffer(int)},
+     * ending at the current position.
+     */
+    private void writeBuffer(ByteBuffer buf) {
+        int end = buf.position();
+        if (mIsTCP) {
+            buf.putShort(0, (short) 0xfeed);
+            buf.putShort(2, (short) 1);
+            buf.putShort(4, (short) (end - TCP_HEADER_LENGTH));
+            buf.putShort((short) 0xbeef);
+            end += 2;
+        }
+        write_real(buf.array(), end);
+    }
+
     private void write_real(byte[] bytes) {
+        if (mIsTCP) {
+            ByteBuffer buf = obtainWriteBuffer(bytes.length);
+            buf.put(bytes);
+            writeBuffer(buf);
+        } else {
+            write_real(bytes, bytes.length);
+        }
+    }
+
+    private void write_real(byte[] bytes, int length) {
         try {
-            if (mIsTCP) {
-                ByteBuffer buf = ByteBuffer.allocate(bytes.length + 8);
-                buf.order(ByteOrder.BIG_ENDIAN);
-                buf.putShort((short) 0xfeed);
-                buf.putShort((short) 1);
-                buf.putShort((short) bytes.length);
-                buf.put(bytes);
-                buf.putShort((short) 0xbeef);
-                mOutStream.write(buf.array());
-                mOutStream.flush();
-            } else {
-                mOutStream.write(bytes);
-                mOutStream.flush();
-            }
+            mOutStream.write(bytes, 0, length);
+            mOutStream.flush();
         } catch (IOException e) {
             LOG.error("Error writing.", e);
         }
@@ -456,13 +494,17 @@ class PebbleIoThread extends GBDeviceIoThread {
         }
     }
 
+    private boolean canWrite() {
+        // on FW < 3.0 block writes if app installation in in progress
+        return mIsConnected && (mPebbleProtocol.mFwMajor >= 3 || !mIsInstalling || mInstallState == PebbleAppInstallState.WAIT_SLOT);
+    }
+
     @Override
     synchronized public void write(byte[] bytes) {
         if (bytes == null) {
             return;
         }
-        // on FW < 3.0 block writes if app installation in in progress
-        if (!mIsConnected || (mPebbleProtocol.mFwMajor < 3 && mIsInstalling && mInstallState != PebbleAppInstallState.WAIT_SLOT)) {
+        if (!canWrite()) {
             return;
         }
         write_real(bytes);
@@ -588,6 +630,28 @@ class PebbleIoThread extends GBDeviceIoThread {
         mAppInstallToken = token;
     }
 
+    /**
+     * Same as write(encodeApplicationMessagePush(...)), but encodes into the reusable buffer.
+     */
+    synchronized void writeApplicationMessagePush(short endpoint, UUID uuid, ArrayList<Pair<Integer, Object>> pairs, Integer extId) {
+        if (!canWrite()) {
+            return;
+        }
+        int length = mPebbleProtocol.getApplicationMessagePushLength(pairs);
+        ByteBuffer buf = obtainWriteBuffer(length);
+        mPebbleProtocol.encodeApplicationMessagePush(buf, length, endpoint, uuid, pairs, extId);
+        writeBuffer(buf);
+    }
+
+    synchronized private void writeApplicationMessageAck(UUID uuid, byte id) {
+        if (!canWrite()) {
+            return;
+        }
+        ByteBuffer buf = obtainWriteBuffer(PebbleProtocol.LENGTH_APPLICATIONMESSAGE_ACK);
+        mPebbleProtocol.encodeApplicationMessageAck(buf, uuid, id);
+        writeBuffer(buf);
+    }
+
     private void setInstallSlot(int slot) {
         if (mIsInstalling) {
             mInstallSlot = slot;
@@ -602,6 +666,15 @@ class PebbleIoThread extends GBDeviceIoThread {
         write_real(bytes);
     }
 
+    synchronized private void writeUploadChunk(int token, byte[] buffer, int size) {
+        if (!mIsInstalling) {
+            return;
+        }
+        ByteBuffer buf = obtainWriteBuffer(mPebbleProtocol.getUploadChunkLength(size));
+        mPebbleProtocol.encodeUploadChunk(buf, token, buffer, size);
+        writeBuffer(buf);
+    }
+
     void installApp(Uri uri, int appId) {
         if (mIsInstalling) {
             return;
@@ -255,6 +255,8 @@ public class PebbleProtocol extends GBDeviceProtocol {
     static final byte TYPE_INT = 3;
 
     private final short LENGTH_PREFIX = 4;
+    private static final short LENGTH_UPLOADCHUNK = 9;
+    static final int LENGTH_APPLICATIONMESSAGE_ACK = 4 + 18;
 
     private static final byte LENGTH_UUID = 16;
 
@@ -1586,16 +1588,27 @@ public class PebbleProtocol extends GBDeviceProtocol {
     }
 
     byte[] encodeUploadChunk(int token, byte[] buffer, int size) {
-        final short LENGTH_UPLOADCHUNK = 9;
-        ByteBuffer buf = ByteBuffer.allocate(LENGTH_PREFIX + LENGTH_UPLOADCHUNK + size);
+        ByteBuffer buf = ByteBuffer.allocate(getUploadChunkLength(size));
         buf.order(ByteOrder.BIG_ENDIAN);
+        encodeUploadChunk(buf, token, buffer, size);
+        return buf.array();
+    }
+
+    int getUploadChunkLength(int size) {
+        return LENGTH_PREFIX + LENGTH_UPLOADCHUNK + size;
+    }
+
+    /**
+     * Encodes an upload chunk at the current position of the given big endian buffer,
+     * which must have {@link #getUploadChunkLength(int)} bytes remaining.
+     */
+    void encodeUploadChunk(ByteBuffer buf, int token, byte[] buffer, int size) {
         buf.putShort((short) (LENGTH_UPLOADCHUNK + size));
         buf.putShort(ENDPOINT_PUTBYTES);
         buf.put(PUTBYTES_SEND);
         buf.putInt(token);
         buf.putInt(size);
         buf.put(buffer, 0, size);
-        return buf.array();
     }
 
     byte[] encodeUploadCommit(int token, int crc) {
@@ -1681,20 +1694,26 @@ public class PebbleProtocol extends GBDeviceProtocol {
     }
 
     byte[] encodeApplicationMessageAck(UUID uuid, byte id) {
+        ByteBuffer buf = ByteBuffer.allocate(LENGTH_APPLICATIONMESSAGE_ACK);
+        buf.order(ByteOrder.BIG_ENDIAN);
+        encodeApplicationMessageAck(buf, uuid, id);
+        return buf.array();
+    }
+
+    /**
+     * Encodes an app message ack at the current position of the given big endian buffer,
+     * which must have {@link #LENGTH_APPLICATIONMESSAGE_ACK} bytes remaining.
+     */
+    void encodeApplicationMessageAck(ByteBuffer buf, UUID uuid, byte id) {
         if (uuid == null) {
             uuid = currentRunningApp;
         }
-        ByteBuffer buf = ByteBuffer.allocate(LENGTH_PREFIX + 18); // +ACK
-
-        buf.order(ByteOrder.BIG_ENDIAN);
         buf.putShort((short) 18);
         buf.putShort(ENDPOINT_APPLICATIONMESSAGE);
         buf.put(APPLICATIONMESSAGE_ACK);
         buf.put(id);
         buf.putLong(uuid.getMostSignificantBits());
         buf.putLong(uuid.getLeastSignificantBits());
-
-        return buf.array();
     }
 
     private byte[] encodePing(byte command, int cookie) {
@@ -1828,6 +1847,14 @@ public class PebbleProtocol extends GBDeviceProtocol {
     }
 
     byte[] encodeApplicationMessagePush(short endpoint, UUID uuid, ArrayList<Pair<Integer, Object>> pairs, Integer ext_id) {
+        int length = getApplicationMessagePushLength(pairs);
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        buf.order(ByteOrder.BIG_ENDIAN);
+        encodeApplicationMessagePush(buf, length, endpoint, uuid, pairs, ext_id);
+        return buf.array();
+    }
+
+    int getApplicationMessagePushLength(ArrayList<Pair<Integer, Object>> pairs) {
         int length = LENGTH_UUID + 3; // UUID + (PUSH + id + length of dict)
         for (Pair<Integer, Object> pair : pairs) {
             if (pair.first == null || pair.second == null)
@@ -1847,10 +1874,17 @@ public class PebbleProtocol extends GBDeviceProtocol {
                 LOG.warn("unknown type: " + pair.second.getClass().toString());
             }
         }
+        return LENGTH_PREFIX + length;
+    }
 
-        ByteBuffer buf = ByteBuffer.allocate(LENGTH_PREFIX + length);
-        buf.order(ByteOrder.BIG_ENDIAN);
-        buf.putShort((short) length);
+    /**
+     * Encodes an app message at the current position of the given big endian buffer.
+     *
+     * @param length the message length as returned by {@link #getApplicationMessagePushLength(ArrayList)}
+     */
+    void encodeApplicationMessagePush(ByteBuffer buf, int length, short endpoint, UUID uuid, ArrayList<Pair<Integer, Object>> pairs, Integer ext_id) {
+        int start = buf.position();
+        buf.putShort((short) (length - LENGTH_PREFIX));
         buf.putShort(endpoint); // 48 or 49
         buf.put(APPLICATIONMESSAGE_PUSH);
         buf.put(++last_id);
@@ -1876,10 +1910,10 @@ public class PebbleProtocol extends GBDeviceProtocol {
                 buf.putShort((short) 1); // length
                 buf.put((byte) pair.second);
             } else if (pair.second instanceof String) {
-                String str = (String) pair.second;
+                byte[] str = ((String) pair.second).getBytes();
                 buf.put(TYPE_CSTRING);
-                buf.putShort((short) (str.getBytes().length + 1));
-                buf.put(str.getBytes());
+                buf.putShort((short) (str.length + 1));
+                buf.put(str);
                 buf.put((byte) 0);
             } else if (pair.second instanceof byte[]) {
                 byte[] bytes = (byte[]) pair.second;
@@ -1888,10 +1922,10 @@ public class PebbleProtocol extends GBDeviceProtocol {
                 buf.put(bytes);
             }
         }
+        buf.order(ByteOrder.BIG_ENDIAN);
+        buf.position(start + length);
 
         idLookup[last_id & 0xff] = ext_id;
-
-        return buf.array();
     }
 
     byte[] encodeApplicationMessageFromJSON(UUID uuid, JSONArray jsonArray) {
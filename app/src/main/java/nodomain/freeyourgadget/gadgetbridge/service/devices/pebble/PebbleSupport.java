@@ -121,7 +121,7 @@ public class PebbleSupport extends AbstractSerialDeviceSupport {
                 }
                 pairs.add(new Pair<>(Integer.parseInt(keyStr), object));
             }
-            getDeviceIOThread().write(((PebbleProtocol) getDeviceProtocol()).encodeApplicationMessagePush(PebbleProtocol.ENDPOINT_APPLICATIONMESSAGE, uuid, pairs, id));
+            getDeviceIOThread().writeApplicationMessagePush(PebbleProtocol.ENDPOINT_APPLICATIONMESSAGE, uuid, pairs, id);
         } catch (JSONException e) {
             LOG.error("Error while parsing JSON", e);
         }
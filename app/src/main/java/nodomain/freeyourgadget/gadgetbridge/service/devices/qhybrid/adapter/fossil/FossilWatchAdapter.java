@@ -81,8 +81,26 @@ import static nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.QHybr
 import static nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.QHybridSupport.QHYBRID_EVENT_MULTI_BUTTON_PRESS;
 
 public class FossilWatchAdapter extends WatchAdapter {
-    private ArrayList<Request> requestQueue = new ArrayList<>();
-
+    private final RequestScheduler requestQueue = new RequestScheduler(new RequestScheduler.TimeoutListener() {
+        @Override
+        public void onRequestTimeout(Request request) {
+            synchronized (requestLock) {
+                if (request != fossilRequest) {
+                    return;
+                }
+                GB.log(request.getName() + " timed out", GB.WARN, null);
+                fossilRequest = null;
+                queueNextRequest();
+            }
+        }
+    });
+
+    /**
+     * Guards fossilRequest and the request queue, which are used from the GATT callbacks,
+     * the callers of queueWrite() and the request timeout on the main thread. Responses are
+     * handled by the request without holding it.
+     */
+    private final Object requestLock = new Object();
     private FossilRequest fossilRequest;
 
     private int MTU = 23;
@@ -154,16 +172,21 @@ public class FossilWatchAdapter extends WatchAdapter {
 
     @Override
     public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-        if (status != BluetoothGatt.GATT_SUCCESS) {
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            // file uploads write all packets before the watch answers, keep them from timing out
+            requestQueue.onRequestProgress();
+        } else {
             if (characteristic.getUuid().toString().equals("3dda0005-957f-7d4a-34a6-74696673696d")) {
                 GB.log("authentication failed", GB.ERROR, null);
                 setDeviceState(GBDevice.State.AUTHENTICATION_REQUIRED);
                 requestQueue.clear();
             }
             log("characteristic write failed: " + status);
-            fossilRequest = null;
+            synchronized (requestLock) {
+                setRunningRequest(null);
 
-            queueNextRequest();
+                queueNextRequest();
+            }
         }
     }
 
@@ -172,8 +195,11 @@ public class FossilWatchAdapter extends WatchAdapter {
         log("status " + status + " newState: " + newState);
         if (newState != BluetoothGatt.STATE_CONNECTED) {
             log("status " + newState + "  clearing queue...");
-            requestQueue.clear();
-            fossilRequest = null;
+            synchronized (requestLock) {
+                requestQueue.clear();
+                requestQueue.setPrioritized(false);
+                fossilRequest = null;
+            }
         }
     }
 
@@ -531,40 +557,51 @@ public class FossilWatchAdapter extends WatchAdapter {
             case "3dda0004-957f-7d4a-34a6-74696673696d":
             case "3dda0005-957f-7d4a-34a6-74696673696d":
             case "3dda0003-957f-7d4a-34a6-74696673696d": {
-                if (fossilRequest != null) {
-                    boolean requestFinished;
-                    try {
-                        if (characteristic.getUuid().toString().equals("3dda0003-957f-7d4a-34a6-74696673696d")) {
-                            byte requestType = (byte) (characteristic.getValue()[0] & 0x0F);
-
-                            if (requestType != 0x0A && requestType != fossilRequest.getType()) {
-                                // throw new RuntimeException("Answer type " + requestType + " does not match current request " + fossilRequest.getType());
-                            }
-                        }
+                FossilRequest request;
+                synchronized (requestLock) {
+                    request = fossilRequest;
+                    if (request == null) {
+                        queueNextRequest();
+                        return true;
+                    }
+                    requestQueue.onRequestProgress();
+                }
+                // handled without holding the lock, the request may store data
+                boolean requestFinished;
+                try {
+                    if (characteristic.getUuid().toString().equals("3dda0003-957f-7d4a-34a6-74696673696d")) {
+                        byte requestType = (byte) (characteristic.getValue()[0] & 0x0F);
 
-                        fossilRequest.handleResponse(characteristic);
-                        requestFinished = fossilRequest.isFinished();
-                    } catch (RuntimeException e) {
-                        if (characteristic.getUuid().toString().equals("3dda0005-957f-7d4a-34a6-74696673696d")) {
-                            GB.log("authentication failed", GB.ERROR, null);
-                            // setDeviceState(GBDevice.State.AUTHENTICATION_REQUIRED);
-                        }else {
-                            GB.log("error", GB.ERROR, e);
-                            getDeviceSupport().notifiyException(fossilRequest.getName(), e);
-                            GB.toast(fossilRequest.getName() + " failed", Toast.LENGTH_SHORT, GB.ERROR);
+                        if (requestType != 0x0A && requestType != request.getType()) {
+                            // throw new RuntimeException("Answer type " + requestType + " does not match current request " + request.getType());
                         }
+                    }
 
-                        requestFinished = true;
+                    request.handleResponse(characteristic);
+                    requestFinished = request.isFinished();
+                } catch (RuntimeException e) {
+                    if (characteristic.getUuid().toString().equals("3dda0005-957f-7d4a-34a6-74696673696d")) {
+                        GB.log("authentication failed", GB.ERROR, null);
+                        // setDeviceState(GBDevice.State.AUTHENTICATION_REQUIRED);
+                    }else {
+                        GB.log("error", GB.ERROR, e);
+                        getDeviceSupport().notifiyException(request.getName(), e);
+                        GB.toast(request.getName() + " failed", Toast.LENGTH_SHORT, GB.ERROR);
                     }
 
-                    if (requestFinished) {
-                        log(fossilRequest.getName() + " finished");
-                        fossilRequest = null;
-                    } else {
-                        return true;
+                    requestFinished = true;
+                }
+
+                if (requestFinished) {
+                    synchronized (requestLock) {
+                        // the request may have timed out or queued its successor meanwhile
+                        if (request == fossilRequest) {
+                            log(request.getName() + " finished");
+                            setRunningRequest(null);
+                            queueNextRequest();
+                        }
                     }
                 }
-                queueNextRequest();
             }
         }
         return true;
@@ -683,8 +720,13 @@ public class FossilWatchAdapter extends WatchAdapter {
         getDeviceSupport().getDevice().addDeviceInfo(new GenericItem(ITEM_MTU, String.valueOf(mtu)));
         getDeviceSupport().getDevice().sendDeviceUpdateIntent(getContext());
 
-        ((RequestMtuRequest) fossilRequest).setFinished(true);
-        queueNextRequest();
+        synchronized (requestLock) {
+            if (fossilRequest instanceof RequestMtuRequest) {
+                ((RequestMtuRequest) fossilRequest).setFinished(true);
+                setRunningRequest(null);
+            }
+            queueNextRequest();
+        }
     }
 
     public void queueWrite(RequestMtuRequest request, boolean priorise) {
@@ -698,7 +740,9 @@ public class FossilWatchAdapter extends WatchAdapter {
                     .requestMtu(512)
                     .queue(getDeviceSupport().getQueue());
 
-            this.fossilRequest = request;
+            synchronized (requestLock) {
+                setRunningRequest(request);
+            }
         }
     }
 
@@ -707,18 +751,20 @@ public class FossilWatchAdapter extends WatchAdapter {
     }
 
     public void queueWrite(SetDeviceStateRequest request, boolean priorise) {
-        if (fossilRequest != null && !fossilRequest.isFinished()) {
-            log("queing request: " + request.getName());
-            if (priorise) {
-                requestQueue.add(0, request);
-            } else {
-                requestQueue.add(request);
+        synchronized (requestLock) {
+            if (fossilRequest != null && !fossilRequest.isFinished()) {
+                log("queing request: " + request.getName());
+                requestQueue.enqueue(request, priorise);
+                return;
             }
-            return;
+            log("setting device state: " + request.getDeviceState());
+            setDeviceState(request.getDeviceState());
+            if (request.getDeviceState() == GBDevice.State.INITIALIZED) {
+                // the watch is configured, requests queued from now on may overtake each other
+                requestQueue.setPrioritized(true);
+            }
+            queueNextRequest();
         }
-        log("setting device state: " + request.getDeviceState());
-        setDeviceState(request.getDeviceState());
-        queueNextRequest();
     }
 
     private void setDeviceState(GBDevice.State state) {
@@ -732,22 +778,20 @@ public class FossilWatchAdapter extends WatchAdapter {
             log("dropping requetst " + request.getName());
             return;
         }
-        if (fossilRequest != null && !fossilRequest.isFinished()) {
-            log("queing request: " + request.getName());
-            if (priorise) {
-                requestQueue.add(0, request);
-            } else {
-                requestQueue.add(request);
+        synchronized (requestLock) {
+            if (fossilRequest != null && !fossilRequest.isFinished()) {
+                log("queing request: " + request.getName());
+                requestQueue.enqueue(request, priorise);
+                return;
             }
-            return;
-        }
-        log("executing request: " + request.getName());
-        this.fossilRequest = request;
-        new TransactionBuilder(request.getClass().getSimpleName()).write(getDeviceSupport().getCharacteristic(request.getRequestUUID()), request.getRequestData()).queue(getDeviceSupport().getQueue());
+            log("executing request: " + request.getName());
+            setRunningRequest(request);
+            new TransactionBuilder(request.getClass().getSimpleName()).write(getDeviceSupport().getCharacteristic(request.getRequestUUID()), request.getRequestData()).queue(getDeviceSupport().getQueue());
 
-        if (request.isFinished()) {
-            this.fossilRequest = null;
-            queueNextRequest();
+            if (request.isFinished()) {
+                setRunningRequest(null);
+                queueNextRequest();
+            }
         }
     }
 
@@ -759,7 +803,9 @@ public class FossilWatchAdapter extends WatchAdapter {
         }
         new TransactionBuilder(request.getClass().getSimpleName()).write(getDeviceSupport().getCharacteristic(request.getRequestUUID()), request.getRequestData()).queue(getDeviceSupport().getQueue());
 
-        queueNextRequest();
+        synchronized (requestLock) {
+            queueNextRequest();
+        }
     }
 
     protected void queueWrite(Request request) {
@@ -776,12 +822,17 @@ public class FossilWatchAdapter extends WatchAdapter {
         else queueWrite(request, false);
     }
 
+    private void setRunningRequest(FossilRequest request) {
+        this.fossilRequest = request;
+        requestQueue.setRunningRequest(request);
+    }
+
     private void queueNextRequest() {
-        try {
-            Request request = requestQueue.remove(0);
-            queueWrite(request);
-        } catch (IndexOutOfBoundsException e) {
+        Request request = requestQueue.poll();
+        if (request == null) {
             log("requestsQueue empty");
+            return;
         }
+        queueWrite(request);
     }
 }
@@ -0,0 +1,244 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.adapter.fossil;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.file.FileHandle;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.CoalescingRequest;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.Request;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil.file.FileLookupRequest;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil.notification.PlayNotificationRequest;
+import nodomain.freeyourgadget.gadgetbridge.util.Metrics;
+
+/**
+ * Queue of the requests waiting for the currently running request of a
+ * {@link FossilWatchAdapter}.
+ *
+ * Requests are ordered by {@link Priority} and FIFO within the same priority. Until
+ * {@link #setPrioritized(boolean)} is called, e.g. while the watch is being initialized,
+ * requests are sent in the order they were queued, so that a notification does not reach
+ * the watch before it is configured. A queued {@link CoalescingRequest} is replaced by a
+ * newer one with the same key, so only the latest value is sent. The scheduler also watches
+ * the running request and reports it through {@link TimeoutListener} if it makes no progress
+ * for {@link #REQUEST_TIMEOUT_MILLIS}.
+ */
+public class RequestScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestScheduler.class);
+
+    private static final Metrics.Timer QUEUE_WAIT = Metrics.timer("fossil.queue.wait");
+    private static final Metrics.Histogram QUEUE_DEPTH = Metrics.histogram("fossil.queue.depth", "requests");
+    private static final Metrics.Counter COALESCED = Metrics.counter("fossil.queue.coalesced");
+    private static final Metrics.Counter TIMEOUTS = Metrics.counter("fossil.request.timeouts");
+
+    public static final long REQUEST_TIMEOUT_MILLIS = 30000;
+
+    public enum Priority {
+        /**
+         * Requests explicitly queued in front, e.g. follow-ups of a running request.
+         */
+        IMMEDIATE,
+        NOTIFICATION,
+        CONFIGURATION,
+        BACKGROUND
+    }
+
+    /**
+     * Called on the main thread, so the listener has to synchronize with the threads
+     * running the requests.
+     */
+    public interface TimeoutListener {
+        void onRequestTimeout(Request request);
+    }
+
+    private static class Entry {
+        Request request;
+        final long queuedAt;
+
+        Entry(Request request) {
+            this.request = request;
+            this.queuedAt = Metrics.start();
+        }
+    }
+
+    private final ArrayDeque<Entry>[] queues;
+    /**
+     * The requests queued before the priorities were enabled, in their order.
+     */
+    private final ArrayDeque<Entry> unprioritized = new ArrayDeque<>();
+    private boolean prioritized;
+    private final TimeoutListener timeoutListener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Request runningRequest;
+    private final Runnable timeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Request request;
+            synchronized (RequestScheduler.this) {
+                request = runningRequest;
+                runningRequest = null;
+            }
+            if (request != null) {
+                TIMEOUTS.inc();
+                LOG.warn("request " + request.getName() + " timed out");
+                timeoutListener.onRequestTimeout(request);
+            }
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    public RequestScheduler(TimeoutListener timeoutListener) {
+        this.timeoutListener = timeoutListener;
+        queues = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+    }
+
+    public synchronized void enqueue(Request request, boolean priorise) {
+        if (request instanceof CoalescingRequest && replaceQueued((CoalescingRequest) request)) {
+            COALESCED.inc();
+            LOG.debug("coalesced request " + request.getName());
+            return;
+        }
+        Entry entry = new Entry(request);
+        if (priorise) {
+            queues[Priority.IMMEDIATE.ordinal()].addFirst(entry);
+        } else if (prioritized) {
+            queues[getPriority(request).ordinal()].addLast(entry);
+        } else {
+            unprioritized.addLast(entry);
+        }
+        QUEUE_DEPTH.record(size());
+    }
+
+    /**
+     * Removes and returns the next request to run, or null if the queue is empty.
+     */
+    public synchronized Request poll() {
+        Entry entry = queues[Priority.IMMEDIATE.ordinal()].pollFirst();
+        if (entry == null) {
+            entry = unprioritized.pollFirst();
+        }
+        if (entry != null) {
+            QUEUE_WAIT.stop(entry.queuedAt);
+            return entry.request;
+        }
+        for (ArrayDeque<Entry> queue : queues) {
+            entry = queue.pollFirst();
+            if (entry != null) {
+                QUEUE_WAIT.stop(entry.queuedAt);
+                return entry.request;
+            }
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        int size = unprioritized.size();
+        for (ArrayDeque<Entry> queue : queues) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    public synchronized void clear() {
+        for (ArrayDeque<Entry> queue : queues) {
+            queue.clear();
+        }
+        unprioritized.clear();
+        setRunningRequest(null);
+    }
+
+    /**
+     * Enables or disables ordering the requests by priority. The requests that were queued
+     * while it was disabled are sorted in, keeping their order within the same priority.
+     */
+    public synchronized void setPrioritized(boolean prioritized) {
+        this.prioritized = prioritized;
+        if (prioritized) {
+            Entry entry;
+            while ((entry = unprioritized.pollFirst()) != null) {
+                queues[getPriority(entry.request).ordinal()].addLast(entry);
+            }
+        }
+    }
+
+    /**
+     * Sets the request that is currently waiting for answers of the watch and (re)starts
+     * its timeout. Pass null when the request finished.
+     */
+    public synchronized void setRunningRequest(Request request) {
+        handler.removeCallbacks(timeoutRunnable);
+        runningRequest = request;
+        if (request != null) {
+            handler.postDelayed(timeoutRunnable, REQUEST_TIMEOUT_MILLIS);
+        }
+    }
+
+    /**
+     * Restarts the timeout of the running request, e.g. when the watch answered or a packet
+     * of a file upload was written.
+     */
+    public synchronized void onRequestProgress() {
+        if (runningRequest != null) {
+            handler.removeCallbacks(timeoutRunnable);
+            handler.postDelayed(timeoutRunnable, REQUEST_TIMEOUT_MILLIS);
+        }
+    }
+
+    private boolean replaceQueued(CoalescingRequest request) {
+        String key = request.getCoalescingKey();
+        if (replaceQueued(unprioritized, key, request)) {
+            return true;
+        }
+        for (ArrayDeque<Entry> queue : queues) {
+            if (replaceQueued(queue, key, request)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean replaceQueued(ArrayDeque<Entry> queue, String key, CoalescingRequest request) {
+        for (Entry entry : queue) {
+            if (entry.request instanceof CoalescingRequest
+                    && key.equals(((CoalescingRequest) entry.request).getCoalescingKey())) {
+                entry.request = (Request) request;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Priority getPriority(Request request) {
+        if (request instanceof PlayNotificationRequest) {
+            return Priority.NOTIFICATION;
+        }
+        if (request instanceof FileLookupRequest
+                && ((FileLookupRequest) request).getFileHandle() == FileHandle.ACTIVITY_FILE) {
+            return Priority.BACKGROUND;
+        }
+        return Priority.CONFIGURATION;
+    }
+}
@@ -19,13 +19,11 @@ package nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.adapter.fos
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
@@ -37,6 +35,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -54,14 +53,15 @@ import java.util.regex.Pattern;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.activities.devicesettings.DeviceSettingsPreferenceConst;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventCallControl;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventFindPhone;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventMusicControl;
+import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleWriter;
 import nodomain.freeyourgadget.gadgetbridge.devices.qhybrid.HRConfigActivity;
 import nodomain.freeyourgadget.gadgetbridge.devices.qhybrid.HybridHRActivitySampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.devices.qhybrid.NotificationHRConfiguration;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.HybridHRActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.externalevents.NotificationListener;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
@@ -138,7 +138,7 @@ public class FossilHRWatchAdapter extends FossilWatchAdapter {
 
     private boolean saveRawActivityFiles = false;
 
-    HashMap<String, Bitmap> appIconCache = new HashMap<>();
+    private static final int NOTIFICATION_WIDGET_ICON_SIZE = 40;
     String lastPostedApp = null;
 
     enum CONNECTION_MODE {
@@ -430,7 +430,7 @@ public class FossilHRWatchAdapter extends FossilWatchAdapter {
 
                         if (this.lastPostedApp != null) {
 
-                            Bitmap icon = appIconCache.get(this.lastPostedApp);
+                            Bitmap icon = GBApplication.getAppIconCache().getIconBitmap(this.lastPostedApp, NOTIFICATION_WIDGET_ICON_SIZE);
 
                             if (icon != null) {
 
@@ -730,25 +730,67 @@ public class FossilHRWatchAdapter extends FossilWatchAdapter {
             @Override
             public void handleFileLookup(final short fileHandle) {
                 queueWrite((FileEncryptedInterface) new FileEncryptedGetRequest(fileHandle, FossilHRWatchAdapter.this) {
+                    private SampleWriter<HybridHRActivitySample> sampleWriter;
+                    private ByteArrayOutputStream rawFile;
+
                     @Override
-                    public void handleFileData(byte[] fileData) {
-                        try (DBHandler dbHandler = GBApplication.acquireDB()) {
-                            ActivityFileParser parser = new ActivityFileParser();
-                            ArrayList<ActivityEntry> entries = parser.parseFile(fileData);
-                            HybridHRActivitySampleProvider provider = new HybridHRActivitySampleProvider(getDeviceSupport().getDevice(), dbHandler.getDaoSession());
-
-                            HybridHRActivitySample[] samples = new HybridHRActivitySample[entries.size()];
-
-                            Long userId = DBHelper.getUser(dbHandler.getDaoSession()).getId();
-                            Long deviceId = DBHelper.getDevice(getDeviceSupport().getDevice(), dbHandler.getDaoSession()).getId();
-                            for (int i = 0; i < entries.size(); i++) {
-                                samples[i] = entries.get(i).toDAOActivitySample(userId, deviceId);
+                    protected FileChunkConsumer createFileChunkConsumer(int fileSize) {
+                        sampleWriter = new SampleWriter<HybridHRActivitySample>(getDeviceSupport().getDevice(), new SampleWriter.ProviderFactory<HybridHRActivitySample>() {
+                            @Override
+                            public AbstractSampleProvider<HybridHRActivitySample> createProvider(GBDevice device, DaoSession session) {
+                                return new HybridHRActivitySampleProvider(device, session);
+                            }
+                        }) {
+                            @Override
+                            protected HybridHRActivitySample mergeSample(HybridHRActivitySample current, HybridHRActivitySample update) {
+                                // activity files contain complete records
+                                return update;
+                            }
+                        };
+                        rawFile = saveRawActivityFiles ? new ByteArrayOutputStream(fileSize) : null;
+                        boolean staged = true;
+                        try {
+                            sampleWriter.begin();
+                        } catch (Exception e) {
+                            // the samples are then kept until the checksum was verified
+                            GB.log("error preparing the activity sample undo tables", GB.WARN, e);
+                            staged = false;
+                        }
+                        final boolean flushWhenFull = staged;
+                        final ActivityFileParser parser = new ActivityFileParser(fileSize, new ActivityFileParser.EntryListener() {
+                            @Override
+                            public void onActivityEntry(ActivityEntry entry) {
+                                // user and device are set by the writer. The samples written
+                                // before the checksum was verified are rolled back if it fails
+                                sampleWriter.add(entry.toDAOActivitySample(0, 0));
+                                if (flushWhenFull && sampleWriter.isFull()) {
+                                    try {
+                                        sampleWriter.flush();
+                                    } catch (Exception e) {
+                                        // the samples are kept and written with the rest of the file
+                                        GB.log("error writing activity samples", GB.WARN, e);
+                                    }
+                                }
+                            }
+                        });
+                        return new FileChunkConsumer() {
+                            @Override
+                            public void onFileChunk(byte[] data, int offset, int length) {
+                                parser.parse(data, offset, length);
+                                if (rawFile != null) {
+                                    rawFile.write(data, offset, length);
+                                }
                             }
+                        };
+                    }
 
-                            provider.addGBActivitySamples(samples);
+                    @Override
+                    protected void handleFileStreamed() {
+                        try {
+                            sampleWriter.commit();
 
-                            if (saveRawActivityFiles) {
-                                writeFile(String.valueOf(System.currentTimeMillis()), fileData);
+                            if (rawFile != null) {
+                                writeFile(String.valueOf(System.currentTimeMillis()), rawFile.toByteArray());
                             }
                             queueWrite(new FileDeleteRequest(fileHandle));
                             GB.toast("synced activity data", Toast.LENGTH_SHORT, GB.INFO);
@@ -758,6 +800,16 @@ public class FossilHRWatchAdapter extends FossilWatchAdapter {
                         }
                         getDeviceSupport().getDevice().sendDeviceUpdateIntent(getContext());
                     }
+
+                    @Override
+                    protected void handleFileStreamFailed() {
+                        try {
+                            sampleWriter.rollback();
+                        } catch (Exception e) {
+                            // rolled back with the next sync instead
+                            GB.log("error rolling back activity samples", GB.WARN, e);
+                        }
+                    }
                 });
             }
 
@@ -830,20 +882,6 @@ public class FossilHRWatchAdapter extends FossilWatchAdapter {
 
         if (isNotificationWidgetVisible() && sourceAppId != null) {
             if (!sourceAppId.equals(this.lastPostedApp)) {
-                if (appIconCache.get(sourceAppId) == null) {
-                    try {
-                        PackageManager pm = getContext().getPackageManager();
-                        Drawable icon = pm.getApplicationIcon(sourceAppId);
-
-                        Bitmap iconBitmap = Bitmap.createBitmap(40, 40, Bitmap.Config.ARGB_8888);
-                        icon.setBounds(0, 0, 40, 40);
-                        icon.draw(new Canvas(iconBitmap));
-
-                        appIconCache.put(sourceAppId, iconBitmap);
-                    } catch (PackageManager.NameNotFoundException e) {
-                        e.printStackTrace();
-                    }
-                }
                 this.lastPostedApp = sourceAppId;
                 renderWidgets();
             }
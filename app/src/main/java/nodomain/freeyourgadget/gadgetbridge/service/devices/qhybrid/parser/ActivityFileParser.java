@@ -16,11 +16,25 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.parser;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
 
+/**
+ * Incremental parser for activity files of the Fossil HR.
+ *
+ * The file content can be pushed in chunks of any size through
+ * {@link #parse(byte[], int, int)}, e.g. while it is still being transferred. Entries are
+ * passed to the {@link EntryListener} as soon as they are complete; records split across
+ * chunks are buffered until the rest arrives.
+ */
 public class ActivityFileParser {
+    public interface EntryListener {
+        void onActivityEntry(ActivityEntry entry);
+    }
+
+    private static final int HEADER_LENGTH = 20;
+    private static final int TRAILER_LENGTH = 4;
+    private static final int MAX_RECORD_LENGTH = 10;
+
     // state flags;
     int heartRateQuality;
     ActivityEntry.WEARING_STATE wearingState = ActivityEntry.WEARING_STATE.UNKNOWN;
@@ -28,56 +42,143 @@ public class ActivityFileParser {
     ActivityEntry currentSample = null;
     int currentId = 1;
 
+    private int fileLength;
+    private EntryListener listener;
+
+    private int position = 0;
+    private boolean headerParsed = false;
+    private final byte[] pending = new byte[Math.max(HEADER_LENGTH, MAX_RECORD_LENGTH)];
+    private int pendingLength = 0;
+
+    public ActivityFileParser() {
+    }
+
+    /**
+     * @param fileLength the length of the whole file, needed to skip its trailing checksum
+     */
+    public ActivityFileParser(int fileLength, EntryListener listener) {
+        this.fileLength = fileLength;
+        this.listener = listener;
+    }
+
     public ArrayList<ActivityEntry> parseFile(byte[] file) {
-        ByteBuffer buffer = ByteBuffer.wrap(file);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        final ArrayList<ActivityEntry> samples = new ArrayList<>();
+        this.fileLength = file.length;
+        this.listener = new EntryListener() {
+            @Override
+            public void onActivityEntry(ActivityEntry entry) {
+                samples.add(entry);
+            }
+        };
+        parse(file, 0, file.length);
+        return samples;
+    }
 
-        // read file version
-        short version = buffer.getShort(2);
-        if (version != 22) throw new RuntimeException("File version " + version + ", 16 required");
+    /**
+     * Parses the next chunk of the file.
+     */
+    public void parse(byte[] data, int offset, int length) {
+        int end = offset + length;
+        while (offset < end) {
+            int needed;
+            if (!headerParsed) {
+                needed = HEADER_LENGTH;
+            } else if (pendingLength > 0) {
+                needed = getRecordLength(pending[0]);
+            } else if (position >= fileLength - TRAILER_LENGTH) {
+                // only the checksum is left
+                position += end - offset;
+                return;
+            } else {
+                needed = getRecordLength(data[offset]);
+            }
 
-        int startTime = buffer.getInt(8);
-        short timeOffsetMinutes = buffer.getShort(12);
+            if (pendingLength == 0 && end - offset >= needed) {
+                handleUnit(data, offset);
+                offset += needed;
+                position += needed;
+                continue;
+            }
 
-        short fileId = buffer.getShort(16);
+            int count = Math.min(needed - pendingLength, end - offset);
+            System.arraycopy(data, offset, pending, pendingLength, count);
+            pendingLength += count;
+            offset += count;
+            position += count;
+            if (pendingLength == needed) {
+                pendingLength = 0;
+                handleUnit(pending, 0);
+            }
+        }
+    }
 
-        buffer.position(20);
+    private void handleUnit(byte[] data, int offset) {
+        if (!headerParsed) {
+            parseHeader(data, offset);
+            headerParsed = true;
+            return;
+        }
+        byte next = data[offset];
+        if (parseFlag(next, data, offset + 1)) {
+            return;
+        }
 
-        ArrayList<ActivityEntry> samples = new ArrayList<>();
-        finishCurrentPacket(samples);
+        if (currentSample != null) {
+            parseVariabilityBytes(next, data[offset + 1]);
 
-        while (buffer.position() < buffer.capacity() - 4) {
-            byte next = buffer.get();
+            int heartRate = data[offset + 2] & 0xFF;
+            int calories = data[offset + 3] & 0xFF;
+            boolean isActive = (calories & 0x40) == 0x40; // upper two bits
+            calories &= 0x3F; // delete upper two bits
 
-            if (paraseFlag(next, buffer, samples)) continue;
+            currentSample.heartRate = heartRate;
+            currentSample.calories = calories;
+            currentSample.isActive = isActive;
+            finishCurrentPacket();
+        }
+    }
 
-            if(currentSample != null) {
-                parseVariabilityBytes(next, buffer.get());
+    private void parseHeader(byte[] data, int offset) {
+        // read file version
+        short version = getShort(data, offset + 2);
+        if (version != 22) throw new RuntimeException("File version " + version + ", 16 required");
 
-                int heartRate = buffer.get() & 0xFF;
-                int calories = buffer.get() & 0xFF;
-                boolean isActive = (calories & 0x40) == 0x40; // upper two bits
-                calories &= 0x3F; // delete upper two bits
+        // start time (offset 8), time offset in minutes (12) and file id (16) are not used yet
 
-                currentSample.heartRate = heartRate;
-                currentSample.calories = calories;
-                currentSample.isActive = isActive;
-                finishCurrentPacket(samples);
-            }
+        finishCurrentPacket();
+    }
+
+    private static int getRecordLength(byte flag) {
+        switch (flag) {
+            case (byte) 0xE2:
+                return 10;
+            case (byte) 0xCA:
+            case (byte) 0xCB:
+            case (byte) 0xCC:
+            case (byte) 0xCD:
+            case (byte) 0xCE:
+            case (byte) 0xCF:
+            case (byte) 0xDE:
+            case (byte) 0xDF:
+            case (byte) 0xE1:
+            case (byte) 0xDD:
+            case (byte) 0xFD:
+            case (byte) 0xFE:
+                return 2;
+            default:
+                return 4;
         }
-        return samples;
     }
 
-    private boolean paraseFlag(byte flag, ByteBuffer buffer, ArrayList<ActivityEntry> samples) {
+    private boolean parseFlag(byte flag, byte[] data, int offset) {
         switch (flag) {
             case (byte) 0xCA:
             case (byte) 0xCB:
             case (byte) 0xCC:
             case (byte) 0xCD:
-                buffer.get();
                 break;
             case (byte) 0xCE:
-                byte arg = buffer.get();
+                byte arg = data[offset];
                 byte wearBits = (byte)((arg & 0b00011000) >> 3);
                 if(wearBits == 0) this.wearingState = ActivityEntry.WEARING_STATE.NOT_WEARING;
                 else if(wearBits == 1) this.wearingState = ActivityEntry.WEARING_STATE.WEARING;
@@ -90,23 +191,20 @@ public class ActivityFileParser {
             case (byte) 0xDE:
             case (byte) 0xDF:
             case (byte) 0xE1:
-                buffer.get();
                 break;
             case (byte) 0xE2:
-                byte type = buffer.get();
-                int timestamp = buffer.getInt();
-                short duration = buffer.getShort();
-                short minutesOffset = buffer.getShort();
+                byte type = data[offset];
+                int timestamp = getInt(data, offset + 1);
+                // followed by the duration and the offset in minutes, both shorts
                 if (type == 0x04) {
                     this.currentTimestamp = timestamp;
                 }
                 break;
             case (byte) 0xDD:
             case (byte) 0xFD:
-                buffer.get();
                 break;
             case (byte) 0xFE:
-                byte arg2 = buffer.get();
+                byte arg2 = data[offset];
                 if(arg2 == (byte) 0xFE) {
                     // this.currentSample = new ActivitySample();
                     // this.currentSample.id = currentId++;
@@ -137,16 +235,24 @@ public class ActivityFileParser {
         }
     }
 
-    private void finishCurrentPacket(ArrayList<ActivityEntry> samples) {
+    private void finishCurrentPacket() {
         if (currentSample != null) {
             currentSample.timestamp = currentTimestamp;
             currentSample.heartRateQuality = this.heartRateQuality;
             currentSample.wearingState = wearingState;
             currentTimestamp += 60;
-            samples.add(currentSample);
+            listener.onActivityEntry(currentSample);
             currentSample = null;
         }
         this.currentSample = new ActivityEntry();
         this.currentSample.id = currentId++;
     }
+
+    private static short getShort(byte[] data, int offset) {
+        return (short) ((data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8);
+    }
+
+    private static int getInt(byte[] data, int offset) {
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8 | (data[offset + 2] & 0xff) << 16 | (data[offset + 3] & 0xff) << 24;
+    }
 }
@@ -19,14 +19,16 @@ package nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fo
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.adapter.fossil.FossilWatchAdapter;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.file.FileHandle;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.CoalescingRequest;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil.file.FilePutRequest;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
-public class ConfigurationPutRequest extends FilePutRequest {
+public class ConfigurationPutRequest extends FilePutRequest implements CoalescingRequest {
     private static final HashMap<Short, Class<? extends ConfigItem>> itemsById = new HashMap<>();
 
     static {
@@ -73,12 +75,20 @@ public class ConfigurationPutRequest extends FilePutRequest {
         return configItems.toArray(new ConfigItem[0]);
     }
 
+    private final String coalescingKey;
+
     public ConfigurationPutRequest(ConfigItem item, FossilWatchAdapter adapter) {
-        super(FileHandle.CONFIGURATION, createFileContent(new ConfigItem[]{item}), adapter);
+        this(new ConfigItem[]{item}, adapter);
     }
 
     public ConfigurationPutRequest(ConfigItem[] items, FossilWatchAdapter adapter) {
         super(FileHandle.CONFIGURATION, createFileContent(items), adapter);
+        this.coalescingKey = ConfigItem.createCoalescingKey(items);
+    }
+
+    @Override
+    public String getCoalescingKey() {
+        return coalescingKey;
     }
 
     private static byte[] createFileContent(ConfigItem[] items) {
@@ -98,6 +108,18 @@ public class ConfigurationPutRequest extends FilePutRequest {
     }
 
     public static abstract class ConfigItem {
+        /**
+         * Requests writing the same set of config items replace each other.
+         */
+        public static String createCoalescingKey(ConfigItem[] items) {
+            short[] ids = new short[items.length];
+            for (int i = 0; i < items.length; i++) {
+                ids[i] = items[i].getId();
+            }
+            Arrays.sort(ids);
+            return "configuration" + Arrays.toString(ids);
+        }
+
         public abstract int getItemSize();
 
         public abstract short getId();
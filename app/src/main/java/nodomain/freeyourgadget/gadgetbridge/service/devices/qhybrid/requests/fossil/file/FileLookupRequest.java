@@ -31,6 +31,7 @@ import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fos
 public abstract class FileLookupRequest extends FossilRequest {
     private short handle = -1;
     private byte fileType;
+    private final FileHandle fileHandle;
 
     private FossilWatchAdapter adapter;
 
@@ -41,6 +42,7 @@ public abstract class FileLookupRequest extends FossilRequest {
     protected boolean finished = false;
 
     public FileLookupRequest(FileHandle fileHandle, FossilWatchAdapter adapter) {
+        this.fileHandle = fileHandle;
         this.fileType = fileHandle.getMajorHandle();
         this.adapter = adapter;
 
@@ -54,6 +56,10 @@ public abstract class FileLookupRequest extends FossilRequest {
         return adapter;
     }
 
+    public FileHandle getFileHandle() {
+        return fileHandle;
+    }
+
     public short getHandle() {
         if(!finished){
             throw new UnsupportedOperationException("File lookup not finished");
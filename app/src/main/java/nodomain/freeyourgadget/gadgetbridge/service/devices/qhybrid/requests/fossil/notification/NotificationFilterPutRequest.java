@@ -24,10 +24,16 @@ import java.util.zip.CRC32;
 import nodomain.freeyourgadget.gadgetbridge.devices.qhybrid.NotificationConfiguration;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.adapter.fossil.FossilWatchAdapter;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.file.FileHandle;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.CoalescingRequest;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil.file.FileCloseAndPutRequest;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil.file.FilePutRequest;
 
-public class NotificationFilterPutRequest extends FilePutRequest {
+public class NotificationFilterPutRequest extends FilePutRequest implements CoalescingRequest {
+    @Override
+    public String getCoalescingKey() {
+        return "notification_filter";
+    }
+
     public NotificationFilterPutRequest(NotificationConfiguration[] configs, FossilWatchAdapter adapter) {
         super(FileHandle.NOTIFICATION_FILTER, createFile(configs), adapter);
     }
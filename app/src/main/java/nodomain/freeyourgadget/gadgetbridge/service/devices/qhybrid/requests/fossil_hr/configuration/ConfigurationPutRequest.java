@@ -20,16 +20,25 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.adapter.fossil_hr.FossilHRWatchAdapter;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.CoalescingRequest;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil.configuration.ConfigurationPutRequest.ConfigItem;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil_hr.file.FileEncryptedPutRequest;
 
-public class ConfigurationPutRequest extends FileEncryptedPutRequest {
+public class ConfigurationPutRequest extends FileEncryptedPutRequest implements CoalescingRequest {
+    private final String coalescingKey;
+
     public ConfigurationPutRequest(ConfigItem item, FossilHRWatchAdapter adapter) {
-        super((short) 0x0800, createFileContent(new ConfigItem[]{item}), adapter);
+        this(new ConfigItem[]{item}, adapter);
     }
 
     public ConfigurationPutRequest(ConfigItem[] items, FossilHRWatchAdapter adapter) {
         super((short) 0x0800, createFileContent(items), adapter);
+        this.coalescingKey = ConfigItem.createCoalescingKey(items);
+    }
+
+    @Override
+    public String getCoalescingKey() {
+        return coalescingKey;
     }
 
     private static byte[] createFileContent(ConfigItem[] items) {
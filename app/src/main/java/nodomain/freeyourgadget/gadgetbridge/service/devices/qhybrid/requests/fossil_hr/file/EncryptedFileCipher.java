@@ -0,0 +1,92 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil_hr.file;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AES-CTR as used for encrypted file transfers with the Fossil HR.
+ *
+ * The watch starts every packet at its own counter, which is the initial counter plus a
+ * per-packet offset. Instead of re-initializing an AES/CTR cipher for every packet, the
+ * keystream is generated from a single AES/ECB cipher for any counter offset.
+ */
+public class EncryptedFileCipher {
+    private static final int BLOCK_SIZE = 16;
+
+    private final Cipher cipher;
+    private final byte[] iv;
+    private final byte[] counter = new byte[BLOCK_SIZE];
+    private final byte[] keystream = new byte[BLOCK_SIZE];
+
+    public EncryptedFileCipher(byte[] key, byte[] phoneRandomNumber, byte[] watchRandomNumber) throws GeneralSecurityException {
+        cipher = Cipher.getInstance("AES/ECB/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        iv = createIv(phoneRandomNumber, watchRandomNumber);
+    }
+
+    static byte[] createIv(byte[] phoneRandomNumber, byte[] watchRandomNumber) {
+        byte[] iv = new byte[BLOCK_SIZE];
+        System.arraycopy(phoneRandomNumber, 0, iv, 2, 6);
+        System.arraycopy(watchRandomNumber, 0, iv, 9, 7);
+        iv[7]++;
+        return iv;
+    }
+
+    /**
+     * Encrypts or decrypts {@code length} bytes of {@code data} in place, with the keystream
+     * starting at the initial counter plus {@code counterOffset}. Like the watch, the offset
+     * is added to the lower 32 bits of the counter only.
+     */
+    public void apply(byte[] data, int offset, int length, int counterOffset) throws GeneralSecurityException {
+        System.arraycopy(iv, 0, counter, 0, BLOCK_SIZE);
+        int low = ((iv[12] & 0xff) << 24 | (iv[13] & 0xff) << 16 | (iv[14] & 0xff) << 8 | (iv[15] & 0xff)) + counterOffset;
+        counter[12] = (byte) (low >>> 24);
+        counter[13] = (byte) (low >>> 16);
+        counter[14] = (byte) (low >>> 8);
+        counter[15] = (byte) low;
+
+        for (int done = 0; done < length; done += BLOCK_SIZE) {
+            cipher.doFinal(counter, 0, BLOCK_SIZE, keystream, 0);
+            int count = Math.min(BLOCK_SIZE, length - done);
+            for (int i = 0; i < count; i++) {
+                data[offset + done + i] ^= keystream[i];
+            }
+            increment(counter);
+        }
+    }
+
+    /**
+     * Decrypts only the first byte of a packet with the given counter offset.
+     */
+    public byte decryptFirstByte(byte value, int counterOffset) throws GeneralSecurityException {
+        byte[] single = new byte[]{value};
+        apply(single, 0, 1, counterOffset);
+        return single[0];
+    }
+
+    private static void increment(byte[] counter) {
+        for (int i = counter.length - 1; i >= 0; i--) {
+            if (++counter[i] != 0) {
+                return;
+            }
+        }
+    }
+}
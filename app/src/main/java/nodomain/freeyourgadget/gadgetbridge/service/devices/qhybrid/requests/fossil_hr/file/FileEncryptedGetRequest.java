@@ -21,40 +21,35 @@ import android.widget.Toast;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.security.GeneralSecurityException;
 import java.util.UUID;
 import java.util.zip.CRC32;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
-
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.adapter.fossil.FossilWatchAdapter;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.adapter.fossil_hr.FossilHRWatchAdapter;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.file.FileHandle;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil.FossilRequest;
-import nodomain.freeyourgadget.gadgetbridge.util.CRC32C;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
-import nodomain.freeyourgadget.gadgetbridge.util.StringUtils;
 
 public abstract class FileEncryptedGetRequest extends FossilRequest implements FileEncryptedInterface{
+    /**
+     * Receives the decrypted content of a file while it is transferred.
+     */
+    public interface FileChunkConsumer {
+        void onFileChunk(byte[] data, int offset, int length);
+    }
+
     private short handle;
     private FossilHRWatchAdapter adapter;
 
     private ByteBuffer fileBuffer;
-
-    private byte[] fileData;
+    private FileChunkConsumer chunkConsumer;
+    private final CRC32 crc = new CRC32();
+    private int receivedLength;
 
     private boolean finished = false;
 
-    private Cipher cipher;
-    private SecretKeySpec keySpec;
-    private byte[] originalIv;
+    private EncryptedFileCipher cipher;
 
     int fileSize;
 
@@ -79,27 +74,11 @@ public abstract class FileEncryptedGetRequest extends FossilRequest implements F
 
     private void initDecryption() {
         try {
-            cipher = Cipher.getInstance("AES/CTR/NoPadding");
-            try {
-                keySpec = new SecretKeySpec(this.adapter.getSecretKey(), "AES");
-            } catch (IllegalAccessException e) {
-                GB.toast("error getting key: " + e.getMessage(), Toast.LENGTH_LONG, GB.ERROR, e);
-                return;
-            }
-
-
-            originalIv = new byte[16];
-
-
-            byte[] phoneRandomNumber = adapter.getPhoneRandomNumber();
-            byte[] watchRandomNumber = adapter.getWatchRandomNumber();
-
-            System.arraycopy(phoneRandomNumber, 0, originalIv, 2, 6);
-            System.arraycopy(watchRandomNumber, 0, originalIv, 9, 7);
-
-            originalIv[7]++;
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-            e.printStackTrace();
+            cipher = new EncryptedFileCipher(this.adapter.getSecretKey(), adapter.getPhoneRandomNumber(), adapter.getWatchRandomNumber());
+        } catch (IllegalAccessException e) {
+            GB.toast("error getting key: " + e.getMessage(), Toast.LENGTH_LONG, GB.ERROR, e);
+        } catch (GeneralSecurityException e) {
+            GB.log("error initializing decryption", GB.ERROR, e);
         }
     }
 
@@ -107,17 +86,6 @@ public abstract class FileEncryptedGetRequest extends FossilRequest implements F
         return adapter;
     }
 
-    private byte[] incrementIV(byte[] iv, int amount){
-        byte[] incrementedIv = new byte[iv.length];
-        System.arraycopy(iv, 0, incrementedIv, 0, iv.length);
-        ByteBuffer buffer = ByteBuffer.wrap(incrementedIv);
-        int number = buffer.getInt(12);
-        number += amount;
-        buffer.position(12);
-        buffer.putInt(number);
-        return buffer.array();
-    }
-
     @Override
     public boolean isFinished() {
         return finished;
@@ -148,7 +116,10 @@ public abstract class FileEncryptedGetRequest extends FossilRequest implements F
                     throw new RuntimeException("handle: " + handle + "   expected: " + this.handle);
                 }
                 log("file size: " + fileSize);
-                fileBuffer = ByteBuffer.allocate(fileSize);
+                chunkConsumer = createFileChunkConsumer(fileSize);
+                if (chunkConsumer == null) {
+                    fileBuffer = ByteBuffer.allocate(fileSize);
+                }
             } else if ((first & 0x0F) == 8) {
                 this.finished = true;
 
@@ -160,61 +131,61 @@ public abstract class FileEncryptedGetRequest extends FossilRequest implements F
                     throw new RuntimeException("handle: " + handle + "   expected: " + this.handle);
                 }
 
-                CRC32 crc = new CRC32();
-                crc.update(this.fileData);
-
-                CRC32C c = new CRC32C();
-                c.update(this.fileData, 0, fileData.length);
-
                 int crcExpected = buffer.getInt(8);
 
                 if ((int) crc.getValue() != crcExpected) {
+                    if (chunkConsumer != null) {
+                        this.handleFileStreamFailed();
+                    }
                     throw new RuntimeException("crc: " + crc.getValue() + "   expected: " + crcExpected);
                 }
 
-                this.handleFileData(this.fileData);
+                if (chunkConsumer != null) {
+                    this.handleFileStreamed();
+                } else {
+                    this.handleFileData(fileBuffer.array());
+                }
             }
         } else if (characteristic.getUuid().toString().equals("3dda0004-957f-7d4a-34a6-74696673696d")) {
             try {
-                byte[] result = null;
-                if(packetCount == 1) {
-                    for(int testIvSummand = 0x1e; testIvSummand < 0x30; testIvSummand++){
-                        byte[] iv = incrementIV(originalIv, testIvSummand);
-                        cipher.init(Cipher.DECRYPT_MODE, keySpec, new IvParameterSpec(iv));
-                        result = cipher.doFinal(value);
-
-                        int currentLength = fileBuffer.position() + result.length - 1;
-
-                        byte expectedByte = (currentLength == fileSize) ? (byte)0x81 : (byte)0x01; // 0x81 indicated the last payload
-
-                        if(result[0] == expectedByte){
-                            this.ivIncrementor = testIvSummand;
-                            log("iv summand: " + testIvSummand);
-                            break;
-                        }
-                        log("no iv summand found");
-                    }
-                }else{
-                    byte[] iv = incrementIV(originalIv, ivIncrementor * packetCount);
-
-                    cipher.init(Cipher.DECRYPT_MODE, keySpec, new IvParameterSpec(iv));
-                    result = cipher.doFinal(value);
+                if (packetCount == 1) {
+                    findIvIncrementor(value);
                 }
-
-                log("decryption result: " + StringUtils.bytesToHex(result));
+                cipher.apply(value, 0, value.length, ivIncrementor * packetCount);
                 packetCount++;
 
-                fileBuffer.put(result, 1, result.length - 1);
-                if ((result[0] & 0x80) == 0x80) {
-                    this.fileData = fileBuffer.array();
+                int length = value.length - 1;
+                crc.update(value, 1, length);
+                receivedLength += length;
+                if (chunkConsumer != null) {
+                    chunkConsumer.onFileChunk(value, 1, length);
+                } else {
+                    fileBuffer.put(value, 1, length);
                 }
-            } catch (BadPaddingException | IllegalBlockSizeException | InvalidAlgorithmParameterException | InvalidKeyException e) {
+            } catch (GeneralSecurityException e) {
                 e.printStackTrace();
                 throw new RuntimeException(e);
             }
         }
     }
 
+    /**
+     * The counter offset between two packets is not known in advance. It is determined from
+     * the second packet, whose first decrypted byte has to be the packet header.
+     */
+    private void findIvIncrementor(byte[] value) throws GeneralSecurityException {
+        boolean lastPacket = receivedLength + value.length - 1 == fileSize;
+        byte expectedByte = lastPacket ? (byte) 0x81 : (byte) 0x01; // 0x81 indicated the last payload
+        for (int testIvSummand = 0x1e; testIvSummand < 0x30; testIvSummand++) {
+            if (cipher.decryptFirstByte(value[0], testIvSummand) == expectedByte) {
+                this.ivIncrementor = testIvSummand;
+                log("iv summand: " + testIvSummand);
+                return;
+            }
+        }
+        log("no iv summand found");
+    }
+
     @Override
     public UUID getRequestUUID() {
         return UUID.fromString("3dda0003-957f-7d4a-34a6-74696673696d");
@@ -230,5 +201,32 @@ public abstract class FileEncryptedGetRequest extends FossilRequest implements F
         return 11;
     }
 
-    abstract public void handleFileData(byte[] fileData);
+    /**
+     * Subclasses that can process the file incrementally may return a consumer here. The
+     * decrypted content is then passed to it while it is transferred, instead of being
+     * collected for {@link #handleFileData(byte[])}, and {@link #handleFileStreamed()} is
+     * called once the checksum of the whole file was verified. Anything derived from the
+     * chunks must either be stored only then, or be reverted in
+     * {@link #handleFileStreamFailed()}.
+     */
+    protected FileChunkConsumer createFileChunkConsumer(int fileSize) {
+        return null;
+    }
+
+    protected void handleFileStreamed() {
+    }
+
+    /**
+     * Called instead of {@link #handleFileStreamed()} when the checksum of a streamed file
+     * does not match.
+     */
+    protected void handleFileStreamFailed() {
+    }
+
+    /**
+     * Called with the whole file once its checksum was verified, unless the file was
+     * streamed through {@link #createFileChunkConsumer(int)}.
+     */
+    public void handleFileData(byte[] fileData) {
+    }
 }
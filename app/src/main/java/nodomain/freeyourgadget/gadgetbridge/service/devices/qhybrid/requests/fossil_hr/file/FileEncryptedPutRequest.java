@@ -21,14 +21,10 @@ import android.widget.Toast;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
+import java.security.GeneralSecurityException;
 import java.util.UUID;
 import java.util.zip.CRC32;
 
-import javax.crypto.Cipher;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
-
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.adapter.fossil.FossilWatchAdapter;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.adapter.fossil_hr.FossilHRWatchAdapter;
@@ -41,8 +37,6 @@ public class FileEncryptedPutRequest extends FossilRequest implements FileEncryp
 
     public UploadState state;
 
-    private ArrayList<byte[]> packets = new ArrayList<>();
-
     private short handle;
 
     private FossilHRWatchAdapter adapter;
@@ -89,36 +83,20 @@ public class FileEncryptedPutRequest extends FossilRequest implements FileEncryp
                     TransactionBuilder transactionBuilder = new TransactionBuilder("file upload");
                     BluetoothGattCharacteristic uploadCharacteristic = adapter.getDeviceSupport().getCharacteristic(UUID.fromString("3dda0004-957f-7d4a-34a6-74696673696d"));
 
-                    this.prepareFilePackets(this.file);
-
-                    SecretKeySpec keySpec = null;
+                    EncryptedFileCipher cipher;
                     try {
-                        keySpec = new SecretKeySpec(this.adapter.getSecretKey(), "AES");
+                        cipher = new EncryptedFileCipher(this.adapter.getSecretKey(), adapter.getPhoneRandomNumber(), adapter.getWatchRandomNumber());
                     } catch (IllegalAccessException e) {
                         GB.toast("error getting key: " + e.getMessage(), Toast.LENGTH_LONG, GB.ERROR, e);
                         return;
+                    } catch (GeneralSecurityException e) {
+                        GB.toast("error encrypting file", Toast.LENGTH_LONG, GB.ERROR, e);
+                        return;
                     }
-                    try {
-                        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
-
-                        byte[] fileIV = new byte[16];
 
-
-                        byte[] phoneRandomNumber = adapter.getPhoneRandomNumber();
-                        byte[] watchRandomNumber = adapter.getWatchRandomNumber();
-
-                        System.arraycopy(phoneRandomNumber, 0, fileIV, 2, 6);
-                        System.arraycopy(watchRandomNumber, 0, fileIV, 9, 7);
-
-                        fileIV[7]++;
-
-                        cipher.init(Cipher.ENCRYPT_MODE, keySpec, new IvParameterSpec(fileIV));
-
-                        for (byte[] packet : packets) {
-                            byte[] result = cipher.doFinal(packet);
-                            transactionBuilder.write(uploadCharacteristic, result);
-                        }
-                    }catch (Exception e){
+                    try {
+                        writeFilePackets(transactionBuilder, uploadCharacteristic, cipher);
+                    } catch (GeneralSecurityException e) {
                         GB.toast("error encrypting file", Toast.LENGTH_LONG, GB.ERROR, e);
                     }
 
@@ -221,7 +199,11 @@ public class FileEncryptedPutRequest extends FossilRequest implements FileEncryp
         return this.state == UploadState.UPLOADED;
     }
 
-    private void prepareFilePackets(byte[] file) {
+    /**
+     * Splits the file into packets and encrypts each of them directly into the transaction.
+     * Every packet is encrypted from the start of the keystream.
+     */
+    private void writeFilePackets(TransactionBuilder transactionBuilder, BluetoothGattCharacteristic uploadCharacteristic, EncryptedFileCipher cipher) throws GeneralSecurityException {
         int maxPacketSize = adapter.getMTU() - 4;
 
         ByteBuffer buffer = ByteBuffer.allocate(file.length + 12 + 4);
@@ -255,7 +237,8 @@ public class FileEncryptedPutRequest extends FossilRequest implements FileEncryp
             packet[0] = (byte) i;
             System.arraycopy(data, i * maxPacketSize, packet, 1, currentPacketLength);
 
-            packets.add(packet);
+            cipher.apply(packet, 0, packet.length, 0);
+            transactionBuilder.write(uploadCharacteristic, packet);
         }
     }
 
@@ -23,10 +23,16 @@ import java.util.ArrayList;
 import nodomain.freeyourgadget.gadgetbridge.devices.qhybrid.NotificationHRConfiguration;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.adapter.fossil.FossilWatchAdapter;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.file.FileHandle;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.CoalescingRequest;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil.file.FilePutRequest;
 import nodomain.freeyourgadget.gadgetbridge.util.StringUtils;
 
-public class NotificationFilterPutHRRequest extends FilePutRequest {
+public class NotificationFilterPutHRRequest extends FilePutRequest implements CoalescingRequest {
+    @Override
+    public String getCoalescingKey() {
+        return "notification_filter";
+    }
+
     public NotificationFilterPutHRRequest(NotificationHRConfiguration[] configs, FossilWatchAdapter adapter) {
         super(FileHandle.NOTIFICATION_FILTER, createFile(configs), adapter);
     }
@@ -41,14 +41,15 @@ import java.util.UUID;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.devicesettings.DeviceSettingsPreferenceConst;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventBatteryInfo;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventCallControl;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventMusicControl;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventVersionInfo;
+import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleWriter;
 import nodomain.freeyourgadget.gadgetbridge.devices.zetime.ZeTimeConstants;
 import nodomain.freeyourgadget.gadgetbridge.devices.zetime.ZeTimeSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.ZeTimeActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
@@ -93,6 +94,8 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
     private int progressSteps;
     private int progressSleep;
     private int progressHeartRate;
+    private SampleWriter<ZeTimeActivitySample> sampleWriter;
+    private boolean samplesLost;
     private final int maxMsgLength = 20;
     private boolean callIncoming = false;
     private String songtitle = null;
@@ -1220,7 +1223,7 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
     }
 
     private void handleStepsData(byte[] msg) {
-        ZeTimeActivitySample sample = new ZeTimeActivitySample();
+        ZeTimeActivitySample sample = SampleWriter.clearColumns(new ZeTimeActivitySample());
         Calendar now = GregorianCalendar.getInstance();
         int timestamp = (msg[10] << 24) & 0xff000000 | (msg[9] << 16) & 0xff0000 | (msg[8] << 8) & 0xff00 | (msg[7] & 0xff);
         timestamp += eightHourOffset; // the timestamp from the watch has an offset of eight hours, do not know why...
@@ -1233,20 +1236,18 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
         sample.setRawKind(ActivityKind.TYPE_ACTIVITY);
         sample.setRawIntensity(sample.getSteps());
 
-        try (DBHandler dbHandler = GBApplication.acquireDB()) {
-            sample.setUserId(DBHelper.getUser(dbHandler.getDaoSession()).getId());
-            sample.setDeviceId(DBHelper.getDevice(getDevice(), dbHandler.getDaoSession()).getId());
-            ZeTimeSampleProvider provider = new ZeTimeSampleProvider(getDevice(), dbHandler.getDaoSession());
-            provider.addGBActivitySample(sample);
-        } catch (Exception ex) {
-            GB.toast(getContext(), "Error saving steps data: " + ex.getLocalizedMessage(), Toast.LENGTH_LONG, GB.ERROR);
-            GB.updateTransferNotification(null, "Data transfer failed", false, 0, getContext());
-        }
+        getSampleWriter().add(sample);
 
         progressSteps = (msg[5] & 0xff) | ((msg[6] << 8) & 0xff00);
         GB.updateTransferNotification(null, getContext().getString(R.string.busy_task_fetch_activity_data), true, progressSteps * 100 / availableStepsData, getContext());
-        if (progressSteps == availableStepsData) {
+        boolean complete = progressSteps == availableStepsData;
+        if ((complete || getSampleWriter().isFull()) && !flushSamples()) {
+            samplesLost = true;
+        }
+        if (complete) {
             Prefs prefs = GBApplication.getPrefs();
+            boolean keepOnWatch = samplesLost;
+            samplesLost = false;
             progressSteps = 0;
             availableStepsData = 0;
             GB.updateTransferNotification(null, "", false, 100, getContext());
@@ -1254,7 +1255,7 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
                 getDevice().unsetBusyTask();
                 getDevice().sendDeviceUpdateIntent(getContext());
             }
-            if (!prefs.getBoolean(ZeTimeConstants.PREF_ZETIME_DONT_DEL_ACTDATA, false)) {
+            if (!keepOnWatch && !prefs.getBoolean(ZeTimeConstants.PREF_ZETIME_DONT_DEL_ACTDATA, false)) {
                 deleteStepData();
             }
             if (availableHeartRateData > 0) {
@@ -1266,7 +1267,7 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
     }
 
     private void handleSleepData(byte[] msg) {
-        ZeTimeActivitySample sample = new ZeTimeActivitySample();
+        ZeTimeActivitySample sample = SampleWriter.clearColumns(new ZeTimeActivitySample());
         Calendar now = GregorianCalendar.getInstance();
         int timestamp = (msg[10] << 24) & 0xff000000 | (msg[9] << 16) & 0xff0000 | (msg[8] << 8) & 0xff00 | (msg[7] & 0xff);
         timestamp += eightHourOffset; // the timestamp from the watch has an offset of eight hours, do not know why...
@@ -1280,20 +1281,18 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
             sample.setRawKind(ActivityKind.TYPE_UNKNOWN);
         }
 
-        try (DBHandler dbHandler = GBApplication.acquireDB()) {
-            sample.setUserId(DBHelper.getUser(dbHandler.getDaoSession()).getId());
-            sample.setDeviceId(DBHelper.getDevice(getDevice(), dbHandler.getDaoSession()).getId());
-            ZeTimeSampleProvider provider = new ZeTimeSampleProvider(getDevice(), dbHandler.getDaoSession());
-            provider.addGBActivitySample(sample);
-        } catch (Exception ex) {
-            GB.toast(getContext(), "Error saving steps data: " + ex.getLocalizedMessage(), Toast.LENGTH_LONG, GB.ERROR);
-            GB.updateTransferNotification(null, "Data transfer failed", false, 0, getContext());
-        }
+        getSampleWriter().add(sample);
 
         progressSleep = (msg[5] & 0xff) | (msg[6] << 8) & 0xff00;
         GB.updateTransferNotification(null, getContext().getString(R.string.busy_task_fetch_activity_data), true, progressSleep * 100 / availableSleepData, getContext());
-        if (progressSleep == availableSleepData) {
+        boolean complete = progressSleep == availableSleepData;
+        if ((complete || getSampleWriter().isFull()) && !flushSamples()) {
+            samplesLost = true;
+        }
+        if (complete) {
             Prefs prefs = GBApplication.getPrefs();
+            boolean keepOnWatch = samplesLost;
+            samplesLost = false;
             progressSleep = 0;
             availableSleepData = 0;
             GB.updateTransferNotification(null, "", false, 100, getContext());
@@ -1301,14 +1300,14 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
                 getDevice().unsetBusyTask();
                 GB.signalActivityDataFinish();
             }
-            if (!prefs.getBoolean(ZeTimeConstants.PREF_ZETIME_DONT_DEL_ACTDATA, false)) {
+            if (!keepOnWatch && !prefs.getBoolean(ZeTimeConstants.PREF_ZETIME_DONT_DEL_ACTDATA, false)) {
                 deleteSleepData();
             }
         }
     }
 
     private void handleHeartRateData(byte[] msg) {
-        ZeTimeActivitySample sample = new ZeTimeActivitySample();
+        ZeTimeActivitySample sample = SampleWriter.clearColumns(new ZeTimeActivitySample());
         Calendar now = GregorianCalendar.getInstance();
         int timestamp = (msg[10] << 24) & 0xff000000 | (msg[9] << 16) & 0xff0000 | (msg[8] << 8) & 0xff00 | (msg[7] & 0xff);
         timestamp += eightHourOffset; // the timestamp from the watch has an offset of eight hours, do not know why...
@@ -1316,15 +1315,7 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
         sample.setHeartRate(msg[11]);
         sample.setTimestamp(timestamp);
 
-        try (DBHandler dbHandler = GBApplication.acquireDB()) {
-            sample.setUserId(DBHelper.getUser(dbHandler.getDaoSession()).getId());
-            sample.setDeviceId(DBHelper.getDevice(getDevice(), dbHandler.getDaoSession()).getId());
-            ZeTimeSampleProvider provider = new ZeTimeSampleProvider(getDevice(), dbHandler.getDaoSession());
-            provider.addGBActivitySample(sample);
-        } catch (Exception ex) {
-            GB.toast(getContext(), "Error saving steps data: " + ex.getLocalizedMessage(), Toast.LENGTH_LONG, GB.ERROR);
-            GB.updateTransferNotification(null, "Data transfer failed", false, 0, getContext());
-        }
+        getSampleWriter().add(sample);
 
         progressHeartRate = (msg[5] & 0xff) | ((msg[6] << 8) & 0xff00);
         GB.updateTransferNotification(null, getContext().getString(R.string.busy_task_fetch_activity_data), true, progressHeartRate * 100 / availableHeartRateData, getContext());
@@ -1334,25 +1325,23 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
             timestamp = (msg[17] << 24) & 0xff000000 | (msg[16] << 16) & 0xff0000 | (msg[15] << 8) & 0xff00 | (msg[14] & 0xff);
             timestamp += eightHourOffset; // the timestamp from the watch has an offset of eight hours, do not know why...
             timestamp -= ((now.get(Calendar.ZONE_OFFSET) / 1000) + (now.get(Calendar.DST_OFFSET) / 1000));  // TimeZone hour + daylight saving
+            sample = SampleWriter.clearColumns(new ZeTimeActivitySample());
             sample.setHeartRate(msg[18]);
             sample.setTimestamp(timestamp);
-
-            try (DBHandler dbHandler = GBApplication.acquireDB()) {
-                sample.setUserId(DBHelper.getUser(dbHandler.getDaoSession()).getId());
-                sample.setDeviceId(DBHelper.getDevice(getDevice(), dbHandler.getDaoSession()).getId());
-                ZeTimeSampleProvider provider = new ZeTimeSampleProvider(getDevice(), dbHandler.getDaoSession());
-                provider.addGBActivitySample(sample);
-            } catch (Exception ex) {
-                GB.toast(getContext(), "Error saving steps data: " + ex.getLocalizedMessage(), Toast.LENGTH_LONG, GB.ERROR);
-                GB.updateTransferNotification(null, "Data transfer failed", false, 0, getContext());
-            }
+            getSampleWriter().add(sample);
 
             progressHeartRate = (msg[12] & 0xff) | ((msg[13] << 8) & 0xff00);
             GB.updateTransferNotification(null, getContext().getString(R.string.busy_task_fetch_activity_data), true, (int) (progressHeartRate * 100 / availableHeartRateData), getContext());
         }
 
-        if (progressHeartRate == availableHeartRateData) {
+        boolean complete = progressHeartRate == availableHeartRateData;
+        if ((complete || getSampleWriter().isFull()) && !flushSamples()) {
+            samplesLost = true;
+        }
+        if (complete) {
             Prefs prefs = GBApplication.getPrefs();
+            boolean keepOnWatch = samplesLost;
+            samplesLost = false;
             progressHeartRate = 0;
             availableHeartRateData = 0;
             GB.updateTransferNotification(null, "", false, 100, getContext());
@@ -1360,7 +1349,7 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
                 getDevice().unsetBusyTask();
                 getDevice().sendDeviceUpdateIntent(getContext());
             }
-            if (!prefs.getBoolean(ZeTimeConstants.PREF_ZETIME_DONT_DEL_ACTDATA, false)) {
+            if (!keepOnWatch && !prefs.getBoolean(ZeTimeConstants.PREF_ZETIME_DONT_DEL_ACTDATA, false)) {
                 deleteHeartRateData();
             }
             if (availableSleepData > 0) {
@@ -1369,6 +1358,45 @@ public class ZeTimeDeviceSupport extends AbstractBTLEDeviceSupport {
         }
     }
 
+    private SampleWriter<ZeTimeActivitySample> getSampleWriter() {
+        if (sampleWriter == null) {
+            sampleWriter = new SampleWriter<ZeTimeActivitySample>(getDevice(), new SampleWriter.ProviderFactory<ZeTimeActivitySample>() {
+                @Override
+                public AbstractSampleProvider<ZeTimeActivitySample> createProvider(GBDevice device, DaoSession session) {
+                    return new ZeTimeSampleProvider(device, session);
+                }
+            }) {
+                @Override
+                protected void mergeColumns(ZeTimeActivitySample target, ZeTimeActivitySample update) {
+                    super.mergeColumns(target, update);
+                    target.setCaloriesBurnt(merge(target.getCaloriesBurnt(), update.getCaloriesBurnt()));
+                    target.setDistanceMeters(merge(target.getDistanceMeters(), update.getDistanceMeters()));
+                    target.setActiveTimeMinutes(merge(target.getActiveTimeMinutes(), update.getActiveTimeMinutes()));
+                }
+            };
+        }
+        return sampleWriter;
+    }
+
+    /**
+     * Writes the pending samples.
+     *
+     * @return false if they could not be written, the data of the current transfer must then
+     * not be deleted from the watch
+     */
+    private boolean flushSamples() {
+        try {
+            getSampleWriter().flush();
+            return true;
+        } catch (Exception ex) {
+            GB.toast(getContext(), "Error saving activity data: " + ex.getLocalizedMessage(), Toast.LENGTH_LONG, GB.ERROR);
+            GB.updateTransferNotification(null, "Data transfer failed", false, 0, getContext());
+            // the data is kept on the watch and fetched again next time, drop it here instead of retrying with every message
+            getSampleWriter().clear();
+            return false;
+        }
+    }
+
     private void sendMsgToWatch(TransactionBuilder builder, byte[] msg) {
         if (msg.length > maxMsgLength) {
             int msgpartlength = 0;
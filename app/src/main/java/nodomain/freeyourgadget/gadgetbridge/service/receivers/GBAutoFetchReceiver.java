@@ -25,17 +25,29 @@ import org.apache.commons.lang3.time.DateUtils;
 import java.util.Date;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.RecordedDataTypes;
+import nodomain.freeyourgadget.gadgetbridge.service.DeviceCommunicationService;
+import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
 
 
 public class GBAutoFetchReceiver extends BroadcastReceiver {
+    private final DeviceCommunicationService service;
     private Date lastSync = new Date();
 
+    public GBAutoFetchReceiver(DeviceCommunicationService service) {
+        this.service = service;
+    }
+
     @Override
     public void onReceive(Context context, Intent intent) {
         Date nextSync = DateUtils.addMinutes(lastSync, GBApplication.getPrefs().getInt("auto_fetch_interval_limit", 0));
         if (nextSync.before(new Date())) {
-            GBApplication.deviceService().onFetchRecordedData(RecordedDataTypes.TYPE_ACTIVITY);
+            for (GBDevice device : service.getGBDevices()) {
+                if (device.isInitialized() && DeviceHelper.getInstance().getCoordinator(device).supportsActivityDataFetching()) {
+                    GBApplication.deviceService().forDevice(device).onFetchRecordedData(RecordedDataTypes.TYPE_ACTIVITY);
+                }
+            }
             lastSync = new Date();
         }
     }
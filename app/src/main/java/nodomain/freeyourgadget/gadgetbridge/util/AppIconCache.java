@@ -0,0 +1,220 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.palette.graphics.Palette;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Caches data derived from application icons, so that notifications from the
+ * same app don't need to load and rasterize its icon over and over again.
+ *
+ * The dominant icon color is persisted per package together with the package's
+ * last update time. A persisted color is read right away, only extracting it from
+ * the icon is done on a background thread. Downscaled icon bitmaps are kept in
+ * memory only. Entries of a package are dropped when it is updated or removed,
+ * see {@link #invalidate(String)}.
+ */
+public class AppIconCache {
+    private static final Logger LOG = LoggerFactory.getLogger(AppIconCache.class);
+
+    private static final String PREFS_NAME = "app_icon_cache";
+    private static final String KEY_SUFFIX_UPDATED = ".updated";
+    private static final int DEFAULT_VIBRANT_COLOR = Color.parseColor("#aa0000");
+    private static final int MAX_BITMAP_BYTES = 512 * 1024;
+
+    private final Context context;
+    private final SharedPreferences colorPrefs;
+    private final ConcurrentHashMap<String, Integer> colors = new ConcurrentHashMap<>();
+    private final Set<String> pendingColors = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Executor executor;
+    /**
+     * Incremented by {@link #invalidate(String)}, so that colors extracted before are dropped.
+     */
+    private int generation;
+    private final LruCache<String, Bitmap> bitmaps = new LruCache<String, Bitmap>(MAX_BITMAP_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
+    public AppIconCache(Context context) {
+        this(context, Executors.newSingleThreadExecutor());
+    }
+
+    AppIconCache(Context context, Executor executor) {
+        this.context = context.getApplicationContext();
+        this.colorPrefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the vibrant color of the given app's icon, if it is already known or
+     * persisted. Otherwise the color extraction is scheduled in the background and null
+     * is returned, so the caller should fall back to a default color.
+     */
+    @Nullable
+    public Integer getIconColor(final String packageName) {
+        if (packageName == null) {
+            return null;
+        }
+        Integer color = colors.get(packageName);
+        if (color != null) {
+            return color;
+        }
+        final long lastUpdateTime = getLastUpdateTime(packageName);
+        final int loadGeneration;
+        synchronized (this) {
+            if (colorPrefs.contains(packageName)
+                    && colorPrefs.getLong(packageName + KEY_SUFFIX_UPDATED, -1) == lastUpdateTime) {
+                color = colorPrefs.getInt(packageName, DEFAULT_VIBRANT_COLOR);
+                colors.put(packageName, color);
+                return color;
+            }
+            loadGeneration = generation;
+        }
+        if (pendingColors.add(packageName)) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        loadIconColor(packageName, lastUpdateTime, loadGeneration);
+                    } finally {
+                        pendingColors.remove(packageName);
+                    }
+                }
+            });
+        }
+        return null;
+    }
+
+    /**
+     * Returns the icon of the given app rendered into a square bitmap of the given size.
+     * The bitmap is shared, callers must not modify or recycle it.
+     */
+    @Nullable
+    public Bitmap getIconBitmap(String packageName, int size) {
+        if (packageName == null) {
+            return null;
+        }
+        String key = packageName + "/" + size;
+        Bitmap bitmap = bitmaps.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        Drawable icon = loadIcon(packageName);
+        if (icon == null) {
+            return null;
+        }
+        bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        icon.setBounds(0, 0, size, size);
+        icon.draw(new Canvas(bitmap));
+        bitmaps.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Drops everything cached for the given package, e.g. because it was updated.
+     */
+    public void invalidate(String packageName) {
+        LOG.debug("invalidating icon cache for " + packageName);
+        synchronized (this) {
+            generation++;
+            colors.remove(packageName);
+            colorPrefs.edit()
+                    .remove(packageName)
+                    .remove(packageName + KEY_SUFFIX_UPDATED)
+                    .apply();
+        }
+        String prefix = packageName + "/";
+        for (String key : bitmaps.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                bitmaps.remove(key);
+            }
+        }
+    }
+
+    private void loadIconColor(String packageName, long lastUpdateTime, int loadGeneration) {
+        Integer color = extractIconColor(packageName);
+        if (color == null) {
+            return;
+        }
+        synchronized (this) {
+            if (loadGeneration != generation) {
+                LOG.debug("dropping icon color of " + packageName + " extracted before invalidation");
+                return;
+            }
+            colors.put(packageName, color);
+            colorPrefs.edit()
+                    .putInt(packageName, color)
+                    .putLong(packageName + KEY_SUFFIX_UPDATED, lastUpdateTime)
+                    .apply();
+        }
+    }
+
+    /**
+     * Computes the vibrant color of the app's icon, called on the background thread.
+     */
+    @Nullable
+    Integer extractIconColor(String packageName) {
+        Drawable icon = loadIcon(packageName);
+        if (icon == null) {
+            return null;
+        }
+        Bitmap bitmapIcon = BitmapUtil.convertDrawableToBitmap(icon);
+        return new Palette.Builder(bitmapIcon)
+                .generate()
+                .getVibrantColor(DEFAULT_VIBRANT_COLOR);
+    }
+
+    private long getLastUpdateTime(String packageName) {
+        try {
+            return context.getPackageManager().getPackageInfo(packageName, 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    @Nullable
+    private Drawable loadIcon(String packageName) {
+        try {
+            return context.getPackageManager().getApplicationIcon(packageName);
+        } catch (Exception ex) {
+            LOG.warn("Could not get icon for AppID " + packageName, ex);
+            return null;
+        }
+    }
+}
@@ -73,6 +73,7 @@ public class GB {
     public static final int NOTIFICATION_ID_PHONE_FIND = 6;
 
     private static final Logger LOG = LoggerFactory.getLogger(GB.class);
+    private static TransferProgressReporter transferProgressReporter;
     public static final int INFO = 1;
     public static final int WARN = 2;
     public static final int ERROR = 3;
@@ -406,12 +407,28 @@ public class GB {
     }
 
     public static void removeAllNotifications(Context context) {
+        getTransferProgressReporter(context).reset();
         removeNotification(NOTIFICATION_ID_TRANSFER, context);
         removeNotification(NOTIFICATION_ID_INSTALL, context);
         removeNotification(NOTIFICATION_ID_LOW_BATTERY, context);
     }
 
+    /**
+     * Updates the transfer progress notification. Ongoing progress updates are throttled,
+     * so this may be called for every received record.
+     */
     public static void updateTransferNotification(String title, String text, boolean ongoing, int percentage, Context context) {
+        getTransferProgressReporter(context).update(title, text, ongoing, percentage);
+    }
+
+    private static synchronized TransferProgressReporter getTransferProgressReporter(Context context) {
+        if (transferProgressReporter == null) {
+            transferProgressReporter = new TransferProgressReporter(context);
+        }
+        return transferProgressReporter;
+    }
+
+    static void postTransferNotification(String title, String text, boolean ongoing, int percentage, Context context) {
         if (percentage == 100) {
             removeNotification(NOTIFICATION_ID_TRANSFER, context);
         } else {
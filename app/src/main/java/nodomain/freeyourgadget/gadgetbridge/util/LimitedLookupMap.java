@@ -0,0 +1,123 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * A bounded, insertion-ordered map from int ids to values, indexed in both
+ * directions. Once the limit is reached, adding a new id evicts the oldest entry,
+ * like {@link LimitedQueue} does. Adding an id that is already present replaces
+ * its value and makes it the newest entry.
+ *
+ * Adding, removing and both lookups are hash based and take constant time, so
+ * that frequent writes stay cheap even if lookups are rare.
+ */
+public class LimitedLookupMap<V> {
+    private final int limit;
+    private final LinkedHashMap<Integer, V> entries;
+    /**
+     * The ids of each value, oldest first.
+     */
+    private final HashMap<Object, LinkedHashSet<Integer>> idsByValue = new HashMap<>();
+
+    public LimitedLookupMap(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        this.limit = limit;
+        this.entries = new LinkedHashMap<Integer, V>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, V> eldest) {
+                if (size() > LimitedLookupMap.this.limit) {
+                    unindex(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized void add(int id, V value) {
+        if (entries.containsKey(id)) {
+            // removed first, so that the id becomes the newest entry
+            unindex(id, entries.remove(id));
+        }
+        entries.put(id, value);
+        if (value != null) {
+            LinkedHashSet<Integer> ids = idsByValue.get(value);
+            if (ids == null) {
+                ids = new LinkedHashSet<>();
+                idsByValue.put(value, ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    public synchronized void remove(int id) {
+        if (entries.containsKey(id)) {
+            unindex(id, entries.remove(id));
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        idsByValue.clear();
+    }
+
+    /**
+     * @return the value for the given id, or null if there is none
+     */
+    @Nullable
+    public synchronized V lookup(int id) {
+        return entries.get(id);
+    }
+
+    /**
+     * @return the id of the oldest entry with the given value, or null if there is none
+     */
+    @Nullable
+    public synchronized Integer lookupByValue(Object value) {
+        if (value == null) {
+            return null;
+        }
+        LinkedHashSet<Integer> ids = idsByValue.get(value);
+        return ids == null ? null : ids.iterator().next();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void unindex(int id, V value) {
+        if (value == null) {
+            return;
+        }
+        LinkedHashSet<Integer> ids = idsByValue.get(value);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                idsByValue.remove(value);
+            }
+        }
+    }
+}
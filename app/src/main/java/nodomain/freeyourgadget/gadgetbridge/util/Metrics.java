@@ -0,0 +1,331 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A small, lock-free registry of counters, timers and histograms for the hot paths
+ * of Gadgetbridge, shown and exported in the DebugActivity.
+ *
+ * Collection is disabled by default. While disabled, recording is a single volatile
+ * read, and {@link #start()} returns 0 which makes {@link Timer#stop(long)} a no-op.
+ * Metrics are meant to be kept in static final fields by the instrumented classes,
+ * so that the registry lookup only happens once.
+ */
+public final class Metrics {
+    public static final String PREF_METRICS_ENABLED = "metrics_enabled";
+
+    private static final ConcurrentHashMap<String, Metric> metrics = new ConcurrentHashMap<>();
+    private static volatile boolean enabled;
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    public static Counter counter(String name) {
+        return register(new Counter(name));
+    }
+
+    public static Histogram histogram(String name, String unit) {
+        return register(new Histogram(name, unit));
+    }
+
+    public static Timer timer(String name) {
+        return register(new Timer(name));
+    }
+
+    /**
+     * @return a start timestamp for {@link Timer#stop(long)}, or 0 if metrics are disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static void reset() {
+        for (Metric metric : metrics.values()) {
+            metric.reset();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Metric> T register(T metric) {
+        Metric existing = metrics.putIfAbsent(metric.name, metric);
+        if (existing == null) {
+            return metric;
+        }
+        if (existing.getClass() != metric.getClass()) {
+            throw new IllegalArgumentException("Metric " + metric.name + " already registered as " + existing.getClass().getSimpleName());
+        }
+        return (T) existing;
+    }
+
+    private static List<Metric> sortedMetrics() {
+        List<Metric> list = new ArrayList<>(metrics.values());
+        Collections.sort(list, new Comparator<Metric>() {
+            @Override
+            public int compare(Metric m1, Metric m2) {
+                return m1.name.compareTo(m2.name);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * @return a human readable summary of all metrics that have recorded something
+     */
+    public static String toText() {
+        StringBuilder builder = new StringBuilder();
+        for (Metric metric : sortedMetrics()) {
+            if (metric.isEmpty()) {
+                continue;
+            }
+            builder.append(metric.name).append(": ");
+            metric.appendText(builder);
+            builder.append('\n');
+        }
+        if (builder.length() == 0) {
+            builder.append(enabled ? "No metrics recorded yet" : "Metrics collection is disabled");
+        }
+        return builder.toString();
+    }
+
+    public static JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("timestamp", System.currentTimeMillis());
+        json.put("enabled", enabled);
+        JSONObject values = new JSONObject();
+        for (Metric metric : sortedMetrics()) {
+            values.put(metric.name, metric.toJSON());
+        }
+        json.put("metrics", values);
+        return json;
+    }
+
+    public abstract static class Metric {
+        protected final String name;
+
+        Metric(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        abstract boolean isEmpty();
+
+        abstract void reset();
+
+        abstract void appendText(StringBuilder builder);
+
+        abstract JSONObject toJSON() throws JSONException;
+    }
+
+    public static class Counter extends Metric {
+        private final AtomicLong count = new AtomicLong();
+
+        Counter(String name) {
+            super(name);
+        }
+
+        public void inc() {
+            if (enabled) {
+                count.incrementAndGet();
+            }
+        }
+
+        public void add(long delta) {
+            if (enabled) {
+                count.addAndGet(delta);
+            }
+        }
+
+        public long get() {
+            return count.get();
+        }
+
+        @Override
+        boolean isEmpty() {
+            return count.get() == 0;
+        }
+
+        @Override
+        void reset() {
+            count.set(0);
+        }
+
+        @Override
+        void appendText(StringBuilder builder) {
+            builder.append(count.get());
+        }
+
+        @Override
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("type", "counter");
+            json.put("count", count.get());
+            return json;
+        }
+    }
+
+    /**
+     * Records non-negative values into power-of-two buckets, bucket i holding values
+     * in [2^(i-1), 2^i), bucket 0 holding 0.
+     */
+    public static class Histogram extends Metric {
+        private static final int BUCKETS = 40;
+
+        private final String unit;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name, String unit) {
+            super(name);
+            this.unit = unit;
+        }
+
+        public void record(long value) {
+            if (!enabled) {
+                return;
+            }
+            if (value < 0) {
+                value = 0;
+            }
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long currentMax;
+            while (value > (currentMax = max.get())) {
+                if (max.compareAndSet(currentMax, value)) {
+                    break;
+                }
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return an upper bound of the given percentile (0..100), precise to the bucket size
+         */
+        public long getPercentile(double percentile) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+            long threshold = (long) Math.ceil(total * percentile / 100d);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= threshold) {
+                    return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+                }
+            }
+            return max.get();
+        }
+
+        @Override
+        boolean isEmpty() {
+            return count.get() == 0;
+        }
+
+        @Override
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        @Override
+        void appendText(StringBuilder builder) {
+            long n = count.get();
+            builder.append(String.format(Locale.US, "n=%d avg=%.1f p50<=%d p95<=%d max=%d %s",
+                    n, n == 0 ? 0d : (double) sum.get() / n, getPercentile(50), getPercentile(95), max.get(), unit));
+        }
+
+        @Override
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("type", getClass() == Timer.class ? "timer" : "histogram");
+            json.put("unit", unit);
+            json.put("count", count.get());
+            json.put("sum", sum.get());
+            json.put("max", max.get());
+            json.put("p50", getPercentile(50));
+            json.put("p95", getPercentile(95));
+            json.put("p99", getPercentile(99));
+            JSONArray bucketCounts = new JSONArray();
+            for (int i = 0; i < BUCKETS; i++) {
+                bucketCounts.put(buckets.get(i));
+            }
+            json.put("buckets", bucketCounts);
+            return json;
+        }
+    }
+
+    /**
+     * A histogram of durations in microseconds.
+     */
+    public static class Timer extends Histogram {
+        Timer(String name) {
+            super(name, "us");
+        }
+
+        /**
+         * Records the time elapsed since the given {@link Metrics#start()} timestamp.
+         */
+        public void stop(long startNanos) {
+            if (startNanos != 0) {
+                recordNanos(System.nanoTime() - startNanos);
+            }
+        }
+
+        public void recordNanos(long nanos) {
+            record(nanos / 1000);
+        }
+
+        public void recordMillis(long millis) {
+            record(millis * 1000);
+        }
+    }
+}
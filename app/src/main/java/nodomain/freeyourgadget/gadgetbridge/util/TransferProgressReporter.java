@@ -0,0 +1,124 @@
+/*  Copyright (C) 2021 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+/**
+ * Coalesces updates of the transfer progress notification.
+ *
+ * Device supports report progress once per received record, but posting a notification is
+ * expensive and rate limited by Android. Progress updates are therefore only posted when
+ * the visible percentage or the text changes, and at most every
+ * {@link #MIN_UPDATE_INTERVAL_MILLIS}, as some devices change the text with every record. An update arriving earlier is deferred, so that the
+ * latest progress is still shown once the interval has passed. Final updates (not ongoing,
+ * or 100%) are always posted immediately.
+ *
+ * Use it through {@link GB#updateTransferNotification(String, String, boolean, int, Context)}.
+ */
+public class TransferProgressReporter {
+    public static final long MIN_UPDATE_INTERVAL_MILLIS = 500;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable postPendingRunnable = new Runnable() {
+        @Override
+        public void run() {
+            postPending();
+        }
+    };
+
+    private String postedTitle;
+    private String postedText;
+    private int postedPercentage = -1;
+    private long postedAt;
+
+    private boolean hasPending;
+    private String pendingTitle;
+    private String pendingText;
+    private int pendingPercentage;
+
+    TransferProgressReporter(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public synchronized void update(String title, String text, boolean ongoing, int percentage) {
+        if (!ongoing || percentage >= 100) {
+            reset();
+            postNotification(title, text, ongoing, percentage);
+            return;
+        }
+        percentage = Math.max(0, percentage);
+        boolean textChanged = !TextUtils.equals(title, postedTitle) || !TextUtils.equals(text, postedText);
+        if (!textChanged && percentage == postedPercentage) {
+            // nothing visible changed, but a deferred update is now outdated
+            hasPending = false;
+            return;
+        }
+
+        long wait = postedAt + MIN_UPDATE_INTERVAL_MILLIS - SystemClock.elapsedRealtime();
+        if (postedPercentage < 0 || wait <= 0) {
+            hasPending = false;
+            handler.removeCallbacks(postPendingRunnable);
+            post(title, text, percentage);
+            return;
+        }
+
+        pendingTitle = title;
+        pendingText = text;
+        pendingPercentage = percentage;
+        if (!hasPending) {
+            hasPending = true;
+            handler.postDelayed(postPendingRunnable, wait);
+        }
+    }
+
+    /**
+     * Drops any deferred update and forgets what was posted.
+     */
+    public synchronized void reset() {
+        handler.removeCallbacks(postPendingRunnable);
+        hasPending = false;
+        postedTitle = null;
+        postedText = null;
+        postedPercentage = -1;
+        postedAt = 0;
+    }
+
+    private synchronized void postPending() {
+        if (hasPending) {
+            hasPending = false;
+            post(pendingTitle, pendingText, pendingPercentage);
+        }
+    }
+
+    private void post(String title, String text, int percentage) {
+        postedTitle = title;
+        postedText = text;
+        postedPercentage = percentage;
+        postedAt = SystemClock.elapsedRealtime();
+        postNotification(title, text, true, percentage);
+    }
+
+    void postNotification(String title, String text, boolean ongoing, int percentage) {
+        GB.postTransferNotification(title, text, ongoing, percentage, context);
+    }
+}
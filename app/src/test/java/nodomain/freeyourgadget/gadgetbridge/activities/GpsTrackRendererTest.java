@@ -0,0 +1,87 @@
+package nodomain.freeyourgadget.gadgetbridge.activities;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.model.GPSCoordinate;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class GpsTrackRendererTest extends TestBase {
+    private static final float DELTA = 1e-6f;
+
+    @Test
+    public void testSimplifyKeepsFarthestPoint() {
+        float[] xs = {0, 0.25f, 0.5f, 0.75f, 1};
+        float[] ys = {0, 0.16f, 0.3f, 0.14f, 0};
+
+        // the peak is further than the tolerance from the line between the endpoints,
+        // the points next to it are close to the lines to the peak
+        assertArrayEquals(new boolean[]{true, false, true, false, true}, GpsTrackRenderer.simplify(xs, ys, 0.1f));
+        assertArrayEquals(new boolean[]{true, true, true, true, true}, GpsTrackRenderer.simplify(xs, ys, 0.001f));
+        assertArrayEquals(new boolean[]{true, false, false, false, true}, GpsTrackRenderer.simplify(xs, ys, 0.5f));
+    }
+
+    @Test
+    public void testSimplifyDropsCollinearPoints() {
+        float[] xs = {0, 0.25f, 0.5f, 0.75f, 1};
+        float[] ys = {0, 0.25f, 0.5f, 0.75f, 1};
+        assertArrayEquals(new boolean[]{true, false, false, false, true}, GpsTrackRenderer.simplify(xs, ys, 0.001f));
+
+        // a single point is kept
+        assertArrayEquals(new boolean[]{true}, GpsTrackRenderer.simplify(new float[]{0.5f}, new float[]{0.5f}, 0.001f));
+    }
+
+    @Test
+    public void testProject() {
+        List<GPSCoordinate> trackPoints = Arrays.asList(
+                new GPSCoordinate(12, 50, 100),
+                new GPSCoordinate(11, 50.5, 150),
+                new GPSCoordinate(10, 51, 200));
+        float[] xs = new float[3];
+        float[] ys = new float[3];
+        float[] altitudes = new float[3];
+        GpsTrackRenderer.project(trackPoints, xs, ys, altitudes);
+
+        // the latitude becomes x and the longitude y
+        assertArrayEquals(new float[]{0, 0.5f, 1}, xs, DELTA);
+        assertArrayEquals(new float[]{1, 0.5f, 0}, ys, DELTA);
+        assertArrayEquals(new float[]{0, 0.5f, 1}, altitudes, DELTA);
+    }
+
+    @Test
+    public void testProjectCentersTrackWithoutExtent() {
+        float[] xs = new float[1];
+        float[] ys = new float[1];
+        float[] altitudes = new float[1];
+        GpsTrackRenderer.project(Collections.singletonList(new GPSCoordinate(10, 50, 100)), xs, ys, altitudes);
+        assertEquals(0.5f, xs[0], DELTA);
+        assertEquals(0.5f, ys[0], DELTA);
+        assertEquals(0, altitudes[0], DELTA);
+
+        // the same position recorded twice
+        List<GPSCoordinate> trackPoints = Arrays.asList(
+                new GPSCoordinate(10, 50, 100),
+                new GPSCoordinate(10, 50, 100));
+        xs = new float[2];
+        ys = new float[2];
+        altitudes = new float[2];
+        GpsTrackRenderer.project(trackPoints, xs, ys, altitudes);
+        assertArrayEquals(new float[]{0.5f, 0.5f}, xs, DELTA);
+        assertArrayEquals(new float[]{0.5f, 0.5f}, ys, DELTA);
+        assertArrayEquals(new float[]{0, 0}, altitudes, DELTA);
+
+        // a track along a meridian is centered horizontally
+        trackPoints = Arrays.asList(
+                new GPSCoordinate(10, 50, 100),
+                new GPSCoordinate(10, 51, 100));
+        GpsTrackRenderer.project(trackPoints, xs, ys, altitudes);
+        assertArrayEquals(new float[]{0, 1}, xs, DELTA);
+        assertArrayEquals(new float[]{0.5f, 0.5f}, ys, DELTA);
+    }
+}
@@ -0,0 +1,75 @@
+package nodomain.freeyourgadget.gadgetbridge.adapter;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import de.greenrobot.dao.query.WhereCondition;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummary;
+import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummaryDao;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+
+public class ActivitySummariesAdapterTest extends TestBase {
+    private static final double DELTA = 0.001;
+
+    @Test
+    public void testDashboardTotals() {
+        long device1 = DBHelper.getDevice(createDummyGDevice("00:00:00:00:42"), daoSession).getId();
+        long device2 = DBHelper.getDevice(createDummyGDevice("00:00:00:00:43"), daoSession).getId();
+        insertSummary(device1, ActivityKind.TYPE_RUNNING, 1000, 61000, 100f, 5000f, 60f);
+        insertSummary(device1, ActivityKind.TYPE_RUNNING, 100000, 130000, 50f, 2500f, 30f);
+        // summaries without extracted metrics only count for the duration
+        insertSummary(device2, ActivityKind.TYPE_CYCLING, 200000, 210000, null, null, null);
+
+        ActivitySummariesAdapter.DashboardTotals totals = loadTotals(Collections.<WhereCondition>emptyList());
+        assertEquals(3, totals.count);
+        assertEquals(100000, totals.durationMillis);
+        assertEquals(150, totals.caloriesBurnt, DELTA);
+        assertEquals(7500, totals.distanceMeters, DELTA);
+        assertEquals(90, totals.activeSeconds, DELTA);
+        assertEquals(200000, totals.newestStartTime);
+        assertEquals(61000, totals.oldestEndTime);
+        assertEquals(0, totals.activityKind);
+
+        totals = loadTotals(Collections.singletonList(BaseActivitySummaryDao.Properties.DeviceId.eq(device1)));
+        assertEquals(2, totals.count);
+        assertEquals(90000, totals.durationMillis);
+        assertEquals(7500, totals.distanceMeters, DELTA);
+        assertEquals(100000, totals.newestStartTime);
+        assertEquals(ActivityKind.TYPE_RUNNING, totals.activityKind);
+    }
+
+    @Test
+    public void testDashboardTotalsEmpty() {
+        ActivitySummariesAdapter.DashboardTotals totals = loadTotals(Collections.singletonList(
+                BaseActivitySummaryDao.Properties.ActivityKind.eq(ActivityKind.TYPE_SWIMMING)));
+        assertEquals(0, totals.count);
+        assertEquals(0, totals.durationMillis);
+        assertEquals(0, totals.distanceMeters, DELTA);
+        assertEquals(0, totals.activityKind);
+    }
+
+    private ActivitySummariesAdapter.DashboardTotals loadTotals(List<WhereCondition> conditions) {
+        return ActivitySummariesAdapter.loadDashboardTotals(dbHandler.getDatabase(), conditions);
+    }
+
+    private void insertSummary(long deviceId, int kind, long start, long end, Float calories, Float distance, Float activeSeconds) {
+        BaseActivitySummary summary = new BaseActivitySummary();
+        summary.setName("test");
+        summary.setStartTime(new Date(start));
+        summary.setEndTime(new Date(end));
+        summary.setActivityKind(kind);
+        summary.setDeviceId(deviceId);
+        summary.setUserId(DBHelper.getUser(daoSession).getId());
+        summary.setCaloriesBurnt(calories);
+        summary.setDistanceMeters(distance);
+        summary.setActiveSeconds(activeSeconds);
+        daoSession.getBaseActivitySummaryDao().insert(summary);
+    }
+}
@@ -0,0 +1,52 @@
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import org.junit.Test;
+
+import java.util.Date;
+
+import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummary;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ActivitySummaryMetricsMigrationTest extends TestBase {
+    private static final double DELTA = 0.001;
+
+    @Test
+    public void testMigrate() {
+        long deviceId = DBHelper.getDevice(createDummyGDevice("00:00:00:00:44"), daoSession).getId();
+        long first = insertSummary(deviceId, "{\"distanceMeters\":{\"value\":1000,\"unit\":\"meters\"}}", null);
+        long second = insertSummary(deviceId, "{\"steps\":{\"value\":2000,\"unit\":\"steps_unit\"}}", null);
+        long noMetrics = insertSummary(deviceId, null, null);
+        // extracted when it was stored, must not be parsed again
+        long extracted = insertSummary(deviceId, "{\"distanceMeters\":{\"value\":1000,\"unit\":\"meters\"}}", 42f);
+
+        // chunks smaller than the number of summaries
+        new ActivitySummaryMetricsMigration(1).migrate();
+
+        assertEquals(1000, getSummary(first).getDistanceMeters(), DELTA);
+        assertEquals(Integer.valueOf(2000), getSummary(second).getSteps());
+        assertNull(getSummary(noMetrics).getDistanceMeters());
+        assertEquals(42, getSummary(extracted).getDistanceMeters(), DELTA);
+    }
+
+    private long insertSummary(long deviceId, String summaryData, Float distanceMeters) {
+        BaseActivitySummary summary = new BaseActivitySummary();
+        summary.setName("test");
+        summary.setStartTime(new Date(1000));
+        summary.setEndTime(new Date(2000));
+        summary.setActivityKind(ActivityKind.TYPE_RUNNING);
+        summary.setDeviceId(deviceId);
+        summary.setUserId(DBHelper.getUser(daoSession).getId());
+        summary.setSummaryData(summaryData);
+        summary.setDistanceMeters(distanceMeters);
+        return daoSession.getBaseActivitySummaryDao().insert(summary);
+    }
+
+    private BaseActivitySummary getSummary(long id) {
+        daoSession.clear();
+        return daoSession.getBaseActivitySummaryDao().load(id);
+    }
+}
@@ -0,0 +1,97 @@
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoMaster;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySampleDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.User;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExportLogTest extends TestBase {
+
+    @Test
+    public void testDeltas() throws Exception {
+        GBDevice dummyGBDevice = createDummyGDevice("00:00:00:00:20");
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        User user = DBHelper.getUser(daoSession);
+        Device device = DBHelper.getDevice(dummyGBDevice, daoSession);
+        for (int i = 0; i < 20; i++) {
+            sampleProvider.addGBActivitySample(createSample(sampleProvider, 60 * i, i, user, device));
+        }
+
+        SQLiteDatabase source = dbHandler.getDatabase();
+        SQLiteDatabase target = SQLiteDatabase.create(null);
+        DaoMaster.createAllTables(target, true);
+        try {
+            // without watermarks, everything is exported
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            Map<String, Long> watermarks = ExportLog.writeDelta(source, DaoMaster.SCHEMA_VERSION, new HashMap<String, Long>(),
+                    Integer.MAX_VALUE, Integer.MIN_VALUE, log, getContext().getCacheDir());
+            assertEquals(Long.valueOf(60 * 19), watermarks.get(MiBandActivitySampleDao.TABLENAME));
+            assertEquals(1, applyDeltas(target, log));
+            assertEquals(20, count(target, -1));
+
+            // newer samples, one changed and one deleted sample
+            for (int i = 20; i < 30; i++) {
+                sampleProvider.addGBActivitySample(createSample(sampleProvider, 60 * i, i, user, device));
+            }
+            sampleProvider.addGBActivitySample(createSample(sampleProvider, 300, 100, user, device));
+            source.delete(MiBandActivitySampleDao.TABLENAME, MiBandActivitySampleDao.Properties.Timestamp.columnName + " = 360", null);
+
+            log = new ByteArrayOutputStream();
+            ExportLog.writeDelta(source, DaoMaster.SCHEMA_VERSION, watermarks, 300, 360, log, getContext().getCacheDir());
+            assertEquals(1, applyDeltas(target, log));
+            assertEquals(29, count(target, -1));
+            assertEquals(0, count(target, 360));
+            try (Cursor cursor = target.rawQuery("SELECT " + MiBandActivitySampleDao.Properties.Steps.columnName
+                    + " FROM " + MiBandActivitySampleDao.TABLENAME
+                    + " WHERE " + MiBandActivitySampleDao.Properties.Timestamp.columnName + " = 300", null)) {
+                cursor.moveToFirst();
+                assertEquals(100, cursor.getInt(0));
+            }
+        } finally {
+            target.close();
+        }
+    }
+
+    private int applyDeltas(SQLiteDatabase db, ByteArrayOutputStream log) throws Exception {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(log.toByteArray()));
+        return ExportLog.applyDeltas(db, in, DaoMaster.SCHEMA_VERSION);
+    }
+
+    private int count(SQLiteDatabase db, int timestamp) {
+        String selection = timestamp >= 0 ? " WHERE " + MiBandActivitySampleDao.Properties.Timestamp.columnName + " = " + timestamp : "";
+        try (Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + MiBandActivitySampleDao.TABLENAME + selection, null)) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    private MiBandActivitySample createSample(MiBandSampleProvider sampleProvider, int timestamp, int steps, User user, Device device) {
+        MiBandActivitySample sample = sampleProvider.createActivitySample();
+        sample.setProvider(sampleProvider);
+        sample.setRawKind(MiBandSampleProvider.TYPE_ACTIVITY);
+        sample.setTimestamp(timestamp);
+        sample.setRawIntensity(10);
+        sample.setHeartRate(70);
+        sample.setSteps(steps);
+        sample.setUserId(user.getId());
+        sample.setDeviceId(device.getId());
+        return sample;
+    }
+}
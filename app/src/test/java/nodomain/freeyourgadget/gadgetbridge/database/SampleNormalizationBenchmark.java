@@ -0,0 +1,77 @@
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBand2SampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.pebble.PebbleHealthSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.SyncBenchmark;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+
+public class SampleNormalizationBenchmark extends TestBase {
+    private static final Logger LOG = LoggerFactory.getLogger(SampleNormalizationBenchmark.class);
+
+    private static final int SAMPLES = 31 * 24 * 60;
+    // the chart and analysis loops look at the kind and intensity of a sample several times
+    private static final int ACCESSES_PER_SAMPLE = 4;
+
+    private GBDevice device;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        SyncBenchmark.assumeEnabled();
+        device = createDummyGDevice("00:00:00:00:60");
+    }
+
+    @Test
+    public void benchmarkHuami() {
+        benchmark("huami", new MiBand2SampleProvider(device, daoSession));
+    }
+
+    @Test
+    public void benchmarkPebbleHealth() {
+        benchmark("pebble health", new PebbleHealthSampleProvider(device, daoSession));
+    }
+
+    private static <T extends AbstractActivitySample> void benchmark(String name, SampleProvider<T> provider) {
+        int[] rawKinds = new int[SAMPLES];
+        int[] rawIntensities = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            rawKinds[i] = (i / 17) % 128;
+            rawIntensities[i] = (i * 7) % 256;
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long computedSum = 0;
+            for (int i = 0; i < SAMPLES; i++) {
+                for (int access = 0; access < ACCESSES_PER_SAMPLE; access++) {
+                    computedSum += provider.normalizeType(rawKinds[i]);
+                    computedSum += (long) (provider.normalizeIntensity(rawIntensities[i]) * 1000);
+                }
+            }
+            long computed = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long lookedUpSum = 0;
+            for (int i = 0; i < SAMPLES; i++) {
+                for (int access = 0; access < ACCESSES_PER_SAMPLE; access++) {
+                    lookedUpSum += provider.lookupType(rawKinds[i]);
+                    lookedUpSum += (long) (provider.lookupIntensity(rawIntensities[i]) * 1000);
+                }
+            }
+            long lookedUp = System.nanoTime() - start;
+
+            assertEquals(computedSum, lookedUpSum);
+            LOG.info(name + " normalization of a month of samples, round " + round + ": computed "
+                    + computed / 1000 + "us, looked up " + lookedUp / 1000 + "us");
+        }
+    }
+}
@@ -2,16 +2,24 @@ package nodomain.freeyourgadget.gadgetbridge.database;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import nodomain.freeyourgadget.gadgetbridge.activities.charts.ActivityAnalysis;
+import nodomain.freeyourgadget.gadgetbridge.activities.charts.SessionIndex;
 import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiConst;
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBand2SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.User;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
 
 import static org.junit.Assert.assertEquals;
@@ -170,4 +178,160 @@ public class SampleProviderTest extends TestBase {
         sleepSamples = sampleProvider.getSleepSamples(1500, 2500);
         assertEquals(1, sleepSamples.size());
     }
+
+    @Test
+    public void testNormalizedKinds() {
+        User user = DBHelper.getUser(daoSession);
+        int[] rawKinds = new int[]{HuamiConst.TYPE_ACTIVITY | 0x10, HuamiConst.TYPE_NO_CHANGE, HuamiConst.TYPE_IGNORE, HuamiConst.TYPE_NO_CHANGE, 5};
+        int[] expectedKinds = new int[]{HuamiConst.TYPE_ACTIVITY, HuamiConst.TYPE_ACTIVITY, HuamiConst.TYPE_ACTIVITY, HuamiConst.TYPE_ACTIVITY, 5};
+
+        // normalized at ingest, in two batches
+        MiBand2SampleProvider sampleProvider = new MiBand2SampleProvider(dummyGBDevice, daoSession);
+        Device device = DBHelper.getDevice(dummyGBDevice, daoSession);
+        MiBandActivitySample[] samples = new MiBandActivitySample[rawKinds.length];
+        for (int i = 0; i < rawKinds.length; i++) {
+            samples[i] = createSample(sampleProvider, rawKinds[i], 60 * (i + 1), 10, 70, 10, user, device);
+        }
+        List<MiBandActivitySample> firstBatch = Arrays.asList(samples).subList(0, 3);
+        List<MiBandActivitySample> secondBatch = Arrays.asList(samples).subList(3, rawKinds.length);
+        sampleProvider.normalizeKinds(firstBatch);
+        sampleProvider.addGBActivitySamples(firstBatch.toArray(new MiBandActivitySample[0]));
+        sampleProvider.normalizeKinds(secondBatch);
+        sampleProvider.addGBActivitySamples(secondBatch.toArray(new MiBandActivitySample[0]));
+
+        // stored without normalizing, like before the migration
+        GBDevice legacyGBDevice = createDummyGDevice("00:00:00:00:11");
+        MiBand2SampleProvider legacySampleProvider = new MiBand2SampleProvider(legacyGBDevice, daoSession);
+        Device legacyDevice = DBHelper.getDevice(legacyGBDevice, daoSession);
+        for (int i = 0; i < rawKinds.length; i++) {
+            legacySampleProvider.addGBActivitySample(createSample(legacySampleProvider, rawKinds[i], 60 * (i + 1), 10, 70, 10, user, legacyDevice));
+        }
+
+        daoSession.clear();
+        List<MiBandActivitySample> normalized = sampleProvider.getAllActivitySamples(0, 1000);
+        List<MiBandActivitySample> legacy = legacySampleProvider.getAllActivitySamples(0, 1000);
+        assertEquals(rawKinds.length, normalized.size());
+        assertEquals(rawKinds.length, legacy.size());
+        for (int i = 0; i < rawKinds.length; i++) {
+            assertEquals(Integer.valueOf(expectedKinds[i]), normalized.get(i).getNormalizedKind());
+            assertEquals(expectedKinds[i], normalized.get(i).getRawKind());
+            assertEquals(expectedKinds[i], legacy.get(i).getRawKind());
+        }
+    }
+
+    @Test
+    public void testLookupTables() {
+        MiBand2SampleProvider sampleProvider = new MiBand2SampleProvider(dummyGBDevice, daoSession);
+        for (int raw = -2; raw < 2000; raw++) {
+            assertEquals(sampleProvider.normalizeType(raw), sampleProvider.lookupType(raw));
+            assertEquals(sampleProvider.normalizeIntensity(raw), sampleProvider.lookupIntensity(raw), 0f);
+            // the second lookup comes from the table
+            assertEquals(sampleProvider.normalizeType(raw), sampleProvider.lookupType(raw));
+            assertEquals(sampleProvider.normalizeIntensity(raw), sampleProvider.lookupIntensity(raw), 0f);
+        }
+    }
+
+    @Test
+    public void testSessionIndex() {
+        final MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        User user = DBHelper.getUser(daoSession);
+        Device device = DBHelper.getDevice(dummyGBDevice, daoSession);
+        for (int i = 0; i < 20; i++) {
+            sampleProvider.addGBActivitySample(createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, 60 * i, 10, 70, 100, user, device));
+        }
+        final int[] loads = new int[1];
+        SessionIndex.SampleSource source = new SessionIndex.SampleSource() {
+            @Override
+            public List<? extends ActivitySample> getSamples() {
+                loads[0]++;
+                return sampleProvider.getAllActivitySamples(0, 10000);
+            }
+        };
+        SessionIndex index = new SessionIndex(daoSession);
+
+        SessionIndex.StepSessions computed = index.getStepSessions(dummyGBDevice, 0, 10000, source);
+        SessionIndex.StepSessions stored = index.getStepSessions(dummyGBDevice, 0, 10000, source);
+        assertEquals(1, loads[0]);
+        assertEquals(2000, computed.getTotalSteps());
+        assertEquals(computed.getTotalSteps(), stored.getTotalSteps());
+        assertEquals(computed.getSessions().size(), stored.getSessions().size());
+        for (int i = 0; i < computed.getSessions().size(); i++) {
+            assertEquals(computed.getSessions().get(i).getStartTime(), stored.getSessions().get(i).getStartTime());
+            assertEquals(computed.getSessions().get(i).getEndTime(), stored.getSessions().get(i).getEndTime());
+            assertEquals(computed.getSessions().get(i).getActiveSteps(), stored.getSessions().get(i).getActiveSteps());
+        }
+
+        // new samples in the window invalidate the stored sessions
+        sampleProvider.addGBActivitySample(createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, 60 * 20, 10, 70, 100, user, device));
+        SessionIndex.StepSessions updated = index.getStepSessions(dummyGBDevice, 0, 10000, source);
+        assertEquals(2, loads[0]);
+        assertEquals(2100, updated.getTotalSteps());
+    }
+
+    @Test
+    public void testActivityAmounts() {
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        User user = DBHelper.getUser(daoSession);
+        Device device = DBHelper.getDevice(dummyGBDevice, daoSession);
+        for (int i = 0; i < 100; i++) {
+            int rawKind = i % 30 < 10 ? MiBandSampleProvider.TYPE_DEEP_SLEEP : MiBandSampleProvider.TYPE_ACTIVITY;
+            sampleProvider.addGBActivitySample(createSample(sampleProvider, rawKind, 60 * i, 10, 70, i, user, device));
+        }
+
+        // overlapping spans, like the sleep and steps of a day
+        int[] starts = new int[]{0, 1200, 1800, 5000};
+        int[] ends = new int[]{2999, 4199, 2399, 9999};
+        ActivityAmounts[] amounts = sampleProvider.getActivityAmounts(starts, ends);
+        assertEquals(starts.length, amounts.length);
+        for (int i = 0; i < starts.length; i++) {
+            ActivityAmounts expected = new ActivityAnalysis().calculateActivityAmounts(sampleProvider.getAllActivitySamples(starts[i], ends[i]));
+            assertEquals(expected.getTotalSeconds(), amounts[i].getTotalSeconds());
+            assertEquals(expected.getAmounts().size(), amounts[i].getAmounts().size());
+            for (int k = 0; k < expected.getAmounts().size(); k++) {
+                assertEquals(expected.getAmounts().get(k).getActivityKind(), amounts[i].getAmounts().get(k).getActivityKind());
+                assertEquals(expected.getAmounts().get(k).getTotalSeconds(), amounts[i].getAmounts().get(k).getTotalSeconds());
+                assertEquals(expected.getAmounts().get(k).getTotalSteps(), amounts[i].getAmounts().get(k).getTotalSteps());
+            }
+        }
+    }
+
+    @Test
+    public void testForEachSample() {
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        User user = DBHelper.getUser(daoSession);
+        Device device = DBHelper.getDevice(dummyGBDevice, daoSession);
+        // stored out of order
+        for (int i = 49; i >= 0; i--) {
+            int rawKind = i % 5 == 0 ? MiBandSampleProvider.TYPE_LIGHT_SLEEP : MiBandSampleProvider.TYPE_ACTIVITY;
+            sampleProvider.addGBActivitySample(createSample(sampleProvider, rawKind, 60 * i, 10, 70, i, user, device));
+        }
+
+        final List<Integer> timestamps = new ArrayList<>();
+        final int[] steps = new int[1];
+        sampleProvider.forEachSample(600, 2400, ActivityKind.TYPE_ALL, new SampleProvider.SampleVisitor<MiBandActivitySample>() {
+            @Override
+            public void visit(MiBandActivitySample sample) {
+                timestamps.add(sample.getTimestamp());
+                steps[0] += sample.getSteps();
+            }
+        });
+        List<MiBandActivitySample> expected = sampleProvider.getAllActivitySamples(600, 2400);
+        assertEquals(expected.size(), timestamps.size());
+        int expectedSteps = 0;
+        for (int i = 0; i < timestamps.size(); i++) {
+            assertEquals(600 + 60 * i, (int) timestamps.get(i));
+            expectedSteps += expected.get(i).getSteps();
+        }
+        assertEquals(expectedSteps, steps[0]);
+
+        final int[] sleepSamples = new int[1];
+        sampleProvider.forEachSample(0, 10000, ActivityKind.TYPE_SLEEP, new SampleProvider.SampleVisitor<MiBandActivitySample>() {
+            @Override
+            public void visit(MiBandActivitySample sample) {
+                assertEquals(ActivityKind.TYPE_LIGHT_SLEEP, sample.getKind());
+                sleepSamples[0]++;
+            }
+        });
+        assertEquals(10, sleepSamples[0]);
+    }
 }
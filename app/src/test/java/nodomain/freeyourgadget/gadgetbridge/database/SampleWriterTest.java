@@ -0,0 +1,179 @@
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleWriter;
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static nodomain.freeyourgadget.gadgetbridge.model.ActivitySample.NOT_MEASURED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SampleWriterTest extends TestBase {
+
+    private GBDevice dummyGBDevice;
+    private SampleWriter<MiBandActivitySample> writer;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        dummyGBDevice = createDummyGDevice("00:00:00:00:30");
+        writer = new SampleWriter<>(dummyGBDevice, new SampleWriter.ProviderFactory<MiBandActivitySample>() {
+            @Override
+            public AbstractSampleProvider<MiBandActivitySample> createProvider(GBDevice device, DaoSession session) {
+                return new MiBandSampleProvider(device, session);
+            }
+        }, 2);
+    }
+
+    @Test
+    public void testMergePending() throws Exception {
+        writer.add(createSample(60, 10, NOT_MEASURED));
+        writer.add(createSample(60, NOT_MEASURED, 70));
+        assertEquals(1, writer.getPendingCount());
+        assertFalse(writer.isFull());
+
+        assertEquals(1, writer.flush());
+        assertEquals(0, writer.getPendingCount());
+        MiBandActivitySample stored = getStoredSample(60);
+        assertEquals(10, stored.getSteps());
+        assertEquals(70, stored.getHeartRate());
+    }
+
+    @Test
+    public void testMergeStored() throws Exception {
+        writer.add(createSample(120, 25, 60));
+        writer.flush();
+
+        // a heart rate only record must not clear the stored steps
+        writer.add(createSample(120, NOT_MEASURED, 80));
+        writer.add(createSample(180, 5, NOT_MEASURED));
+        assertTrue(writer.isFull());
+        assertEquals(2, writer.flush());
+
+        MiBandActivitySample stored = getStoredSample(120);
+        assertEquals(25, stored.getSteps());
+        assertEquals(80, stored.getHeartRate());
+        assertEquals(5, getStoredSample(180).getSteps());
+    }
+
+    @Test
+    public void testZeroOverwritesStored() throws Exception {
+        writer.add(createSample(300, 25, 60));
+        writer.flush();
+
+        // 0 is a real value, e.g. after the device corrected its step count
+        writer.add(createSample(300, 0, NOT_MEASURED));
+        writer.flush();
+
+        MiBandActivitySample stored = getStoredSample(300);
+        assertEquals(0, stored.getSteps());
+        assertEquals(60, stored.getHeartRate());
+    }
+
+    @Test
+    public void testLoadsPendingTimestampsOnly() throws Exception {
+        writer.add(createSample(360, 10, 50));
+        writer.add(createSample(420, 20, 55));
+        writer.flush();
+        writer.add(createSample(480, 30, 60));
+        writer.flush();
+
+        // the row in between is not pending and stays untouched
+        writer.add(createSample(360, NOT_MEASURED, 70));
+        writer.add(createSample(480, NOT_MEASURED, 75));
+        assertEquals(2, writer.flush());
+
+        assertEquals(10, getStoredSample(360).getSteps());
+        assertEquals(70, getStoredSample(360).getHeartRate());
+        assertEquals(55, getStoredSample(420).getHeartRate());
+        assertEquals(30, getStoredSample(480).getSteps());
+        assertEquals(75, getStoredSample(480).getHeartRate());
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        writer.add(createSample(540, 10, 50));
+        writer.flush();
+
+        writer.begin();
+        writer.add(createSample(540, 20, 60));
+        writer.add(createSample(600, 30, 65));
+        writer.flush();
+        // a timestamp written twice is restored to the row stored before begin()
+        writer.add(createSample(540, 40, 70));
+        writer.add(createSample(660, 50, 75));
+        writer.flush();
+        writer.rollback();
+
+        MiBandActivitySample stored = getStoredSample(540);
+        assertEquals(10, stored.getSteps());
+        assertEquals(50, stored.getHeartRate());
+        MiBandSampleProvider provider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        assertEquals(0, provider.getAllActivitySamples(600, 660).size());
+    }
+
+    @Test
+    public void testCommit() throws Exception {
+        writer.begin();
+        writer.add(createSample(720, 10, 50));
+        writer.add(createSample(780, 20, 55));
+        writer.flush();
+        writer.add(createSample(840, 30, 60));
+        assertEquals(1, writer.commit());
+
+        // the next begin() must not roll back the committed samples
+        writer.begin();
+        writer.rollback();
+        assertEquals(10, getStoredSample(720).getSteps());
+        assertEquals(30, getStoredSample(840).getSteps());
+    }
+
+    @Test
+    public void testBeginRollsBackUnfinished() throws Exception {
+        writer.begin();
+        writer.add(createSample(900, 10, 50));
+        writer.flush();
+
+        // e.g. the connection was lost during the transfer
+        writer.begin();
+        MiBandSampleProvider provider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        assertEquals(0, provider.getAllActivitySamples(900, 900).size());
+        writer.rollback();
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        writer.add(createSample(240, 10, NOT_MEASURED));
+        writer.clear();
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(0, writer.flush());
+        MiBandSampleProvider provider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        assertEquals(0, provider.getAllActivitySamples(240, 240).size());
+    }
+
+    private MiBandActivitySample getStoredSample(int timestamp) {
+        daoSession.clear();
+        MiBandSampleProvider provider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        List<MiBandActivitySample> samples = provider.getAllActivitySamples(timestamp, timestamp);
+        assertEquals(1, samples.size());
+        return samples.get(0);
+    }
+
+    private MiBandActivitySample createSample(int timestamp, int steps, int heartRate) {
+        MiBandActivitySample sample = SampleWriter.clearColumns(new MiBandActivitySample());
+        sample.setTimestamp(timestamp);
+        sample.setRawKind(MiBandSampleProvider.TYPE_ACTIVITY);
+        sample.setSteps(steps);
+        sample.setHeartRate(heartRate);
+        return sample;
+    }
+}
@@ -0,0 +1,82 @@
+package nodomain.freeyourgadget.gadgetbridge.devices.miband;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySampleDao;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiConst.TYPE_ACTIVITY;
+import static nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiConst.TYPE_DEEP_SLEEP;
+import static nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiConst.TYPE_IGNORE;
+import static nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiConst.TYPE_LIGHT_SLEEP;
+import static nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiConst.TYPE_NO_CHANGE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MiBand2ActivityKindMigrationTest extends TestBase {
+    private static final int[] RAW_KINDS = {
+            TYPE_ACTIVITY, TYPE_NO_CHANGE, TYPE_NO_CHANGE, TYPE_LIGHT_SLEEP, TYPE_IGNORE,
+            TYPE_NO_CHANGE, TYPE_DEEP_SLEEP | 0x70, TYPE_NO_CHANGE, TYPE_IGNORE, TYPE_ACTIVITY, TYPE_NO_CHANGE
+    };
+    private static final int[] NORMALIZED_KINDS = {
+            TYPE_ACTIVITY, TYPE_ACTIVITY, TYPE_ACTIVITY, TYPE_LIGHT_SLEEP, TYPE_LIGHT_SLEEP,
+            TYPE_LIGHT_SLEEP, TYPE_DEEP_SLEEP, TYPE_DEEP_SLEEP, TYPE_DEEP_SLEEP, TYPE_ACTIVITY, TYPE_ACTIVITY
+    };
+
+    @Test
+    public void testChunkedMigration() {
+        GBDevice miBand2 = new GBDevice("00:00:00:00:41", "Mi Band 2", null, DeviceType.MIBAND2);
+        long deviceId = DBHelper.getDevice(miBand2, daoSession).getId();
+        insertSamples(deviceId, 0);
+
+        // chunks smaller than the runs of TYPE_NO_CHANGE and TYPE_IGNORE
+        new MiBand2ActivityKindMigration(2).migrate();
+
+        List<MiBandActivitySample> samples = getSamples(deviceId);
+        assertEquals(RAW_KINDS.length, samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            assertEquals("sample " + i, Integer.valueOf(NORMALIZED_KINDS[i]), samples.get(i).getNormalizedKind());
+        }
+    }
+
+    @Test
+    public void testOtherDevicesUntouched() {
+        GBDevice miBand = new GBDevice("00:00:00:00:42", "Mi Band", null, DeviceType.MIBAND);
+        long deviceId = DBHelper.getDevice(miBand, daoSession).getId();
+        insertSamples(deviceId, 1000);
+
+        new MiBand2ActivityKindMigration(2).migrate();
+
+        for (MiBandActivitySample sample : getSamples(deviceId)) {
+            assertNull(sample.getNormalizedKind());
+        }
+    }
+
+    private void insertSamples(long deviceId, int start) {
+        long userId = DBHelper.getUser(daoSession).getId();
+        List<MiBandActivitySample> samples = new ArrayList<>();
+        for (int i = 0; i < RAW_KINDS.length; i++) {
+            MiBandActivitySample sample = new MiBandActivitySample();
+            sample.setTimestamp(start + i * 60);
+            sample.setDeviceId(deviceId);
+            sample.setUserId(userId);
+            sample.setRawKind(RAW_KINDS[i]);
+            samples.add(sample);
+        }
+        daoSession.getMiBandActivitySampleDao().insertInTx(samples);
+    }
+
+    private List<MiBandActivitySample> getSamples(long deviceId) {
+        daoSession.clear();
+        return daoSession.getMiBandActivitySampleDao().queryBuilder()
+                .where(MiBandActivitySampleDao.Properties.DeviceId.eq(deviceId))
+                .orderAsc(MiBandActivitySampleDao.Properties.Timestamp).list();
+    }
+}
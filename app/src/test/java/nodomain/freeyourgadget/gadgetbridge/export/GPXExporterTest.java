@@ -10,11 +10,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.text.ParseException;
 import java.text.ParsePosition;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Random;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
@@ -32,6 +35,8 @@ import nodomain.freeyourgadget.gadgetbridge.model.ActivityTrack;
 import nodomain.freeyourgadget.gadgetbridge.model.GPSCoordinate;
 import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
 
+import static org.junit.Assert.assertEquals;
+
 public class GPXExporterTest extends TestBase {
     @Test
     public void shouldCreateValidGpxFromSimulatedData() throws IOException, ParseException, GPXTrackEmptyException, SAXException {
@@ -63,6 +68,29 @@ public class GPXExporterTest extends TestBase {
         validateGpxFile(tempFile);
     }
 
+    @Test
+    public void shouldFormatLikeBigDecimalAndIso8601() {
+        final char[] buffer = new char[GPXFormatter.BUFFER_LENGTH];
+        final double[] values = {0, -0.0, -0.0000004, 0.0000005, -0.0000005, 13.4, -180, 8848.1234565, 1.0000005};
+        for (final double value : values) {
+            assertEquals(format(value), new String(buffer, 0, GPXFormatter.formatDecimal(value, buffer, 0)));
+        }
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            final double value = (random.nextDouble() - 0.5) * 360;
+            assertEquals(format(value), new String(buffer, 0, GPXFormatter.formatDecimal(value, buffer, 0)));
+        }
+
+        assertEquals("1970-01-01T00:00:00Z", new String(buffer, 0, GPXFormatter.formatTimeUTC(0, buffer, 0)));
+        assertEquals("1969-12-31T23:59:59Z", new String(buffer, 0, GPXFormatter.formatTimeUTC(-1, buffer, 0)));
+        assertEquals("2000-02-29T00:00:00Z", new String(buffer, 0, GPXFormatter.formatTimeUTC(951782400000L, buffer, 0)));
+        assertEquals("2021-03-01T09:05:07Z", new String(buffer, 0, GPXFormatter.formatTimeUTC(1614589507999L, buffer, 0)));
+    }
+
+    private String format(double value) {
+        return new BigDecimal(value).setScale(GPSCoordinate.GPS_DECIMAL_DEGREES_SCALE, RoundingMode.HALF_UP).toPlainString();
+    }
+
     private ActivityTrack createTestTrack(List<ActivityPoint> points) {
         final User user = new User();
         user.setName("Test User");
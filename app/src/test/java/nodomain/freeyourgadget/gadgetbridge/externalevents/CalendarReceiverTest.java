@@ -0,0 +1,145 @@
+package nodomain.freeyourgadget.gadgetbridge.externalevents;
+
+import android.content.Intent;
+
+import org.junit.Test;
+import org.robolectric.shadows.ShadowApplication;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.entities.CalendarSyncState;
+import nodomain.freeyourgadget.gadgetbridge.entities.CalendarSyncStateDao;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.CalendarEvents;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.ACTION_ADD_CALENDAREVENT;
+import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.ACTION_DELETE_CALENDAREVENT;
+import static nodomain.freeyourgadget.gadgetbridge.model.DeviceService.EXTRA_CALENDAREVENT_ID;
+import static org.junit.Assert.assertEquals;
+import static org.robolectric.Shadows.shadowOf;
+
+public class CalendarReceiverTest extends TestBase {
+    private static final long ID_1 = 100;
+    private static final long ID_2 = 101;
+
+    private GBDevice device;
+    private CalendarReceiver receiver;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        device = createDummyGDevice("00:00:01:00:29");
+        device.setState(GBDevice.State.INITIALIZED);
+        receiver = new CalendarReceiver(device);
+        getSentCommands();
+    }
+
+    @Test
+    public void testEventAdded() {
+        List<CalendarEvents.CalendarEvent> events = new ArrayList<>();
+        events.add(createEvent(ID_1, "first"));
+        receiver.syncCalendar(events);
+        assertEquals("add " + ID_1, join(getSentCommands()));
+
+        events.add(createEvent(ID_2, "second"));
+        receiver.syncCalendar(events);
+        assertEquals("add " + ID_2, join(getSentCommands()));
+        assertEquals(2, getSyncStates().size());
+    }
+
+    @Test
+    public void testEventChanged() {
+        List<CalendarEvents.CalendarEvent> events = new ArrayList<>();
+        events.add(createEvent(ID_1, "first"));
+        events.add(createEvent(ID_2, "second"));
+        receiver.syncCalendar(events);
+        getSentCommands();
+
+        events.set(1, createEvent(ID_2, "changed"));
+        receiver.syncCalendar(events);
+        assertEquals("delete " + ID_2 + ", add " + ID_2, join(getSentCommands()));
+
+        // unchanged events are not sent again
+        receiver.syncCalendar(events);
+        assertEquals("", join(getSentCommands()));
+
+        List<CalendarSyncState> states = getSyncStates();
+        assertEquals(2, states.size());
+        assertEquals(createEvent(ID_2, "changed").hashCode(), states.get(1).getHash());
+    }
+
+    @Test
+    public void testEventChangedSinceRestart() {
+        List<CalendarEvents.CalendarEvent> events = new ArrayList<>();
+        events.add(createEvent(ID_1, "first"));
+        receiver.syncCalendar(events);
+
+        // a new receiver only knows the stored hashes
+        CalendarReceiver restarted = new CalendarReceiver(device);
+        getSentCommands();
+        restarted.syncCalendar(events);
+        assertEquals("", join(getSentCommands()));
+
+        events.set(0, createEvent(ID_1, "changed"));
+        restarted.syncCalendar(events);
+        assertEquals("delete " + ID_1 + ", add " + ID_1, join(getSentCommands()));
+    }
+
+    @Test
+    public void testEventRemoved() {
+        List<CalendarEvents.CalendarEvent> events = new ArrayList<>();
+        events.add(createEvent(ID_1, "first"));
+        events.add(createEvent(ID_2, "second"));
+        receiver.syncCalendar(events);
+        getSentCommands();
+
+        events.remove(0);
+        receiver.syncCalendar(events);
+        assertEquals("delete " + ID_1, join(getSentCommands()));
+
+        List<CalendarSyncState> states = getSyncStates();
+        assertEquals(1, states.size());
+        assertEquals(ID_2, states.get(0).getCalendarEntryId());
+    }
+
+    private static CalendarEvents.CalendarEvent createEvent(long id, String title) {
+        return new CalendarEvents.CalendarEvent(1000, 2000, id, title, null, null, "cal", false);
+    }
+
+    private List<CalendarSyncState> getSyncStates() {
+        daoSession.clear();
+        return daoSession.getCalendarSyncStateDao().queryBuilder()
+                .orderAsc(CalendarSyncStateDao.Properties.CalendarEntryId).list();
+    }
+
+    /**
+     * Returns the calendar commands sent to the device service since the last call.
+     */
+    private List<String> getSentCommands() {
+        List<String> commands = new ArrayList<>();
+        ShadowApplication shadowApplication = shadowOf(app);
+        Intent intent;
+        while ((intent = shadowApplication.getNextStartedService()) != null) {
+            long id = intent.getLongExtra(EXTRA_CALENDAREVENT_ID, -1);
+            if (ACTION_ADD_CALENDAREVENT.equals(intent.getAction())) {
+                commands.add("add " + id);
+            } else if (ACTION_DELETE_CALENDAREVENT.equals(intent.getAction())) {
+                commands.add("delete " + id);
+            }
+        }
+        return commands;
+    }
+
+    private static String join(List<String> commands) {
+        StringBuilder builder = new StringBuilder();
+        for (String command : commands) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(command);
+        }
+        return builder.toString();
+    }
+}
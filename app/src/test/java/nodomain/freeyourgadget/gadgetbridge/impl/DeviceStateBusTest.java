@@ -0,0 +1,80 @@
+package nodomain.freeyourgadget.gadgetbridge.impl;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+
+import org.junit.Test;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+
+public class DeviceStateBusTest extends TestBase {
+    private final List<Integer> changes = new ArrayList<>();
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            changes.add(intent.getIntExtra(GBDevice.EXTRA_DEVICE_CHANGES, 0));
+        }
+    };
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        DeviceStateBus.reset();
+        LocalBroadcastManager.getInstance(getContext()).registerReceiver(receiver, new IntentFilter(GBDevice.ACTION_DEVICE_CHANGED));
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        LocalBroadcastManager.getInstance(getContext()).unregisterReceiver(receiver);
+        super.tearDown();
+    }
+
+    @Test
+    public void testCoalescesChangesWithinFrame() {
+        GBDevice device = createDummyGDevice("00:00:00:00:60");
+        device.takeChanges();
+
+        device.setBatteryLevel((short) 50);
+        device.sendDeviceUpdateIntent(getContext());
+        device.setBusyTask("sync");
+        device.sendDeviceUpdateIntent(getContext());
+        device.setBatteryLevel((short) 49);
+        device.sendDeviceUpdateIntent(getContext());
+        assertEquals(0, changes.size());
+
+        ShadowLooper.idleMainLooper(DeviceStateBus.FRAME_MILLIS);
+        assertEquals(1, changes.size());
+        assertEquals(GBDevice.CHANGED_BATTERY | GBDevice.CHANGED_BUSY, (int) changes.get(0));
+    }
+
+    @Test
+    public void testSendsStateChangesImmediately() {
+        GBDevice device = createDummyGDevice("00:00:00:00:61");
+        device.takeChanges();
+
+        device.setFirmwareVersion("1.0");
+        device.sendDeviceUpdateIntent(getContext());
+        device.setState(GBDevice.State.INITIALIZED);
+        device.sendDeviceUpdateIntent(getContext());
+        assertEquals(1, changes.size());
+        assertEquals(GBDevice.CHANGED_FIRMWARE | GBDevice.CHANGED_STATE, (int) changes.get(0));
+
+        // a request without changes is answered with everything
+        device.sendDeviceUpdateIntent(getContext());
+        assertEquals(2, changes.size());
+        assertEquals(GBDevice.CHANGED_ALL, (int) changes.get(1));
+
+        ShadowLooper.idleMainLooper(DeviceStateBus.FRAME_MILLIS);
+        assertEquals(2, changes.size());
+    }
+}
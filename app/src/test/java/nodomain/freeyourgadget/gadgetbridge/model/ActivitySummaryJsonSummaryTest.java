@@ -0,0 +1,58 @@
+package nodomain.freeyourgadget.gadgetbridge.model;
+
+import org.junit.Test;
+
+import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummary;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ActivitySummaryJsonSummaryTest extends TestBase {
+    private static final double DELTA = 0.001;
+
+    @Test
+    public void testExtractMetrics() {
+        BaseActivitySummary summary = new BaseActivitySummary();
+        summary.setSummaryData("{"
+                + "\"distanceMeters\":{\"value\":1234.5,\"unit\":\"meters\"},"
+                + "\"caloriesBurnt\":{\"value\":321,\"unit\":\"calories_unit\"},"
+                + "\"activeSeconds\":{\"value\":600,\"unit\":\"seconds\"},"
+                + "\"steps\":{\"value\":1000.6,\"unit\":\"steps_unit\"},"
+                + "\"averageHR\":{\"value\":120.5,\"unit\":\"bpm\"}}");
+        ActivitySummaryJsonSummary.extractMetrics(summary);
+
+        assertEquals(1234.5, summary.getDistanceMeters(), DELTA);
+        assertEquals(321, summary.getCaloriesBurnt(), DELTA);
+        assertEquals(600, summary.getActiveSeconds(), DELTA);
+        assertEquals(Integer.valueOf(1001), summary.getSteps());
+        assertEquals(120.5, summary.getAverageHR(), DELTA);
+    }
+
+    @Test
+    public void testExtractMissingMetrics() {
+        BaseActivitySummary summary = new BaseActivitySummary();
+        summary.setSummaryData("{\"distanceMeters\":{\"value\":500,\"unit\":\"meters\"},"
+                + "\"steps\":{\"value\":\"unknown\",\"unit\":\"steps_unit\"}}");
+        ActivitySummaryJsonSummary.extractMetrics(summary);
+
+        assertEquals(500, summary.getDistanceMeters(), DELTA);
+        assertNull(summary.getCaloriesBurnt());
+        assertNull(summary.getActiveSeconds());
+        assertNull(summary.getSteps());
+        assertNull(summary.getAverageHR());
+    }
+
+    @Test
+    public void testExtractInvalidSummaryData() {
+        BaseActivitySummary summary = new BaseActivitySummary();
+        summary.setSummaryData("not json");
+        ActivitySummaryJsonSummary.extractMetrics(summary);
+        assertNull(summary.getDistanceMeters());
+        assertNull(summary.getSteps());
+
+        summary.setSummaryData(null);
+        ActivitySummaryJsonSummary.extractMetrics(summary);
+        assertNull(summary.getCaloriesBurnt());
+    }
+}
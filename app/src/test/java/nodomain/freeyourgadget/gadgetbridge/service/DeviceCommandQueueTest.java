@@ -0,0 +1,76 @@
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import android.content.Intent;
+import android.os.Looper;
+
+import org.junit.Test;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+
+public class DeviceCommandQueueTest extends TestBase {
+    private final List<Intent> handled = new ArrayList<>();
+
+    private DeviceCommandQueue createQueue() {
+        return new DeviceCommandQueue("test", Looper.getMainLooper(), new DeviceCommandQueue.CommandHandler() {
+            @Override
+            public void handleCommand(Intent intent) {
+                handled.add(intent);
+            }
+        });
+    }
+
+    @Test
+    public void testCoalescesStateCommands() {
+        DeviceCommandQueue queue = createQueue();
+        ShadowLooper.pauseMainLooper();
+        try {
+            queue.enqueue(new Intent(DeviceService.ACTION_SETMUSICSTATE).putExtra("n", 1));
+            queue.enqueue(new Intent(DeviceService.ACTION_NOTIFICATION));
+            queue.enqueue(new Intent(DeviceService.ACTION_SETMUSICSTATE).putExtra("n", 2));
+            queue.enqueue(new Intent(DeviceService.ACTION_NOTIFICATION));
+        } finally {
+            ShadowLooper.unPauseMainLooper();
+        }
+
+        assertEquals(3, handled.size());
+        assertEquals(DeviceService.ACTION_SETMUSICSTATE, handled.get(0).getAction());
+        assertEquals(2, handled.get(0).getIntExtra("n", 0));
+        assertEquals(DeviceService.ACTION_NOTIFICATION, handled.get(1).getAction());
+        assertEquals(DeviceService.ACTION_NOTIFICATION, handled.get(2).getAction());
+
+        // once sent, the next state is queued again
+        queue.enqueue(new Intent(DeviceService.ACTION_SETMUSICSTATE).putExtra("n", 3));
+        assertEquals(4, handled.size());
+        assertEquals(3, handled.get(3).getIntExtra("n", 0));
+    }
+
+    @Test
+    public void testQuitDropsQueuedCommands() {
+        DeviceCommandQueue queue = createQueue();
+        final List<String> lastTasks = new ArrayList<>();
+        ShadowLooper.pauseMainLooper();
+        try {
+            queue.enqueue(new Intent(DeviceService.ACTION_NOTIFICATION));
+            queue.enqueue(new Intent(DeviceService.ACTION_SEND_WEATHER));
+            queue.quit(new Runnable() {
+                @Override
+                public void run() {
+                    lastTasks.add("dispose");
+                }
+            });
+            // the last task runs on the queue's looper, not in quit()
+            assertEquals(0, lastTasks.size());
+        } finally {
+            ShadowLooper.unPauseMainLooper();
+        }
+        assertEquals(0, handled.size());
+        assertEquals(1, lastTasks.size());
+    }
+}
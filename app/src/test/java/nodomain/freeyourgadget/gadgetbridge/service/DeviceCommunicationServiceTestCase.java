@@ -3,6 +3,7 @@ package nodomain.freeyourgadget.gadgetbridge.service;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.os.Looper;
 
 import org.junit.Test;
 import org.mockito.InOrder;
@@ -54,6 +55,7 @@ public class DeviceCommunicationServiceTestCase extends TestBase {
         realSupport.setContext(new GBDevice(TEST_DEVICE_ADDRESS, "Test Device", "Test Device Alias", DeviceType.TEST), null, getContext());
         mockSupport = Mockito.spy(realSupport);
         DeviceCommunicationService.setDeviceSupportFactory(new TestDeviceSupportFactory(getContext()));
+        DeviceCommunicationService.setCommandLooper(Looper.getMainLooper());
 
         mDeviceService = new TestDeviceService(getContext());
     }
@@ -65,6 +67,7 @@ public class DeviceCommunicationServiceTestCase extends TestBase {
     @Override
     public void tearDown() throws Exception {
         mDeviceService.stopService(mDeviceService.createIntent());
+        DeviceCommunicationService.setCommandLooper(null);
         super.tearDown();
     }
 
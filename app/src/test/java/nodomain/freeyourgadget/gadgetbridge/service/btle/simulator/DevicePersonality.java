@@ -0,0 +1,58 @@
+package nodomain.freeyourgadget.gadgetbridge.service.btle.simulator;
+
+/**
+ * Link characteristics of a simulated device: the negotiated MTU and how many notifications
+ * fit into one connection event.
+ */
+public class DevicePersonality {
+    /**
+     * Default MTU, low latency connection interval as requested by HuamiSupport#setLowLatency().
+     */
+    public static final DevicePersonality HUAMI = new DevicePersonality("huami", 23, 11250, 4);
+    /**
+     * The Fossil HR negotiates a large MTU for file transfers.
+     */
+    public static final DevicePersonality FOSSIL_HR = new DevicePersonality("fossil_hr", 512, 15000, 6);
+    public static final DevicePersonality PEBBLE = new DevicePersonality("pebble", 339, 30000, 4);
+
+    private final String name;
+    private final int mtu;
+    private final int connectionIntervalMicros;
+    private final int notificationsPerEvent;
+
+    public DevicePersonality(String name, int mtu, int connectionIntervalMicros, int notificationsPerEvent) {
+        this.name = name;
+        this.mtu = mtu;
+        this.connectionIntervalMicros = connectionIntervalMicros;
+        this.notificationsPerEvent = notificationsPerEvent;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    /**
+     * The maximum length of a single notification, i.e. the MTU minus the ATT header.
+     */
+    public int getMaxNotificationLength() {
+        return mtu - 3;
+    }
+
+    public int getConnectionIntervalMicros() {
+        return connectionIntervalMicros;
+    }
+
+    public int getNotificationsPerEvent() {
+        return notificationsPerEvent;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (mtu=" + mtu + ", interval=" + connectionIntervalMicros + "us, "
+                + notificationsPerEvent + " notifications/event)";
+    }
+}
@@ -0,0 +1,97 @@
+package nodomain.freeyourgadget.gadgetbridge.service.btle.simulator;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.service.btle.GattCallback;
+
+/**
+ * Delivers notifications of a simulated device directly to the code under test, without
+ * a BluetoothGatt, and keeps track of the time the transfer would take on a real link with
+ * the given {@link DevicePersonality}.
+ *
+ * The simulated time is accounted in connection events: every event carries up to
+ * {@link DevicePersonality#getNotificationsPerEvent()} notifications. Values longer than
+ * the MTU allows are counted as fragmented across several notifications, as the Pebble
+ * protocol does over LE.
+ */
+public class LoopbackLink {
+    public interface NotificationReceiver {
+        void onNotification(BluetoothGattCharacteristic characteristic);
+    }
+
+    private final DevicePersonality personality;
+    private final Map<UUID, BluetoothGattCharacteristic> characteristics = new HashMap<>();
+
+    private long notificationCount;
+    private long byteCount;
+
+    public LoopbackLink(DevicePersonality personality) {
+        this.personality = personality;
+    }
+
+    public DevicePersonality getPersonality() {
+        return personality;
+    }
+
+    /**
+     * Sends the given value as notification of the characteristic with the given UUID.
+     */
+    public void notify(UUID uuid, byte[] value, NotificationReceiver receiver) {
+        BluetoothGattCharacteristic characteristic = characteristics.get(uuid);
+        if (characteristic == null) {
+            characteristic = new BluetoothGattCharacteristic(uuid, BluetoothGattCharacteristic.PROPERTY_NOTIFY, BluetoothGattCharacteristic.PERMISSION_READ);
+            characteristics.put(uuid, characteristic);
+        }
+        // receivers may modify the value in place, e.g. to decrypt it
+        characteristic.setValue(value.clone());
+        transmit(value.length);
+        receiver.onNotification(characteristic);
+    }
+
+    /**
+     * Accounts for the transfer of a value of the given length and returns the number
+     * of notifications needed for it.
+     */
+    public int transmit(int length) {
+        int maxLength = personality.getMaxNotificationLength();
+        int notifications = Math.max(1, (length + maxLength - 1) / maxLength);
+        notificationCount += notifications;
+        byteCount += length;
+        return notifications;
+    }
+
+    public long getNotificationCount() {
+        return notificationCount;
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * The time the transferred notifications would have taken on a real link.
+     */
+    public long getSimulatedMicros() {
+        int perEvent = personality.getNotificationsPerEvent();
+        long events = (notificationCount + perEvent - 1) / perEvent;
+        return events * personality.getConnectionIntervalMicros();
+    }
+
+    public void reset() {
+        notificationCount = 0;
+        byteCount = 0;
+    }
+
+    public static NotificationReceiver forCallback(final GattCallback callback) {
+        return new NotificationReceiver() {
+            @Override
+            public void onNotification(BluetoothGattCharacteristic characteristic) {
+                callback.onCharacteristicChanged(null, characteristic);
+            }
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package nodomain.freeyourgadget.gadgetbridge.service.btle.simulator;
+
+import org.junit.Assume;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+
+/**
+ * Collects the results of replaying a {@link SyncTrace} and reports samples/s, bytes/s and
+ * the database commit latency.
+ *
+ * Benchmarks are skipped unless run with -DGBBenchmark=true, e.g.
+ * ./gradlew -DGBBenchmark=true testDebugUnitTest --tests '*Benchmark'
+ */
+public class SyncBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(SyncBenchmark.class);
+
+    public static final String PROP_BENCHMARK = "GBBenchmark";
+
+    private final String name;
+    private final LoopbackLink link;
+
+    private long startNanos;
+    private long elapsedNanos;
+    private int sampleCount;
+    private int commitCount;
+    private long commitNanos;
+    private long maxCommitNanos;
+
+    public SyncBenchmark(String name, LoopbackLink link) {
+        this.name = name;
+        this.link = link;
+    }
+
+    public static void assumeEnabled() {
+        Assume.assumeTrue("benchmarks disabled, run with -D" + PROP_BENCHMARK + "=true", Boolean.getBoolean(PROP_BENCHMARK));
+    }
+
+    public void start() {
+        link.reset();
+        sampleCount = 0;
+        commitCount = 0;
+        commitNanos = 0;
+        maxCommitNanos = 0;
+        startNanos = System.nanoTime();
+    }
+
+    public void stop(int samples) {
+        elapsedNanos = System.nanoTime() - startNanos;
+        sampleCount = samples;
+        LOG.info(toString());
+    }
+
+    /**
+     * Records the duration of a database commit, measured from the given start of
+     * {@link System#nanoTime()}.
+     */
+    public void commitFinished(long commitStartNanos) {
+        long nanos = System.nanoTime() - commitStartNanos;
+        commitCount++;
+        commitNanos += nanos;
+        maxCommitNanos = Math.max(maxCommitNanos, nanos);
+    }
+
+    @Override
+    public String toString() {
+        double seconds = elapsedNanos / 1e9;
+        double linkSeconds = link.getSimulatedMicros() / 1e6;
+        return String.format(Locale.ROOT,
+                "%s on %s: %d samples, %d bytes in %d notifications; "
+                        + "processing %.0f samples/s, %.0f bytes/s; "
+                        + "link %.1fs, %.0f bytes/s; "
+                        + "%d commits, mean %.2fms, max %.2fms",
+                name, link.getPersonality(), sampleCount, link.getByteCount(), link.getNotificationCount(),
+                sampleCount / seconds, link.getByteCount() / seconds,
+                linkSeconds, linkSeconds > 0 ? link.getByteCount() / linkSeconds : 0,
+                commitCount, commitCount > 0 ? commitNanos / 1e6 / commitCount : 0, maxCommitNanos / 1e6);
+    }
+}
@@ -0,0 +1,73 @@
+package nodomain.freeyourgadget.gadgetbridge.service.btle.simulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.util.GB;
+
+/**
+ * A scripted sequence of notifications sent by a device during a sync.
+ *
+ * Traces are either built programmatically or read from a recording with one notification
+ * per line, consisting of the characteristic UUID and the value as hex string, separated by
+ * whitespace. Empty lines and lines starting with '#' are ignored.
+ */
+public class SyncTrace {
+    private static class Notification {
+        final UUID uuid;
+        final byte[] value;
+
+        Notification(UUID uuid, byte[] value) {
+            this.uuid = uuid;
+            this.value = value;
+        }
+    }
+
+    private final List<Notification> notifications = new ArrayList<>();
+    private long byteCount;
+
+    public SyncTrace add(UUID uuid, byte[] value) {
+        notifications.add(new Notification(uuid, value));
+        byteCount += value.length;
+        return this;
+    }
+
+    public int size() {
+        return notifications.size();
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Sends all notifications of this trace over the given link.
+     */
+    public void replay(LoopbackLink link, LoopbackLink.NotificationReceiver receiver) {
+        for (Notification notification : notifications) {
+            link.notify(notification.uuid, notification.value, receiver);
+        }
+    }
+
+    public static SyncTrace read(Reader reader) throws IOException {
+        SyncTrace trace = new SyncTrace();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (parts.length != 2) {
+                throw new IOException("Invalid trace line: " + line);
+            }
+            trace.add(UUID.fromString(parts[0]), GB.hexStringToByteArray(parts[1]));
+        }
+        return trace;
+    }
+}
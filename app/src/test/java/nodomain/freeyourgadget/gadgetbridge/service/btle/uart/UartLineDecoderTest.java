@@ -0,0 +1,62 @@
+package nodomain.freeyourgadget.gadgetbridge.service.btle.uart;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class UartLineDecoderTest {
+
+    private final List<String> lines = new ArrayList<>();
+    private final UartLineDecoder decoder = new UartLineDecoder(new UartLineDecoder.LineListener() {
+        @Override
+        public void onLine(String line) {
+            lines.add(line);
+        }
+    });
+
+    private void feed(String data) {
+        decoder.append(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSinglePacketLines() {
+        feed("{\"t\":\"info\"}\r\n>foo\n");
+        assertEquals(2, lines.size());
+        assertEquals("{\"t\":\"info\"}", lines.get(0));
+        assertEquals(">foo", lines.get(1));
+        assertEquals(0, decoder.getPendingLength());
+    }
+
+    @Test
+    public void testLineSplitOverPackets() {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            String chunk = "0123456789abcdefghij";
+            expected.append(chunk);
+            feed(chunk);
+        }
+        assertEquals(0, lines.size());
+        feed("\r");
+        feed("\nrest");
+        assertEquals(1, lines.size());
+        assertEquals(expected.toString(), lines.get(0));
+        assertEquals(4, decoder.getPendingLength());
+    }
+
+    @Test
+    public void testEmptyLinesAndReset() {
+        feed("\n\r\n");
+        assertEquals(2, lines.size());
+        assertEquals("", lines.get(0));
+        assertEquals("", lines.get(1));
+
+        feed("partial");
+        decoder.reset();
+        feed("line\n");
+        assertEquals("line", lines.get(2));
+    }
+}
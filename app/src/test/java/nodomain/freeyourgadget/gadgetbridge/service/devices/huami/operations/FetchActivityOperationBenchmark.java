@@ -0,0 +1,103 @@
+package nodomain.freeyourgadget.gadgetbridge.service.devices.huami.operations;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiService;
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.DevicePersonality;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.LoopbackLink;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.SyncBenchmark;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.SyncTrace;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiSupport;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.miband.operations.OperationStatus;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FetchActivityOperationBenchmark extends TestBase {
+    private static final int MINUTES = 7 * 24 * 60;
+    private static final int SAMPLES_PER_PACKET = 4;
+
+    private GBDevice device;
+    private HuamiSupport support;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        SyncBenchmark.assumeEnabled();
+        device = createDummyGDevice("00:00:00:00:20");
+        support = new HuamiSupport();
+        support.setContext(device, null, getContext());
+    }
+
+    @Test
+    public void benchmarkFetchActivity() {
+        Calendar start = BLETypeConversions.createCalendar();
+        start.set(Calendar.SECOND, 0);
+        start.set(Calendar.MILLISECOND, 0);
+        start.add(Calendar.MINUTE, -MINUTES);
+
+        FetchActivityOperation operation = new FetchActivityOperation(support) {
+            {
+                // perform() needs a connected device, start as if the fetch was requested
+                operationStatus = OperationStatus.RUNNING;
+                lastPacketCounter = -1;
+                // do not start another fetch round
+                fetchCount = 6;
+            }
+        };
+        LoopbackLink link = new LoopbackLink(DevicePersonality.HUAMI);
+        LoopbackLink.NotificationReceiver receiver = LoopbackLink.forCallback(operation);
+        SyncTrace trace = createTrace(start, MINUTES);
+
+        SyncBenchmark benchmark = new SyncBenchmark("huami activity fetch", link);
+        benchmark.start();
+        trace.replay(link, receiver);
+        long commitStart = System.nanoTime();
+        link.notify(HuamiService.UUID_UNKNOWN_CHARACTERISTIC4, HuamiService.RESPONSE_FINISH_SUCCESS, receiver);
+        benchmark.commitFinished(commitStart);
+        benchmark.stop(MINUTES);
+
+        assertTrue(operation.isOperationFinished());
+        // the time zone of the start date is only known in steps of 15 minutes
+        int from = (int) (start.getTimeInMillis() / 1000) - 24 * 60 * 60;
+        int to = from + MINUTES * 60 + 2 * 24 * 60 * 60;
+        List<MiBandActivitySample> samples = new MiBandSampleProvider(device, daoSession).getAllActivitySamples(from, to);
+        assertEquals(MINUTES, samples.size());
+    }
+
+    private static SyncTrace createTrace(Calendar start, int minutes) {
+        SyncTrace trace = new SyncTrace();
+
+        byte[] metadata = new byte[15];
+        System.arraycopy(HuamiService.RESPONSE_ACTIVITY_DATA_START_DATE_SUCCESS, 0, metadata, 0, 3);
+        System.arraycopy(BLETypeConversions.fromUint32(minutes * SAMPLES_PER_PACKET), 0, metadata, 3, 4);
+        System.arraycopy(BLETypeConversions.shortCalendarToRawBytes(start), 0, metadata, 7, 6);
+        metadata[14] = (byte) (TimeZone.getDefault().getOffset(start.getTimeInMillis()) / (15 * 60 * 1000));
+        trace.add(HuamiService.UUID_UNKNOWN_CHARACTERISTIC4, metadata);
+
+        byte counter = 0;
+        for (int minute = 0; minute < minutes; minute += SAMPLES_PER_PACKET) {
+            int count = Math.min(SAMPLES_PER_PACKET, minutes - minute);
+            byte[] packet = new byte[1 + count * 4];
+            packet[0] = counter++;
+            for (int i = 0; i < count; i++) {
+                int sample = minute + i;
+                packet[1 + i * 4] = (byte) (sample % 7 == 0 ? 0x70 : 0x01); // category
+                packet[2 + i * 4] = (byte) (sample % 120);                  // intensity
+                packet[3 + i * 4] = (byte) (sample % 50);                   // steps
+                packet[4 + i * 4] = (byte) (60 + sample % 40);              // heart rate
+            }
+            trace.add(HuamiService.UUID_CHARACTERISTIC_5_ACTIVITY_DATA, packet);
+        }
+        return trace;
+    }
+}
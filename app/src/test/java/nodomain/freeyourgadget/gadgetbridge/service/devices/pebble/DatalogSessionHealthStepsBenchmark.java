@@ -0,0 +1,93 @@
+package nodomain.freeyourgadget.gadgetbridge.service.devices.pebble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.pebble.PebbleHealthSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.DevicePersonality;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.LoopbackLink;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.SyncBenchmark;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.SyncTrace;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class DatalogSessionHealthStepsBenchmark extends TestBase {
+    private static final UUID UUID_PPOGATT_READ = UUID.fromString("30000004-328E-0FBB-C642-1AA6699BDADA");
+
+    private static final int START_TIMESTAMP = 1600000000;
+    private static final int ITEMS = 7 * 24;
+    private static final int RECORDS_PER_ITEM = 60;
+    private static final int RECORD_LENGTH = 15;
+    private static final short ITEM_SIZE = 9 + RECORDS_PER_ITEM * RECORD_LENGTH;
+
+    private GBDevice device;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        SyncBenchmark.assumeEnabled();
+        device = createDummyGDevice("00:00:00:00:40");
+    }
+
+    @Test
+    public void benchmarkHealthSteps() {
+        final DatalogSessionHealthSteps session = new DatalogSessionHealthSteps((byte) 1, new UUID(0, 0), START_TIMESTAMP, 81, (byte) 2, ITEM_SIZE, device);
+        LoopbackLink link = new LoopbackLink(DevicePersonality.PEBBLE);
+        final SyncBenchmark benchmark = new SyncBenchmark("pebble health steps", link);
+        SyncTrace trace = createTrace();
+
+        benchmark.start();
+        trace.replay(link, new LoopbackLink.NotificationReceiver() {
+            @Override
+            public void onNotification(BluetoothGattCharacteristic characteristic) {
+                byte[] value = characteristic.getValue();
+                ByteBuffer buf = ByteBuffer.wrap(value);
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                // every message is stored right away
+                long commitStart = System.nanoTime();
+                assertNotNull(session.handleMessage(buf, value.length));
+                benchmark.commitFinished(commitStart);
+            }
+        });
+        benchmark.stop(ITEMS * RECORDS_PER_ITEM);
+
+        List<PebbleHealthActivitySample> samples = new PebbleHealthSampleProvider(device, daoSession)
+                .getAllActivitySamples(START_TIMESTAMP, START_TIMESTAMP + ITEMS * RECORDS_PER_ITEM * 60);
+        assertEquals(ITEMS * RECORDS_PER_ITEM, samples.size());
+    }
+
+    private static SyncTrace createTrace() {
+        SyncTrace trace = new SyncTrace();
+        for (int item = 0; item < ITEMS; item++) {
+            ByteBuffer buf = ByteBuffer.allocate(ITEM_SIZE);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            buf.putShort((short) 13); // version
+            buf.putInt(START_TIMESTAMP + item * RECORDS_PER_ITEM * 60);
+            buf.put((byte) 0);
+            buf.put((byte) RECORD_LENGTH);
+            buf.put((byte) RECORDS_PER_ITEM);
+            for (int record = 0; record < RECORDS_PER_ITEM; record++) {
+                int start = buf.position();
+                buf.put((byte) (record % 50));          // steps
+                buf.put((byte) 0);                      // orientation
+                buf.putShort((short) (record * 10));    // intensity
+                buf.put((byte) 0);                      // light intensity
+                buf.position(start + 12);
+                buf.put((byte) (60 + record % 40));     // heart rate
+                buf.position(start + RECORD_LENGTH);
+            }
+            trace.add(UUID_PPOGATT_READ, buf.array());
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,128 @@
+package nodomain.freeyourgadget.gadgetbridge.service.devices.pebble;
+
+import android.util.Pair;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.SyncBenchmark;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+import nodomain.freeyourgadget.gadgetbridge.util.GB;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PebbleProtocolTest extends TestBase {
+    private static final Logger LOG = LoggerFactory.getLogger(PebbleProtocolTest.class);
+    private static final UUID APP_UUID = UUID.fromString("0863fc6a-66c5-4f62-ab8a-82ed00a98b5d");
+
+    private PebbleProtocol protocol;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        protocol = new PebbleProtocol(createDummyGDevice("00:00:00:00:50"));
+    }
+
+    @Test
+    public void testEncodeApplicationMessageAck() {
+        assertArrayEquals(GB.hexStringToByteArray("00120030FF070863FC6A66C54F62AB8A82ED00A98B5D"),
+                protocol.encodeApplicationMessageAck(APP_UUID, (byte) 7));
+
+        ByteBuffer buf = createDirtyBuffer(64);
+        protocol.encodeApplicationMessageAck(buf, APP_UUID, (byte) 7);
+        assertEncoded(protocol.encodeApplicationMessageAck(APP_UUID, (byte) 7), buf);
+    }
+
+    @Test
+    public void testEncodeUploadChunk() {
+        byte[] chunk = new byte[]{1, 2, 3, 4, 5, 6, 7, 8};
+        assertArrayEquals(GB.hexStringToByteArray("000EBEEF020000002A000000050102030405"),
+                protocol.encodeUploadChunk(42, chunk, 5));
+
+        ByteBuffer buf = createDirtyBuffer(64);
+        protocol.encodeUploadChunk(buf, 42, chunk, 5);
+        assertEncoded(protocol.encodeUploadChunk(42, chunk, 5), buf);
+    }
+
+    @Test
+    public void testEncodeApplicationMessagePush() {
+        ArrayList<Pair<Integer, Object>> pairs = createPairs();
+        byte[] expected = protocol.encodeApplicationMessagePush(PebbleProtocol.ENDPOINT_APPLICATIONMESSAGE, APP_UUID, pairs, null);
+        assertEquals(expected.length, protocol.getApplicationMessagePushLength(pairs));
+
+        ByteBuffer buf = createDirtyBuffer(256);
+        protocol.encodeApplicationMessagePush(buf, expected.length, PebbleProtocol.ENDPOINT_APPLICATIONMESSAGE, APP_UUID, pairs, null);
+        assertEquals(ByteOrder.BIG_ENDIAN, buf.order());
+        // the message id is incremented for every message
+        expected[5]++;
+        assertEncoded(expected, buf);
+    }
+
+    @Test
+    public void benchmarkEncoders() {
+        SyncBenchmark.assumeEnabled();
+        final int iterations = 100000;
+        ArrayList<Pair<Integer, Object>> pairs = createPairs();
+        byte[] chunk = new byte[2000];
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                protocol.encodeApplicationMessagePush(PebbleProtocol.ENDPOINT_APPLICATIONMESSAGE, APP_UUID, pairs, null);
+                protocol.encodeApplicationMessageAck(APP_UUID, (byte) i);
+                protocol.encodeUploadChunk(i, chunk, chunk.length);
+            }
+            long allocating = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                int length = protocol.getApplicationMessagePushLength(pairs);
+                buf.clear();
+                protocol.encodeApplicationMessagePush(buf, length, PebbleProtocol.ENDPOINT_APPLICATIONMESSAGE, APP_UUID, pairs, null);
+                buf.clear();
+                protocol.encodeApplicationMessageAck(buf, APP_UUID, (byte) i);
+                buf.clear();
+                protocol.encodeUploadChunk(buf, i, chunk, chunk.length);
+            }
+            long pooled = System.nanoTime() - start;
+
+            LOG.info("pebble encoders, round " + round + ": allocating " + allocating / iterations
+                    + "ns/iteration, pooled " + pooled / iterations + "ns/iteration");
+        }
+    }
+
+    private static ArrayList<Pair<Integer, Object>> createPairs() {
+        ArrayList<Pair<Integer, Object>> pairs = new ArrayList<>();
+        pairs.add(new Pair<>(1, (Object) 42));
+        pairs.add(new Pair<>(2, (Object) (short) 7));
+        pairs.add(new Pair<>(3, (Object) (byte) 1));
+        pairs.add(new Pair<>(4, (Object) "Sunny, 21°C"));
+        pairs.add(new Pair<>(5, (Object) new byte[]{1, 2, 3}));
+        return pairs;
+    }
+
+    /**
+     * A reused buffer contains data of earlier messages, and messages do not start at 0.
+     */
+    private static ByteBuffer createDirtyBuffer(int capacity) {
+        byte[] garbage = new byte[capacity];
+        Arrays.fill(garbage, (byte) 0x55);
+        ByteBuffer buf = ByteBuffer.wrap(garbage);
+        buf.position(6);
+        return buf;
+    }
+
+    private static void assertEncoded(byte[] expected, ByteBuffer buf) {
+        assertEquals(6 + expected.length, buf.position());
+        assertArrayEquals(expected, Arrays.copyOfRange(buf.array(), 6, buf.position()));
+    }
+}
@@ -0,0 +1,147 @@
+package nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.adapter.fossil;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.file.FileHandle;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.Request;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil.configuration.ConfigurationPutRequest;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil.file.FileLookupRequest;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil.notification.PlayTextNotificationRequest;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RequestSchedulerTest extends TestBase {
+
+    private final FossilWatchAdapter adapter = Mockito.mock(FossilWatchAdapter.class);
+    private final RequestScheduler scheduler = new RequestScheduler(new RequestScheduler.TimeoutListener() {
+        @Override
+        public void onRequestTimeout(Request request) {
+        }
+    });
+
+    @Test
+    public void testPriorityOrder() {
+        Request activityLookup = createLookup(FileHandle.ACTIVITY_FILE);
+        Request stepGoal = createStepGoalPut(1000);
+        Request timezone = createTimezonePut((short) 60);
+        Request notification = new PlayTextNotificationRequest("org.example", adapter);
+        Request followUp = createLookup(FileHandle.HARDWARE_LOG_FILE);
+
+        scheduler.setPrioritized(true);
+        scheduler.enqueue(activityLookup, false);
+        scheduler.enqueue(stepGoal, false);
+        scheduler.enqueue(notification, false);
+        scheduler.enqueue(timezone, false);
+        scheduler.enqueue(followUp, true);
+        assertEquals(5, scheduler.size());
+
+        assertSame(followUp, scheduler.poll());
+        assertSame(notification, scheduler.poll());
+        assertSame(stepGoal, scheduler.poll());
+        assertSame(timezone, scheduler.poll());
+        assertSame(activityLookup, scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void testFifoUntilPrioritized() {
+        Request stepGoal = createStepGoalPut(1000);
+        Request notification = new PlayTextNotificationRequest("org.example", adapter);
+        Request activityLookup = createLookup(FileHandle.ACTIVITY_FILE);
+        Request timezone = createTimezonePut((short) 60);
+        Request laterNotification = new PlayTextNotificationRequest("org.example", adapter);
+
+        // while initializing, the requests are sent in the order they were queued
+        scheduler.enqueue(stepGoal, false);
+        scheduler.enqueue(notification, false);
+        scheduler.enqueue(activityLookup, false);
+        assertSame(stepGoal, scheduler.poll());
+
+        // the remaining requests are sorted in by priority
+        scheduler.enqueue(timezone, false);
+        scheduler.setPrioritized(true);
+        scheduler.enqueue(laterNotification, false);
+        assertEquals(4, scheduler.size());
+
+        assertSame(notification, scheduler.poll());
+        assertSame(laterNotification, scheduler.poll());
+        assertSame(timezone, scheduler.poll());
+        assertSame(activityLookup, scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void testFifoWithinPriority() {
+        Request stepGoal = createStepGoalPut(1000);
+        Request timezone = createTimezonePut((short) 60);
+        Request both = new ConfigurationPutRequest(new ConfigurationPutRequest.ConfigItem[]{
+                new ConfigurationPutRequest.DailyStepGoalConfigItem(2000),
+                new ConfigurationPutRequest.TimezoneOffsetConfigItem((short) 60)
+        }, adapter);
+
+        scheduler.enqueue(stepGoal, false);
+        scheduler.enqueue(timezone, false);
+        scheduler.enqueue(both, false);
+        assertEquals(3, scheduler.size());
+
+        assertSame(stepGoal, scheduler.poll());
+        assertSame(timezone, scheduler.poll());
+        assertSame(both, scheduler.poll());
+    }
+
+    @Test
+    public void testCoalescing() {
+        Request first = createStepGoalPut(1000);
+        Request timezone = createTimezonePut((short) 60);
+        Request second = createStepGoalPut(2000);
+        Request third = createStepGoalPut(3000);
+
+        scheduler.enqueue(first, false);
+        scheduler.enqueue(timezone, false);
+        scheduler.enqueue(second, false);
+        scheduler.enqueue(third, false);
+        assertEquals(2, scheduler.size());
+
+        // the latest value is sent at the position of the first queued request
+        assertSame(third, scheduler.poll());
+        assertSame(timezone, scheduler.poll());
+        assertNull(scheduler.poll());
+
+        // a request that already left the queue is not replaced
+        scheduler.enqueue(first, false);
+        assertSame(first, scheduler.poll());
+    }
+
+    @Test
+    public void testClear() {
+        scheduler.enqueue(createStepGoalPut(1000), false);
+        scheduler.enqueue(createLookup(FileHandle.ACTIVITY_FILE), false);
+        scheduler.clear();
+        assertEquals(0, scheduler.size());
+        assertNull(scheduler.poll());
+    }
+
+    private Request createStepGoalPut(int stepGoal) {
+        return new ConfigurationPutRequest(new ConfigurationPutRequest.DailyStepGoalConfigItem(stepGoal), adapter);
+    }
+
+    private Request createTimezonePut(short offset) {
+        return new ConfigurationPutRequest(new ConfigurationPutRequest.TimezoneOffsetConfigItem(offset), adapter);
+    }
+
+    private Request createLookup(FileHandle fileHandle) {
+        return new FileLookupRequest(fileHandle, adapter) {
+            @Override
+            public void handleFileLookup(short fileHandle) {
+            }
+
+            @Override
+            public void handleFileLookupError(FILE_LOOKUP_ERROR error) {
+            }
+        };
+    }
+}
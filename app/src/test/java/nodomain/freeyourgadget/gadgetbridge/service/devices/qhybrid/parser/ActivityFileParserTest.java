@@ -0,0 +1,82 @@
+package nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.parser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.util.GB;
+
+import static org.junit.Assert.assertEquals;
+
+public class ActivityFileParserTest {
+    private static final byte[] ACTIVITY_FILE = GB.hexStringToByteArray(
+            "0000160000000000000000000000000000000000" + // header, version 22
+            "E204" + "00105E5F" + "3C00" + "0000" +          // timestamp 1600000000
+            "CE28" +                                         // wearing, heart rate quality 1
+            "10024845" +                                     // 16 steps, 72 bpm, 5 kcal, active
+            "0B055003" +                                     // 10 steps, 80 bpm, 3 kcal
+            "CA00" +
+            "00000000" +
+            "AABBCCDD");                                     // checksum
+
+    private static final String[] EXPECTED = new String[]{
+            "1 1600000000 steps=16 hr=72 kcal=5 active=true var=256/10000 quality=1 WEARING",
+            "2 1600000060 steps=10 hr=80 kcal=3 active=false var=1/26 quality=1 WEARING",
+            "3 1600000120 steps=0 hr=0 kcal=0 active=false var=0/10000 quality=1 WEARING",
+    };
+
+    @Test
+    public void testParseFile() {
+        assertEntries(new ActivityFileParser().parseFile(ACTIVITY_FILE));
+    }
+
+    @Test
+    public void testParseSplitAtEveryOffset() {
+        for (int split = 0; split <= ACTIVITY_FILE.length; split++) {
+            List<ActivityEntry> entries = new ArrayList<>();
+            ActivityFileParser parser = createParser(entries);
+            parser.parse(ACTIVITY_FILE, 0, split);
+            parser.parse(ACTIVITY_FILE, split, ACTIVITY_FILE.length - split);
+            assertEntries(entries);
+        }
+    }
+
+    @Test
+    public void testParseByteByByte() {
+        List<ActivityEntry> entries = new ArrayList<>();
+        ActivityFileParser parser = createParser(entries);
+        for (int i = 0; i < ACTIVITY_FILE.length; i++) {
+            parser.parse(ACTIVITY_FILE, i, 1);
+        }
+        assertEntries(entries);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnsupportedVersion() {
+        byte[] file = ACTIVITY_FILE.clone();
+        file[2] = 16;
+        new ActivityFileParser().parseFile(file);
+    }
+
+    private static ActivityFileParser createParser(final List<ActivityEntry> entries) {
+        return new ActivityFileParser(ACTIVITY_FILE.length, new ActivityFileParser.EntryListener() {
+            @Override
+            public void onActivityEntry(ActivityEntry entry) {
+                entries.add(entry);
+            }
+        });
+    }
+
+    private static void assertEntries(List<ActivityEntry> entries) {
+        assertEquals(EXPECTED.length, entries.size());
+        for (int i = 0; i < EXPECTED.length; i++) {
+            ActivityEntry entry = entries.get(i);
+            assertEquals(EXPECTED[i], entry.id + " " + entry.timestamp
+                    + " steps=" + entry.stepCount + " hr=" + entry.heartRate
+                    + " kcal=" + entry.calories + " active=" + entry.isActive
+                    + " var=" + entry.variability + "/" + entry.maxVariability
+                    + " quality=" + entry.heartRateQuality + " " + entry.wearingState);
+        }
+    }
+}
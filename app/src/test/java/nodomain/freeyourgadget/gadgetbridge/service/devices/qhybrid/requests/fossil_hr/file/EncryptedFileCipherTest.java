@@ -0,0 +1,62 @@
+package nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil_hr.file;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class EncryptedFileCipherTest {
+    private final Random random = new Random(42);
+    private final byte[] key = randomBytes(16);
+    private final byte[] phoneRandomNumber = randomBytes(6);
+    private final byte[] watchRandomNumber = new byte[]{1, 2, 3, 4, 5, (byte) 0xff, (byte) 0xff};
+
+    @Test
+    public void testMatchesCtrCipherAtCounterOffsets() throws Exception {
+        EncryptedFileCipher cipher = new EncryptedFileCipher(key, phoneRandomNumber, watchRandomNumber);
+        for (int counterOffset : new int[]{0, 1, 0x1f, 0x1f * 7, 0x2f * 1000}) {
+            for (int length : new int[]{1, 15, 16, 17, 244, 509}) {
+                byte[] data = randomBytes(length);
+                byte[] expected = ctr(data, counterOffset);
+
+                byte[] actual = data.clone();
+                cipher.apply(actual, 0, actual.length, counterOffset);
+                assertArrayEquals("offset " + counterOffset + ", length " + length, expected, actual);
+                assertEquals(expected[0], cipher.decryptFirstByte(data[0], counterOffset));
+            }
+        }
+    }
+
+    @Test
+    public void testApplyTwiceRestoresData() throws Exception {
+        EncryptedFileCipher cipher = new EncryptedFileCipher(key, phoneRandomNumber, watchRandomNumber);
+        byte[] data = randomBytes(100);
+        byte[] copy = data.clone();
+        cipher.apply(copy, 10, 80, 0x20);
+        cipher.apply(copy, 10, 80, 0x20);
+        assertArrayEquals(data, copy);
+    }
+
+    private byte[] ctr(byte[] data, int counterOffset) throws Exception {
+        byte[] iv = EncryptedFileCipher.createIv(phoneRandomNumber, watchRandomNumber);
+        ByteBuffer buffer = ByteBuffer.wrap(iv);
+        buffer.putInt(12, buffer.getInt(12) + counterOffset);
+
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+        return cipher.doFinal(data);
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,188 @@
+package nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.requests.fossil_hr.file;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleWriter;
+import nodomain.freeyourgadget.gadgetbridge.devices.qhybrid.HybridHRActivitySampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.entities.HybridHRActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.DevicePersonality;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.LoopbackLink;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.SyncBenchmark;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.simulator.SyncTrace;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.adapter.fossil_hr.FossilHRWatchAdapter;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.file.FileHandle;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.parser.ActivityEntry;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.qhybrid.parser.ActivityFileParser;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+import nodomain.freeyourgadget.gadgetbridge.util.GB;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FileEncryptedGetRequestBenchmark extends TestBase {
+    private static final UUID UUID_CONTROL = UUID.fromString("3dda0003-957f-7d4a-34a6-74696673696d");
+    private static final UUID UUID_DATA = UUID.fromString("3dda0004-957f-7d4a-34a6-74696673696d");
+
+    private static final byte[] KEY = GB.hexStringToByteArray("000102030405060708090A0B0C0D0E0F");
+    private static final byte[] PHONE_RANDOM = GB.hexStringToByteArray("1011121314151617");
+    private static final byte[] WATCH_RANDOM = GB.hexStringToByteArray("2021222324252627");
+    private static final int IV_INCREMENTOR = 0x1f;
+
+    private static final int START_TIMESTAMP = 1600000000;
+    private static final int RECORDS = 7 * 24 * 60;
+
+    private GBDevice device;
+    private FossilHRWatchAdapter adapter;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        SyncBenchmark.assumeEnabled();
+        device = createDummyGDevice("00:00:00:00:30");
+        adapter = Mockito.mock(FossilHRWatchAdapter.class);
+        Mockito.when(adapter.getSecretKey()).thenReturn(KEY);
+        Mockito.when(adapter.getPhoneRandomNumber()).thenReturn(PHONE_RANDOM);
+        Mockito.when(adapter.getWatchRandomNumber()).thenReturn(WATCH_RANDOM);
+    }
+
+    @Test
+    public void benchmarkActivityFileGet() throws Exception {
+        LoopbackLink link = new LoopbackLink(DevicePersonality.FOSSIL_HR);
+        final SyncBenchmark benchmark = new SyncBenchmark("fossil hr activity file", link);
+        final SampleWriter<HybridHRActivitySample> sampleWriter = new SampleWriter<HybridHRActivitySample>(device, new SampleWriter.ProviderFactory<HybridHRActivitySample>() {
+            @Override
+            public AbstractSampleProvider<HybridHRActivitySample> createProvider(GBDevice device, DaoSession session) {
+                return new HybridHRActivitySampleProvider(device, session);
+            }
+        }) {
+            @Override
+            protected HybridHRActivitySample mergeSample(HybridHRActivitySample current, HybridHRActivitySample update) {
+                return update;
+            }
+        };
+
+        // same processing as FossilHRWatchAdapter#onFetchActivityData()
+        final FileEncryptedGetRequest request = new FileEncryptedGetRequest(FileHandle.ACTIVITY_FILE, adapter) {
+            @Override
+            protected FileChunkConsumer createFileChunkConsumer(int fileSize) {
+                try {
+                    sampleWriter.begin();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                final ActivityFileParser parser = new ActivityFileParser(fileSize, new ActivityFileParser.EntryListener() {
+                    @Override
+                    public void onActivityEntry(ActivityEntry entry) {
+                        sampleWriter.add(entry.toDAOActivitySample(0, 0));
+                        if (sampleWriter.isFull()) {
+                            flush(sampleWriter, benchmark, false);
+                        }
+                    }
+                });
+                return new FileChunkConsumer() {
+                    @Override
+                    public void onFileChunk(byte[] data, int offset, int length) {
+                        parser.parse(data, offset, length);
+                    }
+                };
+            }
+
+            @Override
+            protected void handleFileStreamed() {
+                flush(sampleWriter, benchmark, true);
+            }
+        };
+        SyncTrace trace = createTrace(createActivityFile(RECORDS), link.getPersonality().getMaxNotificationLength());
+
+        benchmark.start();
+        trace.replay(link, new LoopbackLink.NotificationReceiver() {
+            @Override
+            public void onNotification(BluetoothGattCharacteristic characteristic) {
+                request.handleResponse(characteristic);
+            }
+        });
+        benchmark.stop(RECORDS);
+
+        assertTrue(request.isFinished());
+        List<HybridHRActivitySample> samples = new HybridHRActivitySampleProvider(device, daoSession)
+                .getAllActivitySamples(START_TIMESTAMP, START_TIMESTAMP + RECORDS * 60);
+        assertEquals(RECORDS, samples.size());
+    }
+
+    private static void flush(SampleWriter<?> sampleWriter, SyncBenchmark benchmark, boolean commit) {
+        long commitStart = System.nanoTime();
+        try {
+            if (commit) {
+                sampleWriter.commit();
+            } else {
+                sampleWriter.flush();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        benchmark.commitFinished(commitStart);
+    }
+
+    private static byte[] createActivityFile(int records) {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        byte[] header = new byte[20];
+        header[2] = 22; // version
+        file.write(header, 0, header.length);
+        byte[] timestamp = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN)
+                .put((byte) 0xE2).put((byte) 0x04).putInt(START_TIMESTAMP).putShort((short) 60).putShort((short) 0)
+                .array();
+        file.write(timestamp, 0, timestamp.length);
+        byte[] wearing = GB.hexStringToByteArray("CE28");
+        file.write(wearing, 0, wearing.length);
+        byte[][] entries = new byte[][]{
+                GB.hexStringToByteArray("10024845"),
+                GB.hexStringToByteArray("0B055003"),
+        };
+        for (int i = 0; i < records; i++) {
+            file.write(entries[i % entries.length], 0, 4);
+        }
+        file.write(new byte[4], 0, 4); // checksum
+        return file.toByteArray();
+    }
+
+    private static SyncTrace createTrace(byte[] file, int maxNotificationLength) throws Exception {
+        short handle = FileHandle.ACTIVITY_FILE.getHandle();
+        SyncTrace trace = new SyncTrace();
+        trace.add(UUID_CONTROL, ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN)
+                .put((byte) 0x01).putShort(handle).put((byte) 0).putInt(file.length)
+                .array());
+
+        EncryptedFileCipher cipher = new EncryptedFileCipher(KEY, PHONE_RANDOM, WATCH_RANDOM);
+        int payloadLength = maxNotificationLength - 1;
+        int packetCount = (file.length + payloadLength - 1) / payloadLength;
+        for (int i = 0; i < packetCount; i++) {
+            int offset = i * payloadLength;
+            int length = Math.min(payloadLength, file.length - offset);
+            byte[] packet = new byte[length + 1];
+            packet[0] = (byte) (i == packetCount - 1 ? 0x80 | (i & 0x7f) : i & 0x7f);
+            System.arraycopy(file, offset, packet, 1, length);
+            cipher.apply(packet, 0, packet.length, IV_INCREMENTOR * i);
+            trace.add(UUID_DATA, packet);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(file);
+        trace.add(UUID_CONTROL, ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN)
+                .put((byte) 0x08).putShort(handle).put((byte) 0).putInt(0).putInt((int) crc.getValue())
+                .array());
+        return trace;
+    }
+}
@@ -0,0 +1,120 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.Test;
+
+import nodomain.freeyourgadget.gadgetbridge.util.LimitedLookupMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LimitedLookupMapTest extends TestBase {
+
+    @Test
+    public void testLookupEmpty() {
+        LimitedLookupMap<String> map = new LimitedLookupMap<>(4);
+        assertEquals(0, map.size());
+        assertNull(map.lookup(1));
+        assertNull(map.lookupByValue("a"));
+        assertNull(map.lookupByValue(null));
+    }
+
+    @Test
+    public void testLookupBothDirections() {
+        LimitedLookupMap<Long> map = new LimitedLookupMap<>(4);
+        map.add(1, 100L);
+        map.add(-2, 200L);
+        map.add(Integer.MAX_VALUE, 300L);
+
+        assertEquals(3, map.size());
+        assertEquals(Long.valueOf(100L), map.lookup(1));
+        assertEquals(Long.valueOf(200L), map.lookup(-2));
+        assertEquals(Long.valueOf(300L), map.lookup(Integer.MAX_VALUE));
+        assertEquals(Integer.valueOf(-2), map.lookupByValue(200L));
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), map.lookupByValue(300L));
+        assertNull(map.lookupByValue(400L));
+    }
+
+    @Test
+    public void testEvictsOldest() {
+        LimitedLookupMap<String> map = new LimitedLookupMap<>(3);
+        map.add(1, "a");
+        map.add(2, "b");
+        map.add(3, "c");
+        map.add(4, "d");
+
+        assertEquals(3, map.size());
+        assertNull(map.lookup(1));
+        assertNull(map.lookupByValue("a"));
+        assertEquals("b", map.lookup(2));
+        assertEquals("d", map.lookup(4));
+    }
+
+    @Test
+    public void testReAddReplacesAndRenews() {
+        LimitedLookupMap<String> map = new LimitedLookupMap<>(3);
+        map.add(1, "a");
+        map.add(2, "b");
+        map.add(3, "c");
+        map.add(1, "a2");
+
+        assertEquals(3, map.size());
+        assertEquals("a2", map.lookup(1));
+        assertNull(map.lookupByValue("a"));
+        assertEquals(Integer.valueOf(1), map.lookupByValue("a2"));
+
+        // 2 is now the oldest entry and gets evicted first
+        map.add(4, "d");
+        assertNull(map.lookup(2));
+        assertEquals("a2", map.lookup(1));
+        assertEquals("c", map.lookup(3));
+    }
+
+    @Test
+    public void testDuplicateValuesReturnOldestId() {
+        LimitedLookupMap<String> map = new LimitedLookupMap<>(4);
+        map.add(7, "pkg");
+        map.add(8, "pkg");
+        assertEquals(Integer.valueOf(7), map.lookupByValue("pkg"));
+
+        map.remove(7);
+        assertEquals(Integer.valueOf(8), map.lookupByValue("pkg"));
+    }
+
+    @Test
+    public void testRemove() {
+        LimitedLookupMap<String> map = new LimitedLookupMap<>(4);
+        map.add(1, "a");
+        map.add(2, "b");
+        map.add(3, "c");
+        map.remove(2);
+        map.remove(42);
+
+        assertEquals(2, map.size());
+        assertNull(map.lookup(2));
+        assertNull(map.lookupByValue("b"));
+        assertEquals("a", map.lookup(1));
+        assertEquals("c", map.lookup(3));
+        assertEquals(Integer.valueOf(3), map.lookupByValue("c"));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.lookup(1));
+    }
+
+    @Test
+    public void testManyEntries() {
+        LimitedLookupMap<Integer> map = new LimitedLookupMap<>(128);
+        for (int i = 0; i < 1000; i++) {
+            map.add(i << 4, i);
+        }
+        assertEquals(128, map.size());
+        for (int i = 0; i < 1000 - 128; i++) {
+            assertNull(map.lookup(i << 4));
+            assertNull(map.lookupByValue(i));
+        }
+        for (int i = 1000 - 128; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), map.lookup(i << 4));
+            assertEquals(Integer.valueOf(i << 4), map.lookupByValue(i));
+        }
+    }
+}
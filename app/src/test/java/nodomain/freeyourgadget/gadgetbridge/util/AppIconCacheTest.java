@@ -0,0 +1,107 @@
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import android.content.Context;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AppIconCacheTest extends TestBase {
+    private static final int COLOR = 0xff123456;
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+    };
+    private int extractions;
+
+    private AppIconCache createCache() {
+        return new AppIconCache(getContext(), executor) {
+            @Override
+            Integer extractIconColor(String packageName) {
+                extractions++;
+                return COLOR;
+            }
+        };
+    }
+
+    @Test
+    public void testMissExtractsInBackground() {
+        String packageName = getContext().getPackageName();
+        AppIconCache cache = createCache();
+        cache.invalidate(packageName);
+
+        assertNull(cache.getIconColor(packageName));
+        // asking again while the extraction is pending does not schedule it twice
+        assertNull(cache.getIconColor(packageName));
+        assertEquals(1, tasks.size());
+        runTasks();
+
+        assertEquals(Integer.valueOf(COLOR), cache.getIconColor(packageName));
+        assertEquals(1, extractions);
+        assertEquals(0, tasks.size());
+    }
+
+    @Test
+    public void testMissReadsPersistedColor() {
+        String packageName = getContext().getPackageName();
+        AppIconCache cache = createCache();
+        cache.invalidate(packageName);
+        cache.getIconColor(packageName);
+        runTasks();
+
+        // a new cache, e.g. after a restart, returns the persisted color right away
+        AppIconCache restarted = createCache();
+        assertEquals(Integer.valueOf(COLOR), restarted.getIconColor(packageName));
+        assertEquals(0, tasks.size());
+        assertEquals(1, extractions);
+    }
+
+    @Test
+    public void testInvalidate() {
+        String packageName = getContext().getPackageName();
+        AppIconCache cache = createCache();
+        cache.invalidate(packageName);
+        cache.getIconColor(packageName);
+        runTasks();
+
+        cache.invalidate(packageName);
+        assertNull(cache.getIconColor(packageName));
+        assertNull(createCache().getIconColor(packageName));
+    }
+
+    @Test
+    public void testInvalidateDropsRunningExtraction() {
+        String packageName = getContext().getPackageName();
+        AppIconCache cache = createCache();
+        cache.invalidate(packageName);
+        assertNull(cache.getIconColor(packageName));
+
+        // the package is updated while its old icon is being processed
+        cache.invalidate(packageName);
+        runTasks();
+        assertEquals(1, extractions);
+
+        assertNull(cache.getIconColor(packageName));
+        assertEquals(1, tasks.size());
+        assertNull(getContext().getSharedPreferences("app_icon_cache", Context.MODE_PRIVATE).getAll().get(packageName));
+    }
+
+    private void runTasks() {
+        List<Runnable> pending = new ArrayList<>(tasks);
+        tasks.clear();
+        for (Runnable task : pending) {
+            task.run();
+        }
+    }
+}
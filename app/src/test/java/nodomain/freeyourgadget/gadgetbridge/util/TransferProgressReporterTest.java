@@ -0,0 +1,75 @@
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import org.junit.Test;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static nodomain.freeyourgadget.gadgetbridge.util.TransferProgressReporter.MIN_UPDATE_INTERVAL_MILLIS;
+import static org.junit.Assert.assertEquals;
+
+public class TransferProgressReporterTest extends TestBase {
+    private final List<String> posted = new ArrayList<>();
+
+    private TransferProgressReporter createReporter() {
+        return new TransferProgressReporter(getContext()) {
+            @Override
+            void postNotification(String title, String text, boolean ongoing, int percentage) {
+                posted.add(text + " " + percentage + (ongoing ? "" : " done"));
+            }
+        };
+    }
+
+    @Test
+    public void testPercentageThrottled() {
+        TransferProgressReporter reporter = createReporter();
+        reporter.update(null, "sync", true, 1);
+        reporter.update(null, "sync", true, 2);
+        reporter.update(null, "sync", true, 3);
+        assertEquals(1, posted.size());
+
+        // only the latest deferred update is posted
+        ShadowLooper.idleMainLooper(MIN_UPDATE_INTERVAL_MILLIS);
+        assertEquals(2, posted.size());
+        assertEquals("sync 3", posted.get(1));
+    }
+
+    @Test
+    public void testTextThrottled() {
+        TransferProgressReporter reporter = createReporter();
+        reporter.update(null, "record 1", true, 10);
+        reporter.update(null, "record 2", true, 10);
+        reporter.update(null, "record 3", true, 10);
+        assertEquals(1, posted.size());
+
+        ShadowLooper.idleMainLooper(MIN_UPDATE_INTERVAL_MILLIS);
+        assertEquals(2, posted.size());
+        assertEquals("record 3 10", posted.get(1));
+    }
+
+    @Test
+    public void testUnchangedNotPosted() {
+        TransferProgressReporter reporter = createReporter();
+        reporter.update(null, "sync", true, 5);
+        ShadowLooper.idleMainLooper(MIN_UPDATE_INTERVAL_MILLIS);
+        reporter.update(null, "sync", true, 5);
+        assertEquals(1, posted.size());
+    }
+
+    @Test
+    public void testFinalUpdatePostedImmediately() {
+        TransferProgressReporter reporter = createReporter();
+        reporter.update(null, "sync", true, 50);
+        reporter.update(null, "sync", true, 60);
+        reporter.update(null, "finished", false, 100);
+        assertEquals(2, posted.size());
+        assertEquals("finished 100 done", posted.get(1));
+
+        // the deferred update must not replace the final one
+        ShadowLooper.idleMainLooper(MIN_UPDATE_INTERVAL_MILLIS);
+        assertEquals(2, posted.size());
+    }
+}